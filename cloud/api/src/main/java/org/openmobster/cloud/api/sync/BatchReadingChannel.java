@@ -0,0 +1,31 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.cloud.api.sync;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Optional extension of a Channel that reads a page of Mobile Beans in one call. The sync engine uses it to
+ * load the beans a device has to catch up on, instead of one read(id) per bean.
+ * 
+ * Channels that do not implement this interface keep being read one bean at a time
+ * 
+ * @author openmobster@gmail.com
+ */
+public interface BatchReadingChannel extends Channel
+{
+	/**
+	 * Reads the Mobile Beans uniquely identified by the specified ids from the backend storage system
+	 * 
+	 * @param ids unique ids of the Mobile Beans to be read
+	 * @return the Mobile Beans that were found, in any order. Ids that no longer exist are left out
+	 */
+	public List<? extends MobileBean> readAll(Collection<String> ids);
+}
@@ -0,0 +1,35 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.cloud.api.sync;
+
+import java.util.Date;
+import java.util.Map;
+
+import org.openmobster.core.security.device.Device;
+
+/**
+ * Optional extension of a Channel that scans for changes for a whole group of devices in one call, instead of
+ * the three scanForXXX calls per device. A Channel backed by a single table, where most devices see the same
+ * rows, can answer this with one query per tick.
+ * 
+ * Channels that do not implement this interface keep being scanned one device at a time
+ * 
+ * @author openmobster@gmail.com
+ */
+public interface BatchScanningChannel extends Channel
+{
+	/**
+	 * Scan for any Mobile Bean creations, modifications, and deletions that need to be synchronized with 
+	 * the specified devices
+	 * 
+	 * @param lastScanTimestamps the devices to scan, along with the timestamp when their last scan was done
+	 * @return the changes keyed by device identifier. Devices without any changes can be left out
+	 */
+	public Map<String, ChannelChanges> scan(Map<Device, Date> lastScanTimestamps);
+}
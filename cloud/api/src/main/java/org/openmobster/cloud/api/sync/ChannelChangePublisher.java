@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.cloud.api.sync;
+
+import java.util.Collection;
+
+import org.openmobster.core.common.ServiceManager;
+
+/**
+ * ChannelChangePublisher lets Channel code announce a Mobile Bean change the moment it happens, instead of
+ * waiting for the next updateCheckInterval scan to find it. The change goes through the same pipeline as the
+ * changes found by scanning, and reaches the devices as a push.
+ * 
+ * Changes announced in quick succession are coalesced into one push. Scanning stays in place as the fallback
+ * for changes made outside the Channel code. A Channel that only publishes can turn scanning off with an
+ * updateCheckInterval of 0
+ * 
+ * @author openmobster@gmail.com
+ */
+public abstract class ChannelChangePublisher
+{
+	/**
+	 * Get an instance of the ChannelChangePublisher
+	 * 
+	 * @return an instance of the ChannelChangePublisher
+	 */
+	public static ChannelChangePublisher getInstance()
+	{
+		return (ChannelChangePublisher)ServiceManager.locate("services://ChannelChangePublisher");
+	}
+	
+	/**
+	 * A new Mobile Bean was created in the backend
+	 * 
+	 * @param channel uri of the Channel the bean belongs to
+	 * @param beanId unique id of the bean
+	 * @param principals users whose devices must receive the change. null means all users
+	 */
+	public abstract void created(String channel, String beanId, Collection<String> principals);
+	
+	/**
+	 * An existing Mobile Bean was modified in the backend
+	 * 
+	 * @param channel uri of the Channel the bean belongs to
+	 * @param beanId unique id of the bean
+	 * @param principals users whose devices must receive the change. null means all users
+	 */
+	public abstract void updated(String channel, String beanId, Collection<String> principals);
+	
+	/**
+	 * A Mobile Bean was deleted from the backend
+	 * 
+	 * @param channel uri of the Channel the bean belongs to
+	 * @param beanId unique id of the bean
+	 * @param principals users whose devices must receive the change. null means all users
+	 */
+	public abstract void deleted(String channel, String beanId, Collection<String> principals);
+}
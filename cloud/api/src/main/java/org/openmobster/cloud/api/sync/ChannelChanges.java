@@ -0,0 +1,79 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.cloud.api.sync;
+
+import java.io.Serializable;
+
+/**
+ * The Mobile Bean changes found for one device by a BatchScanningChannel
+ * 
+ * @author openmobster@gmail.com
+ */
+public final class ChannelChanges implements Serializable
+{
+	private static final long serialVersionUID = -3307165291044851436L;
+	
+	private String[] added;
+	private String[] updated;
+	private String[] deleted;
+	
+	public ChannelChanges()
+	{
+		
+	}
+	
+	public ChannelChanges(String[] added, String[] updated, String[] deleted)
+	{
+		this.added = added;
+		this.updated = updated;
+		this.deleted = deleted;
+	}
+
+	/**
+	 * 
+	 * @return unique ids of the new Mobile Beans
+	 */
+	public String[] getAdded()
+	{
+		return added;
+	}
+
+	public void setAdded(String[] added)
+	{
+		this.added = added;
+	}
+
+	/**
+	 * 
+	 * @return unique ids of the modified Mobile Beans
+	 */
+	public String[] getUpdated()
+	{
+		return updated;
+	}
+
+	public void setUpdated(String[] updated)
+	{
+		this.updated = updated;
+	}
+
+	/**
+	 * 
+	 * @return unique ids of the deleted Mobile Beans
+	 */
+	public String[] getDeleted()
+	{
+		return deleted;
+	}
+
+	public void setDeleted(String[] deleted)
+	{
+		this.deleted = deleted;
+	}
+}
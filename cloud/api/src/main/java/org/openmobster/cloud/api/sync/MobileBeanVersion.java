@@ -0,0 +1,30 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.cloud.api.sync;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Optional annotation which indicates a particular field of an Object contains the version of this Object
+ * in the backend, such as a revision number or a last modified timestamp. It must change whenever the 
+ * Object changes.
+ * 
+ * When present, conflict detection compares this version instead of the contents of the Object
+ * 
+ * @author openmobster@gmail.com
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface MobileBeanVersion 
+{
+
+}
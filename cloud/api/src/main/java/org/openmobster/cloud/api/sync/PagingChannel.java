@@ -0,0 +1,33 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.cloud.api.sync;
+
+import java.util.List;
+
+/**
+ * Optional extension of a Channel that reads its Mobile Beans a page at a time. The sync engine uses it
+ * during a slow sync and a boot sync, so that a channel with a large number of beans does not have to be
+ * loaded into memory with readAll.
+ * 
+ * Channels that do not implement this interface keep being read with readAll
+ * 
+ * @author openmobster@gmail.com
+ */
+public interface PagingChannel extends Channel
+{
+	/**
+	 * Reads one page of all the Mobile Beans of the channel. The beans must be returned in the same order
+	 * on every call, so that consecutive pages neither skip nor repeat a bean
+	 * 
+	 * @param start position of the first bean of the page, starting at 0
+	 * @param size maximum number of beans to return
+	 * @return the beans of the page. Fewer than size beans, or none, once the last page is reached
+	 */
+	public List<? extends MobileBean> readPage(int start, int size);
+}
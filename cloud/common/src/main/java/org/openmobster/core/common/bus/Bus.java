@@ -14,26 +14,18 @@ import java.util.Collections;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
-import org.hornetq.core.client.ClientMessage;
-import org.hornetq.core.client.ClientProducer;
-import org.hornetq.core.client.ClientSession;
-import org.hornetq.core.client.ClientSessionFactory;
-import org.hornetq.core.client.impl.ClientSessionFactoryImpl;
-import org.hornetq.core.config.TransportConfiguration;
-import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
-import org.hornetq.core.exception.HornetQException; 
-import org.hornetq.utils.SimpleString;
-
 import org.openmobster.core.common.errors.ErrorHandler;
-import org.openmobster.core.common.errors.SystemException;
-import org.openmobster.core.common.XMLUtilities;
+import org.openmobster.core.common.transaction.TransactionHelper;
 
 /**
+ * The transport carrying the messages is selected with the System property openmobster.bus.transport
+ * (see BusTransport)
+ * 
  * @author openmobster@gmail.com
  */
 public final class Bus 
@@ -41,13 +33,21 @@ public final class Bus
 	private static Logger log = Logger.getLogger(Bus.class);
 	
 	private static Map<String, Bus> activeBuses;
-	private static ClientSessionFactory sessionFactory;
+	private static BusTransport transport;
 	static
 	{
-		activeBuses = new HashMap<String, Bus>();
+		activeBuses = new ConcurrentHashMap<String, Bus>();
 		
-		Thread t = new Thread(BusConsumer.getInstance());
-		t.start();
+		String transportType = System.getProperty("openmobster.bus.transport", "hornetq");
+		if(transportType.equalsIgnoreCase("inmemory"))
+		{
+			transport = new InMemoryBusTransport();
+		}
+		else
+		{
+			transport = new HornetQBusTransport();
+		}
+		log.info("Bus Transport: "+transport.getClass().getSimpleName());
 	}
 	
 	private String uri;
@@ -61,65 +61,20 @@ public final class Bus
 		}
 		
 		this.uri = uri;
-		this.busListeners = new ArrayList<BusListener>();
+		this.busListeners = new CopyOnWriteArrayList<BusListener>();
 	}				
 	//-----------------------------------------------------------------------------------------------------------
 	private void start()
 	{
-		ClientSession coreSession = null;
-		try
+		if(Bus.activeBuses.containsKey(this.uri))
 		{
-			if(Bus.activeBuses.containsKey(this.uri))
-			{
-				//Bus infrastructure for this already exists
-				//no need to create redundant one
-				return;
-			}
-			
-			
-			synchronized(Bus.class)
-			{
-				if(sessionFactory == null)
-				{
-					sessionFactory = new ClientSessionFactoryImpl (new TransportConfiguration(
-					InVMConnectorFactory.class.getName()));
-					
-					sessionFactory.setMinLargeMessageSize(1000000000); //a gig
-				}
-			}
-			
-			//Start a hornetq associated with this Bus instance
-			// Create a core queue
-	        coreSession = sessionFactory.createSession(false, false, false);        
-	        
-	        //Create a Queue 
-	        if(!coreSession.queueQuery(new SimpleString(this.uri)).isExists())
-	        {
-	        	coreSession.createQueue(this.uri, this.uri, true); //a durable queue
-	        }
-	                        
-	        coreSession.close();
-	        
-	        Bus.activeBuses.put(this.uri, this);
-		}
-		catch(HornetQException hqe)
-		{
-			log.error(this, hqe);
-			ErrorHandler.getInstance().handle(hqe);
-			throw new SystemException(hqe.getMessage(),hqe);
-		}
-		finally
-		{
-			if(coreSession != null && !coreSession.isClosed())
-			{
-				try{coreSession.close();}
-				catch(HornetQException hqe)
-				{
-					ErrorHandler.getInstance().handle(hqe);
-					throw new SystemException(hqe.getMessage(),hqe);
-				}
-			}
+			//Bus infrastructure for this already exists
+			//no need to create redundant one
+			return;
 		}
+		
+		Bus.transport.start(this);
+		Bus.activeBuses.put(this.uri, this);
 	}	
 	
 	private void stop()
@@ -127,6 +82,7 @@ public final class Bus
 		try
 		{
 			Bus.activeBuses.remove(uri);
+			Bus.transport.stop(uri);
 		}
 		catch(Exception e)
 		{
@@ -161,53 +117,14 @@ public final class Bus
 	
 	private void sendMessageOnQueue(BusMessage busMessage)
 	{
-		ClientSession session = null;
-		ClientProducer producer = null;
-		try
-		{
-			session = sessionFactory.createSession();
-			producer = session.createProducer(uri);
-			
-			session.start();		        
-	        	        
-	        String busMessageXml = XMLUtilities.marshal(busMessage);
-	        
-	        ClientMessage message = session.createClientMessage(true); //makes it a durable message
-	        message.putStringProperty("message", busMessageXml);
-	        
-	        producer.send(message);
-	        
-	        producer.close();
-	        session.stop();
-	        session.close();
-		}
-		catch(HornetQException hqe)
-		{
-			ErrorHandler.getInstance().handle(hqe);
-			throw new SystemException(hqe.getMessage(),hqe);
-		}
-		finally
-		{
-			if(producer != null && !producer.isClosed())
-			{
-				try{producer.close();}
-				catch(HornetQException hqe)
-				{
-					ErrorHandler.getInstance().handle(hqe);
-					throw new SystemException(hqe.getMessage(),hqe);
-				}
-			}
-			
-			if(session != null && !session.isClosed())
-			{
-				try{session.stop();session.close();}
-				catch(HornetQException hqe)
-				{
-					ErrorHandler.getInstance().handle(hqe);
-					throw new SystemException(hqe.getMessage(),hqe);
-				}
-			}
-		}
+		List<BusMessage> messages = new ArrayList<BusMessage>(1);
+		messages.add(busMessage);
+		Bus.sendOnQueues(messages);
+	}
+	
+	private static void sendOnQueues(List<BusMessage> messages)
+	{
+		Bus.transport.send(messages);
 	}
 	//-----------------------------------------------------------------------------------------------------------
 	public static void startBus(String uri)
@@ -224,8 +141,8 @@ public final class Bus
 	
 	public static void restartBus(String uri)
 	{
-		//does nothing....just here so that the public contract is not broken
-		//deprecated
+		//delivers the messages that are pending on this bus, if it was parked
+		Bus.transport.resume(uri);
 	}
 	
 	public static void addBusListener(String uri, BusListener listener)
@@ -243,6 +160,9 @@ public final class Bus
 		}
 		
 		bus.addBusListener(listener);
+		
+		//messages that arrived before there was anyone to process them
+		Bus.transport.resume(uri);
 	}
 	
 	public static void removeBusListener(String uri, BusListener listener)
@@ -278,36 +198,110 @@ public final class Bus
 		bus.sendMessageOnQueue(message);
 	}
 	
+	/**
+	 * Sends a batch of messages, typically a notification fan-out, in a single transaction.
+	 * Messages addressed to a Bus that is not active are skipped
+	 * 
+	 * @param messages
+	 */
+	public static void sendMessages(List<BusMessage> messages)
+	{
+		if(messages == null || messages.isEmpty())
+		{
+			return;
+		}
+		
+		List<BusMessage> batch = new ArrayList<BusMessage>(messages.size());
+		for(BusMessage message:messages)
+		{
+			if(message == null)
+			{
+				continue;
+			}
+			
+			if(message.getSenderUri()==null || message.getSenderUri().trim().length()==0)
+			{
+				throw new IllegalStateException("Sender URI is mandatory!!");
+			}
+			
+			if(message.getBusUri()==null || message.getBusUri().trim().length()==0)
+			{
+				throw new IllegalStateException("Bus URI is mandatory!!");
+			}
+			
+			if(!Bus.activeBuses.containsKey(message.getBusUri()))
+			{
+				log.warn(message.getBusUri()+" is not active. Message from "+message.getSenderUri()+" dropped");
+				continue;
+			}
+			
+			batch.add(message);
+		}
+		
+		Bus.sendOnQueues(batch);
+	}
+	
 	static Map<String,Bus> getActiveBuses()
 	{
 		return Collections.unmodifiableMap(Bus.activeBuses);
 	}
 	
-	static ClientSessionFactory getSessionFactory()
+	/**
+	 * Delivers a message to the BusListeners of a Bus. Invoked by the BusTransport
+	 * 
+	 * @return true if the message was acknowledged by the listeners
+	 */
+	static boolean dispatch(Bus bus, BusMessage busMessage)
 	{
-		return Bus.sessionFactory;
+		boolean isStartedHere = TransactionHelper.startTx();
+		try
+		{
+			for(BusListener busListener: bus.getBusListeners())
+			{
+				try
+				{
+					busListener.messageIncoming(busMessage);
+				}
+				catch(Exception e)
+				{
+					//so that if an error occurs on one listener, others don't suffer
+					//listeners must be isolated of each other
+					try{ErrorHandler.getInstance().handle(e);}catch(Exception ex){}
+				}
+			}
+			
+			if(isStartedHere)
+			{
+				TransactionHelper.commitTx();
+			}
+			
+			return busMessage.isAcknowledged();
+		}
+		catch(Exception e)
+		{
+			log.error(bus, e);
+			if(isStartedHere)
+			{
+				TransactionHelper.rollbackTx();
+			}
+			return false;
+		}
 	}
 	
 	public static void dumpUnprocessedQueueCount()
 	{
-		ClientSession coreSession = null;
-	    int count = 0;
 	    try 
 	    {
-	        coreSession = sessionFactory.createSession(false, false, false);
-	        
+	        long count = 0;
 	        if(!Bus.activeBuses.isEmpty())
 	        {
-	        	Set<String> uris = Bus.activeBuses.keySet();
-	        	for(String uri:uris)
-	        	{
-	        		count += coreSession.queueQuery(new SimpleString(uri)).getMessageCount();
-	        	}
+	        	count = Bus.transport.getPendingCount(Bus.activeBuses.keySet());
 	        }
 	        
 	        StringBuilder buffer = new StringBuilder(); 
 	        buffer.append("*****************************************\n");
 	        buffer.append("# of unprocessed messages: "+count+"\n");
+	        buffer.append(Bus.transport.getDeliveryLatency()+"\n");
 	        buffer.append("*****************************************\n");
 	        
 	        String dump = buffer.toString();
@@ -324,19 +318,5 @@ public final class Bus
 	        t.printStackTrace();
 	        throw new RuntimeException(t);
 	    } 
-	    finally 
-	    {
-	        if (coreSession!= null )
-	        {
-	            try 
-	            {
-	                coreSession.close();
-	            } 
-	            catch (HornetQException e) 
-	            {
-	                e.printStackTrace();
-	            }
-	        }
-	    }
 	}
 }
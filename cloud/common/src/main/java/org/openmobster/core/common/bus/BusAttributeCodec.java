@@ -0,0 +1,34 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Plugs a compact binary encoding for a BusMessage attribute type into the BusMessageCodec.
+ *
+ * Attribute values that are not handled by the built-in types or a registered BusAttributeCodec
+ * are still carried as XStream XML
+ *
+ * @author openmobster@gmail.com
+ */
+public interface BusAttributeCodec
+{
+	/**
+	 * Identifies this codec on the wire. Must be unique and in the range 64 - 126
+	 */
+	public byte getId();
+
+	public boolean accepts(Object value);
+
+	public void write(DataOutputStream out, Object value) throws IOException;
+
+	public Object read(DataInputStream in) throws IOException;
+}
@@ -7,41 +7,84 @@
  */
 package org.openmobster.core.common.bus;
 
-import java.util.Map;
 import java.util.Collection;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 
-import org.hornetq.core.client.ClientConsumer;
 import org.hornetq.core.client.ClientMessage;
+import org.hornetq.core.client.ClientSession;
 import org.hornetq.core.client.ClientSessionFactory;
 import org.hornetq.core.exception.HornetQException;
-import org.hornetq.utils.SimpleString;
-import org.hornetq.core.client.ClientSession;
 
 import org.openmobster.core.common.XMLUtilities;
 import org.openmobster.core.common.errors.ErrorHandler;
 import org.openmobster.core.common.errors.SystemException;
-import org.openmobster.core.common.transaction.TransactionHelper;
 
 /**
+ * Event driven consumer engine for the Bus.
+ *
+ * Each active Bus gets a long-lived HornetQ consumer with a MessageHandler. The consumers are spread over
+ * a fixed number of consumer sessions, and the BusListeners are invoked on a bounded worker pool with
+ * per-Bus ordering (see BusSubscription).
+ *
+ * The engine thread does not poll the queues. It only re-attaches Buses that were parked because a
+ * message was not acknowledged by its listeners, and re-schedules Buses that found the worker queue full.
+ * The listeners never run on the HornetQ delivery threads.
+ *
+ * Tuning (System properties):
+ *
+ * openmobster.bus.consumer.sessions - number of consumer sessions (default 8)
+ * openmobster.bus.consumer.workers - size of the listener worker pool (default 16)
+ * openmobster.bus.consumer.queue - max. number of Buses waiting for a worker (default 10000)
+ * openmobster.bus.consumer.retryInterval - milliseconds before a parked Bus is retried (default 30000)
  *
  * @author openmobster@gmail.com
  */
 public final class BusConsumer implements Runnable
 {
 	private static Logger log = Logger.getLogger(BusConsumer.class);
-	
+
 	private static BusConsumer singleton;
-	
+
 	boolean exit = false;
-	
+
+	private int sessionCount;
+	private int workerCount;
+	private int queueSize;
+	private long retryInterval;
+
+	private ClientSession[] sessions;
+	private Map<String,BusSubscription> subscriptions;
+	private ThreadPoolExecutor workers;
+	private LatencyHistogram deliveryLatency;
+
 	private BusConsumer()
 	{
-		
+		this(Integer.getInteger("openmobster.bus.consumer.sessions", 8).intValue(),
+		Integer.getInteger("openmobster.bus.consumer.workers", 16).intValue(),
+		Integer.getInteger("openmobster.bus.consumer.queue", 10000).intValue(),
+		Long.getLong("openmobster.bus.consumer.retryInterval", 30000).longValue());
+	}
+
+	BusConsumer(int sessionCount, int workerCount, int queueSize, long retryInterval)
+	{
+		this.sessionCount = sessionCount;
+		this.workerCount = workerCount;
+		this.queueSize = queueSize;
+		this.retryInterval = retryInterval;
+
+		this.subscriptions = new ConcurrentHashMap<String,BusSubscription>();
+		this.deliveryLatency = new LatencyHistogram("bus-delivery-latency");
 	}
-	
+
 	public static BusConsumer getInstance()
 	{
 		if(BusConsumer.singleton == null)
@@ -56,29 +99,48 @@ public final class BusConsumer implements Runnable
 		}
 		return BusConsumer.singleton;
 	}
-	
+
+	/**
+	 * Re-attaches the parked Buses, and re-schedules the ones that were turned down by the full worker
+	 * queue, every retry interval. Actual message delivery is event driven
+	 */
 	public void run()
 	{
 		do
 		{
 			try
 			{
-				Map<String,Bus> activeBuses = Bus.getActiveBuses();
-				if(activeBuses == null)
+				synchronized(this)
 				{
-					continue;
+					if(!this.exit)
+					{
+						this.wait(this.retryInterval);
+					}
 				}
-				
-				Collection<Bus> buses = activeBuses.values();
-				for(Bus bus:buses)
+
+				if(this.exit)
 				{
-					try
+					break;
+				}
+
+				long now = System.currentTimeMillis();
+				Collection<BusSubscription> all = this.subscriptions.values();
+				for(BusSubscription subscription:all)
+				{
+					if(subscription.isParked() && (now - subscription.getParkedAt()) >= this.retryInterval)
 					{
-						this.consume(bus);
+						try
+						{
+							subscription.attach();
+						}
+						catch(Throwable t)
+						{
+							//just eat this one....will try again..for this particular Bus
+						}
 					}
-					catch(Throwable t)
+					else if(subscription.clearRejected())
 					{
-						//just eat this one....will try again..for this particular Bus
+						this.schedule(subscription);
 					}
 				}
 			}
@@ -88,73 +150,29 @@ public final class BusConsumer implements Runnable
 			}
 		}while(!exit);
 	}
-	
+
 	public void stop()
 	{
-		this.exit = true;
-	}
-	
-	private void consume(Bus bus)
-	{
-		ClientSessionFactory sessionFactory = Bus.getSessionFactory();
-		ClientSession session = null;
-		ClientConsumer messageConsumer = null;
-		String uri = bus.getUri();
-		try
-		{				
-			session = sessionFactory.createSession();
-			session.start();
-			messageConsumer = session.createConsumer(uri);
-			
-			ClientMessage message = messageConsumer.receive(1000);
-	        if(message != null)
-	        {
-	        	boolean isStartedHere = TransactionHelper.startTx();
-	        	try
-	        	{
-		        	SimpleString msg = (SimpleString)message.getProperty("message");
-		        	
-		        	BusMessage busMessage = (BusMessage)XMLUtilities.unmarshal(msg.toString());
-		        	busMessage.setAttribute("hornetq-message", message);
-		        	
-		        	this.sendBusListenerEvent(bus,busMessage);
-		        	
-		        	if(isStartedHere)
-		        	{
-		        		TransactionHelper.commitTx();
-		        	}
-	        	}
-	        	catch(Exception e)
-	        	{
-	        		e.printStackTrace();
-	        		if(isStartedHere)
-	        		{
-	        			TransactionHelper.rollbackTx();
-	        		}
-	        	}
-	        }
+		synchronized(this)
+		{
+			this.exit = true;
+			this.notifyAll();
 		}
-		catch(HornetQException hqe)
+
+		for(BusSubscription subscription:this.subscriptions.values())
 		{
-			ErrorHandler.getInstance().handle(hqe);
-			throw new SystemException(hqe.getMessage(),hqe);
+			subscription.close();
 		}
-		finally
+		this.subscriptions.clear();
+
+		if(this.workers != null)
 		{
-			if(messageConsumer != null && !messageConsumer.isClosed())
-			{
-				try
-				{
-					messageConsumer.close();
-				}
-				catch(HornetQException hqe)
-				{
-					ErrorHandler.getInstance().handle(hqe);
-					throw new SystemException(hqe.getMessage(),hqe);
-				}
-			}
-			
-			if(session != null && !session.isClosed())
+			this.workers.shutdown();
+		}
+
+		if(this.sessions != null)
+		{
+			for(ClientSession session:this.sessions)
 			{
 				try
 				{
@@ -163,32 +181,207 @@ public final class BusConsumer implements Runnable
 				}
 				catch(HornetQException hqe)
 				{
-					ErrorHandler.getInstance().handle(hqe);
-					throw new SystemException(hqe.getMessage(),hqe);
+					log.error(this, hqe);
 				}
 			}
+			this.sessions = null;
 		}
+
+		log.info(this.deliveryLatency.toString());
 	}
-	
-	private void sendBusListenerEvent(Bus bus,BusMessage busMessage)
+
+	/**
+	 * Push delivery latency measured from Bus.sendMessage up to the point where the BusListeners
+	 * are done processing the message
+	 *
+	 * @return
+	 */
+	public LatencyHistogram getDeliveryLatency()
+	{
+		return this.deliveryLatency;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	void subscribe(ClientSessionFactory sessionFactory, Bus bus)
 	{
-		List<BusListener> busListeners = bus.getBusListeners();
-		if(busListeners == null)
+		try
 		{
-			return;
+			this.startEngine(sessionFactory);
+
+			String uri = bus.getUri();
+			ClientSession session = this.sessions[Math.abs(uri.hashCode() % this.sessions.length)];
+			BusSubscription subscription = new BusSubscription(this, bus, session);
+
+			BusSubscription old = this.subscriptions.put(uri, subscription);
+			if(old != null)
+			{
+				old.close();
+			}
+
+			subscription.attach();
+		}
+		catch(HornetQException hqe)
+		{
+			ErrorHandler.getInstance().handle(hqe);
+			throw new SystemException(hqe.getMessage(),hqe);
 		}
-		for(BusListener busListener: busListeners)
+	}
+
+	void unsubscribe(String uri)
+	{
+		BusSubscription subscription = this.subscriptions.remove(uri);
+		if(subscription != null)
+		{
+			subscription.close();
+		}
+	}
+
+	/**
+	 * Re-attaches a parked Bus right away so that the messages pending on its queue get delivered
+	 *
+	 * @param uri
+	 */
+	void resume(String uri)
+	{
+		BusSubscription subscription = this.subscriptions.get(uri);
+		if(subscription != null && subscription.isParked())
 		{
 			try
 			{
-				busListener.messageIncoming(busMessage);
+				subscription.attach();
 			}
-			catch(Exception e)
+			catch(HornetQException hqe)
 			{
-				//so that if an error occurs on one listener, others don't suffer
-				//listeners must be isolated of each other
-				try{ErrorHandler.getInstance().handle(e);}catch(Exception ex){}
+				ErrorHandler.getInstance().handle(hqe);
+				throw new SystemException(hqe.getMessage(),hqe);
 			}
 		}
 	}
+
+	void schedule(BusSubscription subscription)
+	{
+		ThreadPoolExecutor local = this.workers;
+		if(local == null || local.isShutdown())
+		{
+			return;
+		}
+
+		try
+		{
+			local.execute(subscription);
+		}
+		catch(RejectedExecutionException ree)
+		{
+			//workers are backed up...the engine thread schedules it again on its next pass
+			subscription.rejected();
+		}
+	}
+
+	/**
+	 * Delivers a message to the BusListeners of a Bus
+	 *
+	 * @return true if the message was acknowledged by the listeners
+	 */
+	boolean deliver(Bus bus, ClientMessage message)
+	{
+		BusMessage busMessage = null;
+		try
+		{
+			busMessage = BusConsumer.decode(message);
+			busMessage.setAttribute("hornetq-message", message);
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+			return false;
+		}
+
+		if(Bus.dispatch(bus, busMessage))
+		{
+			this.recordLatency(message);
+			return true;
+		}
+		return false;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private synchronized void startEngine(ClientSessionFactory sessionFactory) throws HornetQException
+	{
+		if(this.sessions != null && !this.sessions[0].isClosed())
+		{
+			return;
+		}
+
+		ClientSession[] local = new ClientSession[this.sessionCount];
+		for(int i=0; i<local.length; i++)
+		{
+			local[i] = sessionFactory.createSession();
+			local[i].start();
+		}
+
+		this.startWorkers();
+		this.sessions = local;
+	}
+
+	private synchronized void startWorkers()
+	{
+		if(this.workers != null && !this.workers.isShutdown())
+		{
+			return;
+		}
+
+		//a full queue turns the Bus down rather than running its listeners on the HornetQ delivery thread
+		this.workers = new ThreadPoolExecutor(this.workerCount, this.workerCount,
+		60, TimeUnit.SECONDS,
+		new LinkedBlockingQueue<Runnable>(this.queueSize),
+		new WorkerThreadFactory(),
+		new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * Messages are carried binary encoded in the message body. Messages that were sent as XStream XML
+	 * in the "message" property, before the binary codec, may still be sitting in the durable queues
+	 */
+	static BusMessage decode(ClientMessage message)
+	{
+		Object xml = message.getProperty("message");
+		if(xml != null)
+		{
+			return (BusMessage)XMLUtilities.unmarshal(xml.toString());
+		}
+
+		int length = message.getBody().readInt();
+		byte[] bytes = new byte[length];
+		message.getBody().readBytes(bytes);
+		return BusMessageCodec.decode(bytes);
+	}
+
+	private void recordLatency(ClientMessage message)
+	{
+		Object sentAt = message.getProperty("sent-at");
+		if(sentAt == null)
+		{
+			return;
+		}
+
+		try
+		{
+			long latency = System.currentTimeMillis() - Long.parseLong(sentAt.toString());
+			this.deliveryLatency.record(latency);
+		}
+		catch(NumberFormatException nfe)
+		{
+			//not a timestamp....ignore
+		}
+	}
+
+	private static class WorkerThreadFactory implements ThreadFactory
+	{
+		private AtomicInteger counter = new AtomicInteger(0);
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "bus-consumer-"+this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
 }
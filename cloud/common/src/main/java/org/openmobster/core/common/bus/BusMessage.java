@@ -25,6 +25,8 @@ public final class BusMessage implements Serializable
 	
 	private InVMAttributeManager attributes;
 	
+	private transient boolean acknowledged;
+	
 	public BusMessage()
 	{
 		this.attributes = new InVMAttributeManager();
@@ -44,6 +46,11 @@ public final class BusMessage implements Serializable
 	{
 		this.attributes.removeAttribute(name);
 	}
+	
+	public String[] getAttributeNames()
+	{
+		return this.attributes.getNames();
+	}
 	//-----------------------------------------------------------------------------------------------------------
 	public String getBusUri()
 	{
@@ -74,10 +81,16 @@ public final class BusMessage implements Serializable
 			{
 				hornetqMessage.acknowledge();
 			}
+			this.acknowledged = true;
 		}
 		catch(Throwable t)
 		{
 			throw new RuntimeException(t);
 		}
 	}
+	
+	boolean isAcknowledged()
+	{
+		return this.acknowledged;
+	}
 }
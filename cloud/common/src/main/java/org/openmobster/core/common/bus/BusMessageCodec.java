@@ -0,0 +1,362 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.openmobster.core.common.XMLUtilities;
+
+/**
+ * Versioned binary codec for the BusMessage.
+ *
+ * Layout (version 1):
+ *
+ * magic (2 bytes) | version (1 byte) | attribute count (int) | attribute*
+ *
+ * attribute = name (string) | type (1 byte) | value
+ *
+ * Strings are written as int length + UTF-8 bytes. Strings, numbers, booleans, byte[], and String lists/maps
+ * are encoded natively. Types with a registered BusAttributeCodec use that codec, anything else falls back
+ * to XStream XML so that no attribute is ever lost.
+ *
+ * @author openmobster@gmail.com
+ */
+public final class BusMessageCodec
+{
+	public static final byte version = 1;
+
+	private static final byte magic0 = (byte)0xB5;
+	private static final byte magic1 = (byte)0x4D;
+
+	private static final byte NULL = 0;
+	private static final byte STRING = 1;
+	private static final byte INTEGER = 2;
+	private static final byte LONG = 3;
+	private static final byte BOOLEAN = 4;
+	private static final byte BYTES = 5;
+	private static final byte STRING_LIST = 6;
+	private static final byte STRING_MAP = 7;
+	private static final byte XML = 127;
+
+	/**
+	 * transient attribute set by the BusConsumer, never sent on the wire
+	 */
+	private static final String hornetqMessage = "hornetq-message";
+
+	private static volatile Map<Byte,BusAttributeCodec> codecs = new HashMap<Byte,BusAttributeCodec>();
+
+	private BusMessageCodec()
+	{
+	}
+
+	public static synchronized void register(BusAttributeCodec codec)
+	{
+		byte id = codec.getId();
+		if(id < 64 || id > 126)
+		{
+			throw new IllegalArgumentException("BusAttributeCodec id must be in the range 64-126: "+id);
+		}
+
+		BusAttributeCodec registered = codecs.get(id);
+		if(registered != null && !registered.getClass().equals(codec.getClass()))
+		{
+			throw new IllegalStateException("BusAttributeCodec id "+id+" is already taken by "+
+			registered.getClass().getName());
+		}
+
+		Map<Byte,BusAttributeCodec> local = new HashMap<Byte,BusAttributeCodec>(codecs);
+		local.put(id, codec);
+		codecs = local;
+	}
+
+	public static byte[] encode(BusMessage busMessage)
+	{
+		try
+		{
+			ByteArrayOutputStream bos = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bos);
+
+			out.writeByte(magic0);
+			out.writeByte(magic1);
+			out.writeByte(version);
+
+			String[] names = busMessage.getAttributeNames();
+			if(names == null)
+			{
+				names = new String[0];
+			}
+			
+			int count = 0;
+			for(String name:names)
+			{
+				if(!name.equals(hornetqMessage))
+				{
+					count++;
+				}
+			}
+
+			out.writeInt(count);
+			for(String name:names)
+			{
+				if(name.equals(hornetqMessage))
+				{
+					continue;
+				}
+				writeString(out, name);
+				writeValue(out, busMessage.getAttribute(name));
+			}
+
+			out.flush();
+			return bos.toByteArray();
+		}
+		catch(IOException ioe)
+		{
+			//not possible on an in-memory stream
+			throw new RuntimeException(ioe);
+		}
+	}
+
+	public static BusMessage decode(byte[] bytes)
+	{
+		try
+		{
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+
+			if(in.readByte() != magic0 || in.readByte() != magic1)
+			{
+				throw new IllegalStateException("Not a binary encoded BusMessage");
+			}
+
+			byte messageVersion = in.readByte();
+			if(messageVersion > version)
+			{
+				throw new IllegalStateException("BusMessage version "+messageVersion+" is not supported");
+			}
+
+			BusMessage busMessage = new BusMessage();
+			int count = in.readInt();
+			for(int i=0; i<count; i++)
+			{
+				String name = readString(in);
+				busMessage.setAttribute(name, readValue(in));
+			}
+			return busMessage;
+		}
+		catch(IOException ioe)
+		{
+			throw new IllegalStateException("Corrupt BusMessage", ioe);
+		}
+	}
+	//---------------------------------------------------------------------------------------------------------
+	public static void writeString(DataOutputStream out, String value) throws IOException
+	{
+		if(value == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = value.getBytes("UTF-8");
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	public static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if(length < 0)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, "UTF-8");
+	}
+
+	private static void writeValue(DataOutputStream out, Object value) throws IOException
+	{
+		if(value == null)
+		{
+			out.writeByte(NULL);
+		}
+		else if(value instanceof String)
+		{
+			out.writeByte(STRING);
+			writeString(out, (String)value);
+		}
+		else if(value instanceof Integer)
+		{
+			out.writeByte(INTEGER);
+			out.writeInt(((Integer)value).intValue());
+		}
+		else if(value instanceof Long)
+		{
+			out.writeByte(LONG);
+			out.writeLong(((Long)value).longValue());
+		}
+		else if(value instanceof Boolean)
+		{
+			out.writeByte(BOOLEAN);
+			out.writeBoolean(((Boolean)value).booleanValue());
+		}
+		else if(value instanceof byte[])
+		{
+			byte[] bytes = (byte[])value;
+			out.writeByte(BYTES);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		else if(isStringList(value))
+		{
+			List<?> list = (List<?>)value;
+			out.writeByte(STRING_LIST);
+			out.writeInt(list.size());
+			for(Object element:list)
+			{
+				writeString(out, (String)element);
+			}
+		}
+		else if(isStringMap(value))
+		{
+			Map<?,?> map = (Map<?,?>)value;
+			out.writeByte(STRING_MAP);
+			out.writeInt(map.size());
+			for(Map.Entry<?,?> entry:map.entrySet())
+			{
+				writeString(out, (String)entry.getKey());
+				writeString(out, (String)entry.getValue());
+			}
+		}
+		else
+		{
+			BusAttributeCodec codec = findCodec(value);
+			if(codec != null)
+			{
+				out.writeByte(codec.getId());
+				codec.write(out, value);
+			}
+			else
+			{
+				out.writeByte(XML);
+				writeString(out, XMLUtilities.marshal(value));
+			}
+		}
+	}
+
+	private static Object readValue(DataInputStream in) throws IOException
+	{
+		byte type = in.readByte();
+		switch(type)
+		{
+			case NULL:
+				return null;
+
+			case STRING:
+				return readString(in);
+
+			case INTEGER:
+				return new Integer(in.readInt());
+
+			case LONG:
+				return new Long(in.readLong());
+
+			case BOOLEAN:
+				return Boolean.valueOf(in.readBoolean());
+
+			case BYTES:
+				byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return bytes;
+
+			case STRING_LIST:
+				int size = in.readInt();
+				List<String> list = new ArrayList<String>(size);
+				for(int i=0; i<size; i++)
+				{
+					list.add(readString(in));
+				}
+				return list;
+
+			case STRING_MAP:
+				int entries = in.readInt();
+				Map<String,String> map = new HashMap<String,String>();
+				for(int i=0; i<entries; i++)
+				{
+					String key = readString(in);
+					map.put(key, readString(in));
+				}
+				return map;
+
+			case XML:
+				return XMLUtilities.unmarshal(readString(in));
+
+			default:
+				BusAttributeCodec codec = codecs.get(type);
+				if(codec == null)
+				{
+					throw new IllegalStateException("No BusAttributeCodec registered for type: "+type);
+				}
+				return codec.read(in);
+		}
+	}
+
+	private static BusAttributeCodec findCodec(Object value)
+	{
+		for(BusAttributeCodec codec:codecs.values())
+		{
+			if(codec.accepts(value))
+			{
+				return codec;
+			}
+		}
+		return null;
+	}
+
+	private static boolean isStringList(Object value)
+	{
+		if(value.getClass() != ArrayList.class)
+		{
+			return false;
+		}
+		for(Object element:(List<?>)value)
+		{
+			if(element != null && !(element instanceof String))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isStringMap(Object value)
+	{
+		if(value.getClass() != HashMap.class)
+		{
+			return false;
+		}
+		for(Map.Entry<?,?> entry:((Map<?,?>)value).entrySet())
+		{
+			if(!(entry.getKey() instanceof String))
+			{
+				return false;
+			}
+			if(entry.getValue() != null && !(entry.getValue() instanceof String))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
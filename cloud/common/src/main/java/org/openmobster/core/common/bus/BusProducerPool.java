@@ -0,0 +1,163 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.hornetq.core.client.ClientMessage;
+import org.hornetq.core.client.ClientProducer;
+import org.hornetq.core.client.ClientSession;
+import org.hornetq.core.client.ClientSessionFactory;
+import org.hornetq.core.exception.HornetQException;
+import org.hornetq.utils.SimpleString;
+
+/**
+ * Striped pool of long-lived, transacted producer sessions used by Bus.sendMessage.
+ *
+ * Each stripe owns one session and one anonymous producer, so messages for any Bus can go out on it.
+ * A sending thread is mapped to a stripe by its id, and holds the stripe only for the duration of
+ * the send + commit. A stripe whose session fails is discarded and re-created on the next send.
+ *
+ * The number of stripes can be tuned with the System property openmobster.bus.producer.sessions (default 8)
+ *
+ * @author openmobster@gmail.com
+ */
+final class BusProducerPool
+{
+	private static Logger log = Logger.getLogger(BusProducerPool.class);
+
+	private ClientSessionFactory sessionFactory;
+	private Stripe[] stripes;
+
+	BusProducerPool(ClientSessionFactory sessionFactory)
+	{
+		this.sessionFactory = sessionFactory;
+
+		int size = Integer.getInteger("openmobster.bus.producer.sessions", 8).intValue();
+		this.stripes = new Stripe[size];
+		for(int i=0; i<size; i++)
+		{
+			this.stripes[i] = new Stripe();
+		}
+	}
+
+	/**
+	 * Sends all the messages in a single transaction
+	 *
+	 * @param messages the messages to be sent, all going to a Bus that is active
+	 * @throws HornetQException
+	 */
+	void send(List<BusMessage> messages) throws HornetQException
+	{
+		if(messages == null || messages.isEmpty())
+		{
+			return;
+		}
+
+		//encode outside the lock
+		int size = messages.size();
+		SimpleString[] addresses = new SimpleString[size];
+		byte[][] payloads = new byte[size][];
+		for(int i=0; i<size; i++)
+		{
+			BusMessage busMessage = messages.get(i);
+			addresses[i] = new SimpleString(busMessage.getBusUri());
+			payloads[i] = BusMessageCodec.encode(busMessage);
+		}
+
+		Stripe stripe = this.stripes[(int)(Thread.currentThread().getId() % this.stripes.length)];
+		synchronized(stripe)
+		{
+			stripe.send(addresses, payloads);
+		}
+	}
+
+	void close()
+	{
+		for(Stripe stripe:this.stripes)
+		{
+			synchronized(stripe)
+			{
+				stripe.close();
+			}
+		}
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private class Stripe
+	{
+		private ClientSession session;
+		private ClientProducer producer;
+
+		private void send(SimpleString[] addresses, byte[][] payloads) throws HornetQException
+		{
+			this.open();
+			try
+			{
+				String sentAt = String.valueOf(System.currentTimeMillis());
+				for(int i=0; i<addresses.length; i++)
+				{
+					ClientMessage message = this.session.createClientMessage(true); //makes it a durable message
+					message.putStringProperty("sent-at", sentAt);
+					
+					//binary encoded BusMessage goes straight into the body
+					message.getBody().writeInt(payloads[i].length);
+					message.getBody().writeBytes(payloads[i]);
+
+					this.producer.send(addresses[i], message);
+				}
+				this.session.commit();
+			}
+			catch(HornetQException hqe)
+			{
+				//this session is no good anymore...start fresh on the next send
+				this.close();
+				throw hqe;
+			}
+		}
+
+		private void open() throws HornetQException
+		{
+			if(this.session != null && !this.session.isClosed())
+			{
+				return;
+			}
+
+			//no auto-commit on sends, the whole batch goes in one transaction
+			this.session = BusProducerPool.this.sessionFactory.createSession(false, false, true);
+			this.producer = this.session.createProducer();
+			this.session.start();
+		}
+
+		private void close()
+		{
+			try
+			{
+				if(this.producer != null && !this.producer.isClosed())
+				{
+					this.producer.close();
+				}
+				if(this.session != null && !this.session.isClosed())
+				{
+					this.session.rollback();
+					this.session.close();
+				}
+			}
+			catch(HornetQException hqe)
+			{
+				log.error(this, hqe);
+			}
+			finally
+			{
+				this.producer = null;
+				this.session = null;
+			}
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.util.LinkedList;
+
+import org.apache.log4j.Logger;
+
+import org.hornetq.core.client.ClientConsumer;
+import org.hornetq.core.client.ClientMessage;
+import org.hornetq.core.client.ClientSession;
+import org.hornetq.core.client.MessageHandler;
+import org.hornetq.core.exception.HornetQException;
+
+/**
+ * A long-lived subscription of the BusConsumer to the queue backing a single Bus.
+ *
+ * Messages are pushed by HornetQ into the MessageHandler, queued up in the mailbox and drained
+ * on the BusConsumer worker pool. Only one drain is ever scheduled per subscription, which preserves
+ * the delivery order of a Bus while different Buses are processed in parallel.
+ *
+ * If the worker queue is full, the subscription stays scheduled and the messages keep piling up in the
+ * mailbox until the BusConsumer engine thread schedules it again.
+ *
+ * If a message is not acknowledged by the BusListeners (for instance the device is offline), the
+ * subscription is parked. Its consumer is closed so that HornetQ puts the message back on the queue,
+ * and it is re-attached when the Bus is restarted, or after the retry interval
+ *
+ * @author openmobster@gmail.com
+ */
+final class BusSubscription implements MessageHandler, Runnable
+{
+	private static Logger log = Logger.getLogger(BusSubscription.class);
+
+	/**
+	 * max. number of messages processed in one go before yielding the worker to other Buses
+	 */
+	private static final int drainBatch = 32;
+
+	private Bus bus;
+	private ClientSession session;
+	private BusConsumer engine;
+
+	private ClientConsumer consumer;
+	private LinkedList<ClientMessage> mailbox;
+	private boolean scheduled;
+	private boolean rejected;
+	private boolean parked;
+	private boolean closed;
+	private long parkedAt;
+
+	BusSubscription(BusConsumer engine, Bus bus, ClientSession session)
+	{
+		this.engine = engine;
+		this.bus = bus;
+		this.session = session;
+		this.mailbox = new LinkedList<ClientMessage>();
+		this.parked = true;
+	}
+
+	Bus getBus()
+	{
+		return this.bus;
+	}
+
+	synchronized boolean isParked()
+	{
+		return this.parked && !this.closed;
+	}
+
+	synchronized long getParkedAt()
+	{
+		return this.parkedAt;
+	}
+
+	synchronized boolean isRejected()
+	{
+		return this.rejected && !this.closed;
+	}
+
+	/**
+	 * The worker pool turned this subscription down. It is left scheduled, so that the MessageHandler
+	 * does not try again for every message
+	 */
+	synchronized void rejected()
+	{
+		this.rejected = true;
+	}
+
+	/**
+	 * @return true if the subscription was turned down, and must be scheduled again by the caller
+	 */
+	synchronized boolean clearRejected()
+	{
+		boolean wasRejected = this.rejected && !this.closed;
+		this.rejected = false;
+		return wasRejected;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	void attach() throws HornetQException
+	{
+		synchronized(this)
+		{
+			if(this.closed || !this.parked)
+			{
+				return;
+			}
+			this.parked = false;
+		}
+
+		ClientConsumer newConsumer = null;
+		synchronized(this.session)
+		{
+			newConsumer = this.session.createConsumer(this.bus.getUri());
+		}
+
+		synchronized(this)
+		{
+			this.consumer = newConsumer;
+		}
+		newConsumer.setMessageHandler(this);
+	}
+
+	void close()
+	{
+		synchronized(this)
+		{
+			this.closed = true;
+			this.mailbox.clear();
+		}
+		this.closeConsumer();
+	}
+
+	private void park()
+	{
+		synchronized(this)
+		{
+			this.parked = true;
+			this.parkedAt = System.currentTimeMillis();
+			this.scheduled = false;
+
+			//not acknowledged...the messages go back on the queue once the consumer is closed
+			this.mailbox.clear();
+		}
+		this.closeConsumer();
+	}
+
+	private void closeConsumer()
+	{
+		ClientConsumer local = null;
+		synchronized(this)
+		{
+			local = this.consumer;
+			this.consumer = null;
+		}
+
+		if(local != null && !local.isClosed())
+		{
+			try
+			{
+				synchronized(this.session)
+				{
+					local.close();
+				}
+			}
+			catch(HornetQException hqe)
+			{
+				log.error(this, hqe);
+			}
+		}
+	}
+	//----MessageHandler implementation------------------------------------------------------------------------
+	public void onMessage(ClientMessage message)
+	{
+		boolean schedule = false;
+		synchronized(this)
+		{
+			if(this.parked || this.closed)
+			{
+				//leave it unacknowledged, it will be redelivered once re-attached
+				return;
+			}
+
+			this.mailbox.add(message);
+			if(!this.scheduled)
+			{
+				this.scheduled = true;
+				schedule = true;
+			}
+		}
+
+		if(schedule)
+		{
+			this.engine.schedule(this);
+		}
+	}
+	//----Drain the mailbox on a worker thread-----------------------------------------------------------------
+	public void run()
+	{
+		for(int i=0; i<drainBatch; i++)
+		{
+			ClientMessage message = null;
+			synchronized(this)
+			{
+				if(this.parked || this.closed || this.mailbox.isEmpty())
+				{
+					this.scheduled = false;
+					return;
+				}
+				message = this.mailbox.removeFirst();
+			}
+
+			boolean acknowledged = this.engine.deliver(this.bus, message);
+			if(!acknowledged)
+			{
+				this.park();
+				return;
+			}
+		}
+
+		//yield to the other Buses...there is more work in the mailbox
+		this.engine.schedule(this);
+	}
+}
@@ -0,0 +1,43 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Moves BusMessages from the senders to the BusListeners of a Bus. The Bus API stays the same
+ * regardless of the transport in use.
+ *
+ * The transport is selected with the System property openmobster.bus.transport
+ *
+ * hornetq - durable HornetQ queue per Bus (default)
+ * inmemory - sharded in-process ring buffers, pending messages do not survive a restart
+ *
+ * @author openmobster@gmail.com
+ */
+interface BusTransport
+{
+	/**
+	 * Sets up the transport for a newly started Bus and starts delivering to it
+	 */
+	public void start(Bus bus);
+
+	public void stop(String uri);
+
+	/**
+	 * Re-delivers the messages that were not acknowledged by the BusListeners of this Bus
+	 */
+	public void resume(String uri);
+
+	public void send(List<BusMessage> messages);
+
+	public long getPendingCount(Collection<String> uris);
+
+	public LatencyHistogram getDeliveryLatency();
+}
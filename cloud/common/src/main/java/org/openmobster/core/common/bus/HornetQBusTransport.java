@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.hornetq.core.client.ClientSession;
+import org.hornetq.core.client.ClientSessionFactory;
+import org.hornetq.core.client.impl.ClientSessionFactoryImpl;
+import org.hornetq.core.config.TransportConfiguration;
+import org.hornetq.core.remoting.impl.invm.InVMConnectorFactory;
+import org.hornetq.core.exception.HornetQException;
+import org.hornetq.utils.SimpleString;
+
+import org.openmobster.core.common.errors.ErrorHandler;
+import org.openmobster.core.common.errors.SystemException;
+
+/**
+ * The default BusTransport. Each Bus is backed by a durable HornetQ queue, so pending messages survive
+ * a restart of the server
+ *
+ * @author openmobster@gmail.com
+ */
+final class HornetQBusTransport implements BusTransport
+{
+	private static Logger log = Logger.getLogger(HornetQBusTransport.class);
+
+	private ClientSessionFactory sessionFactory;
+	private BusProducerPool producerPool;
+
+	HornetQBusTransport()
+	{
+		Thread t = new Thread(BusConsumer.getInstance(), "bus-consumer");
+		t.setDaemon(true);
+		t.start();
+	}
+
+	public void start(Bus bus)
+	{
+		ClientSession coreSession = null;
+		try
+		{
+			ClientSessionFactory sessionFactory = this.getSessionFactory();
+
+			//Start a hornetq associated with this Bus instance
+			// Create a core queue
+	        coreSession = sessionFactory.createSession(false, false, false);
+
+	        //Create a Queue
+	        if(!coreSession.queueQuery(new SimpleString(bus.getUri())).isExists())
+	        {
+	        	coreSession.createQueue(bus.getUri(), bus.getUri(), true); //a durable queue
+	        }
+
+	        coreSession.close();
+
+	        //start consuming
+	        BusConsumer.getInstance().subscribe(sessionFactory, bus);
+		}
+		catch(HornetQException hqe)
+		{
+			log.error(this, hqe);
+			ErrorHandler.getInstance().handle(hqe);
+			throw new SystemException(hqe.getMessage(),hqe);
+		}
+		finally
+		{
+			if(coreSession != null && !coreSession.isClosed())
+			{
+				try{coreSession.close();}
+				catch(HornetQException hqe)
+				{
+					ErrorHandler.getInstance().handle(hqe);
+					throw new SystemException(hqe.getMessage(),hqe);
+				}
+			}
+		}
+	}
+
+	public void stop(String uri)
+	{
+		BusConsumer.getInstance().unsubscribe(uri);
+	}
+
+	public void resume(String uri)
+	{
+		BusConsumer.getInstance().resume(uri);
+	}
+
+	public void send(List<BusMessage> messages)
+	{
+		try
+		{
+			this.getSessionFactory();
+			this.producerPool.send(messages);
+		}
+		catch(HornetQException hqe)
+		{
+			ErrorHandler.getInstance().handle(hqe);
+			throw new SystemException(hqe.getMessage(),hqe);
+		}
+	}
+
+	public long getPendingCount(Collection<String> uris)
+	{
+		ClientSession coreSession = null;
+		long count = 0;
+		try
+		{
+			coreSession = this.getSessionFactory().createSession(false, false, false);
+			for(String uri:uris)
+			{
+				count += coreSession.queueQuery(new SimpleString(uri)).getMessageCount();
+			}
+			return count;
+		}
+		catch(HornetQException hqe)
+		{
+			ErrorHandler.getInstance().handle(hqe);
+			throw new SystemException(hqe.getMessage(),hqe);
+		}
+		finally
+		{
+			if(coreSession != null)
+			{
+				try
+				{
+					coreSession.close();
+				}
+				catch(HornetQException e)
+				{
+					log.error(this, e);
+				}
+			}
+		}
+	}
+
+	public LatencyHistogram getDeliveryLatency()
+	{
+		return BusConsumer.getInstance().getDeliveryLatency();
+	}
+
+	private synchronized ClientSessionFactory getSessionFactory()
+	{
+		if(this.sessionFactory == null)
+		{
+			this.sessionFactory = new ClientSessionFactoryImpl (new TransportConfiguration(
+			InVMConnectorFactory.class.getName()));
+
+			this.sessionFactory.setMinLargeMessageSize(1000000000); //a gig
+
+			//consumer sessions are long-lived, acknowledgements must not sit in a client side batch
+			this.sessionFactory.setAckBatchSize(0);
+
+			this.producerPool = new BusProducerPool(this.sessionFactory);
+		}
+		return this.sessionFactory;
+	}
+}
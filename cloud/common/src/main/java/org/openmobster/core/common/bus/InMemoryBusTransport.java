@@ -0,0 +1,368 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.openmobster.core.common.errors.SystemException;
+
+/**
+ * In-process BusTransport for deployments where pending push notifications do not need to survive a
+ * restart.
+ *
+ * Messages are routed by Bus uri (the device id for comet sessions) into one of N shards. Each shard is a
+ * bounded ring buffer drained by its own dispatcher thread, so messages of a Bus are always delivered in
+ * order and a slow Bus only holds up the Buses of its own shard. Senders block when a shard is full, except
+ * the dispatcher of the shard itself (a BusListener sending from within its delivery), whose messages go
+ * into an overflow list that is moved into the ring buffer as it drains.
+ *
+ * A message that is not acknowledged parks its Bus, in the dispatcher, until the Bus is resumed or the
+ * retry interval expires. Messages arriving for a parked Bus queue up behind the parked one. Unlike the
+ * HornetQ queue, the parked messages are held in memory, so a Bus keeps at most maxParked of them and
+ * drops the oldest beyond that.
+ *
+ * Tuning (System properties):
+ *
+ * openmobster.bus.inmemory.shards - number of shards/dispatcher threads (default 8)
+ * openmobster.bus.inmemory.capacity - ring buffer size of a shard (default 16384)
+ * openmobster.bus.inmemory.maxParked - messages held for a parked Bus (default 1000)
+ * openmobster.bus.consumer.retryInterval - milliseconds before a parked Bus is retried (default 30000)
+ *
+ * @author openmobster@gmail.com
+ */
+final class InMemoryBusTransport implements BusTransport
+{
+	private static Logger log = Logger.getLogger(InMemoryBusTransport.class);
+
+	private Shard[] shards;
+	private Thread[] dispatchers;
+	private Map<String,Bus> buses;
+	private long retryInterval;
+	private int maxParked;
+	private LatencyHistogram deliveryLatency;
+	private volatile boolean isShutdown;
+
+	InMemoryBusTransport()
+	{
+		int shardCount = Integer.getInteger("openmobster.bus.inmemory.shards", 8).intValue();
+		int capacity = Integer.getInteger("openmobster.bus.inmemory.capacity", 16384).intValue();
+		this.retryInterval = Long.getLong("openmobster.bus.consumer.retryInterval", 30000).longValue();
+		this.maxParked = Integer.getInteger("openmobster.bus.inmemory.maxParked", 1000).intValue();
+
+		this.buses = new ConcurrentHashMap<String,Bus>();
+		this.deliveryLatency = new LatencyHistogram("bus-delivery-latency");
+
+		this.shards = new Shard[shardCount];
+		this.dispatchers = new Thread[shardCount];
+		for(int i=0; i<shardCount; i++)
+		{
+			this.shards[i] = new Shard(capacity);
+			this.dispatchers[i] = new Thread(this.shards[i], "bus-shard-"+i);
+			this.shards[i].dispatcher = this.dispatchers[i];
+			this.dispatchers[i].setDaemon(true);
+			this.dispatchers[i].start();
+		}
+	}
+
+	/**
+	 * Stops the dispatcher threads. Messages still pending are dropped
+	 */
+	void shutdown()
+	{
+		this.isShutdown = true;
+		for(Thread dispatcher:this.dispatchers)
+		{
+			dispatcher.interrupt();
+		}
+	}
+
+	public void start(Bus bus)
+	{
+		this.buses.put(bus.getUri(), bus);
+	}
+
+	public void stop(String uri)
+	{
+		this.buses.remove(uri);
+		this.shardOf(uri).enqueue(new Envelope(Envelope.stop, uri, null));
+	}
+
+	public void resume(String uri)
+	{
+		this.shardOf(uri).enqueue(new Envelope(Envelope.resume, uri, null));
+	}
+
+	public void send(List<BusMessage> messages)
+	{
+		for(BusMessage message:messages)
+		{
+			String uri = message.getBusUri();
+			this.shardOf(uri).enqueue(new Envelope(Envelope.deliver, uri, message));
+		}
+	}
+
+	public long getPendingCount(Collection<String> uris)
+	{
+		long count = 0;
+		for(Shard shard:this.shards)
+		{
+			count += shard.pending.get();
+		}
+		return count;
+	}
+
+	public LatencyHistogram getDeliveryLatency()
+	{
+		return this.deliveryLatency;
+	}
+
+	private Shard shardOf(String uri)
+	{
+		return this.shards[Math.abs(uri.hashCode() % this.shards.length)];
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private static class Envelope
+	{
+		private static final int deliver = 0;
+		private static final int resume = 1;
+		private static final int stop = 2;
+
+		private int type;
+		private String uri;
+		private BusMessage message;
+		private long sentAt;
+
+		private Envelope(int type, String uri, BusMessage message)
+		{
+			this.type = type;
+			this.uri = uri;
+			this.message = message;
+			this.sentAt = System.currentTimeMillis();
+		}
+	}
+
+	private class Shard implements Runnable
+	{
+		private BlockingQueue<Envelope> ring;
+		private AtomicLong pending;
+		private Thread dispatcher;
+
+		//only touched by the dispatcher thread
+		private LinkedList<Envelope> overflow;
+		private Map<String,LinkedList<Envelope>> parked;
+		private Map<String,Long> parkedAt;
+		private long nextRetry = Long.MAX_VALUE;
+
+		private Shard(int capacity)
+		{
+			this.ring = new ArrayBlockingQueue<Envelope>(capacity);
+			this.pending = new AtomicLong(0);
+			this.overflow = new LinkedList<Envelope>();
+			this.parked = new HashMap<String,LinkedList<Envelope>>();
+			this.parkedAt = new HashMap<String,Long>();
+		}
+
+		private void enqueue(Envelope envelope)
+		{
+			try
+			{
+				if(envelope.type == Envelope.deliver)
+				{
+					this.pending.incrementAndGet();
+				}
+
+				if(Thread.currentThread() == this.dispatcher)
+				{
+					//the dispatcher would wait on itself for room, behind its own overflow to keep the order
+					if(!this.overflow.isEmpty() || !this.ring.offer(envelope))
+					{
+						this.overflow.add(envelope);
+					}
+					return;
+				}
+				this.ring.put(envelope);
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				throw new SystemException(ie.getMessage(), ie);
+			}
+		}
+
+		public void run()
+		{
+			while(!InMemoryBusTransport.this.isShutdown)
+			{
+				try
+				{
+					//checked on every pass, traffic of the other Buses of the shard must not hold up the retries
+					long now = System.currentTimeMillis();
+					if(now >= this.nextRetry)
+					{
+						this.retryParked(now);
+					}
+
+					//room was made by the previous pass
+					while(!this.overflow.isEmpty() && this.ring.offer(this.overflow.getFirst()))
+					{
+						this.overflow.removeFirst();
+					}
+
+					long timeout = InMemoryBusTransport.this.retryInterval;
+					if(this.nextRetry != Long.MAX_VALUE)
+					{
+						timeout = Math.max(1, this.nextRetry - now);
+					}
+
+					Envelope envelope = this.ring.poll(timeout, TimeUnit.MILLISECONDS);
+					if(envelope == null)
+					{
+						continue;
+					}
+
+					switch(envelope.type)
+					{
+						case Envelope.deliver:
+							LinkedList<Envelope> waiting = this.parked.get(envelope.uri);
+							if(waiting != null)
+							{
+								//keep the order...goes behind the parked messages
+								waiting.add(envelope);
+								if(waiting.size() > InMemoryBusTransport.this.maxParked)
+								{
+									waiting.removeFirst();
+									this.pending.decrementAndGet();
+									log.warn("Parked Bus: "+envelope.uri+" is full, dropped its oldest message");
+								}
+							}
+							else if(!this.deliver(envelope))
+							{
+								this.park(envelope);
+							}
+						break;
+
+						case Envelope.resume:
+							this.drainParked(envelope.uri);
+						break;
+
+						case Envelope.stop:
+							LinkedList<Envelope> dropped = this.parked.remove(envelope.uri);
+							this.parkedAt.remove(envelope.uri);
+							if(dropped != null)
+							{
+								this.pending.addAndGet(-dropped.size());
+							}
+						break;
+					}
+				}
+				catch(InterruptedException ie)
+				{
+					return;
+				}
+				catch(Throwable t)
+				{
+					//something went wrong....but no need to abort the dispatcher
+					log.error(this, t);
+				}
+			}
+		}
+
+		private boolean deliver(Envelope envelope)
+		{
+			Bus bus = InMemoryBusTransport.this.buses.get(envelope.uri);
+			if(bus == null)
+			{
+				//Bus was stopped
+				this.pending.decrementAndGet();
+				return true;
+			}
+
+			boolean acknowledged = Bus.dispatch(bus, envelope.message);
+			if(acknowledged)
+			{
+				InMemoryBusTransport.this.deliveryLatency.record(System.currentTimeMillis() - envelope.sentAt);
+				this.pending.decrementAndGet();
+			}
+			return acknowledged;
+		}
+
+		private void park(Envelope envelope)
+		{
+			LinkedList<Envelope> waiting = new LinkedList<Envelope>();
+			waiting.add(envelope);
+			this.park(envelope.uri, waiting);
+		}
+
+		private void park(String uri, LinkedList<Envelope> waiting)
+		{
+			long now = System.currentTimeMillis();
+			this.parked.put(uri, waiting);
+			this.parkedAt.put(uri, new Long(now));
+			this.nextRetry = Math.min(this.nextRetry, now + InMemoryBusTransport.this.retryInterval);
+		}
+
+		private void drainParked(String uri)
+		{
+			LinkedList<Envelope> waiting = this.parked.remove(uri);
+			this.parkedAt.remove(uri);
+			if(waiting == null)
+			{
+				return;
+			}
+
+			while(!waiting.isEmpty())
+			{
+				Envelope envelope = waiting.getFirst();
+				if(!this.deliver(envelope))
+				{
+					//still not acknowledged
+					this.park(uri, waiting);
+					return;
+				}
+				waiting.removeFirst();
+			}
+		}
+
+		private void retryParked(long now)
+		{
+			List<String> expired = new LinkedList<String>();
+			for(Iterator<Map.Entry<String,Long>> itr=this.parkedAt.entrySet().iterator(); itr.hasNext();)
+			{
+				Map.Entry<String,Long> entry = itr.next();
+				if((now - entry.getValue().longValue()) >= InMemoryBusTransport.this.retryInterval)
+				{
+					expired.add(entry.getKey());
+				}
+			}
+
+			for(String uri:expired)
+			{
+				this.drainParked(uri);
+			}
+
+			//the Buses parked again by the retry are already in there
+			this.nextRetry = Long.MAX_VALUE;
+			for(Long parkedAt:this.parkedAt.values())
+			{
+				this.nextRetry = Math.min(this.nextRetry, parkedAt.longValue() + InMemoryBusTransport.this.retryInterval);
+			}
+		}
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.common.bus;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A lock-free latency histogram. Values (in milliseconds) are recorded into log-linear buckets
+ * with 16 sub-buckets per power of two, which keeps the reported percentiles within ~6% of the
+ * real value without keeping the individual samples around
+ *
+ * @author openmobster@gmail.com
+ */
+public final class LatencyHistogram
+{
+	private static final int subBuckets = 16;
+	private static final int subBucketBits = 4;
+	private static final int bucketCount = subBuckets + (64 - subBucketBits) * subBuckets;
+
+	private String name;
+	private AtomicLongArray buckets;
+	private AtomicLong count;
+	private AtomicLong max;
+
+	public LatencyHistogram(String name)
+	{
+		this.name = name;
+		this.buckets = new AtomicLongArray(bucketCount);
+		this.count = new AtomicLong(0);
+		this.max = new AtomicLong(0);
+	}
+
+	public String getName()
+	{
+		return this.name;
+	}
+
+	public void record(long value)
+	{
+		if(value < 0)
+		{
+			value = 0;
+		}
+
+		this.buckets.incrementAndGet(index(value));
+		this.count.incrementAndGet();
+
+		long currentMax = this.max.get();
+		while(value > currentMax && !this.max.compareAndSet(currentMax, value))
+		{
+			currentMax = this.max.get();
+		}
+	}
+
+	public long getCount()
+	{
+		return this.count.get();
+	}
+
+	public long getMax()
+	{
+		return this.max.get();
+	}
+
+	/**
+	 * Returns the upper bound of the bucket that contains the specified percentile
+	 *
+	 * @param percentile a value between 0 and 100
+	 * @return the latency at this percentile, 0 if nothing has been recorded yet
+	 */
+	public long getPercentile(double percentile)
+	{
+		long total = this.count.get();
+		if(total == 0)
+		{
+			return 0;
+		}
+
+		long threshold = (long)Math.ceil((percentile / 100.0d) * total);
+		if(threshold < 1)
+		{
+			threshold = 1;
+		}
+
+		long seen = 0;
+		for(int i=0; i<bucketCount; i++)
+		{
+			seen += this.buckets.get(i);
+			if(seen >= threshold)
+			{
+				return Math.min(upperBound(i), this.max.get());
+			}
+		}
+		return this.max.get();
+	}
+
+	public void reset()
+	{
+		for(int i=0; i<bucketCount; i++)
+		{
+			this.buckets.set(i, 0);
+		}
+		this.count.set(0);
+		this.max.set(0);
+	}
+
+	public String toString()
+	{
+		StringBuilder buffer = new StringBuilder();
+		buffer.append(this.name+": count="+this.getCount());
+		buffer.append(", p50="+this.getPercentile(50)+"ms");
+		buffer.append(", p90="+this.getPercentile(90)+"ms");
+		buffer.append(", p99="+this.getPercentile(99)+"ms");
+		buffer.append(", p99.9="+this.getPercentile(99.9)+"ms");
+		buffer.append(", max="+this.getMax()+"ms");
+		return buffer.toString();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private static int index(long value)
+	{
+		if(value < subBuckets)
+		{
+			return (int)value;
+		}
+
+		int exponent = 63 - Long.numberOfLeadingZeros(value);
+		int shift = exponent - subBucketBits;
+		int mantissa = (int)((value >> shift) & (subBuckets - 1));
+
+		return subBuckets + (shift * subBuckets) + mantissa;
+	}
+
+	private static long upperBound(int index)
+	{
+		if(index < subBuckets)
+		{
+			return index;
+		}
+
+		int shift = (index - subBuckets) / subBuckets;
+		int mantissa = (index - subBuckets) % subBuckets;
+
+		return (((long)(subBuckets + mantissa + 1)) << shift) - 1;
+	}
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.common.bus;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.XMLUtilities;
+
+/**
+ * Compares the XStream XML encoding of a BusMessage with the BusMessageCodec.
+ *
+ * @author openmobster@gmail.com
+ */
+public class PerfBusMessageCodec extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfBusMessageCodec.class);
+
+	private static final int warmup = 20000;
+	private static final int iterations = 100000;
+
+	private BusMessage busMessage;
+
+	public void setUp() throws Exception
+	{
+		//a typical sync push notification
+		this.busMessage = new BusMessage();
+		this.busMessage.setBusUri("IMEI:4930051");
+		this.busMessage.setSenderUri("twitter_channel");
+		this.busMessage.setAttribute("command", "command=sync|service=twitter_channel|silent=true$");
+		this.busMessage.setAttribute("notification-type", "channel");
+		this.busMessage.setAttribute("os", "android");
+	}
+
+	public void testXmlCodec() throws Exception
+	{
+		for(int i=0; i<warmup; i++)
+		{
+			XMLUtilities.unmarshal(XMLUtilities.marshal(this.busMessage));
+		}
+
+		int size = XMLUtilities.marshal(this.busMessage).getBytes("UTF-8").length;
+
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			XMLUtilities.unmarshal(XMLUtilities.marshal(this.busMessage));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		this.report("xml", elapsed, size);
+	}
+
+	public void testBinaryCodec() throws Exception
+	{
+		for(int i=0; i<warmup; i++)
+		{
+			BusMessageCodec.decode(BusMessageCodec.encode(this.busMessage));
+		}
+
+		int size = BusMessageCodec.encode(this.busMessage).length;
+
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			BusMessageCodec.decode(BusMessageCodec.encode(this.busMessage));
+		}
+		long elapsed = System.nanoTime() - start;
+
+		this.report("binary", elapsed, size);
+	}
+
+	private void report(String codec, long elapsedNanos, int size)
+	{
+		log.info("-------------------------------------------------------------");
+		log.info("Codec: "+codec);
+		log.info("Encoded Size: "+size+" bytes");
+		log.info("Encode+Decode: "+(elapsedNanos/iterations)+" ns/op");
+		log.info("-------------------------------------------------------------");
+	}
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.common.bus;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.log4j.Logger;
+import junit.framework.TestCase;
+
+import org.hornetq.core.client.ClientConsumer;
+import org.hornetq.core.client.ClientMessage;
+import org.hornetq.core.client.ClientSession;
+import org.hornetq.core.client.ClientSessionFactory;
+import org.hornetq.core.client.MessageHandler;
+
+import org.openmobster.core.common.ServiceManager;
+import org.openmobster.core.common.XMLUtilities;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestBusConsumer extends TestCase
+{
+	private static Logger log = Logger.getLogger(TestBusConsumer.class);
+
+	private Map<String,MessageHandler> handlers = new ConcurrentHashMap<String,MessageHandler>();
+
+	public void setUp() throws Exception
+	{
+		ServiceManager.bootstrap();
+	}
+
+	public void tearDown() throws Exception
+	{
+		ServiceManager.shutdown();
+	}
+
+	public void testOrderedDelivery() throws Exception
+	{
+		String uri = "/test/consumer/ordered";
+		Bus.startBus(uri);
+
+		RecordingListener listener = new RecordingListener(true);
+		Bus.addBusListener(uri, listener);
+
+		int messages = 50;
+		for(int i=0; i<messages; i++)
+		{
+			BusMessage busMessage = new BusMessage();
+			busMessage.setBusUri(uri);
+			busMessage.setSenderUri("testOrderedDelivery");
+			busMessage.setAttribute("sequence", ""+i);
+			Bus.sendMessage(busMessage);
+		}
+
+		List<String> received = listener.waitFor(messages, 10000);
+		assertEquals(messages, received.size());
+		for(int i=0; i<messages; i++)
+		{
+			assertEquals(""+i, received.get(i));
+		}
+
+		LatencyHistogram latency = BusConsumer.getInstance().getDeliveryLatency();
+		log.info(latency);
+		assertTrue(latency.getCount() >= messages);
+
+		Bus.stopBus(uri);
+	}
+
+	public void testBatchSend() throws Exception
+	{
+		String first = "/test/consumer/batch/1";
+		String second = "/test/consumer/batch/2";
+		Bus.startBus(first);
+		Bus.startBus(second);
+
+		RecordingListener firstListener = new RecordingListener(true);
+		RecordingListener secondListener = new RecordingListener(true);
+		Bus.addBusListener(first, firstListener);
+		Bus.addBusListener(second, secondListener);
+
+		List<BusMessage> batch = new ArrayList<BusMessage>();
+		for(int i=0; i<10; i++)
+		{
+			BusMessage busMessage = new BusMessage();
+			busMessage.setBusUri(i%2 == 0 ? first : second);
+			busMessage.setSenderUri("testBatchSend");
+			busMessage.setAttribute("sequence", ""+i);
+			batch.add(busMessage);
+		}
+
+		//not active...must be skipped
+		BusMessage inactive = new BusMessage();
+		inactive.setBusUri("/test/consumer/batch/inactive");
+		inactive.setSenderUri("testBatchSend");
+		batch.add(inactive);
+
+		Bus.sendMessages(batch);
+
+		List<String> firstReceived = firstListener.waitFor(5, 10000);
+		List<String> secondReceived = secondListener.waitFor(5, 10000);
+		assertEquals(5, firstReceived.size());
+		assertEquals(5, secondReceived.size());
+		assertEquals("0", firstReceived.get(0));
+		assertEquals("1", secondReceived.get(0));
+
+		Bus.stopBus(first);
+		Bus.stopBus(second);
+	}
+
+	public void testRedeliveryOnRestart() throws Exception
+	{
+		String uri = "/test/consumer/redelivery";
+		Bus.startBus(uri);
+
+		//does not acknowledge...like an inactive comet session
+		RecordingListener offline = new RecordingListener(false);
+		Bus.addBusListener(uri, offline);
+
+		BusMessage busMessage = new BusMessage();
+		busMessage.setBusUri(uri);
+		busMessage.setSenderUri("testRedeliveryOnRestart");
+		busMessage.setAttribute("sequence", "0");
+		Bus.sendMessage(busMessage);
+
+		assertEquals(1, offline.waitFor(1, 10000).size());
+		Bus.removeBusListener(uri, offline);
+
+		//comes back online
+		RecordingListener online = new RecordingListener(true);
+		Bus.addBusListener(uri, online);
+		Bus.restartBus(uri);
+
+		List<String> received = online.waitFor(1, 10000);
+		assertEquals(1, received.size());
+		assertEquals("0", received.get(0));
+
+		Bus.stopBus(uri);
+	}
+
+	public void testWorkerQueueFull() throws Exception
+	{
+		//one worker and room for one waiting Bus, the engine thread retries every 100 milliseconds
+		BusConsumer engine = new BusConsumer(1, 1, 1, 100);
+		Thread retry = new Thread(engine, "bus-consumer-retry");
+		retry.start();
+
+		String[] uris = new String[]{"/test/consumer/full/busy", "/test/consumer/full/waiting", 
+		"/test/consumer/full/rejected"};
+		RecordingListener[] listeners = new RecordingListener[uris.length];
+		ClientSessionFactory sessionFactory = (ClientSessionFactory)this.stub(ClientSessionFactory.class, null);
+		for(int i=0; i<uris.length; i++)
+		{
+			Bus.startBus(uris[i]);
+			listeners[i] = new RecordingListener(true);
+			Bus.addBusListener(uris[i], listeners[i]);
+			engine.subscribe(sessionFactory, Bus.getActiveBuses().get(uris[i]));
+		}
+		listeners[0].release = new CountDownLatch(1);
+
+		try
+		{
+			//holds the only worker
+			this.handlers.get(uris[0]).onMessage(this.message(uris[0], "0"));
+			assertEquals(1, listeners[0].waitFor(1, 10000).size());
+
+			//takes the only room in the queue
+			this.handlers.get(uris[1]).onMessage(this.message(uris[1], "0"));
+
+			//turned down, not run on the delivery thread. The next message piles up in its mailbox
+			BusSubscription rejected = (BusSubscription)this.handlers.get(uris[2]);
+			rejected.onMessage(this.message(uris[2], "0"));
+			rejected.onMessage(this.message(uris[2], "1"));
+			assertTrue(rejected.isRejected());
+			assertTrue(listeners[2].waitFor(1, 0).isEmpty());
+
+			listeners[0].release.countDown();
+
+			assertEquals(1, listeners[1].waitFor(1, 10000).size());
+			List<String> received = listeners[2].waitFor(2, 10000);
+			assertEquals(2, received.size());
+			assertEquals("0", received.get(0));
+			assertEquals("1", received.get(1));
+			assertFalse(rejected.isRejected());
+
+			for(RecordingListener listener: listeners)
+			{
+				for(String thread: listener.threads)
+				{
+					assertTrue(thread, thread.startsWith("bus-consumer-") && !thread.equals(retry.getName()));
+				}
+			}
+		}
+		finally
+		{
+			listeners[0].release.countDown();
+			engine.stop();
+			retry.join(5000);
+			for(String uri: uris)
+			{
+				Bus.stopBus(uri);
+			}
+		}
+	}
+	//------------------------------------------------------------------------------------------------------------
+	private ClientMessage message(String uri, String sequence)
+	{
+		BusMessage busMessage = new BusMessage();
+		busMessage.setBusUri(uri);
+		busMessage.setSenderUri("TestBusConsumer");
+		busMessage.setAttribute("sequence", sequence);
+
+		//legacy XML encoding, read from the "message" property
+		return (ClientMessage)this.stub(ClientMessage.class, XMLUtilities.marshal(busMessage));
+	}
+
+	/**
+	 * Stands in for the HornetQ client objects. The MessageHandler of each consumer is kept, so that
+	 * the test pushes the messages in place of HornetQ
+	 *
+	 * @param value the "message" property of a ClientMessage, the queue of a ClientConsumer
+	 */
+	private Object stub(Class<?> type, final String value)
+	{
+		return Proxy.newProxyInstance(TestBusConsumer.class.getClassLoader(), new Class[]{type}, 
+		new InvocationHandler()
+		{
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+			{
+				if(method.getDeclaringClass() == Object.class)
+				{
+					return method.invoke(this, args);
+				}
+
+				String name = method.getName();
+				Class<?> returnType = method.getReturnType();
+				if(name.equals("getProperty"))
+				{
+					return "message".equals(String.valueOf(args[0])) ? value : null;
+				}
+				if(name.equals("setMessageHandler"))
+				{
+					TestBusConsumer.this.handlers.put(value, (MessageHandler)args[0]);
+					return null;
+				}
+				if(name.equals("createConsumer"))
+				{
+					return TestBusConsumer.this.stub(ClientConsumer.class, String.valueOf(args[0]));
+				}
+				if(name.equals("createSession"))
+				{
+					return TestBusConsumer.this.stub(ClientSession.class, null);
+				}
+				if(returnType.isPrimitive() && returnType != void.class)
+				{
+					//zero or false
+					return Array.get(Array.newInstance(returnType, 1), 0);
+				}
+				return null;
+			}
+		});
+	}
+
+	private static class RecordingListener implements BusListener
+	{
+		private boolean acknowledge;
+		private CountDownLatch release;
+		private List<String> received = new ArrayList<String>();
+		private List<String> threads = new ArrayList<String>();
+
+		private RecordingListener(boolean acknowledge)
+		{
+			this.acknowledge = acknowledge;
+		}
+
+		public void messageIncoming(BusMessage busMessage)
+		{
+			synchronized(this)
+			{
+				this.received.add((String)busMessage.getAttribute("sequence"));
+				this.threads.add(Thread.currentThread().getName());
+				this.notifyAll();
+			}
+
+			if(this.release != null)
+			{
+				try
+				{
+					this.release.await();
+				}
+				catch(InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+
+			if(this.acknowledge)
+			{
+				busMessage.acknowledge();
+			}
+		}
+
+		private synchronized List<String> waitFor(int count, long timeout) throws Exception
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+			while(this.received.size() < count)
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+				{
+					break;
+				}
+				this.wait(remaining);
+			}
+			return new ArrayList<String>(this.received);
+		}
+	}
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.common.bus;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestBusMessageCodec extends TestCase
+{
+	public void testRoundTrip() throws Exception
+	{
+		Map<String,String> extras = new HashMap<String,String>();
+		extras.put("key", "value");
+		extras.put("unicode", "\u00e9\u4e2d");
+
+		List<String> channels = new ArrayList<String>();
+		channels.add("channel1");
+		channels.add(null);
+
+		Date now = new Date();
+
+		BusMessage busMessage = new BusMessage();
+		busMessage.setBusUri("IMEI:12345");
+		busMessage.setSenderUri("push");
+		busMessage.setAttribute("command", "command=sync|service=twitter_channel");
+		busMessage.setAttribute("count", new Integer(7));
+		busMessage.setAttribute("timestamp", new Long(1234567890123L));
+		busMessage.setAttribute("silent", Boolean.TRUE);
+		busMessage.setAttribute("bytes", new byte[]{1,2,3});
+		busMessage.setAttribute("extras", extras);
+		busMessage.setAttribute("channels", channels);
+		busMessage.setAttribute("date", now);
+		busMessage.setAttribute("nothing", null);
+		busMessage.setAttribute("hornetq-message", new Object());
+
+		BusMessage decoded = BusMessageCodec.decode(BusMessageCodec.encode(busMessage));
+
+		assertEquals("IMEI:12345", decoded.getBusUri());
+		assertEquals("push", decoded.getSenderUri());
+		assertEquals("command=sync|service=twitter_channel", decoded.getAttribute("command"));
+		assertEquals(new Integer(7), decoded.getAttribute("count"));
+		assertEquals(new Long(1234567890123L), decoded.getAttribute("timestamp"));
+		assertEquals(Boolean.TRUE, decoded.getAttribute("silent"));
+		assertEquals(3, ((byte[])decoded.getAttribute("bytes")).length);
+		assertEquals(extras, decoded.getAttribute("extras"));
+		assertEquals(channels, decoded.getAttribute("channels"));
+
+		//not natively supported...goes through the XML fallback
+		assertEquals(now, decoded.getAttribute("date"));
+
+		assertNull(decoded.getAttribute("nothing"));
+		assertNull(decoded.getAttribute("hornetq-message"));
+	}
+
+	public void testRejectsUnknownPayload() throws Exception
+	{
+		try
+		{
+			BusMessageCodec.decode("<org.openmobster.core.common.bus.BusMessage/>".getBytes());
+			fail("Must not decode XML");
+		}
+		catch(IllegalStateException ise)
+		{
+			//expected
+		}
+	}
+}
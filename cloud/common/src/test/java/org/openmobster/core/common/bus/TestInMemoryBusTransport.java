@@ -0,0 +1,260 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.common.bus;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.ServiceManager;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestInMemoryBusTransport extends TestCase
+{
+	private InMemoryBusTransport transport;
+
+	public void setUp() throws Exception
+	{
+		ServiceManager.bootstrap();
+		this.transport = new InMemoryBusTransport();
+	}
+
+	public void tearDown() throws Exception
+	{
+		this.transport.shutdown();
+		ServiceManager.shutdown();
+	}
+
+	public void testOrderedDelivery() throws Exception
+	{
+		String uri = "/test/inmemory/ordered";
+		Bus bus = this.startBus(uri);
+
+		RecordingListener listener = new RecordingListener();
+		bus.getBusListeners().add(listener);
+
+		int messages = 100;
+		this.transport.send(this.messages(uri, 0, messages));
+
+		List<String> received = listener.waitFor(messages, 10000);
+		assertEquals(messages, received.size());
+		for(int i=0; i<messages; i++)
+		{
+			assertEquals(""+i, received.get(i));
+		}
+		assertEquals(0, this.waitForPending(0, 5000));
+		assertTrue(this.transport.getDeliveryLatency().getCount() >= messages);
+
+		Bus.stopBus(uri);
+	}
+
+	public void testParkAndResume() throws Exception
+	{
+		String uri = "/test/inmemory/park";
+		Bus bus = this.startBus(uri);
+
+		RecordingListener listener = new RecordingListener();
+		listener.acknowledge = false;
+		bus.getBusListeners().add(listener);
+
+		this.transport.send(this.messages(uri, 0, 1));
+		assertEquals(1, listener.waitFor(1, 10000).size());
+
+		//must queue up behind the parked message
+		this.transport.send(this.messages(uri, 1, 2));
+		Thread.sleep(500);
+		assertEquals(1, listener.waitFor(1, 0).size());
+		assertEquals(3, this.transport.getPendingCount(Bus.getActiveBuses().keySet()));
+
+		//comes back online
+		listener.acknowledge = true;
+		this.transport.resume(uri);
+
+		List<String> received = listener.waitFor(4, 10000);
+		assertEquals(4, received.size());
+		assertEquals("0", received.get(0));
+		assertEquals("0", received.get(1));
+		assertEquals("1", received.get(2));
+		assertEquals("2", received.get(3));
+
+		//the listener sees the last message before the dispatcher counts its acknowledgement
+		assertEquals(0, this.waitForPending(0, 5000));
+
+		Bus.stopBus(uri);
+	}
+	public void testRetryUnderTraffic() throws Exception
+	{
+		//one shard, so that both Buses share the dispatcher
+		this.transport.shutdown();
+		System.setProperty("openmobster.bus.inmemory.shards", "1");
+		System.setProperty("openmobster.bus.consumer.retryInterval", "200");
+		try
+		{
+			this.transport = new InMemoryBusTransport();
+		}
+		finally
+		{
+			System.clearProperty("openmobster.bus.inmemory.shards");
+			System.clearProperty("openmobster.bus.consumer.retryInterval");
+		}
+
+		String parkedUri = "/test/inmemory/retry/parked";
+		RecordingListener parked = new RecordingListener();
+		parked.acknowledge = false;
+		this.startBus(parkedUri).getBusListeners().add(parked);
+
+		String busyUri = "/test/inmemory/retry/busy";
+		RecordingListener busy = new RecordingListener();
+		this.startBus(busyUri).getBusListeners().add(busy);
+
+		this.transport.send(this.messages(parkedUri, 0, 1));
+		assertEquals(1, parked.waitFor(1, 10000).size());
+		parked.acknowledge = true;
+
+		//keeps the shard busy, the parked Bus must be retried without a resume while the traffic goes on
+		int sent = 0;
+		while(sent < 80 && parked.waitFor(2, 0).size() < 2)
+		{
+			this.transport.send(this.messages(busyUri, sent++, 1));
+			Thread.sleep(25);
+		}
+
+		List<String> received = parked.waitFor(2, 0);
+		assertEquals(2, received.size());
+		assertEquals("0", received.get(1));
+		assertTrue(sent < 80);
+		assertEquals(sent, busy.waitFor(sent, 5000).size());
+
+		Bus.stopBus(parkedUri);
+		Bus.stopBus(busyUri);
+	}
+
+	public void testSendFromListenerAtCapacity() throws Exception
+	{
+		//one small shard, so that the listener sends to its own, full, shard
+		this.transport.shutdown();
+		System.setProperty("openmobster.bus.inmemory.shards", "1");
+		System.setProperty("openmobster.bus.inmemory.capacity", "4");
+		try
+		{
+			this.transport = new InMemoryBusTransport();
+		}
+		finally
+		{
+			System.clearProperty("openmobster.bus.inmemory.shards");
+			System.clearProperty("openmobster.bus.inmemory.capacity");
+		}
+
+		final String targetUri = "/test/inmemory/capacity/target";
+		RecordingListener target = new RecordingListener();
+		this.startBus(targetUri).getBusListeners().add(target);
+
+		final int messages = 20;
+		String relayUri = "/test/inmemory/capacity/relay";
+		RecordingListener relay = new RecordingListener()
+		{
+			public void messageIncoming(BusMessage busMessage)
+			{
+				//runs on the dispatcher of the shard
+				TestInMemoryBusTransport.this.transport.send(TestInMemoryBusTransport.this.messages(targetUri, 0, messages));
+				super.messageIncoming(busMessage);
+			}
+		};
+		this.startBus(relayUri).getBusListeners().add(relay);
+
+		this.transport.send(this.messages(relayUri, 0, 1));
+
+		assertEquals(1, relay.waitFor(1, 10000).size());
+		List<String> received = target.waitFor(messages, 10000);
+		assertEquals(messages, received.size());
+		for(int i=0; i<messages; i++)
+		{
+			assertEquals(""+i, received.get(i));
+		}
+		assertEquals(0, this.waitForPending(0, 5000));
+
+		Bus.stopBus(relayUri);
+		Bus.stopBus(targetUri);
+	}
+	//------------------------------------------------------------------------------------------------------------
+	private Bus startBus(String uri)
+	{
+		Bus.startBus(uri);
+		Bus bus = Bus.getActiveBuses().get(uri);
+		this.transport.start(bus);
+		return bus;
+	}
+
+	private long waitForPending(long expected, long timeout) throws Exception
+	{
+		long deadline = System.currentTimeMillis() + timeout;
+		long pending = this.transport.getPendingCount(Bus.getActiveBuses().keySet());
+		while(pending != expected && System.currentTimeMillis() < deadline)
+		{
+			Thread.sleep(10);
+			pending = this.transport.getPendingCount(Bus.getActiveBuses().keySet());
+		}
+		return pending;
+	}
+
+	private List<BusMessage> messages(String uri, int from, int count)
+	{
+		List<BusMessage> messages = new ArrayList<BusMessage>();
+		for(int i=from; i<from+count; i++)
+		{
+			BusMessage busMessage = new BusMessage();
+			busMessage.setBusUri(uri);
+			busMessage.setSenderUri("TestInMemoryBusTransport");
+			busMessage.setAttribute("sequence", ""+i);
+			messages.add(busMessage);
+		}
+		return messages;
+	}
+
+	private static class RecordingListener implements BusListener
+	{
+		private volatile boolean acknowledge = true;
+		private List<String> received = new ArrayList<String>();
+
+		public void messageIncoming(BusMessage busMessage)
+		{
+			//read before the message is seen by the test, which may flip it right after
+			boolean acknowledge = this.acknowledge;
+
+			synchronized(this)
+			{
+				this.received.add((String)busMessage.getAttribute("sequence"));
+				this.notifyAll();
+			}
+
+			if(acknowledge)
+			{
+				busMessage.acknowledge();
+			}
+		}
+
+		private synchronized List<String> waitFor(int count, long timeout) throws Exception
+		{
+			long deadline = System.currentTimeMillis() + timeout;
+			while(this.received.size() < count)
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+				{
+					break;
+				}
+				this.wait(remaining);
+			}
+			return new ArrayList<String>(this.received);
+		}
+	}
+}
@@ -0,0 +1,59 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.common.bus;
+
+import junit.framework.TestCase;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestLatencyHistogram extends TestCase
+{
+	public void testPercentiles() throws Exception
+	{
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		assertEquals(0, histogram.getPercentile(99));
+
+		for(int i=1; i<=1000; i++)
+		{
+			histogram.record(i);
+		}
+
+		assertEquals(1000, histogram.getCount());
+		assertEquals(1000, histogram.getMax());
+
+		//buckets are within ~6% of the actual value
+		assertWithin(500, histogram.getPercentile(50));
+		assertWithin(900, histogram.getPercentile(90));
+		assertWithin(990, histogram.getPercentile(99));
+		assertEquals(1000, histogram.getPercentile(100));
+	}
+
+	public void testSmallValuesAreExact() throws Exception
+	{
+		LatencyHistogram histogram = new LatencyHistogram("test");
+		histogram.record(3);
+		histogram.record(3);
+		histogram.record(7);
+		histogram.record(-5);
+
+		assertEquals(0, histogram.getPercentile(25));
+		assertEquals(3, histogram.getPercentile(50));
+		assertEquals(7, histogram.getPercentile(100));
+
+		histogram.reset();
+		assertEquals(0, histogram.getCount());
+	}
+
+	private void assertWithin(long expected, long actual)
+	{
+		long delta = (long)Math.ceil(expected * 0.07d);
+		assertTrue("expected "+expected+" got "+actual, Math.abs(expected - actual) <= delta);
+	}
+}
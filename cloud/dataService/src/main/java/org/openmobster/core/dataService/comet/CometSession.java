@@ -111,6 +111,21 @@ public final class CometSession implements Serializable,BusListener
 		this.sendPacket(null);
 	}
 	
+	/**
+	 * Last time anything was written on the push socket, heartbeat or notification
+	 * 
+	 * @return
+	 */
+	public long getLastWriteTime()
+	{
+		IoSession local = this.activeSession;
+		if(local == null)
+		{
+			return 0;
+		}
+		return local.getLastWriteTime();
+	}
+	
 	/*public void startKeepAliveDaemon(long pulseInterval)
 	{
 		this.cleanupKeepAliveDaemon();
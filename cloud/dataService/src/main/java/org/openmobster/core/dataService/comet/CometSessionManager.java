@@ -11,8 +11,7 @@ package org.openmobster.core.dataService.comet;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -35,10 +34,11 @@ public final class CometSessionManager implements EventListener
 {
 	private static Logger log = Logger.getLogger(CometSessionManager.class);
 	
-	private List<CometSession> cometSessions; //consists of all comet sessions corresponding to
-	//all registered devices in the system
+	private ConcurrentHashMap<String,CometSession> cometSessions; //consists of all comet sessions corresponding to
+	//all registered devices in the system, keyed by device id
 	
-	private Timer timer; //sends keep-alive heartbeats active connections
+	private HeartBeatWheel heartBeatWheel; //sends keep-alive heartbeats on the active connections, 
+	//also serves as the index of the sessions with a live push socket
 	private long pulseInterval;
 	
 	private DeviceController deviceController;
@@ -56,7 +56,8 @@ public final class CometSessionManager implements EventListener
 
 	public CometSessionManager()
 	{
-		this.cometSessions = new ArrayList<CometSession>();
+		this.cometSessions = new ConcurrentHashMap<String,CometSession>();
+		this.heartBeatWheel = new HeartBeatWheel(1000, 512); //1 second ticks
 	}
 	
 	public long getPulseInterval() 
@@ -95,10 +96,10 @@ public final class CometSessionManager implements EventListener
 			//TCP stack supports more robust timeout configuration.
 			//Longer the heartbeat interval that keeps the push socket alive, the better it is for 
 			//the battery life on the device
-			this.timer = new Timer(this.getClass().getName(), true); //sets it as a daemon thread
-			TimerTask heartBeatDaemon = new HeartBeatDaemon();
-			long startDelay = 5000;
-			this.timer.schedule(heartBeatDaemon, startDelay, this.pulseInterval*60*1000);			
+			
+			//Each session is kept alive on its own schedule, based on when the device connected, with
+			//an interval that can be customized per platform (see CommandController)
+			this.heartBeatWheel.start();
 			
 			if(isStartedHere)
 			{
@@ -124,12 +125,12 @@ public final class CometSessionManager implements EventListener
 	{
 		if(this.cometSessions != null)
 		{
-			List<CometSession> sessions = sessions();
-			for(CometSession deviceSession: sessions)
+			for(CometSession deviceSession: this.cometSessions.values())
 			{
 				deviceSession.stop();
 			}
 		}
+		this.heartBeatWheel.stop();
 	}
 	
 	public static CometSessionManager getInstance()
@@ -149,27 +150,27 @@ public final class CometSessionManager implements EventListener
 	//------------------------------------------------------------------------------------------------------------
 	public List<CometSession> getCometSessions()
 	{
-		return Collections.unmodifiableList(this.cometSessions); 
+		List<CometSession> sessions = new ArrayList<CometSession>(this.cometSessions.values());
+		return Collections.unmodifiableList(sessions); 
 	}
 	
-	private List<CometSession> sessions()
+	/**
+	 * Number of sessions that currently have a live push socket
+	 * 
+	 * @return
+	 */
+	public int getActiveSessionCount()
 	{
-		List<CometSession> sessions = new ArrayList<CometSession>();
-		sessions.addAll(this.cometSessions);
-		return Collections.unmodifiableList(sessions);
+		return this.heartBeatWheel.size();
 	}
 	
 	public CometSession findCometSession(String deviceId)
 	{
-		List<CometSession> sessions = sessions();
-		for(CometSession deviceSession: sessions)
+		if(deviceId == null)
 		{
-			if(deviceSession.getUri().equals(deviceId))
-			{
-				return deviceSession;
-			}
+			return null;
 		}
-		return null;
+		return this.cometSessions.get(deviceId);
 	}
 	
 	public void reload()
@@ -179,6 +180,18 @@ public final class CometSessionManager implements EventListener
 	}
 			
 	public void activate(String deviceId, IoSession activeSession)
+	{
+		this.activate(deviceId, activeSession, this.pulseInterval*60*1000);
+	}
+	
+	/**
+	 * Activates the comet session of a device on its push socket
+	 * 
+	 * @param deviceId
+	 * @param activeSession
+	 * @param keepAliveInterval milliseconds between keep-alive heartbeats on this socket
+	 */
+	public void activate(String deviceId, IoSession activeSession, long keepAliveInterval)
 	{
 		if(activeSession == null)
 		{
@@ -191,13 +204,11 @@ public final class CometSessionManager implements EventListener
 			throw new IllegalArgumentException("DeviceId must be specified!!");
 		}		
 			
-		List<CometSession> sessions = sessions();
-		for(CometSession deviceSession: sessions)
+		CometSession deviceSession = this.cometSessions.get(deviceId);
+		if(deviceSession != null)
 		{
-			if(deviceSession.getUri().equals(deviceId))
-			{
-				deviceSession.activate(activeSession);
-			}
+			deviceSession.activate(activeSession);
+			this.heartBeatWheel.schedule(deviceSession, keepAliveInterval);
 		}
 	}
 	//------------------------------------------------------------------------------------------------------------
@@ -211,8 +222,8 @@ public final class CometSessionManager implements EventListener
 	//-------------------------------------------------------------------------------------------------------------
 	private void addSession(Device device)
 	{
-		CometSession session = this.findCometSession(device.getIdentifier());
-		if(session != null)
+		String deviceId = device.getIdentifier();
+		if(this.cometSessions.containsKey(deviceId))
 		{
 			//Checking to make sure multiple device sessions are not created
 			//resulting in multiple Bus infrastructure for each device
@@ -220,13 +231,26 @@ public final class CometSessionManager implements EventListener
 		}
 		
 		Subscription subscription = new Subscription();
-		subscription.setClientId(device.getIdentifier());
+		subscription.setClientId(deviceId);
 		subscription.setConfigValue("identity", device.getIdentity().getPrincipal());
 		
 		CometSession deviceSession = CometSession.createInstance(subscription);
-		deviceSession.start();
 		
-		this.cometSessions.add(deviceSession);
+		//claim the slot first, so that a concurrent new device event cannot start a second Bus
+		if(this.cometSessions.putIfAbsent(deviceId, deviceSession) != null)
+		{
+			return;
+		}
+		
+		try
+		{
+			deviceSession.start();
+		}
+		catch(RuntimeException re)
+		{
+			this.cometSessions.remove(deviceId);
+			throw re;
+		}
 	}
 	//---------------------------------------------------------------------------------------------------------
 	public void onEvent(Event event)
@@ -237,24 +261,4 @@ public final class CometSessionManager implements EventListener
 			this.newDeviceNotification(device);
 		}
 	}
-	//---------------------------------------------------------------------------------------------------------
-	private class HeartBeatDaemon extends TimerTask
-	{
-		public void run()
-		{
-			List<CometSession> sessions = CometSessionManager.this.sessions();
-			for(CometSession session: sessions)
-			{
-				if(session.isActive())
-				{
-					log.debug("---------------------------------------------------------------");
-					log.debug("Sender: "+this.hashCode());
-					log.debug("Target Device: "+session.getUri());
-					log.debug("Sending a KeepAlive HeartBeat Every: ("+CometSessionManager.this.pulseInterval*60*1000+" ms)");
-					log.debug("---------------------------------------------------------------");
-					session.sendHeartBeat();
-				}
-			}
-		}
-	}
 }
@@ -0,0 +1,274 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.comet;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Hashed timing wheel that sends the keep-alive heartbeats of the active CometSessions.
+ *
+ * Each session is due one keep-alive interval after it was activated, so the heartbeats are spread over
+ * the interval instead of going out to all the devices at the same instant. A heartbeat is skipped if
+ * something was written on the push socket within the interval.
+ *
+ * Scheduling and cancelling is thread-safe. The buckets are only touched by the wheel thread.
+ *
+ * @author openmobster@gmail.com
+ */
+final class HeartBeatWheel implements Runnable
+{
+	private static Logger log = Logger.getLogger(HeartBeatWheel.class);
+
+	private long tickDuration;
+	private List<LinkedList<HeartBeat>> wheel;
+	private int mask;
+
+	private ConcurrentHashMap<String,HeartBeat> scheduled;
+	private Queue<HeartBeat> newHeartBeats;
+
+	private long startTime;
+	private long tick;
+	private volatile boolean exit;
+	private Thread worker;
+
+	HeartBeatWheel(long tickDuration, int ticksPerWheel)
+	{
+		if(tickDuration <= 0)
+		{
+			throw new IllegalArgumentException("Tick Duration must be greater than 0!!");
+		}
+
+		//round up to a power of two, so that the bucket is a mask away
+		int wheelSize = 1;
+		while(wheelSize < ticksPerWheel)
+		{
+			wheelSize <<= 1;
+		}
+
+		this.tickDuration = tickDuration;
+		this.mask = wheelSize - 1;
+		this.wheel = new ArrayList<LinkedList<HeartBeat>>(wheelSize);
+		for(int i=0; i<wheelSize; i++)
+		{
+			this.wheel.add(new LinkedList<HeartBeat>());
+		}
+
+		this.scheduled = new ConcurrentHashMap<String,HeartBeat>();
+		this.newHeartBeats = new ConcurrentLinkedQueue<HeartBeat>();
+	}
+
+	synchronized void start()
+	{
+		this.stop();
+		
+		for(LinkedList<HeartBeat> bucket:this.wheel)
+		{
+			bucket.clear();
+		}
+		this.startTime = System.currentTimeMillis();
+		this.tick = 0;
+		this.exit = false;
+		this.worker = new Thread(this, "comet-heartbeat");
+		this.worker.setDaemon(true);
+		this.worker.start();
+	}
+
+	synchronized void stop()
+	{
+		this.exit = true;
+		if(this.worker != null)
+		{
+			this.worker.interrupt();
+			try
+			{
+				this.worker.join();
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+			}
+			this.worker = null;
+		}
+		this.scheduled.clear();
+		this.newHeartBeats.clear();
+	}
+
+	/**
+	 * Schedules the heartbeats of a session that was just activated. Replaces any heartbeats scheduled
+	 * for an earlier activation of the same session
+	 *
+	 * @param session
+	 * @param keepAliveInterval milliseconds
+	 */
+	void schedule(CometSession session, long keepAliveInterval)
+	{
+		HeartBeat heartBeat = new HeartBeat(session, keepAliveInterval);
+		heartBeat.deadline = System.currentTimeMillis() + keepAliveInterval;
+
+		HeartBeat old = this.scheduled.put(session.getUri(), heartBeat);
+		if(old != null)
+		{
+			old.cancelled = true;
+		}
+		this.newHeartBeats.add(heartBeat);
+	}
+
+	void cancel(String uri)
+	{
+		HeartBeat heartBeat = this.scheduled.remove(uri);
+		if(heartBeat != null)
+		{
+			heartBeat.cancelled = true;
+		}
+	}
+
+	/**
+	 * Number of sessions with a live socket that are being kept alive
+	 *
+	 * @return
+	 */
+	int size()
+	{
+		return this.scheduled.size();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	public void run()
+	{
+		while(!this.exit)
+		{
+			try
+			{
+				long sleep = this.startTime + (this.tick+1)*this.tickDuration - System.currentTimeMillis();
+				if(sleep > 0)
+				{
+					Thread.sleep(sleep);
+				}
+
+				HeartBeat newHeartBeat = null;
+				while((newHeartBeat = this.newHeartBeats.poll()) != null)
+				{
+					if(!newHeartBeat.cancelled)
+					{
+						this.place(newHeartBeat);
+					}
+				}
+
+				this.expire(this.wheel.get((int)(this.tick & this.mask)));
+				this.tick++;
+			}
+			catch(InterruptedException ie)
+			{
+				//stopped
+			}
+			catch(Throwable t)
+			{
+				//something went wrong....but no need to abort the heartbeats of every device
+				log.error(this, t);
+			}
+		}
+	}
+
+	private void place(HeartBeat heartBeat)
+	{
+		long due = (heartBeat.deadline - this.startTime) / this.tickDuration;
+		if(due < this.tick)
+		{
+			//already late, goes out on the current tick
+			due = this.tick;
+		}
+		heartBeat.remainingRounds = (due - this.tick) / this.wheel.size();
+		this.wheel.get((int)(due & this.mask)).add(heartBeat);
+	}
+
+	private void expire(LinkedList<HeartBeat> bucket)
+	{
+		if(bucket.isEmpty())
+		{
+			return;
+		}
+
+		List<HeartBeat> due = new ArrayList<HeartBeat>();
+		for(Iterator<HeartBeat> itr=bucket.iterator(); itr.hasNext();)
+		{
+			HeartBeat heartBeat = itr.next();
+			if(heartBeat.cancelled)
+			{
+				itr.remove();
+			}
+			else if(heartBeat.remainingRounds <= 0)
+			{
+				itr.remove();
+				due.add(heartBeat);
+			}
+			else
+			{
+				heartBeat.remainingRounds--;
+			}
+		}
+
+		for(HeartBeat heartBeat:due)
+		{
+			this.fire(heartBeat);
+		}
+	}
+
+	private void fire(HeartBeat heartBeat)
+	{
+		CometSession session = heartBeat.session;
+		if(!session.isActive())
+		{
+			//socket is gone...will be scheduled again when the device reconnects
+			this.scheduled.remove(session.getUri(), heartBeat);
+			return;
+		}
+
+		long now = System.currentTimeMillis();
+		long lastWrite = session.getLastWriteTime();
+		if(now - lastWrite < heartBeat.keepAliveInterval - this.tickDuration)
+		{
+			//real traffic went out recently, that keeps the socket alive as well
+			heartBeat.deadline = lastWrite + heartBeat.keepAliveInterval;
+		}
+		else
+		{
+			log.debug("---------------------------------------------------------------");
+			log.debug("Target Device: "+session.getUri());
+			log.debug("Sending a KeepAlive HeartBeat Every: ("+heartBeat.keepAliveInterval+" ms)");
+			log.debug("---------------------------------------------------------------");
+			session.sendHeartBeat();
+			heartBeat.deadline = now + heartBeat.keepAliveInterval;
+		}
+
+		//placed on the next tick, the bucket of this one is already done
+		this.newHeartBeats.add(heartBeat);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private static class HeartBeat
+	{
+		private CometSession session;
+		private long keepAliveInterval;
+		private long deadline;
+		private long remainingRounds;
+		private volatile boolean cancelled;
+
+		private HeartBeat(CometSession session, long keepAliveInterval)
+		{
+			this.session = session;
+			this.keepAliveInterval = keepAliveInterval;
+		}
+	}
+}
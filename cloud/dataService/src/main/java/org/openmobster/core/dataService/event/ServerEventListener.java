@@ -82,8 +82,8 @@ public class ServerEventListener implements NetworkEventListener
 					log.debug("Device: "+notification.getMetaDataAsString("device")+", Channel: "+
 					notification.getMetaDataAsString("service"));
 					log.debug("----------------------------------------------");
-					this.notifier.process(notification);
 				}
+				this.notifier.process(notifications);
 			}
 		}
 	}	
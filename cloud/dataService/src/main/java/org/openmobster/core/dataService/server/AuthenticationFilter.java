@@ -14,6 +14,8 @@ import org.apache.mina.core.filterchain.IoFilterAdapter;
 import org.apache.mina.core.session.IoSession;
 
 import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.openmobster.cloud.api.ExecutionContext;
 import org.openmobster.core.dataService.Constants;
@@ -33,11 +35,15 @@ public class AuthenticationFilter extends IoFilterAdapter
 {
 	private static Logger log = Logger.getLogger(AuthenticationFilter.class);
 	
+	private static final String serviceNameEntry = "<string>servicename</string>";
+	
 	private DeviceController deviceController;
+	private Set<String> unprotectedServices;
 	
 	public AuthenticationFilter()
 	{
-		
+		this.unprotectedServices = new HashSet<String>();
+		this.unprotectedServices.add("provisioning");
 	}
 		
 	public DeviceController getDeviceController() 
@@ -49,6 +55,21 @@ public class AuthenticationFilter extends IoFilterAdapter
 	{
 		this.deviceController = deviceController;
 	}
+	
+	public Set<String> getUnprotectedServices()
+	{
+		return unprotectedServices;
+	}
+
+	/**
+	 * Mobile services that can be invoked without an authenticated device
+	 * 
+	 * @param unprotectedServices
+	 */
+	public void setUnprotectedServices(Set<String> unprotectedServices)
+	{
+		this.unprotectedServices = unprotectedServices;
+	}
 	//------------------------------------------------------------------------------------------------------------------
 	public void messageReceived(NextFilter nextFilter, IoSession session, Object message) throws Exception
 	{	
@@ -200,13 +221,9 @@ public class AuthenticationFilter extends IoFilterAdapter
 		//Provisioning requests should be skipped...Obviously otherwise
 		//a device can never get activated (chicken/egg issue)
 		//there is no security issue with making this service unprotected
-		//In fact eventually there will be a list of protected and unprotected services
-		//supported
-		String authExceptionMatch1 = 
-		"<entry><string>servicename</string><string>provisioning</string></entry>";	
-		
-		if(
-		   payload.contains(authExceptionMatch1) 
+		String serviceName = parseServiceName(payload);
+		if(serviceName != null && this.unprotectedServices != null && 
+		   this.unprotectedServices.contains(serviceName)
 		)
 		{
 			session.setAttribute(Constants.anonymousMode, Boolean.TRUE);
@@ -215,4 +232,42 @@ public class AuthenticationFilter extends IoFilterAdapter
 						
 		return false;
 	}
+	
+	/**
+	 * Picks the name of the invoked service out of a serialized mobile service request, without parsing it
+	 * 
+	 * @param payload
+	 * @return
+	 */
+	static String parseServiceName(String payload)
+	{
+		if(payload == null)
+		{
+			return null;
+		}
+		
+		int entry = payload.indexOf(serviceNameEntry);
+		if(entry == -1)
+		{
+			return null;
+		}
+		
+		int start = entry + serviceNameEntry.length();
+		while(start < payload.length() && Character.isWhitespace(payload.charAt(start)))
+		{
+			start++;
+		}
+		if(!payload.startsWith("<string>", start))
+		{
+			return null;
+		}
+		start += "<string>".length();
+		
+		int end = payload.indexOf("</string>", start);
+		if(end == -1)
+		{
+			return null;
+		}
+		return payload.substring(start, end).trim();
+	}
 }
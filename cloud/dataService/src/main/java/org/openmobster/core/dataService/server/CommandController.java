@@ -8,6 +8,7 @@
 
 package org.openmobster.core.dataService.server;
 
+import java.util.Map;
 import java.util.StringTokenizer;
 
 import org.apache.mina.core.session.IoSession;
@@ -25,6 +26,7 @@ public class CommandController
 {
 	private CometSessionManager cometSessionManager;
 	private int pulseInterval;
+	private Map<String,Long> keepAliveIntervals;
 	
 	public CommandController()
 	{
@@ -61,6 +63,22 @@ public class CommandController
 	{
 		this.pulseInterval = pulseInterval;
 	}
+	
+	public Map<String, Long> getKeepAliveIntervals()
+	{
+		return keepAliveIntervals;
+	}
+
+	/**
+	 * Keep-alive intervals in milliseconds, that override the pulseInterval for a platform. The key is
+	 * either the platform ("blackberry") or the platform followed by a device model prefix ("blackberry/833")
+	 * 
+	 * @param keepAliveIntervals
+	 */
+	public void setKeepAliveIntervals(Map<String, Long> keepAliveIntervals)
+	{
+		this.keepAliveIntervals = keepAliveIntervals;
+	}
 	//---------------------------------------------------------------------------------------------------------------------
 	public void execute(IoSession session, ConnectionRequest request) throws Exception
 	{						
@@ -77,7 +95,7 @@ public class CommandController
 			//Activate a Comet Session associated with this device
 			SubscriptionManager subscriptionMgr = (SubscriptionManager)session.getAttribute(Constants.subscription);
 			cometSessionManager.activate(subscriptionMgr.getSubscription().getClientId(), 
-			session);
+			session, this.computeKeepAliveInterval(platform, device));
 			
 			//Channel Processing
 			StringTokenizer channels = new StringTokenizer(channel, "|");
@@ -104,10 +122,37 @@ public class CommandController
 		//not in fact hold. After lots of trial and error, 55 seconds turns out to be 
 		//the best option for keep alive interval. After running it on an actual device
 		//even with 55 seconds, the device's battery is not impacted too much
-		/*if(platform.equals("blackberry") && device.startsWith("833"))
+		//
+		//configured as: blackberry/833 = 55000
+		if(this.keepAliveIntervals == null || this.keepAliveIntervals.isEmpty() || platform == null)
 		{
-			keepAliveInterval = 55000;
-		}*/
+			return keepAliveInterval;
+		}
+		
+		//the device model specific setting wins over the platform wide one
+		int matchLength = -1;
+		for(Map.Entry<String,Long> entry: this.keepAliveIntervals.entrySet())
+		{
+			String key = entry.getKey();
+			int slash = key.indexOf('/');
+			if(slash == -1)
+			{
+				if(key.equalsIgnoreCase(platform) && matchLength < 0)
+				{
+					keepAliveInterval = entry.getValue().longValue();
+					matchLength = 0;
+				}
+				continue;
+			}
+			
+			String model = key.substring(slash+1);
+			if(key.substring(0, slash).equalsIgnoreCase(platform) && device != null && 
+			   device.startsWith(model) && model.length() > matchLength)
+			{
+				keepAliveInterval = entry.getValue().longValue();
+				matchLength = model.length();
+			}
+		}
 		
 		return keepAliveInterval;
 	}
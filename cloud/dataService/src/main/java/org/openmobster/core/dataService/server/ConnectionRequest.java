@@ -80,7 +80,14 @@ public final class ConnectionRequest implements Serializable
 				throw new IllegalArgumentException("Payload cannot be null!!");
 			}
 			
-			AttributeManager attributeManager = new AttributeManager();
+			//the agents send a fixed envelope, that does not need a full DOM parse
+			AttributeManager attributeManager = ConnectionRequestParser.parse(payload);
+			if(attributeManager != null)
+			{
+				return attributeManager;
+			}
+			
+			attributeManager = new AttributeManager();
 			
 			Document document = XMLUtilities.parse(payload);
 			
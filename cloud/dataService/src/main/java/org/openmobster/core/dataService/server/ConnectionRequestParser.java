@@ -0,0 +1,253 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import org.openmobster.core.common.AttributeManager;
+
+/**
+ * Single pass parser for the connection request envelope sent by the agents
+ *
+ * <request>
+ * 	<header><name>device-id</name><value><![CDATA[...]]></value></header>
+ * 	...
+ * </request>
+ *
+ * Whitespace between the elements, CDATA sections, and the predefined and numeric character references are
+ * understood. Anything outside this grammar (comments, attributes, a prolog etc) is not parsed here and null
+ * is returned, so that the caller can fall back to a full DOM parse.
+ *
+ * @author openmobster@gmail.com
+ */
+final class ConnectionRequestParser
+{
+	private static final String cdataStart = "<![CDATA[";
+	private static final String cdataEnd = "]]>";
+
+	private final String payload;
+	private final int length;
+	private int position;
+
+	private ConnectionRequestParser(String payload)
+	{
+		this.payload = payload;
+		this.length = payload.length();
+	}
+
+	/**
+	 * Parses the headers of a connection request
+	 *
+	 * @param payload
+	 * @return the headers, or null if the payload is not in the fixed connection request grammar
+	 */
+	static AttributeManager parse(String payload)
+	{
+		if(payload == null)
+		{
+			return null;
+		}
+		return new ConnectionRequestParser(payload).parseRequest();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private AttributeManager parseRequest()
+	{
+		AttributeManager headers = new AttributeManager();
+
+		this.skipWhitespace();
+		if(!this.consume("<request>"))
+		{
+			return null;
+		}
+
+		while(true)
+		{
+			this.skipWhitespace();
+			if(this.consume("</request>"))
+			{
+				break;
+			}
+			if(!this.consume("<header>") || !this.parseHeader(headers))
+			{
+				return null;
+			}
+		}
+
+		this.skipWhitespace();
+		if(this.position != this.length)
+		{
+			return null;
+		}
+		return headers;
+	}
+
+	private boolean parseHeader(AttributeManager headers)
+	{
+		String name = null;
+		String value = null;
+		while(true)
+		{
+			this.skipWhitespace();
+			if(this.consume("</header>"))
+			{
+				break;
+			}
+			else if(name == null && this.consume("<name>"))
+			{
+				name = this.parseText("</name>");
+				if(name == null)
+				{
+					return false;
+				}
+			}
+			else if(value == null && this.consume("<value>"))
+			{
+				value = this.parseText("</value>");
+				if(value == null)
+				{
+					return false;
+				}
+			}
+			else
+			{
+				return false;
+			}
+		}
+
+		if(name == null || value == null)
+		{
+			return false;
+		}
+		headers.setAttribute(name, value);
+		return true;
+	}
+
+	/**
+	 * Reads character data up to and including the closing tag
+	 *
+	 * @param endTag
+	 * @return the text, or null if the element has markup that is not understood here
+	 */
+	private String parseText(String endTag)
+	{
+		StringBuilder text = null; //only needed when there is something to decode
+		int start = this.position;
+
+		while(this.position < this.length)
+		{
+			char c = this.payload.charAt(this.position);
+			if(c == '<')
+			{
+				if(this.payload.startsWith(cdataStart, this.position))
+				{
+					int end = this.payload.indexOf(cdataEnd, this.position + cdataStart.length());
+					if(end == -1)
+					{
+						return null;
+					}
+					text = this.flush(text, start);
+					text.append(this.payload, this.position + cdataStart.length(), end);
+					this.position = end + cdataEnd.length();
+					start = this.position;
+					continue;
+				}
+
+				String value = text != null ? this.flush(text, start).toString() :
+				this.payload.substring(start, this.position);
+				return this.consume(endTag) ? value : null;
+			}
+			else if(c == '&')
+			{
+				int end = this.payload.indexOf(';', this.position);
+				if(end == -1)
+				{
+					return null;
+				}
+				text = this.flush(text, start);
+				if(!this.appendReference(text, this.payload.substring(this.position + 1, end)))
+				{
+					return null;
+				}
+				this.position = end + 1;
+				start = this.position;
+				continue;
+			}
+			this.position++;
+		}
+		return null;
+	}
+
+	private StringBuilder flush(StringBuilder text, int start)
+	{
+		if(text == null)
+		{
+			text = new StringBuilder();
+		}
+		text.append(this.payload, start, this.position);
+		return text;
+	}
+
+	private boolean appendReference(StringBuilder text, String reference)
+	{
+		if(reference.equals("amp"))
+		{
+			text.append('&');
+		}
+		else if(reference.equals("lt"))
+		{
+			text.append('<');
+		}
+		else if(reference.equals("gt"))
+		{
+			text.append('>');
+		}
+		else if(reference.equals("quot"))
+		{
+			text.append('"');
+		}
+		else if(reference.equals("apos"))
+		{
+			text.append('\'');
+		}
+		else if(reference.startsWith("#"))
+		{
+			try
+			{
+				int codePoint = reference.startsWith("#x") ? Integer.parseInt(reference.substring(2), 16) :
+				Integer.parseInt(reference.substring(1));
+				text.appendCodePoint(codePoint);
+			}
+			catch(IllegalArgumentException e)
+			{
+				return false;
+			}
+		}
+		else
+		{
+			return false;
+		}
+		return true;
+	}
+
+	private boolean consume(String token)
+	{
+		if(this.payload.startsWith(token, this.position))
+		{
+			this.position += token.length();
+			return true;
+		}
+		return false;
+	}
+
+	private void skipWhitespace()
+	{
+		while(this.position < this.length && Character.isWhitespace(this.payload.charAt(this.position)))
+		{
+			this.position++;
+		}
+	}
+}
@@ -0,0 +1,295 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.filter.codec.CumulativeProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolCodecFactory;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolDecoderOutput;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+import org.apache.mina.filter.codec.ProtocolEncoderAdapter;
+import org.apache.mina.filter.codec.ProtocolEncoderOutput;
+import org.apache.mina.filter.codec.textline.LineDelimiter;
+import org.apache.mina.filter.codec.textline.TextLineCodecFactory;
+
+/**
+ * Codec for the dataService socket. A connection starts out with the UTF-8 text line framing every agent
+ * understands. An agent that sends the "framing=binary" header in its ConnectionRequest switches the
+ * connection to length-prefixed frames: a 4 byte big-endian length followed by the UTF-8 payload.
+ *
+ * The handshake itself is acknowledged in text framing, everything after it is binary. Incoming frames are
+ * decoded into IoBuffers and are capped at maxFrameSize, a larger frame closes the connection.
+ *
+ * @author openmobster@gmail.com
+ */
+public final class FramingCodecFactory implements ProtocolCodecFactory
+{
+	public static final String framing = "framing";
+	public static final String binary = "binary";
+
+	private static final String decoderMode = FramingCodecFactory.class.getName()+".decoder";
+	private static final String encoderMode = FramingCodecFactory.class.getName()+".encoder";
+
+	private static final Charset utf8 = Charset.forName("UTF-8");
+	private static final String lineDelimiter = LineDelimiter.UNIX.getValue();
+
+	private static final ThreadLocal<CharsetEncoder> encoders = new ThreadLocal<CharsetEncoder>()
+	{
+		protected CharsetEncoder initialValue()
+		{
+			return utf8.newEncoder();
+		}
+	};
+
+	private TextLineCodecFactory textLine;
+	private ProtocolDecoder decoder;
+	private ProtocolEncoder encoder;
+
+	public FramingCodecFactory(int maxFrameSize)
+	{
+		this.textLine = new TextLineCodecFactory(utf8,
+		lineDelimiter,
+		"EOF");
+		this.textLine.setDecoderMaxLineLength(Integer.MAX_VALUE);
+		this.textLine.setEncoderMaxLineLength(Integer.MAX_VALUE);
+
+		this.decoder = new SwitchingDecoder(new FrameDecoder(maxFrameSize));
+		this.encoder = new SwitchingEncoder(new FrameEncoder());
+	}
+
+	public ProtocolDecoder getDecoder(IoSession session) throws Exception
+	{
+		return this.decoder;
+	}
+
+	public ProtocolEncoder getEncoder(IoSession session) throws Exception
+	{
+		return this.encoder;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	/**
+	 * Switches the incoming side of the connection to binary frames, if the agent asked for it in its
+	 * ConnectionRequest. Must happen before the handshake is acknowledged, the agent sends its next message
+	 * only after that
+	 *
+	 * @param session
+	 * @param request
+	 */
+	static void negotiate(IoSession session, ConnectionRequest request)
+	{
+		if(request != null && binary.equals(request.getHeader(framing)))
+		{
+			session.setAttribute(decoderMode, binary);
+		}
+	}
+
+	/**
+	 * Switches the outgoing side of the connection to binary frames, once the handshake has been acknowledged
+	 *
+	 * @param session
+	 */
+	static void activate(IoSession session)
+	{
+		if(session.containsAttribute(decoderMode))
+		{
+			session.setAttribute(encoderMode, binary);
+		}
+	}
+
+	public static boolean isBinary(IoSession session)
+	{
+		return session.containsAttribute(encoderMode);
+	}
+
+	/**
+	 * Decodes the payload of a binary frame
+	 *
+	 * @param frame
+	 * @return
+	 */
+	static String toPayload(IoBuffer frame)
+	{
+		try
+		{
+			return frame.getString(utf8.newDecoder());
+		}
+		catch(Exception e)
+		{
+			throw new IllegalStateException(e);
+		}
+		finally
+		{
+			frame.free();
+		}
+	}
+
+	/**
+	 * Encodes an outgoing message straight into an IoBuffer in the framing of the connection, the same bytes
+	 * the encoder produces for the message. The codec writes an IoBuffer as is, so a large message is not
+	 * turned into a String and copied again on the way out
+	 *
+	 * @param session
+	 * @param parts the message, in parts that are written one after the other
+	 * @return
+	 */
+	static IoBuffer encode(IoSession session, CharSequence... parts) throws CharacterCodingException
+	{
+		int length = 0;
+		for(CharSequence part: parts)
+		{
+			length += part.length();
+		}
+
+		boolean isBinary = session.containsAttribute(encoderMode);
+		CharsetEncoder encoder = encoders.get();
+
+		//sized for ASCII, grows for anything wider
+		IoBuffer buffer = IoBuffer.allocate(length + 5, false);
+		buffer.setAutoExpand(true);
+
+		if(isBinary)
+		{
+			buffer.putInt(0); //length prefix, known once the payload is in
+		}
+		for(CharSequence part: parts)
+		{
+			buffer.putString(part, encoder);
+		}
+		if(isBinary)
+		{
+			buffer.putInt(0, buffer.position() - 4);
+		}
+		else
+		{
+			buffer.putString(lineDelimiter, encoder);
+		}
+
+		buffer.flip();
+		return buffer;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private class SwitchingDecoder implements ProtocolDecoder
+	{
+		private FrameDecoder frameDecoder;
+
+		private SwitchingDecoder(FrameDecoder frameDecoder)
+		{
+			this.frameDecoder = frameDecoder;
+		}
+
+		public void decode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception
+		{
+			if(session.containsAttribute(decoderMode))
+			{
+				this.frameDecoder.decode(session, in, out);
+			}
+			else
+			{
+				FramingCodecFactory.this.textLine.getDecoder(session).decode(session, in, out);
+			}
+		}
+
+		public void finishDecode(IoSession session, ProtocolDecoderOutput out) throws Exception
+		{
+			if(session.containsAttribute(decoderMode))
+			{
+				this.frameDecoder.finishDecode(session, out);
+			}
+			else
+			{
+				FramingCodecFactory.this.textLine.getDecoder(session).finishDecode(session, out);
+			}
+		}
+
+		public void dispose(IoSession session) throws Exception
+		{
+			this.frameDecoder.dispose(session);
+			FramingCodecFactory.this.textLine.getDecoder(session).dispose(session);
+		}
+	}
+
+	private class SwitchingEncoder implements ProtocolEncoder
+	{
+		private FrameEncoder frameEncoder;
+
+		private SwitchingEncoder(FrameEncoder frameEncoder)
+		{
+			this.frameEncoder = frameEncoder;
+		}
+
+		public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws Exception
+		{
+			if(session.containsAttribute(encoderMode))
+			{
+				this.frameEncoder.encode(session, message, out);
+			}
+			else
+			{
+				FramingCodecFactory.this.textLine.getEncoder(session).encode(session, message, out);
+			}
+		}
+
+		public void dispose(IoSession session) throws Exception
+		{
+			FramingCodecFactory.this.textLine.getEncoder(session).dispose(session);
+		}
+	}
+
+	private static class FrameDecoder extends CumulativeProtocolDecoder
+	{
+		private int maxFrameSize;
+
+		private FrameDecoder(int maxFrameSize)
+		{
+			this.maxFrameSize = maxFrameSize;
+		}
+
+		protected boolean doDecode(IoSession session, IoBuffer in, ProtocolDecoderOutput out) throws Exception
+		{
+			//throws a BufferDataException on a frame that is larger than allowed
+			if(!in.prefixedDataAvailable(4, this.maxFrameSize))
+			{
+				return false;
+			}
+
+			int length = in.getInt();
+			IoBuffer frame = IoBuffer.allocate(length, false);
+
+			int limit = in.limit();
+			in.limit(in.position() + length);
+			frame.put(in);
+			in.limit(limit);
+
+			frame.flip();
+			out.write(frame);
+			return true;
+		}
+	}
+
+	private static class FrameEncoder extends ProtocolEncoderAdapter
+	{
+		public void encode(IoSession session, Object message, ProtocolEncoderOutput out) throws Exception
+		{
+			byte[] payload = message.toString().getBytes("UTF-8");
+
+			IoBuffer frame = IoBuffer.allocate(4 + payload.length, false);
+			frame.putInt(payload.length);
+			frame.put(payload);
+			frame.flip();
+
+			out.write(frame);
+		}
+	}
+}
@@ -10,6 +10,7 @@ package org.openmobster.core.dataService.server;
 
 import org.apache.log4j.Logger;
 
+import org.apache.mina.core.buffer.IoBuffer;
 import org.apache.mina.core.filterchain.IoFilterAdapter;
 import org.apache.mina.core.session.IoSession;
 
@@ -44,7 +45,17 @@ public class PayloadFilter extends IoFilterAdapter
 			return;
 		}*/
 		
-		String payloadMessage = ((String)message).trim();
+		String payloadMessage = null;
+		if(message instanceof IoBuffer)
+		{
+			//binary frame, the frame boundary is exact. The buffer is freed once decoded, so only the
+			//decoded payload goes down the chain
+			payloadMessage = FramingCodecFactory.toPayload((IoBuffer)message).trim();
+		}
+		else
+		{
+			payloadMessage = ((String)message).trim();
+		}
 		if(payloadMessage.length() == 0)
 		{
 			//empty payload
@@ -63,7 +74,7 @@ public class PayloadFilter extends IoFilterAdapter
 				getAttribute(Constants.payload);
 		payloadController.setPayload(payloadMessage);
 		
-		nextFilter.messageReceived(session, message);
+		nextFilter.messageReceived(session, payloadMessage);
 		session.removeAttribute(Constants.payload);
 	}	
 	
@@ -8,6 +8,8 @@
 
 package org.openmobster.core.dataService.server;
 
+import java.nio.CharBuffer;
+
 import org.apache.log4j.Logger;
 
 import org.apache.mina.core.session.IoSession;
@@ -100,14 +102,26 @@ public class ProcessorController
 			
 			if(result != null)
 			{
-				result = result.trim();
-				if(result.length() == 0)
+				//trimmed without a copy, the result is encoded straight into the outgoing buffer
+				int start = 0;
+				int end = result.length();
+				while(start < end && result.charAt(start) <= ' ')
+				{
+					start++;
+				}
+				while(end > start && result.charAt(end - 1) <= ' ')
+				{
+					end--;
+				}
+				
+				if(start == end)
 				{
 					session.write(Constants.status+"="+200+Constants.endOfStream);
 					return;
 				}
 				
-				session.write(result+Constants.endOfStream);
+				session.write(FramingCodecFactory.encode(session, CharBuffer.wrap(result, start, end), 
+				Constants.endOfStream));
 				return;
 			}
 			
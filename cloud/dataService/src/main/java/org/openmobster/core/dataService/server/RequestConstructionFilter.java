@@ -39,6 +39,9 @@ public class RequestConstructionFilter extends IoFilterAdapter
 				//Construct a ConnectionRequest
 				ConnectionRequest request = ConnectionRequest.getInstance(payload);
 				session.setAttribute(Constants.request, request);
+				
+				//the agent may ask for binary framing for the rest of this connection
+				FramingCodecFactory.negotiate(session, request);
 			}
 			else
 			{
@@ -0,0 +1,355 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.log4j.Logger;
+
+import org.apache.mina.core.filterchain.IoFilterAdapter;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+
+import org.openmobster.core.common.ServiceManager;
+import org.openmobster.core.dataService.Constants;
+import org.openmobster.core.dataService.processor.Processor;
+
+/**
+ * Executor stage of the dataService filter chain, in place of a MINA ExecutorFilter with the defaults.
+ *
+ * Requests are classified by what the connection is being used for, and each class gets its own bounded
+ * lane, so that long running syncs can not starve the small RPC calls:
+ *
+ * sync - connections bound to the sync processor
+ * push - comet connections that issued the notify command
+ * rpc - everything else, including the connection handshakes
+ *
+ * Events of a session are processed one at a time and in order, like the OrderedThreadPoolExecutor.
+ * When a lane is full the I/O thread either waits for room (backpressure=block) or the request is turned
+ * away with a status=503 (backpressure=reject). Only the requests are turned away, the other events of the
+ * session are then run right on the I/O thread, so that the cleanup of the handler is not lost.
+ *
+ * @author openmobster@gmail.com
+ */
+public class RequestExecutorFilter extends IoFilterAdapter
+{
+	private static Logger log = Logger.getLogger(RequestExecutorFilter.class);
+
+	private static final String sessionEvents = RequestExecutorFilter.class.getName()+".events";
+
+	private int syncThreads = 16;
+	private int rpcThreads = 8;
+	private int pushThreads = 4;
+	private int queueSize = 1000;
+	private String backpressure = "block";
+
+	private RequestLane sync;
+	private RequestLane rpc;
+	private RequestLane push;
+
+	public RequestExecutorFilter()
+	{
+
+	}
+
+	public void start()
+	{
+		boolean blockWhenFull = !"reject".equalsIgnoreCase(this.backpressure);
+
+		this.sync = new RequestLane("sync", this.syncThreads, this.queueSize, blockWhenFull);
+		this.rpc = new RequestLane("rpc", this.rpcThreads, this.queueSize, blockWhenFull);
+		this.push = new RequestLane("push", this.pushThreads, this.queueSize, blockWhenFull);
+	}
+
+	public void stop()
+	{
+		for(RequestLane lane:this.getLanes())
+		{
+			log.info(lane);
+			lane.shutdown();
+		}
+	}
+
+	public static RequestExecutorFilter getInstance()
+	{
+		return (RequestExecutorFilter)ServiceManager.locate("dataService://RequestExecutorFilter");
+	}
+
+	public int getSyncThreads()
+	{
+		return syncThreads;
+	}
+
+	public void setSyncThreads(int syncThreads)
+	{
+		this.syncThreads = syncThreads;
+	}
+
+	public int getRpcThreads()
+	{
+		return rpcThreads;
+	}
+
+	public void setRpcThreads(int rpcThreads)
+	{
+		this.rpcThreads = rpcThreads;
+	}
+
+	public int getPushThreads()
+	{
+		return pushThreads;
+	}
+
+	public void setPushThreads(int pushThreads)
+	{
+		this.pushThreads = pushThreads;
+	}
+
+	public int getQueueSize()
+	{
+		return queueSize;
+	}
+
+	public void setQueueSize(int queueSize)
+	{
+		this.queueSize = queueSize;
+	}
+
+	public String getBackpressure()
+	{
+		return backpressure;
+	}
+
+	public void setBackpressure(String backpressure)
+	{
+		this.backpressure = backpressure;
+	}
+
+	/**
+	 * The lanes along with their metrics
+	 *
+	 * @return
+	 */
+	public List<RequestLane> getLanes()
+	{
+		List<RequestLane> lanes = new ArrayList<RequestLane>();
+		lanes.add(this.sync);
+		lanes.add(this.rpc);
+		lanes.add(this.push);
+		return lanes;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	public void sessionOpened(final NextFilter nextFilter, final IoSession session) throws Exception
+	{
+		this.fire(session, new Runnable()
+		{
+			public void run()
+			{
+				nextFilter.sessionOpened(session);
+			}
+		}, false);
+	}
+
+	public void sessionClosed(final NextFilter nextFilter, final IoSession session) throws Exception
+	{
+		this.fire(session, new Runnable()
+		{
+			public void run()
+			{
+				nextFilter.sessionClosed(session);
+			}
+		}, false);
+	}
+
+	public void sessionIdle(final NextFilter nextFilter, final IoSession session, final IdleStatus status) throws Exception
+	{
+		this.fire(session, new Runnable()
+		{
+			public void run()
+			{
+				nextFilter.sessionIdle(session, status);
+			}
+		}, false);
+	}
+
+	public void exceptionCaught(final NextFilter nextFilter, final IoSession session, final Throwable cause) throws Exception
+	{
+		this.fire(session, new Runnable()
+		{
+			public void run()
+			{
+				nextFilter.exceptionCaught(session, cause);
+			}
+		}, false);
+	}
+
+	public void messageReceived(final NextFilter nextFilter, final IoSession session, final Object message) throws Exception
+	{
+		this.fire(session, new Runnable()
+		{
+			public void run()
+			{
+				nextFilter.messageReceived(session, message);
+			}
+		}, true);
+	}
+
+	public void messageSent(final NextFilter nextFilter, final IoSession session, final WriteRequest writeRequest) throws Exception
+	{
+		this.fire(session, new Runnable()
+		{
+			public void run()
+			{
+				nextFilter.messageSent(session, writeRequest);
+			}
+		}, false);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private void fire(IoSession session, Runnable event, boolean isRequest)
+	{
+		SessionEvents events = (SessionEvents)session.getAttribute(sessionEvents);
+		if(events == null)
+		{
+			events = new SessionEvents(session);
+			SessionEvents old = (SessionEvents)session.setAttributeIfAbsent(sessionEvents, events);
+			if(old != null)
+			{
+				events = old;
+			}
+		}
+
+		RequestLane lane = null;
+		synchronized(events)
+		{
+			events.queue.add(new QueuedEvent(event, isRequest));
+			if(events.scheduled)
+			{
+				return;
+			}
+			events.scheduled = true;
+			lane = this.classify(session);
+			events.lane = lane;
+		}
+
+		try
+		{
+			lane.execute(events);
+		}
+		catch(RejectedExecutionException ree)
+		{
+			int shed = 0;
+			synchronized(events)
+			{
+				for(Iterator<QueuedEvent> itr=events.queue.iterator(); itr.hasNext();)
+				{
+					if(itr.next().isRequest)
+					{
+						itr.remove();
+						shed++;
+					}
+				}
+			}
+
+			//still scheduled, so the events of the session stay in order
+			events.run();
+
+			if(shed > 0)
+			{
+				log.warn(lane.getName()+" lane is full. Turning away "+session.getRemoteAddress());
+				session.write(Constants.status+"="+503+Constants.endOfStream);
+				session.close(false);
+			}
+		}
+	}
+
+	private RequestLane classify(IoSession session)
+	{
+		if(session.containsAttribute(Constants.notify))
+		{
+			return this.push;
+		}
+
+		Processor processor = (Processor)session.getAttribute(Constants.processor);
+		if(processor != null && Constants.sync.equals(processor.getId()))
+		{
+			return this.sync;
+		}
+
+		return this.rpc;
+	}
+
+	private static class QueuedEvent
+	{
+		private Runnable event;
+		private boolean isRequest;
+		private long queuedAt;
+
+		private QueuedEvent(Runnable event, boolean isRequest)
+		{
+			this.event = event;
+			this.isRequest = isRequest;
+			this.queuedAt = System.currentTimeMillis();
+		}
+	}
+
+	/**
+	 * Events of one session, run serially on the lane the session was classified into
+	 */
+	private static class SessionEvents implements Runnable
+	{
+		private IoSession session;
+		private LinkedList<QueuedEvent> queue = new LinkedList<QueuedEvent>();
+		private boolean scheduled;
+		private RequestLane lane;
+
+		private SessionEvents(IoSession session)
+		{
+			this.session = session;
+		}
+
+		public void run()
+		{
+			while(true)
+			{
+				QueuedEvent queuedEvent = null;
+				RequestLane current = null;
+				synchronized(this)
+				{
+					queuedEvent = this.queue.poll();
+					if(queuedEvent == null)
+					{
+						this.scheduled = false;
+						return;
+					}
+					current = this.lane;
+				}
+
+				long start = System.currentTimeMillis();
+				current.getQueueTime().record(start - queuedEvent.queuedAt);
+				try
+				{
+					queuedEvent.event.run();
+				}
+				catch(Throwable t)
+				{
+					log.error(this.session, t);
+				}
+				finally
+				{
+					current.getExecutionTime().record(System.currentTimeMillis() - start);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,192 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openmobster.core.common.bus.LatencyHistogram;
+
+/**
+ * A named, bounded worker pool of the RequestExecutorFilter, that serves one class of requests
+ * (sync, rpc, push) along with its metrics
+ *
+ * @author openmobster@gmail.com
+ */
+public final class RequestLane
+{
+	private String name;
+	private ThreadPoolExecutor pool;
+	private boolean blockWhenFull;
+
+	private LatencyHistogram queueTime;
+	private LatencyHistogram executionTime;
+	private AtomicLong rejected;
+	private AtomicLong throttled;
+
+	RequestLane(String name, int threads, int queueSize, boolean blockWhenFull)
+	{
+		this.name = name;
+		this.blockWhenFull = blockWhenFull;
+		this.queueTime = new LatencyHistogram(name+"-queue-time");
+		this.executionTime = new LatencyHistogram(name+"-execution-time");
+		this.rejected = new AtomicLong(0);
+		this.throttled = new AtomicLong(0);
+
+		this.pool = new ThreadPoolExecutor(threads, threads,
+		60, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<Runnable>(queueSize),
+		new LaneThreadFactory(name),
+		new Backpressure());
+	}
+
+	public String getName()
+	{
+		return this.name;
+	}
+
+	/**
+	 * Sessions with events waiting for a thread of this lane
+	 *
+	 * @return
+	 */
+	public int getQueueDepth()
+	{
+		return this.pool.getQueue().size();
+	}
+
+	public int getActiveThreads()
+	{
+		return this.pool.getActiveCount();
+	}
+
+	public long getCompletedCount()
+	{
+		return this.executionTime.getCount();
+	}
+
+	/**
+	 * Requests turned away because the lane was full
+	 *
+	 * @return
+	 */
+	public long getRejectedCount()
+	{
+		return this.rejected.get();
+	}
+
+	/**
+	 * Number of times the I/O thread had to wait for room in the lane
+	 *
+	 * @return
+	 */
+	public long getThrottledCount()
+	{
+		return this.throttled.get();
+	}
+
+	/**
+	 * Milliseconds an event waited in the lane before it got a thread
+	 *
+	 * @return
+	 */
+	public LatencyHistogram getQueueTime()
+	{
+		return this.queueTime;
+	}
+
+	/**
+	 * Milliseconds spent processing an event
+	 *
+	 * @return
+	 */
+	public LatencyHistogram getExecutionTime()
+	{
+		return this.executionTime;
+	}
+
+	public String toString()
+	{
+		StringBuilder buffer = new StringBuilder();
+		buffer.append("lane="+this.name);
+		buffer.append(", queued="+this.getQueueDepth());
+		buffer.append(", active="+this.getActiveThreads());
+		buffer.append(", completed="+this.getCompletedCount());
+		buffer.append(", rejected="+this.getRejectedCount());
+		buffer.append(", throttled="+this.getThrottledCount()+"\n");
+		buffer.append("  "+this.queueTime+"\n");
+		buffer.append("  "+this.executionTime);
+		return buffer.toString();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	void execute(Runnable task)
+	{
+		this.pool.execute(task);
+	}
+
+	void shutdown()
+	{
+		this.pool.shutdown();
+	}
+
+	private class Backpressure implements RejectedExecutionHandler
+	{
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor executor)
+		{
+			if(executor.isShutdown())
+			{
+				RequestLane.this.rejected.incrementAndGet();
+				throw new RejectedExecutionException(RequestLane.this.name+" is shutdown");
+			}
+
+			if(!RequestLane.this.blockWhenFull)
+			{
+				RequestLane.this.rejected.incrementAndGet();
+				throw new RejectedExecutionException(RequestLane.this.name+" is full");
+			}
+
+			//stalls the I/O thread, which stops reading from the sockets until there is room
+			RequestLane.this.throttled.incrementAndGet();
+			try
+			{
+				executor.getQueue().put(task);
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				RequestLane.this.rejected.incrementAndGet();
+				throw new RejectedExecutionException(ie);
+			}
+		}
+	}
+
+	private static class LaneThreadFactory implements ThreadFactory
+	{
+		private String name;
+		private AtomicInteger counter = new AtomicInteger(0);
+
+		private LaneThreadFactory(String name)
+		{
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, "dataService-"+this.name+"-"+this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
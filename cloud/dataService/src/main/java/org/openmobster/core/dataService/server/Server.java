@@ -9,7 +9,6 @@
 package org.openmobster.core.dataService.server;
 
 import java.net.InetSocketAddress;
-import java.nio.charset.Charset;
 
 import java.io.FileInputStream;
 
@@ -25,8 +24,6 @@ import javax.net.ssl.SSLContext;
 import org.apache.log4j.Logger;
 
 import org.apache.mina.core.service.IoAcceptor;
-import org.apache.mina.filter.codec.textline.LineDelimiter;
-import org.apache.mina.filter.codec.textline.TextLineCodecFactory;
 import org.apache.mina.filter.codec.ProtocolCodecFilter;
 import org.apache.mina.filter.executor.ExecutorFilter;
 import org.apache.mina.filter.ssl.SslFilter;
@@ -51,10 +48,13 @@ public class Server
 		
 	private String keyStorePassword = null;
 	
+	private int maxFrameSize = 16*1024*1024; //largest binary frame accepted from an agent
+	
 	private TransactionFilter transactionFilter;
 	private AuthenticationFilter authenticationFilter;
 	private PayloadFilter payloadFilter;
 	private RequestConstructionFilter requestFilter;
+	private RequestExecutorFilter executorFilter;
 		
 	public Server()
 	{
@@ -118,6 +118,16 @@ public class Server
 	}
 	
 	
+	public int getMaxFrameSize()
+	{
+		return maxFrameSize;
+	}
+
+	public void setMaxFrameSize(int maxFrameSize)
+	{
+		this.maxFrameSize = maxFrameSize;
+	}
+	
 	public AuthenticationFilter getAuthenticationFilter() 
 	{
 		return authenticationFilter;
@@ -158,6 +168,15 @@ public class Server
 	{
 		this.requestFilter = requestFilter;
 	}
+	public RequestExecutorFilter getExecutorFilter()
+	{
+		return executorFilter;
+	}
+
+	public void setExecutorFilter(RequestExecutorFilter executorFilter)
+	{
+		this.executorFilter = executorFilter;
+	}
 	//---------------------------------------------------------------------------------------------------
 	public boolean isSecure()
 	{
@@ -178,18 +197,20 @@ public class Server
 	        }
 	        
 	        
-	        //
-	        //TextLineCodecFactory textLine = new TextLineCodecFactory(Charset.forName("UTF-8"));	
-	        TextLineCodecFactory textLine = new TextLineCodecFactory(Charset.forName("UTF-8"),
-	    	        LineDelimiter.UNIX.getValue(),
-	    	        "EOF");
-	        textLine.setDecoderMaxLineLength(Integer.MAX_VALUE);
-	        textLine.setEncoderMaxLineLength(Integer.MAX_VALUE);
-	        ProtocolCodecFilter codecFilter = new ProtocolCodecFilter(textLine);
+	        //Text line framing for the existing agents, length-prefixed binary framing when negotiated
+	        //in the ConnectionRequest (see FramingCodecFactory)
+	        ProtocolCodecFilter codecFilter = new ProtocolCodecFilter(new FramingCodecFactory(this.maxFrameSize));
 	        this.acceptor.getFilterChain().addLast( "codec", codecFilter);
 	        
-	        //
-	        this.acceptor.getFilterChain().addLast("threadPool", new ExecutorFilter());
+	        //Classified, bounded worker lanes. Falls back to the MINA defaults if not configured
+	        if(this.executorFilter != null)
+	        {
+	        	this.acceptor.getFilterChain().addLast("threadPool", this.executorFilter);
+	        }
+	        else
+	        {
+	        	this.acceptor.getFilterChain().addLast("threadPool", new ExecutorFilter());
+	        }
 	        
 	        //Add Custom filters here
 	        if(this.payloadFilter != null)
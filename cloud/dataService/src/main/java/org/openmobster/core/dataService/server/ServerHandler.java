@@ -104,11 +104,19 @@ public class ServerHandler extends IoHandlerAdapter
 			
 			if(request != null && request.getCommand() != null)
 			{
+				//commands are not acknowledged, switch the framing right away
+				FramingCodecFactory.activate(session);
 				this.commandController.execute(session, request);								
 			}			
 			else
 			{
-				this.processorController.execute(session,request);								
+				this.processorController.execute(session,request);
+				
+				if(request != null)
+				{
+					//handshake is acknowledged, rest of the conversation in the negotiated framing
+					FramingCodecFactory.activate(session);
+				}
 			}															
 		}
 		catch(ProcessorException pe)
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.comet;
+
+import java.util.Random;
+
+import org.apache.log4j.Logger;
+
+import org.apache.mina.core.session.DummySession;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.identity.Identity;
+
+/**
+ * Measures the startup (one addSession per registered device) and the device reconnect cost of the
+ * CometSessionManager at 100k registered devices.
+ *
+ * Uses the in-memory Bus transport so that the numbers are not dominated by creating 100k durable queues.
+ *
+ * @author openmobster@gmail.com
+ */
+public class PerfCometSessionManager extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfCometSessionManager.class);
+
+	private static final int devices = 100000;
+	private static final int reconnects = 100000;
+
+	protected void setUp() throws Exception
+	{
+		//must happen before the Bus is loaded
+		if(System.getProperty("openmobster.bus.transport") == null)
+		{
+			System.setProperty("openmobster.bus.transport", "inmemory");
+		}
+	}
+
+	public void testStartupAndReconnect() throws Exception
+	{
+		CometSessionManager sessionManager = new CometSessionManager();
+
+		//startup
+		long start = System.nanoTime();
+		for(int i=0; i<devices; i++)
+		{
+			Identity identity = new Identity("perf"+i+"@gmail.com", "password");
+			sessionManager.newDeviceNotification(new Device("IMEI:"+i, identity));
+		}
+		long startup = System.nanoTime() - start;
+		assertEquals(devices, sessionManager.getCometSessions().size());
+
+		//reconnect storm
+		Random random = new Random(12345);
+		start = System.nanoTime();
+		for(int i=0; i<reconnects; i++)
+		{
+			String deviceId = "IMEI:"+random.nextInt(devices);
+			sessionManager.activate(deviceId, new DummySession());
+		}
+		long reconnect = System.nanoTime() - start;
+
+		//lookups
+		start = System.nanoTime();
+		for(int i=0; i<reconnects; i++)
+		{
+			assertNotNull(sessionManager.findCometSession("IMEI:"+random.nextInt(devices)));
+		}
+		long lookup = System.nanoTime() - start;
+
+		log.info("-------------------------------------------------------------");
+		log.info("Registered Devices: "+devices);
+		log.info("Startup: "+(startup/1000000)+" ms ("+(startup/devices)+" ns/device)");
+		log.info("Reconnect: "+(reconnect/reconnects)+" ns/op");
+		log.info("Lookup: "+(lookup/reconnects)+" ns/op");
+		log.info("Active Sessions: "+sessionManager.getActiveSessionCount());
+		log.info("-------------------------------------------------------------");
+	}
+}
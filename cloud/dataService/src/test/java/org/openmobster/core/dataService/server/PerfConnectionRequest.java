@@ -0,0 +1,72 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.XMLUtilities;
+
+/**
+ * Compares the connection request handshake parse against the full DOM parse it replaced.
+ *
+ * @author openmobster@gmail.com
+ */
+public class PerfConnectionRequest extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfConnectionRequest.class);
+
+	private static final int warmup = 20000;
+	private static final int iterations = 200000;
+
+	private static final String handshake = "<request>" +
+		"<header>" +
+			"<name>device-id</name>"+
+			"<value><![CDATA[IMEI:4930051]]></value>"+
+		"</header>"+
+		"<header>" +
+			"<name>nonce</name>"+
+			"<value><![CDATA[2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824]]></value>"+
+		"</header>"+
+		"<header>" +
+			"<name>processor</name>"+
+			"<value>sync</value>"+
+		"</header>"+
+	"</request>";
+
+	public void testHandshakeParse() throws Exception
+	{
+		for(int i=0; i<warmup; i++)
+		{
+			ConnectionRequest.getInstance(handshake);
+			XMLUtilities.parse(handshake);
+		}
+
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			assertNotNull(ConnectionRequest.getInstance(handshake).getDeviceId());
+		}
+		long streaming = System.nanoTime() - start;
+
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			assertNotNull(XMLUtilities.parse(handshake));
+		}
+		long dom = System.nanoTime() - start;
+
+		log.info("-------------------------------------------------------------");
+		log.info("Handshakes: "+iterations);
+		log.info("Streaming parse: "+(streaming/iterations)+" ns/op");
+		log.info("DOM parse: "+(dom/iterations)+" ns/op");
+		log.info("-------------------------------------------------------------");
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import junit.framework.TestCase;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestConnectionRequest extends TestCase
+{
+	public void testAgentHandshake() throws Exception
+	{
+		String payload = "<request>" +
+			"<header>" +
+				"<name>device-id</name>"+
+				"<value><![CDATA[IMEI:4930051]]></value>"+
+			"</header>"+
+			"<header>" +
+				"<name>nonce</name>"+
+				"<value><![CDATA[a<b&c]]></value>"+
+			"</header>"+
+			"<header>" +
+				"<name>processor</name>"+
+				"<value>mobileservice</value>"+
+			"</header>"+
+		"</request>";
+
+		assertNotNull(ConnectionRequestParser.parse(payload));
+
+		ConnectionRequest request = ConnectionRequest.getInstance(payload);
+		assertEquals("IMEI:4930051", request.getDeviceId());
+		assertEquals("a<b&c", request.getNonce());
+		assertEquals("mobileservice", request.getProcessor());
+		assertNull(request.getCommand());
+	}
+
+	public void testWhitespaceAndReferences() throws Exception
+	{
+		String payload = "<request>\n" +
+			"\t<header>\n" +
+				"\t\t<value>x &amp; y &lt;&#65;&#x42;&gt;</value>\n"+
+				"\t\t<name>command</name>\n"+
+			"\t</header>\n"+
+		"</request>\n";
+
+		assertNotNull(ConnectionRequestParser.parse(payload));
+		assertEquals("x & y <AB>", ConnectionRequest.getInstance(payload).getCommand());
+	}
+
+	public void testFallbackToDOM() throws Exception
+	{
+		//outside the fixed grammar, still parsed by the DOM path
+		String payload = "<request><!-- agent v1 --><header><name>processor</name><value>sync</value></header></request>";
+
+		assertNull(ConnectionRequestParser.parse(payload));
+		assertEquals("sync", ConnectionRequest.getInstance(payload).getProcessor());
+
+		assertNull(ConnectionRequestParser.parse("<request><header><name>processor</name></header></request>"));
+		assertNull(ConnectionRequestParser.parse("<request><header><name>processor</name><value>sync"));
+		assertNull(ConnectionRequestParser.parse("<request></request>trailing"));
+	}
+
+	public void testServiceName() throws Exception
+	{
+		String payload = "<map>\n" +
+			"<entry>\n" +
+			"<string>servicename</string>\n" +
+			"<string>provisioning</string>\n" +
+			"</entry>\n" +
+		"</map>\n";
+
+		assertEquals("provisioning", AuthenticationFilter.parseServiceName(payload));
+		assertEquals("provisioning", AuthenticationFilter.parseServiceName(payload.replaceAll("\n", "")));
+		assertNull(AuthenticationFilter.parseServiceName("<map><entry><string>email</string></entry></map>"));
+	}
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import java.util.Arrays;
+
+import org.apache.mina.core.buffer.IoBuffer;
+import org.apache.mina.filter.codec.ProtocolCodecSession;
+import org.apache.mina.filter.codec.ProtocolDecoder;
+import org.apache.mina.filter.codec.ProtocolEncoder;
+
+import junit.framework.TestCase;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestFramingCodecFactory extends TestCase
+{
+	private static final String handshake = "<request><header><name>processor</name><value>sync</value></header>"+
+	"<header><name>framing</name><value>binary</value></header></request>";
+
+	private FramingCodecFactory factory;
+	private ProtocolCodecSession session;
+
+	public void setUp() throws Exception
+	{
+		this.factory = new FramingCodecFactory(1024);
+		this.session = new ProtocolCodecSession();
+	}
+
+	public void testTextLineByDefault() throws Exception
+	{
+		ProtocolDecoder decoder = this.factory.getDecoder(this.session);
+		decoder.decode(this.session, IoBuffer.wrap((handshake+"EOF").getBytes("UTF-8")),
+		this.session.getDecoderOutput());
+
+		assertEquals(handshake, this.session.getDecoderOutputQueue().poll());
+		assertFalse(FramingCodecFactory.isBinary(this.session));
+	}
+
+	public void testNegotiatedBinaryFraming() throws Exception
+	{
+		ConnectionRequest request = ConnectionRequest.getInstance(handshake);
+		FramingCodecFactory.negotiate(this.session, request);
+
+		//payload split over two reads, must come out as one frame
+		String payload = "<sync>\u00e9\u4e2d</sync>";
+		byte[] bytes = payload.getBytes("UTF-8");
+		IoBuffer first = IoBuffer.allocate(6);
+		first.putInt(bytes.length);
+		first.put(bytes, 0, 2);
+		first.flip();
+		IoBuffer second = IoBuffer.wrap(bytes, 2, bytes.length-2);
+
+		ProtocolDecoder decoder = this.factory.getDecoder(this.session);
+		decoder.decode(this.session, first, this.session.getDecoderOutput());
+		assertTrue(this.session.getDecoderOutputQueue().isEmpty());
+		decoder.decode(this.session, second, this.session.getDecoderOutput());
+
+		IoBuffer frame = (IoBuffer)this.session.getDecoderOutputQueue().poll();
+		assertEquals(payload, FramingCodecFactory.toPayload(frame));
+
+		//handshake acknowledgement still goes out as text
+		ProtocolEncoder encoder = this.factory.getEncoder(this.session);
+		encoder.encode(this.session, "status=200", this.session.getEncoderOutput());
+		IoBuffer ack = (IoBuffer)this.session.getEncoderOutputQueue().poll();
+		assertEquals("status=200\n", new String(this.toBytes(ack), "UTF-8"));
+
+		FramingCodecFactory.activate(this.session);
+		encoder.encode(this.session, "status=200", this.session.getEncoderOutput());
+		IoBuffer response = (IoBuffer)this.session.getEncoderOutputQueue().poll();
+		assertEquals(10, response.getInt());
+		assertEquals("status=200", new String(this.toBytes(response), "UTF-8"));
+	}
+
+	public void testFrameSizeCap() throws Exception
+	{
+		FramingCodecFactory.negotiate(this.session, ConnectionRequest.getInstance(handshake));
+
+		IoBuffer oversized = IoBuffer.allocate(4);
+		oversized.putInt(2048);
+		oversized.flip();
+
+		try
+		{
+			this.factory.getDecoder(this.session).decode(this.session, oversized,
+			this.session.getDecoderOutput());
+			fail("Frame larger than the cap must be rejected");
+		}
+		catch(Exception e)
+		{
+			//expected
+		}
+	}
+
+	public void testEncodeMatchesEncoder() throws Exception
+	{
+		String payload = "<SyncML>\u00e9\u4e2d</SyncML>\r\n";
+		ProtocolEncoder encoder = this.factory.getEncoder(this.session);
+
+		//text line framing
+		encoder.encode(this.session, payload, this.session.getEncoderOutput());
+		byte[] expected = this.toBytes((IoBuffer)this.session.getEncoderOutputQueue().poll());
+		IoBuffer encoded = FramingCodecFactory.encode(this.session, payload.substring(0, 8), payload.substring(8));
+		assertTrue(Arrays.equals(expected, this.toBytes(encoded)));
+
+		//binary framing
+		FramingCodecFactory.negotiate(this.session, ConnectionRequest.getInstance(handshake));
+		FramingCodecFactory.activate(this.session);
+		encoder.encode(this.session, payload, this.session.getEncoderOutput());
+		expected = this.toBytes((IoBuffer)this.session.getEncoderOutputQueue().poll());
+		encoded = FramingCodecFactory.encode(this.session, payload);
+		assertTrue(Arrays.equals(expected, this.toBytes(encoded)));
+	}
+
+	private byte[] toBytes(IoBuffer buffer)
+	{
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		return bytes;
+	}
+}
@@ -0,0 +1,151 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.dataService.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.mina.core.filterchain.IoFilter.NextFilter;
+import org.apache.mina.core.session.DummySession;
+import org.apache.mina.core.session.IdleStatus;
+import org.apache.mina.core.session.IoSession;
+import org.apache.mina.core.write.WriteRequest;
+
+import junit.framework.TestCase;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestRequestExecutorFilter extends TestCase
+{
+	private RequestExecutorFilter filter;
+	private CountDownLatch release;
+
+	public void setUp() throws Exception
+	{
+		this.filter = new RequestExecutorFilter();
+		this.filter.setRpcThreads(1);
+		this.filter.setQueueSize(1);
+		this.filter.setBackpressure("reject");
+		this.filter.start();
+
+		this.release = new CountDownLatch(1);
+	}
+
+	public void tearDown() throws Exception
+	{
+		this.release.countDown();
+		this.filter.stop();
+	}
+
+	public void testLifecycleEventsAreNotShed() throws Exception
+	{
+		//one session holds the only thread of the lane, the next one takes the only queue slot
+		RecordingFilter busy = new RecordingFilter(this.release);
+		this.filter.messageReceived(busy, new DummySession(), "busy");
+		assertTrue(busy.started.await(10, TimeUnit.SECONDS));
+		this.filter.messageReceived(new RecordingFilter(this.release), new DummySession(), "queued");
+
+		RecordingFilter turnedAway = new RecordingFilter(null);
+		IoSession session = new DummySession();
+		this.filter.sessionOpened(turnedAway, session);
+		this.filter.messageReceived(turnedAway, session, "request");
+		this.filter.exceptionCaught(turnedAway, session, new RuntimeException());
+		this.filter.sessionClosed(turnedAway, session);
+
+		List<String> events = turnedAway.getEvents();
+		assertEquals(3, events.size());
+		assertEquals("sessionOpened", events.get(0));
+		assertEquals("exceptionCaught", events.get(1));
+		assertEquals("sessionClosed", events.get(2));
+
+		RequestLane rpc = this.filter.getLanes().get(1);
+		assertEquals("rpc", rpc.getName());
+		assertTrue(rpc.getRejectedCount() >= 1);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private static class RecordingFilter implements NextFilter
+	{
+		private CountDownLatch release;
+		private CountDownLatch started = new CountDownLatch(1);
+		private List<String> events = new ArrayList<String>();
+
+		private RecordingFilter(CountDownLatch release)
+		{
+			this.release = release;
+		}
+
+		private synchronized List<String> getEvents()
+		{
+			return new ArrayList<String>(this.events);
+		}
+
+		private synchronized void record(String event)
+		{
+			this.events.add(event);
+		}
+
+		public void messageReceived(IoSession session, Object message)
+		{
+			this.record("messageReceived");
+			this.started.countDown();
+			if(this.release != null)
+			{
+				try
+				{
+					this.release.await(10, TimeUnit.SECONDS);
+				}
+				catch(InterruptedException ie)
+				{
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+
+		public void sessionOpened(IoSession session)
+		{
+			this.record("sessionOpened");
+		}
+
+		public void sessionClosed(IoSession session)
+		{
+			this.record("sessionClosed");
+		}
+
+		public void exceptionCaught(IoSession session, Throwable cause)
+		{
+			this.record("exceptionCaught");
+		}
+
+		public void sessionCreated(IoSession session)
+		{
+			this.record("sessionCreated");
+		}
+
+		public void sessionIdle(IoSession session, IdleStatus status)
+		{
+			this.record("sessionIdle");
+		}
+
+		public void messageSent(IoSession session, WriteRequest writeRequest)
+		{
+			this.record("messageSent");
+		}
+
+		public void filterWrite(IoSession session, WriteRequest writeRequest)
+		{
+		}
+
+		public void filterClose(IoSession session)
+		{
+		}
+	}
+}
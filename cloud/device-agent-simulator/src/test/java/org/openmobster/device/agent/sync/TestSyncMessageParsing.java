@@ -0,0 +1,221 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.device.agent.sync;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.synchronizer.server.SyncObjectGenerator;
+
+/**
+ * Parses the messages of the device agent with the server's SyncObjectGenerator
+ *
+ * @author openmobster@gmail.com
+ */
+public class TestSyncMessageParsing extends TestCase
+{
+	private SyncXMLGenerator xmlGenerator;
+	private SyncObjectGenerator objectGenerator;
+
+	public void setUp() throws Exception
+	{
+		this.xmlGenerator = new SyncXMLGenerator();
+		this.objectGenerator = new SyncObjectGenerator();
+	}
+
+	public void testInitMessage() throws Exception
+	{
+		Anchor anchor = new Anchor();
+		anchor.setLastSync("1000");
+		anchor.setNextSync("2000");
+
+		Item item = new Item();
+		item.setSource("testChannel");
+		item.setTarget("testChannel");
+		item.setMeta(this.xmlGenerator.generateAnchor(anchor));
+
+		Alert alert = new Alert();
+		alert.setCmdId("1");
+		alert.setData("200");
+		alert.addItem(item);
+
+		SyncMessage message = this.createMessage("1");
+		message.setMaxClientSize(4000);
+		message.setCredential(new Credential("syncml:auth-basic", "blah@gmail.com:blahblah"));
+		message.addAlert(alert);
+
+		Session session = this.createSession();
+		session.getClientInitPackage().addMessage(message);
+
+		String xml = this.xmlGenerator.generateInitMessage(session, message);
+		org.openmobster.core.synchronizer.server.Session parsed = this.objectGenerator.parseClientInitMessage(xml);
+		org.openmobster.core.synchronizer.model.SyncMessage parsedMessage = parsed.getClientInitPackage().findMessage("1");
+
+		assertEquals("session", parsed.getSessionId());
+		assertEquals("testApp", parsed.getApp());
+		assertEquals("IMEI:1", parsed.getSource());
+		assertEquals("server", parsed.getTarget());
+		assertEquals(4000, parsedMessage.getMaxClientSize());
+		assertTrue(parsedMessage.isFinal());
+
+		//the Meta of the Cred carries a stray xmlns as text
+		org.openmobster.core.synchronizer.model.Credential credential = parsedMessage.getCredential();
+		assertEquals("syncml:auth-basic", credential.getType());
+		assertEquals("blah@gmail.com:blahblah", credential.getData());
+
+		List alerts = parsedMessage.getAlerts();
+		assertEquals(1, alerts.size());
+		org.openmobster.core.synchronizer.model.Alert parsedAlert = (org.openmobster.core.synchronizer.model.Alert)alerts.get(0);
+		assertEquals("1", parsedAlert.getCmdId());
+		assertEquals("200", parsedAlert.getData());
+
+		org.openmobster.core.synchronizer.model.Item parsedItem = (org.openmobster.core.synchronizer.model.Item)parsedAlert.getItems().get(0);
+		assertEquals("testChannel", parsedItem.getSource());
+		assertEquals("testChannel", parsedItem.getTarget());
+
+		org.openmobster.core.synchronizer.server.engine.Anchor parsedAnchor = this.objectGenerator.parseAnchor(parsedItem.getMeta());
+		assertEquals("1000", parsedAnchor.getLastSync());
+		assertEquals("2000", parsedAnchor.getNextSync());
+	}
+
+	public void testSyncMessage() throws Exception
+	{
+		SyncCommand command = new SyncCommand();
+		command.setCmdId("2");
+		command.setSource("testChannel");
+		command.setTarget("testChannel");
+		command.setNumberOfChanges("4");
+
+		//first chunk of a bean too big for one message
+		Add chunk = new Add();
+		chunk.setCmdId("3");
+		chunk.setMeta("<Size>10</Size>");
+		chunk.addItem(this.createItem("bean1", "01234", true));
+		command.addOperationCommand(chunk);
+
+		Replace replace = new Replace();
+		replace.setCmdId("4");
+		replace.addItem(this.createItem("bean2", "<bean><name>a & b</name></bean>", false));
+		command.addOperationCommand(replace);
+
+		Delete archive = new Delete();
+		archive.setCmdId("5");
+		archive.setArchive(true);
+		archive.addItem(this.createItem("bean3", null, false));
+		command.addOperationCommand(archive);
+
+		Delete softDelete = new Delete();
+		softDelete.setCmdId("6");
+		softDelete.setSoftDelete(true);
+		softDelete.addItem(this.createItem("bean4", null, false));
+		command.addOperationCommand(softDelete);
+
+		MapItem mapItem = new MapItem();
+		mapItem.setSource("device://1");
+		mapItem.setTarget("server://1");
+
+		RecordMap recordMap = new RecordMap();
+		recordMap.setCmdId("7");
+		recordMap.setSource("testChannel");
+		recordMap.setTarget("testChannel");
+		recordMap.addMapItem(mapItem);
+
+		SyncMessage message = this.createMessage("2");
+		message.addSyncCommand(command);
+		message.setRecordMap(recordMap);
+
+		Session session = this.createSession();
+		session.getClientSyncPackage().addMessage(message);
+
+		String xml = this.xmlGenerator.generateSyncMessage(session, message);
+		org.openmobster.core.synchronizer.server.Session parsed = this.objectGenerator.parseClientSyncMessage(xml);
+		org.openmobster.core.synchronizer.model.SyncMessage parsedMessage = parsed.getClientSyncPackage().findMessage("2");
+
+		List commands = parsedMessage.getSyncCommands();
+		assertEquals(1, commands.size());
+		org.openmobster.core.synchronizer.model.SyncCommand parsedCommand = (org.openmobster.core.synchronizer.model.SyncCommand)commands.get(0);
+		assertEquals("2", parsedCommand.getCmdId());
+		assertEquals("testChannel", parsedCommand.getSource());
+		assertEquals("testChannel", parsedCommand.getTarget());
+		assertEquals("4", parsedCommand.getNumberOfChanges());
+
+		//Chunk
+		assertEquals(1, parsedCommand.getAddCommands().size());
+		org.openmobster.core.synchronizer.model.Add parsedChunk = (org.openmobster.core.synchronizer.model.Add)parsedCommand.getAddCommands().get(0);
+		assertEquals("3", parsedChunk.getCmdId());
+		assertEquals("<Size>10</Size>", parsedChunk.getMeta());
+		assertTrue(parsedChunk.isChunked());
+		assertEquals("01234", this.getItem(parsedChunk).getData());
+		parsed.addChunk(parsedChunk);
+		assertEquals(10, parsed.getTotalSizeOfChunks());
+
+		//Replace
+		assertEquals(1, parsedCommand.getReplaceCommands().size());
+		org.openmobster.core.synchronizer.model.Replace parsedReplace = (org.openmobster.core.synchronizer.model.Replace)parsedCommand.getReplaceCommands().get(0);
+		assertFalse(parsedReplace.isChunked());
+		assertEquals("bean2", this.getItem(parsedReplace).getSource());
+		assertEquals("<bean><name>a & b</name></bean>", this.getItem(parsedReplace).getData());
+
+		//Deletes
+		List deletes = parsedCommand.getDeleteCommands();
+		assertEquals(2, deletes.size());
+		org.openmobster.core.synchronizer.model.Delete parsedArchive = (org.openmobster.core.synchronizer.model.Delete)deletes.get(0);
+		assertEquals("bean3", this.getItem(parsedArchive).getSource());
+		assertTrue(parsedArchive.isArchive());
+		assertFalse(parsedArchive.isSoftDelete());
+		org.openmobster.core.synchronizer.model.Delete parsedSoftDelete = (org.openmobster.core.synchronizer.model.Delete)deletes.get(1);
+		assertEquals("bean4", this.getItem(parsedSoftDelete).getSource());
+		assertFalse(parsedSoftDelete.isArchive());
+		assertTrue(parsedSoftDelete.isSoftDelete());
+
+		//Map
+		org.openmobster.core.synchronizer.model.RecordMap parsedMap = parsedMessage.getRecordMap();
+		assertNotNull(parsedMap);
+		assertEquals("7", parsedMap.getCmdId());
+		assertEquals("testChannel", parsedMap.getSource());
+		assertEquals("testChannel", parsedMap.getTarget());
+		assertEquals(1, parsedMap.getMapItems().size());
+		org.openmobster.core.synchronizer.model.MapItem parsedMapItem = (org.openmobster.core.synchronizer.model.MapItem)parsedMap.getMapItems().get(0);
+		assertEquals("device://1", parsedMapItem.getSource());
+		assertEquals("server://1", parsedMapItem.getTarget());
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private Session createSession()
+	{
+		Session session = new Session();
+		session.setSessionId("session");
+		session.setApp("testApp");
+		session.setSource("IMEI:1");
+		session.setTarget("server");
+		return session;
+	}
+
+	private SyncMessage createMessage(String messageId)
+	{
+		SyncMessage message = new SyncMessage();
+		message.setMessageId(messageId);
+		message.setClientInitiated(true);
+		message.setFinal(true);
+		return message;
+	}
+
+	private Item createItem(String source, String data, boolean hasMoreData)
+	{
+		Item item = new Item();
+		item.setSource(source);
+		item.setData(data);
+		item.setMoreData(hasMoreData);
+		return item;
+	}
+
+	private org.openmobster.core.synchronizer.model.Item getItem(org.openmobster.core.synchronizer.model.AbstractOperation operation)
+	{
+		return (org.openmobster.core.synchronizer.model.Item)operation.getItems().get(0);
+	}
+}
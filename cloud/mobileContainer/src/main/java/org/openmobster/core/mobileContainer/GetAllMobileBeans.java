@@ -12,6 +12,8 @@ import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.apache.log4j.Logger;
@@ -21,6 +23,7 @@ import org.openmobster.cloud.api.sync.Channel;
 import org.openmobster.cloud.api.sync.ChannelInfo;
 import org.openmobster.cloud.api.sync.MobileBean;
 import org.openmobster.cloud.api.sync.MobileBeanId;
+import org.openmobster.cloud.api.sync.PagingChannel;
 import org.openmobster.core.services.MobileObjectMonitor;
 
 
@@ -31,6 +34,8 @@ public class GetAllMobileBeans implements ContainerService
 {
 	private static Logger log = Logger.getLogger(GetAllMobileBeans.class);
 	
+	private static final int pageSize = 500;
+	
 	private String id;
 	private MobileObjectMonitor monitor;
 	
@@ -105,55 +110,63 @@ public class GetAllMobileBeans implements ContainerService
 					all = new ArrayList();
 				}
 				
-				List<? extends MobileBean> others = connector.readAll();
+				ChannelInfo connectorInfo = (ChannelInfo)connector.getClass().
+				getAnnotation(ChannelInfo.class);
+				Class objectClazz = Thread.currentThread().
+				getContextClassLoader().
+				loadClass(connectorInfo.mobileBeanClass());
+				
+				Field objectIdField = null;
+				Field[] declaredFields = objectClazz.getDeclaredFields();			
+				for(Field field: declaredFields)
+				{		
+					Annotation id = field.getAnnotation(MobileBeanId.class);	
+					if(id != null)
+					{
+						objectIdField = field;
+						break;
+					}
+				}
+				
+				Set<String> bootupIds = new HashSet<String>();
+				for(MobileBean allBean: all)
+				{
+					bootupIds.add(BeanUtils.getProperty(allBean, objectIdField.getName()));
+				}
 				
-				if(others != null)
+				//a PagingChannel is read a page at a time, only the ids of its beans are kept
+				List buffer = new ArrayList();
+				if(connector instanceof PagingChannel)
 				{
-					List buffer = new ArrayList();
-					for(MobileBean otherBean: others)
+					PagingChannel pagingChannel = (PagingChannel)connector;
+					int start = 0;
+					while(true)
 					{
-						ChannelInfo connectorInfo = (ChannelInfo)connector.getClass().
-						getAnnotation(ChannelInfo.class);
-						Class objectClazz = Thread.currentThread().
-						getContextClassLoader().
-						loadClass(connectorInfo.mobileBeanClass());
-						
-						Field objectIdField = null;
-						Field[] declaredFields = objectClazz.getDeclaredFields();			
-						for(Field field: declaredFields)
-						{		
-							Annotation id = field.getAnnotation(MobileBeanId.class);	
-							if(id != null)
-							{
-								objectIdField = field;
-								break;
-							}
+						List<? extends MobileBean> page = pagingChannel.readPage(start, pageSize);
+						if(page == null || page.isEmpty())
+						{
+							break;
 						}
 						
-						String otherBeanObjectId = BeanUtils.getProperty(otherBean, objectIdField.getName());
-						
-						boolean objectFound = false;
-						for(MobileBean allBean: all)
-						{							
-							String objectId = BeanUtils.getProperty(allBean, objectIdField.getName());
-							if(objectId.equals(otherBeanObjectId))
-							{
-								objectFound = true;
-								break;
-							}
-						}
+						this.addProxies(page, bootupIds, objectClazz, objectIdField, buffer);
 						
-						if(!objectFound)
+						if(page.size() < pageSize)
 						{
-							//then send meta data about the bean back to be synced up later by the device's sync engine
-							MobileBean metaData = (MobileBean)objectClazz.newInstance();							
-							BeanUtils.setProperty(metaData, objectIdField.getName(), "proxy[["+otherBeanObjectId+"]]");
-							buffer.add(metaData);
+							break;
 						}
+						start += page.size();
 					}
-					
-					all.addAll(buffer);
 				}
+				else
+				{
+					List<? extends MobileBean> others = connector.readAll();
+					if(others != null)
+					{
+						this.addProxies(others, bootupIds, objectClazz, objectIdField, buffer);
+					}
+				}
+				
+				all.addAll(buffer);
 			}
 			
 			response.setAllBeans(allBeans);
@@ -172,4 +185,20 @@ public class GetAllMobileBeans implements ContainerService
 			throw new InvocationException(t.getMessage(), t);
 		}
 	}
+	
+	private void addProxies(List<? extends MobileBean> others, Set<String> bootupIds, Class objectClazz, 
+	Field objectIdField, List buffer) throws Exception
+	{
+		for(MobileBean otherBean: others)
+		{
+			String otherBeanObjectId = BeanUtils.getProperty(otherBean, objectIdField.getName());
+			if(!bootupIds.contains(otherBeanObjectId))
+			{
+				//then send meta data about the bean back to be synced up later by the device's sync engine
+				MobileBean metaData = (MobileBean)objectClazz.newInstance();							
+				BeanUtils.setProperty(metaData, objectIdField.getName(), "proxy[["+otherBeanObjectId+"]]");
+				buffer.add(metaData);
+			}
+		}
+	}
 }
@@ -0,0 +1,101 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.mobileContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.openmobster.cloud.api.sync.Channel;
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.cloud.api.sync.PagingChannel;
+import org.openmobster.core.services.MobileObjectMonitor;
+
+
+/**
+ * Reads one page of the beans of a PagingChannel. Any other Channel gets a STATUS_NOT_SUPPORTED, and 
+ * has to be read with /bean/all instead
+ * 
+ * @author openmobster@gmail.com
+ */
+public class GetMobileBeanPage implements ContainerService
+{
+	private static Logger log = Logger.getLogger(GetMobileBeanPage.class);
+	
+	private String id;
+	private MobileObjectMonitor monitor;
+	
+	public GetMobileBeanPage()
+	{
+		
+	}
+	
+	public void start()
+	{
+		
+	}
+	
+	public void stop()
+	{
+		
+	}
+	
+	public String getId() 
+	{
+		return id;
+	}
+
+	public void setId(String id) 
+	{
+		this.id = id;
+	}
+	
+	public MobileObjectMonitor getMonitor() 
+	{
+		return monitor;
+	}
+
+	public void setMonitor(MobileObjectMonitor monitor) 
+	{
+		this.monitor = monitor;
+	}
+	//---------------------------------------------------------------------------------------------------
+	public InvocationResponse execute(Invocation invocation) throws InvocationException
+	{
+		InvocationResponse response = InvocationResponse.getInstance();
+		
+		String connectorId = invocation.getConnectorId();
+		
+		//Retrieve the correct MobileObjectConnector		
+		Channel connector = monitor.lookup(connectorId);
+		if(connector == null)
+		{
+			response.setStatus(InvocationResponse.STATUS_NOT_FOUND);
+			return response;
+		}
+		
+		if(!(connector instanceof PagingChannel))
+		{
+			response.setStatus(InvocationResponse.STATUS_NOT_SUPPORTED);
+			return response;
+		}
+		
+		List<MobileBean> beans = new ArrayList<MobileBean>();
+		List<? extends MobileBean> page = ((PagingChannel)connector).readPage(invocation.getStart(), 
+		invocation.getSize());
+		if(page != null)
+		{
+			beans.addAll(page);
+		}
+		
+		response.setAllBeans(beans);
+		return response;
+	}
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.mobileContainer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.openmobster.cloud.api.sync.BatchReadingChannel;
+import org.openmobster.cloud.api.sync.Channel;
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.core.services.MobileObjectMonitor;
+
+
+/**
+ * Reads a set of beans by id. Uses a single readAll call on a BatchReadingChannel, and falls back to 
+ * one read per id on any other Channel
+ * 
+ * @author openmobster@gmail.com
+ */
+public class GetMobileBeans implements ContainerService
+{
+	private static Logger log = Logger.getLogger(GetMobileBeans.class);
+	
+	private String id;
+	private MobileObjectMonitor monitor;
+	
+	public GetMobileBeans()
+	{
+		
+	}
+	
+	public void start()
+	{
+		
+	}
+	
+	public void stop()
+	{
+		
+	}
+	
+	public String getId() 
+	{
+		return id;
+	}
+
+	public void setId(String id) 
+	{
+		this.id = id;
+	}
+	
+	public MobileObjectMonitor getMonitor() 
+	{
+		return monitor;
+	}
+
+	public void setMonitor(MobileObjectMonitor monitor) 
+	{
+		this.monitor = monitor;
+	}
+	//---------------------------------------------------------------------------------------------------
+	public InvocationResponse execute(Invocation invocation) throws InvocationException
+	{
+		InvocationResponse response = InvocationResponse.getInstance();
+		List<MobileBean> beans = new ArrayList<MobileBean>();
+		response.setAllBeans(beans);
+		
+		String connectorId = invocation.getConnectorId();
+		
+		//Retrieve the correct MobileObjectConnector		
+		Channel connector = monitor.lookup(connectorId);
+		if(connector == null)
+		{
+			response.setStatus(InvocationResponse.STATUS_NOT_FOUND);
+			return response;
+		}
+		
+		List<String> beanIds = invocation.getBeanIds();
+		if(beanIds == null || beanIds.isEmpty())
+		{
+			return response;
+		}
+		
+		if(connector instanceof BatchReadingChannel)
+		{
+			List<? extends MobileBean> found = ((BatchReadingChannel)connector).readAll(beanIds);
+			if(found != null)
+			{
+				for(MobileBean bean: found)
+				{
+					if(bean != null)
+					{
+						beans.add(bean);
+					}
+				}
+			}
+		}
+		else
+		{
+			for(String beanId: beanIds)
+			{
+				MobileBean bean = connector.read(beanId);
+				if(bean != null)
+				{
+					beans.add(bean);
+				}
+			}
+		}
+		
+		return response;
+	}
+}
@@ -11,6 +11,7 @@ package org.openmobster.core.mobileContainer;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashMap;
+import java.util.List;
 import java.io.Serializable;
 
 import org.openmobster.cloud.api.rpc.Request;
@@ -112,6 +113,36 @@ public class Invocation implements Serializable
 		this.setAttribute("beanId", beanId);
 	}
 	
+	public List<String> getBeanIds()
+	{
+		return (List<String>)this.getAttribute("beanIds");
+	}
+	
+	public void setBeanIds(List<String> beanIds)
+	{
+		this.setAttribute("beanIds", beanIds);
+	}
+	
+	public int getStart()
+	{
+		return ((Integer)this.getAttribute("start")).intValue();
+	}
+	
+	public void setStart(int start)
+	{
+		this.setAttribute("start", new Integer(start));
+	}
+	
+	public int getSize()
+	{
+		return ((Integer)this.getAttribute("size")).intValue();
+	}
+	
+	public void setSize(int size)
+	{
+		this.setAttribute("size", new Integer(size));
+	}
+	
 	public String getSerializedBean()
 	{
 		return (String)this.getAttribute("serializedBean");
@@ -31,6 +31,7 @@ public class InvocationResponse implements Serializable
 	
 	public static String STATUS_NOT_FOUND = "404";
 	public static String STATUS_SUCCESS = "200";
+	public static String STATUS_NOT_SUPPORTED = "501";
 	
 	private InvocationResponse()
 	{
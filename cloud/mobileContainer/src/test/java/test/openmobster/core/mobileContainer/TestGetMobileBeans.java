@@ -0,0 +1,204 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package test.openmobster.core.mobileContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.openmobster.cloud.api.sync.BatchReadingChannel;
+import org.openmobster.cloud.api.sync.Channel;
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.core.mobileContainer.GetMobileBeans;
+import org.openmobster.core.mobileContainer.Invocation;
+import org.openmobster.core.mobileContainer.InvocationResponse;
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.services.MobileObjectMonitor;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestGetMobileBeans extends TestCase
+{
+	private GetMobileBeans service;
+	private Map<String,Channel> channels;
+
+	public void setUp() throws Exception
+	{
+		this.channels = new HashMap<String,Channel>();
+
+		this.service = new GetMobileBeans();
+		this.service.setMonitor(new MobileObjectMonitor()
+		{
+			public Channel lookup(String channelId)
+			{
+				return TestGetMobileBeans.this.channels.get(channelId);
+			}
+		});
+	}
+
+	public void testBatchReadingChannel() throws Exception
+	{
+		BatchChannel channel = new BatchChannel();
+		this.channels.put("batch", channel);
+
+		InvocationResponse response = this.invoke("batch", "1", "missing", "2");
+
+		assertEquals(1, channel.batchReads);
+		assertEquals(0, channel.reads);
+		assertEquals(Arrays.asList(new String[]{"1", "missing", "2"}), channel.requested);
+		this.assertBeans(response, "1", "2");
+	}
+
+	public void testChannel() throws Exception
+	{
+		PlainChannel channel = new PlainChannel();
+		this.channels.put("plain", channel);
+
+		InvocationResponse response = this.invoke("plain", "1", "missing", "2");
+
+		//one read per id
+		assertEquals(3, channel.reads);
+		this.assertBeans(response, "1", "2");
+	}
+
+	public void testNoIds() throws Exception
+	{
+		BatchChannel channel = new BatchChannel();
+		this.channels.put("batch", channel);
+
+		InvocationResponse response = this.invoke("batch");
+
+		assertEquals(0, channel.batchReads);
+		assertTrue(response.getAllBeans().isEmpty());
+	}
+
+	public void testChannelNotFound() throws Exception
+	{
+		InvocationResponse response = this.invoke("unknown", "1");
+
+		assertEquals(InvocationResponse.STATUS_NOT_FOUND, response.getStatus());
+		assertTrue(response.getAllBeans().isEmpty());
+	}
+	//-----------------------------------------------------------------------------------------------------
+	private InvocationResponse invoke(String channel, String... beanIds) throws Exception
+	{
+		Invocation invocation = Invocation.getInstance();
+		invocation.setServiceUrl("/bean/ids");
+		invocation.setConnectorId(channel);
+		invocation.setBeanIds(new ArrayList<String>(Arrays.asList(beanIds)));
+		return this.service.execute(invocation);
+	}
+
+	private void assertBeans(InvocationResponse response, String... expected)
+	{
+		List<MobileBean> beans = response.getAllBeans();
+		assertEquals(expected.length, beans.size());
+		for(int i=0; i<expected.length; i++)
+		{
+			assertEquals(expected[i], ((IdBean)beans.get(i)).id);
+		}
+	}
+
+	private static class IdBean implements MobileBean
+	{
+		private String id;
+
+		private IdBean(String id)
+		{
+			this.id = id;
+		}
+	}
+
+	/**
+	 * Knows every bean except "missing"
+	 */
+	private static class PlainChannel implements Channel
+	{
+		protected int reads;
+
+		public MobileBean read(String id)
+		{
+			this.reads++;
+			if(id.equals("missing"))
+			{
+				return null;
+			}
+			return new IdBean(id);
+		}
+
+		public List<? extends MobileBean> readAll()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public List<? extends MobileBean> bootup()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public String create(MobileBean mobileBean)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void update(MobileBean mobileBean)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void delete(MobileBean mobileBean)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public String[] scanForUpdates(Device device, Date lastScanTimestamp)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public String[] scanForNew(Device device, Date lastScanTimestamp)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public String[] scanForDeletions(Device device, Date lastScanTimestamp)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class BatchChannel extends PlainChannel implements BatchReadingChannel
+	{
+		private int batchReads;
+		private List<String> requested;
+
+		public List<? extends MobileBean> readAll(Collection<String> ids)
+		{
+			this.batchReads++;
+			this.requested = new ArrayList<String>(ids);
+
+			List<IdBean> found = new ArrayList<IdBean>();
+			for(String id: ids)
+			{
+				if(!id.equals("missing"))
+				{
+					found.add(new IdBean(id));
+				}
+			}
+			return found;
+		}
+	}
+}
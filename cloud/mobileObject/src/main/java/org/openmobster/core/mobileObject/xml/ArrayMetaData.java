@@ -16,4 +16,7 @@ class ArrayMetaData
 	String arrayUri;
 	String arrayClass;
 	int arrayLength;
+	
+	//resolved once per deserialize
+	Class elementType;
 }
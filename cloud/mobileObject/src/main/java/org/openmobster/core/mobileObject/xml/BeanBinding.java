@@ -0,0 +1,226 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.mobileObject.xml;
+
+import java.beans.PropertyDescriptor;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.commons.beanutils.ConvertUtils;
+import org.apache.commons.beanutils.Converter;
+import org.apache.commons.beanutils.PropertyUtils;
+
+/**
+ * The properties of a bean class, along with their accessors and converters. It is looked up once per class
+ * and cached, so that deserializing a bean does not go through the introspection and converter lookups for 
+ * every field
+ * 
+ * Converters registered with ConvertUtils after a class has been bound are not picked up for that class
+ * 
+ * The classes are the beans of the deployed channel apps, so they are held weakly and a redeployed app can
+ * be unloaded. A binding refers back to its class through the accessors, which is why it is only held
+ * softly
+ * 
+ * @author openmobster@gmail.com
+ */
+final class BeanBinding 
+{
+	private static final Map<Class,SoftReference<BeanBinding>> bindings = 
+	Collections.synchronizedMap(new WeakHashMap<Class,SoftReference<BeanBinding>>());
+	
+	private Map<String,Property> properties;
+	
+	private BeanBinding(Class beanClass)
+	{
+		this.properties = new HashMap<String,Property>();
+		
+		PropertyDescriptor[] descriptors = PropertyUtils.getPropertyDescriptors(beanClass);
+		if(descriptors != null)
+		{
+			for(PropertyDescriptor descriptor: descriptors)
+			{
+				//only indexed accessors, there is nothing here to bind to
+				if(descriptor.getPropertyType() == null)
+				{
+					continue;
+				}
+				this.properties.put(descriptor.getName(), new Property(descriptor));
+			}
+		}
+	}
+	
+	static BeanBinding getInstance(Class beanClass)
+	{
+		SoftReference<BeanBinding> reference = bindings.get(beanClass);
+		BeanBinding binding = reference != null ? reference.get() : null;
+		if(binding == null)
+		{
+			//a race only binds the class twice
+			binding = new BeanBinding(beanClass);
+			bindings.put(beanClass, new SoftReference<BeanBinding>(binding));
+		}
+		return binding;
+	}
+	
+	/**
+	 * @param name
+	 * @return the property, or null if the bean does not have it
+	 */
+	Property getProperty(String name)
+	{
+		return this.properties.get(name);
+	}
+	//---------------------------------------------------------------------------------------------------------------------------
+	private static Converter lookupConverter(Class type)
+	{
+		//same fallback as ConvertUtils.convert(String, Class)
+		Converter converter = ConvertUtils.lookup(type);
+		if(converter == null)
+		{
+			converter = ConvertUtils.lookup(String.class);
+		}
+		return converter;
+	}
+	
+	static final class Property
+	{
+		private String name;
+		private Class type;
+		private Method readMethod;
+		private Method writeMethod;
+		private Converter converter;
+		private Class componentType;
+		private Converter componentConverter;
+		private Class elementType;
+		
+		private Property(PropertyDescriptor descriptor)
+		{
+			this.name = descriptor.getName();
+			this.type = descriptor.getPropertyType();
+			this.readMethod = descriptor.getReadMethod();
+			this.writeMethod = descriptor.getWriteMethod();
+			this.converter = lookupConverter(this.type);
+			
+			if(this.type.isArray())
+			{
+				this.componentType = this.type.getComponentType();
+				this.componentConverter = lookupConverter(this.componentType);
+			}
+			else if(Collection.class.isAssignableFrom(this.type) && this.readMethod != null)
+			{
+				//Collections created on the device carry no class information, so the elements are created 
+				//from the parameterized type
+				Type returnType = this.readMethod.getGenericReturnType();
+				if(returnType instanceof ParameterizedType)
+				{
+					for(Type actualType: ((ParameterizedType)returnType).getActualTypeArguments())
+					{
+						this.elementType = actualType instanceof Class ? (Class)actualType : null;
+					}
+				}
+			}
+		}
+		
+		String getName()
+		{
+			return this.name;
+		}
+		
+		Class getType()
+		{
+			return this.type;
+		}
+		
+		boolean isArray()
+		{
+			return this.componentType != null;
+		}
+		
+		boolean isCollection()
+		{
+			return Collection.class.isAssignableFrom(this.type);
+		}
+		
+		boolean isBinary()
+		{
+			return this.isArray() && this.componentType.isAssignableFrom(byte.class);
+		}
+		
+		/**
+		 * A Collection or an Array other than binary data
+		 */
+		boolean isIndexed()
+		{
+			return this.isCollection() || (this.isArray() && !this.isBinary());
+		}
+		
+		boolean isWritable()
+		{
+			return this.writeMethod != null;
+		}
+		
+		/**
+		 * The concrete type of the elements of this Array or Collection
+		 */
+		Class getElementType()
+		{
+			if(this.isArray())
+			{
+				return this.componentType;
+			}
+			if(this.elementType == null)
+			{
+				throw new IllegalStateException("Element type of '"+this.name+"' can not be determined. Collections must be parameterized with concrete types");
+			}
+			return this.elementType;
+		}
+		
+		Object get(Object bean) throws Exception
+		{
+			if(this.readMethod == null)
+			{
+				throw new NoSuchMethodException("Property '"+this.name+"' has no getter method");
+			}
+			return this.readMethod.invoke(bean);
+		}
+		
+		void set(Object bean, Object value) throws Exception
+		{
+			if(this.writeMethod == null)
+			{
+				throw new NoSuchMethodException("Property '"+this.name+"' has no setter method");
+			}
+			this.writeMethod.invoke(bean, value);
+		}
+		
+		Object convert(String value)
+		{
+			return this.converter.convert(this.type, value);
+		}
+		
+		/**
+		 * Converts a value stored at an index of this property
+		 */
+		Object convertElement(String value)
+		{
+			if(this.isArray())
+			{
+				return this.componentConverter.convert(this.componentType, value);
+			}
+			return this.converter.convert(this.type, value);
+		}
+	}
+}
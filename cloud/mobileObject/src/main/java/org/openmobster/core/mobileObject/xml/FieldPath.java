@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.mobileObject.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The property path a field uri points to, split into its steps. The same uris come in with every bean of a 
+ * channel, so the parsed paths are cached
+ * 
+ * /org.openmobster.MockPOJO/children[1]/value -> children[1].value
+ * 
+ * @author openmobster@gmail.com
+ */
+final class FieldPath 
+{
+	private static final int maxCachedPaths = 10000;
+	private static final ConcurrentHashMap<String,FieldPath> paths = new ConcurrentHashMap<String,FieldPath>();
+	
+	private String expression;
+	private Step[] steps;
+	
+	private FieldPath(String uri)
+	{
+		//tokens with a '.' are class names, not properties
+		StringBuilder buffer = new StringBuilder();
+		List<Step> steps = new ArrayList<Step>();
+		StringBuilder propertyPath = new StringBuilder();
+		
+		StringTokenizer st = new StringTokenizer(uri, "/");
+		while(st.hasMoreTokens())
+		{
+			String token = st.nextToken();
+			if(token.contains("."))
+			{
+				continue;
+			}
+			
+			if(buffer.length() > 0)
+			{
+				buffer.append('.');
+			}
+			buffer.append(token);
+			
+			Step step = new Step();
+			step.name = token;
+			int start = token.indexOf('[');
+			if(start != -1 && token.indexOf(']') != -1)
+			{
+				step.name = token.substring(0, start);
+				
+				int lastIndex = token.lastIndexOf('[');
+				step.arrayUri = propertyPath.toString()+"/"+token.substring(0, lastIndex);
+				step.index = Integer.parseInt(token.substring(lastIndex+1, token.length()-1).trim());
+			}
+			propertyPath.append("/"+token);
+			
+			steps.add(step);
+		}
+		
+		this.expression = buffer.toString();
+		this.steps = steps.toArray(new Step[steps.size()]);
+	}
+	
+	static FieldPath compile(String uri)
+	{
+		FieldPath path = paths.get(uri);
+		if(path == null)
+		{
+			path = new FieldPath(uri);
+			
+			//uris carry the array indexes, keep a channel with huge arrays from growing this without bound
+			if(paths.size() < maxCachedPaths)
+			{
+				paths.putIfAbsent(uri, path);
+			}
+		}
+		return path;
+	}
+	
+	String getExpression()
+	{
+		return this.expression;
+	}
+	
+	Step[] getSteps()
+	{
+		return this.steps;
+	}
+	
+	/**
+	 * A property of the bean itself, not nested and not indexed
+	 */
+	boolean isSimple()
+	{
+		return this.expression.indexOf('.') == -1 && this.expression.indexOf('[') == -1;
+	}
+	
+	static final class Step
+	{
+		String name;
+		int index = -1;
+		String arrayUri;
+	}
+}
@@ -0,0 +1,167 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.mobileObject.xml;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Reads the fields and the array meta data out of the device representation of a bean, in one streaming pass
+ * 
+ * @author openmobster@gmail.com
+ */
+final class MobileObjectReader 
+{
+	private static final XMLInputFactory factory = createFactory();
+	
+	private List<FieldValue> fields;
+	private List<ArrayMetaData> arrayMetaData;
+	
+	private MobileObjectReader()
+	{
+		this.fields = new ArrayList<FieldValue>();
+		this.arrayMetaData = new ArrayList<ArrayMetaData>();
+	}
+	
+	static MobileObjectReader parse(String deviceXml) throws XMLStreamException
+	{
+		MobileObjectReader mobileObject = new MobileObjectReader();
+		
+		XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(deviceXml));
+		try
+		{
+			boolean isFieldsActive = false;
+			boolean isFieldsRead = false;
+			while(reader.hasNext())
+			{
+				int event = reader.next();
+				if(event == XMLStreamConstants.START_ELEMENT)
+				{
+					String element = reader.getLocalName();
+					if(element.equals("fields") && !isFieldsRead)
+					{
+						//only the top level fields of the object
+						isFieldsActive = true;
+					}
+					else if(element.equals("field") && isFieldsActive)
+					{
+						mobileObject.fields.add(readField(reader));
+					}
+					else if(element.equals("array-metadata"))
+					{
+						mobileObject.arrayMetaData.add(readArrayMetaData(reader));
+					}
+				}
+				else if(event == XMLStreamConstants.END_ELEMENT && isFieldsActive && 
+				reader.getLocalName().equals("fields"))
+				{
+					isFieldsActive = false;
+					isFieldsRead = true;
+				}
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		
+		return mobileObject;
+	}
+	
+	List<FieldValue> getFields()
+	{
+		return this.fields;
+	}
+	
+	List<ArrayMetaData> getArrayMetaData()
+	{
+		return this.arrayMetaData;
+	}
+	//---------------------------------------------------------------------------------------------------------------------------
+	private static XMLInputFactory createFactory()
+	{
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		return factory;
+	}
+	
+	private static FieldValue readField(XMLStreamReader reader) throws XMLStreamException
+	{
+		FieldValue field = new FieldValue();
+		while(reader.hasNext())
+		{
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+			{
+				String element = reader.getLocalName();
+				if(element.equals("uri") && field.uri == null)
+				{
+					field.uri = reader.getElementText();
+				}
+				else if(element.equals("name") && field.name == null)
+				{
+					field.name = reader.getElementText();
+				}
+				else if(element.equals("value") && field.value == null)
+				{
+					field.value = reader.getElementText();
+				}
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("field"))
+			{
+				break;
+			}
+		}
+		return field;
+	}
+	
+	private static ArrayMetaData readArrayMetaData(XMLStreamReader reader) throws XMLStreamException
+	{
+		ArrayMetaData arrayMetaData = new ArrayMetaData();
+		while(reader.hasNext())
+		{
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
+			{
+				String element = reader.getLocalName();
+				if(element.equals("uri"))
+				{
+					arrayMetaData.arrayUri = reader.getElementText().trim();
+				}
+				else if(element.equals("array-length"))
+				{
+					arrayMetaData.arrayLength = Integer.parseInt(reader.getElementText().trim());
+				}
+				else if(element.equals("array-class"))
+				{
+					arrayMetaData.arrayClass = reader.getElementText().trim();
+				}
+			}
+			else if(event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("array-metadata"))
+			{
+				break;
+			}
+		}
+		return arrayMetaData;
+	}
+	
+	static class FieldValue
+	{
+		String uri;
+		String name;
+		String value;
+	}
+}
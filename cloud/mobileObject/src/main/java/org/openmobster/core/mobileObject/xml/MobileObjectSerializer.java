@@ -9,27 +9,14 @@
 package org.openmobster.core.mobileObject.xml;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Type;
-import java.beans.PropertyDescriptor;
 import java.util.List;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.StringTokenizer;
 import java.util.Map;
 import java.util.HashMap;
 
 import org.apache.commons.beanutils.BeanUtils;
-import org.apache.commons.beanutils.ConvertUtils;
-import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.log4j.Logger;
 
-
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
-import org.openmobster.core.common.XMLUtilities;
 import org.openmobster.core.common.Utilities;
 
 import com.thoughtworks.xstream.XStream;
@@ -43,7 +30,6 @@ public class MobileObjectSerializer
 	private static Logger log = Logger.getLogger(MobileObjectSerializer.class);
 	
 	private XStream streamer;
-	private XStream stateChecker;
 	
 	public MobileObjectSerializer()
 	{
@@ -58,8 +44,6 @@ public class MobileObjectSerializer
                 return new MobileObjectMapperWrapper(next);
             }
         }; 
-        
-        this.stateChecker = new XStream();
 	}
 	
 	public void stop()
@@ -71,18 +55,23 @@ public class MobileObjectSerializer
 	{
 		try
 		{			
-	        String coreXml = this.stateChecker.toXML(object);
-	        if(coreXml.contains("<null/>"))
-	        {
-	        	throw new IllegalStateException("The Object being mobilized has Illegal Null Array Elements!!");
-	        }
-	        
-	        
+	        //null array elements are rejected by the MobileObjectWriter during this same pass
 	        return this.streamer.toXML(object);
 		}
 		catch(Exception e)
 		{
 			log.error(this, e);
+			
+			//XStream wraps what the writer throws
+			Throwable cause = e;
+			while(!(cause instanceof IllegalStateException) && cause.getCause() != null)
+			{
+				cause = cause.getCause();
+			}
+			if(cause instanceof IllegalStateException)
+			{
+				throw new RuntimeException(cause);
+			}
 			throw new RuntimeException(e);
 		}
 	}
@@ -95,84 +84,61 @@ public class MobileObjectSerializer
 			
 			pojo = pojoClazz.newInstance();
 														
-			Document root = XMLUtilities.parse(deviceXml);
+			MobileObjectReader mobileObject = MobileObjectReader.parse(deviceXml);
 			
-			//Parse the Object Meta Data
-			List<ArrayMetaData> objectMetaData = new ArrayList<ArrayMetaData>();
-			NodeList metaDataNodes = root.getElementsByTagName("array-metadata");
-			if(metaDataNodes != null)
+			//Index the Object Meta Data by array uri
+			Map<String,ArrayMetaData> objectMetaData = new HashMap<String,ArrayMetaData>();
+			for(ArrayMetaData arrayMetaData: mobileObject.getArrayMetaData())
 			{
-				for(int i=0; i<metaDataNodes.getLength(); i++)
+				if(!objectMetaData.containsKey(arrayMetaData.arrayUri))
 				{
-					Element metaDataElement = (Element)metaDataNodes.item(i);
-					Element arrayUriElement = (Element)metaDataElement.getElementsByTagName("uri").item(0);
-					Element arrayLengthElement = (Element)metaDataElement.getElementsByTagName("array-length").item(0);
-					Element arrayClassElement = (Element)metaDataElement.getElementsByTagName("array-class").item(0);
-					
-					ArrayMetaData arrayMetaData = new ArrayMetaData();
-					arrayMetaData.arrayUri = arrayUriElement.getTextContent().trim();
-					arrayMetaData.arrayLength = Integer.parseInt(arrayLengthElement.getTextContent().trim());
-					arrayMetaData.arrayClass = arrayClassElement.getTextContent().trim();
-					
-					objectMetaData.add(arrayMetaData);
+					objectMetaData.put(arrayMetaData.arrayUri, arrayMetaData);
 				}
 			}
 			
 			//Set the fields
-			Element fieldsElement = (Element)root.getElementsByTagName("fields").item(0);
-			if(fieldsElement != null)
+			BeanBinding binding = BeanBinding.getInstance(pojo.getClass());
+			for(MobileObjectReader.FieldValue field: mobileObject.getFields())
 			{
-				NodeList fieldNodes = fieldsElement.getElementsByTagName("field");
-				if(fieldNodes != null)
+				FieldPath path = FieldPath.compile(field.uri);
+				String value = field.value;
+				
+				if(path.isSimple())
 				{
-					for(int i=0; i<fieldNodes.getLength(); i++)
+					//Simple Property
+					BeanBinding.Property property = binding.getProperty(path.getExpression());
+					if(property == null)
 					{
-						Element fieldElement = (Element)fieldNodes.item(i);
-						
-						String name = ((Element)fieldElement.
-						getElementsByTagName("name").item(0)).getTextContent();		
-						
-						String value = ((Element)fieldElement.
-						getElementsByTagName("value").item(0)).getTextContent();
-						
-						String uri = ((Element)fieldElement.
-						getElementsByTagName("uri").item(0)).getTextContent();		
-						
-						String expression = this.parseExpression(uri);
-						
-						if(expression.indexOf('.') == -1 && expression.indexOf('[')==-1)
-						{
-							//Simple Property
-							PropertyDescriptor metaData = PropertyUtils.getPropertyDescriptor(pojo, 
-							expression);
-							
-							if(metaData == null || metaData.getPropertyType() == null)
-							{
-								log.error("******************************");
-								log.error("MetaData Null For: "+expression);
-								log.error("Field Not Found on the MobileBean");
-								log.error("******************************");
-								continue;
-							}
-							
-							if(metaData.getPropertyType().isArray() && 
-							metaData.getPropertyType().getComponentType().isAssignableFrom(byte.class))
-							{
-								BeanUtils.setProperty(pojo, expression, 
-								Utilities.decodeBinaryData(value));
-							}
-							else
-							{
-								BeanUtils.setProperty(pojo, expression, value);
-							}							
-						}
-						else
-						{
-							//Nested Property
-							this.setNestedProperty(pojo, expression, value, objectMetaData);
-						}
+						log.error("******************************");
+						log.error("MetaData Null For: "+path.getExpression());
+						log.error("Field Not Found on the MobileBean");
+						log.error("******************************");
+						continue;
+					}
+					
+					if(!property.isWritable())
+					{
+						continue;
+					}
+					
+					if(property.isBinary())
+					{
+						property.set(pojo, Utilities.decodeBinaryData(value));
+					}
+					else if(property.isArray())
+					{
+						BeanUtils.setProperty(pojo, path.getExpression(), value);
+					}
+					else
+					{
+						property.set(pojo, property.convert(value));
 					}
 				}
+				else
+				{
+					//Nested Property
+					this.setNestedProperty(pojo, path, value, objectMetaData);
+				}
 			}
 			
 			return pojo;
@@ -184,113 +150,73 @@ public class MobileObjectSerializer
 		}
 	}
 	//---------------------------------------------------------------------------------------------------------------------------
-	private String parseExpression(String fieldUri)
-	{
-		String expression = "";
-		StringBuilder buffer = new StringBuilder();
-		
-		StringTokenizer st = new StringTokenizer(fieldUri, "/");
-		while(st.hasMoreTokens())
-		{
-			String token = st.nextToken();			
-			if(!token.contains("."))
-			{
-				buffer.append(token+"/");
-			}
-		}
-		
-		String local = buffer.toString();
-		if(local.endsWith("/"))
-	    {
-	    	local = local.substring(0, local.length()-1);
-	    }
-		
-		expression = local.replace("/", ".");
-		
-		return expression;
-	}
-	
-	private void setNestedProperty(Object mobileBean, String nestedProperty, String value,
-	List<ArrayMetaData> objectMetaData) 
+	private void setNestedProperty(Object mobileBean, FieldPath path, String value,
+	Map<String,ArrayMetaData> objectMetaData) 
 	{
 		try
 		{
-			StringTokenizer st = new StringTokenizer(nestedProperty, ".");
+			FieldPath.Step[] steps = path.getSteps();
 			Object courObj = mobileBean;
-			StringBuilder propertyPath = new StringBuilder();
 					
-			while(st.hasMoreTokens())
+			for(int i=0; i<steps.length; i++)
 			{
-				String token = st.nextToken();			
-				propertyPath.append("/"+token);
-				
-				PropertyDescriptor metaData = PropertyUtils.getPropertyDescriptor(courObj, token);			
-				if(token.indexOf('[')!=-1 && token.indexOf(']')!=-1)
-				{
-					String indexedPropertyName = token.substring(0, token.indexOf('['));
-					metaData = PropertyUtils.getPropertyDescriptor(courObj,indexedPropertyName);
-				}
+				FieldPath.Step step = steps[i];
 				
+				BeanBinding.Property metaData = BeanBinding.getInstance(courObj.getClass()).getProperty(step.name);
 				if(metaData == null)
 				{
 					log.error("******************************");
-					log.error("MetaData Null For: "+token);
+					log.error("MetaData Null For: "+step.name);
 					log.error("Field Not Found on the MobileBean");
 					log.error("******************************");
 					continue;
 				}
 							
-				if(!st.hasMoreTokens())
+				if(i == steps.length-1)
 				{				
-					if(Collection.class.isAssignableFrom(metaData.getPropertyType()) ||
-					   (metaData.getPropertyType().isArray() && !metaData.getPropertyType().getComponentType().
-						isAssignableFrom(byte.class)))
+					if(metaData.isIndexed())
 					{
 						//An IndexedProperty
-						this.initializeIndexedProperty(courObj, token, 
-						metaData, objectMetaData, propertyPath.toString());
+						this.initializeIndexedProperty(courObj, step, metaData, objectMetaData);
 						
-						if(metaData.getPropertyType().isArray())
+						Object indexedProperty = metaData.get(courObj);
+						Object element = metaData.convertElement(value);
+						if(metaData.isArray())
 						{
-							PropertyUtils.setNestedProperty(mobileBean, nestedProperty, 
-							ConvertUtils.convert(value, metaData.getPropertyType().getComponentType()));
+							Array.set(indexedProperty, step.index, element);
 						}
 						else
 						{
-							PropertyUtils.setNestedProperty(mobileBean, nestedProperty, 
-							ConvertUtils.convert(value, metaData.getPropertyType()));
+							this.asList(indexedProperty, metaData).set(step.index, element);
 						}
 					}
 					else
 					{
 						//A Simple Property														
-						if(metaData.getPropertyType().isArray() && 
-						metaData.getPropertyType().getComponentType().isAssignableFrom(byte.class))
+						if(metaData.isBinary())
 						{
-							BeanUtils.setProperty(mobileBean, nestedProperty, 
-							Utilities.decodeBinaryData(value));
+							if(metaData.isWritable())
+							{
+								metaData.set(courObj, Utilities.decodeBinaryData(value));
+							}
 						}
 						else
 						{
-							PropertyUtils.setNestedProperty(mobileBean, nestedProperty, 
-							ConvertUtils.convert(value, metaData.getPropertyType()));
+							metaData.set(courObj, metaData.convert(value));
 						}
 					}										
 				}
 				else
 				{							
-					if(Collection.class.isAssignableFrom(metaData.getPropertyType()) ||
-					   metaData.getPropertyType().isArray()
-					)
+					if(metaData.isCollection() || metaData.isArray())
 					{
 						//An IndexedProperty	
-						courObj = this.initializeIndexedProperty(courObj, token, 
-						metaData, objectMetaData, propertyPath.toString());
+						courObj = this.initializeIndexedProperty(courObj, step, metaData, objectMetaData);
 					}				
 					else
 					{
 						//A Simple Property
-						courObj = this.initializeSimpleProperty(courObj, token, metaData);										
+						courObj = this.initializeSimpleProperty(courObj, metaData);										
 					}								
 				}
 			}
@@ -298,115 +224,79 @@ public class MobileObjectSerializer
 		catch(Exception e)
 		{
 			log.info("---------------------------------------------------");
-			log.info("Blowing Up on---------"+nestedProperty);
+			log.info("Blowing Up on---------"+path.getExpression());
 			log.info("---------------------------------------------------");
 			log.error(this, e);
 			throw new RuntimeException(e);
 		}
 	}
 	
-	private Object initializeSimpleProperty(Object parentObject, String property, 
-	PropertyDescriptor propertyMetaData)
+	private Object initializeSimpleProperty(Object parentObject, BeanBinding.Property propertyMetaData)
 	throws Exception
 	{
 		Object propertyValue = null;
 		
 		//A Regular Property
-		propertyValue = PropertyUtils.getProperty(parentObject, property); 
+		propertyValue = propertyMetaData.get(parentObject); 
 		if(propertyValue == null)
 		{
-			Object newlyInitialized = propertyMetaData.getPropertyType().newInstance();
-			PropertyUtils.setProperty(parentObject, property, newlyInitialized);
+			Object newlyInitialized = propertyMetaData.getType().newInstance();
+			propertyMetaData.set(parentObject, newlyInitialized);
 			propertyValue = newlyInitialized;
 		}		
 		
 		return propertyValue;
 	}
 	
-	private Object initializeIndexedProperty(Object parentObject, String property, 
-	PropertyDescriptor propertyMetaData,List<ArrayMetaData> objectMetaData, 
-	String propertyPath) throws Exception
+	private Object initializeIndexedProperty(Object parentObject, FieldPath.Step step, 
+	BeanBinding.Property propertyMetaData, Map<String,ArrayMetaData> objectMetaData) throws Exception
 	{
 		Object element = null;
 		
-		//ArrayUri
-		String arrayUri = null;
-		Integer arrayIndex = 0;
-		if(propertyPath.endsWith("]"))
+		ArrayMetaData arrayMetaData = step.arrayUri != null ? objectMetaData.get(step.arrayUri) : null;
+		if(arrayMetaData == null)
 		{
-			int lastIndex = propertyPath.lastIndexOf('[');
-			arrayUri = propertyPath.substring(0, lastIndex);
-			arrayIndex = Integer.parseInt(propertyPath.substring(lastIndex+1, propertyPath.length()-1).trim());
-		}
-		ArrayMetaData arrayMetaData = null;
-		for(ArrayMetaData local: objectMetaData)
-		{
-			if(local.arrayUri.equals(arrayUri))
-			{
-				arrayMetaData = local;
-				break;
-			}
+			throw new IllegalStateException("Array MetaData Not Found For: "+step.arrayUri);
 		}
 				
 		//Find the Class of the elementType
-		String elementTypeName = arrayMetaData.arrayClass;		
-		Class elementType = null; 		
-		if(elementTypeName != null && elementTypeName.trim().length()>0 && !elementTypeName.equals("null"))
+		Class elementType = arrayMetaData.elementType;
+		if(elementType == null)
 		{
-			elementType = Thread.currentThread().getContextClassLoader().
-			loadClass(arrayMetaData.arrayClass);
-		}
-		else
-		{
-			//Figure out the element type from the Property Information
-			//This happens when a brand new object is created on the device and is being synced
-			//with the backend
-			//The MobileObject Framework on the device does not know about any Class level information
-			//of the remote bean
-			//The Limitation of this is that:
-			//
-			//* Indexed Properties if Collections must be Parameterized with Concrete Types
-			//* Indexed Properties if Arrays must be Arrays of Concrete Types
-			if(!propertyMetaData.getPropertyType().isArray())
+			String elementTypeName = arrayMetaData.arrayClass;		
+			if(elementTypeName != null && elementTypeName.trim().length()>0 && !elementTypeName.equals("null"))
 			{
-				ParameterizedType returnType = (ParameterizedType)propertyMetaData.
-				getReadMethod().getGenericReturnType();
-				Type[] actualTypes = returnType.getActualTypeArguments();		
-				for(Type actualType: actualTypes)
-				{
-					elementType = (Class)actualType;
-				}
+				elementType = Thread.currentThread().getContextClassLoader().
+				loadClass(arrayMetaData.arrayClass);
 			}
 			else
 			{
-				elementType = propertyMetaData.getPropertyType().getComponentType();
+				//Figure out the element type from the Property Information
+				//This happens when a brand new object is created on the device and is being synced
+				//with the backend
+				//The MobileObject Framework on the device does not know about any Class level information
+				//of the remote bean
+				//The Limitation of this is that:
+				//
+				//* Indexed Properties if Collections must be Parameterized with Concrete Types
+				//* Indexed Properties if Arrays must be Arrays of Concrete Types
+				elementType = propertyMetaData.getElementType();
 			}
+			arrayMetaData.elementType = elementType;
 		}
 				
-				
 		//An IndexedProperty
-		Object indexedProperty = PropertyUtils.getProperty(parentObject, propertyMetaData.getName());
+		Object indexedProperty = propertyMetaData.get(parentObject);
 		
 		//Initialize the IndexedProperty (An Array or Collection)
-		if(propertyMetaData.getPropertyType().isArray())
+		if(propertyMetaData.isArray())
 		{
+			//Make sure the Array Size matches the Object Meta Data
 			int arraySize = arrayMetaData.arrayLength;
-			if(indexedProperty == null)
+			if(indexedProperty == null || Array.getLength(indexedProperty) != arraySize)
 			{
-				//Initialize the Array with Size from Object Meta Data					
-				PropertyUtils.setProperty(parentObject, propertyMetaData.getName(),
-				Array.newInstance(elementType, arraySize));
-			}
-			else
-			{
-				//Make sure the Array Size matches
-				int actualSize = Array.getLength(indexedProperty);
-				if(actualSize != arraySize)
-				{
-					//Re-set the existing Array
-					PropertyUtils.setProperty(parentObject, propertyMetaData.getName(),
-					Array.newInstance(elementType, arraySize));
-				}
+				propertyMetaData.set(parentObject, Array.newInstance(elementType, arraySize));
+				indexedProperty = propertyMetaData.get(parentObject);
 			}
 		}
 		else
@@ -414,40 +304,47 @@ public class MobileObjectSerializer
 			if(indexedProperty == null)
 			{
 				//Handle Collection Construction
-				PropertyUtils.setProperty(parentObject, propertyMetaData.getName(), new ArrayList());
+				propertyMetaData.set(parentObject, new ArrayList());
+				indexedProperty = propertyMetaData.get(parentObject);
 			}			
 		}
 		
-					
 		//Check to see if the index specified by the field requires creation of new
 		//element
-		indexedProperty = PropertyUtils.getProperty(parentObject, propertyMetaData.getName());
-		
-		if(!propertyMetaData.getPropertyType().isArray())
+		if(!propertyMetaData.isArray())
 		{
-			try
+			List list = this.asList(indexedProperty, propertyMetaData);
+			if(step.index < list.size())
 			{
-				element = PropertyUtils.getIndexedProperty(parentObject, property);
+				element = list.get(step.index);
 			}
-			catch(IndexOutOfBoundsException iae)
+			else
 			{
 				Object newlyInitialized = elementType.newInstance();							
-				((Collection)indexedProperty).add(newlyInitialized);										
+				list.add(newlyInitialized);										
 				element = newlyInitialized;
 			}
 		}
 		else
 		{
-			element = PropertyUtils.getIndexedProperty(parentObject, property);
+			element = Array.get(indexedProperty, step.index);
 			if(element == null)
 			{
 				Object newlyInitialized = elementType.newInstance();
-				Array.set(indexedProperty, arrayIndex, newlyInitialized);
+				Array.set(indexedProperty, step.index, newlyInitialized);
 				element = newlyInitialized;
 			}
 		}
 		
-				
 		return element;
 	}
+	
+	private List asList(Object indexedProperty, BeanBinding.Property propertyMetaData)
+	{
+		if(!(indexedProperty instanceof List))
+		{
+			throw new IllegalArgumentException("Property '"+propertyMetaData.getName()+"' is not indexed");
+		}
+		return (List)indexedProperty;
+	}
 }
@@ -11,17 +11,19 @@ package org.openmobster.core.mobileObject.xml;
 import java.io.Writer;
 import java.util.Collection;
 import java.util.StringTokenizer;
-import java.util.Vector;
 import java.util.Stack;
 import java.util.Map;
 import java.util.HashMap;
 import java.util.Set;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.WeakHashMap;
 
 import org.apache.log4j.Logger;
 
 import com.thoughtworks.xstream.io.xml.AbstractXmlWriter;
+import com.thoughtworks.xstream.mapper.Mapper;
 
 import org.openmobster.core.common.XMLUtilities;
 
@@ -43,9 +45,13 @@ class MobileObjectWriter extends AbstractXmlWriter
 	private static final String ARRAY_LENGTH = "array-length";
 	private static final String ARRAY_CLASS = "array-class";
 	
+	//weak keys, the bean classes of a redeployed channel app must not be pinned
+	private static final Map<Class,Boolean> indexedTypes = 
+	Collections.synchronizedMap(new WeakHashMap<Class,Boolean>());
+	
 	private Writer writer;
 	private Field currentField;
-	private Vector<Field> fields;
+	private List<Field> fields;
 	private Stack<String> uriStack;
 	private boolean activatePopping;
 	private boolean isTagEmpty;
@@ -59,7 +65,7 @@ class MobileObjectWriter extends AbstractXmlWriter
 	public MobileObjectWriter(Writer writer) 
 	{
 		this.writer = writer;
-        this.fields = new Vector<Field>();
+        this.fields = new ArrayList<Field>();
         this.uriStack= new Stack<String>();
         this.arrayTracker = new Stack<ArrayTracker>();
         this.metaData = new HashMap<String, ArrayMetaData>();
@@ -68,13 +74,16 @@ class MobileObjectWriter extends AbstractXmlWriter
 	
 	public void startNode(String name, Class clazz) 
 	{				
+		if(clazz == Mapper.Null.class)
+		{
+			//XStream writes a null element of an array or collection as a node of its own
+			throw new IllegalStateException("The Object being mobilized has Illegal Null Array Elements!!");
+		}
+		
 		this.uriStack.push(name);
 		
 		//Handle Array/Lists.....Activate Tracking an Array
-		if(clazz != null &&
-		  (Collection.class.isAssignableFrom(clazz) ||
-		   (clazz.isArray() && !clazz.getComponentType().isAssignableFrom(byte.class)))
-		)
+		if(clazz != null && isIndexed(clazz))
 		{			
 			this.activateArray();	
 			
@@ -151,13 +160,16 @@ class MobileObjectWriter extends AbstractXmlWriter
 					}					
 				}
 				
-				log.debug("---------------------------------------");
-				log.debug("Raw Uri="+uri);
-				log.debug("ActiveArrayUri="+activeArray.arrayMetaData.arrayUri);
-				log.debug("Diff="+diff);				
-				log.debug("ElementUri="+elementUri.toString());
-				log.debug("Value="+value);
-				log.debug("---------------------------------------");
+				if(log.isDebugEnabled())
+				{
+					log.debug("---------------------------------------");
+					log.debug("Raw Uri="+uri);
+					log.debug("ActiveArrayUri="+activeArray.arrayMetaData.arrayUri);
+					log.debug("Diff="+diff);				
+					log.debug("ElementUri="+elementUri.toString());
+					log.debug("Value="+value);
+					log.debug("---------------------------------------");
+				}
 																
 				this.currentField.setUri(elementUri.toString() + diff);				
 				this.fields.add(this.currentField);	
@@ -230,10 +242,13 @@ class MobileObjectWriter extends AbstractXmlWriter
 			buffer.append("<"+FIELDS+">\n");
 			for(Field field: this.fields)
 			{
-				log.debug("--------------------------------------------------");
-				log.debug("URI="+field.uri);
-				log.debug("Name="+field.name);
-				log.debug("Value="+field.value);
+				if(log.isDebugEnabled())
+				{
+					log.debug("--------------------------------------------------");
+					log.debug("URI="+field.uri);
+					log.debug("Name="+field.name);
+					log.debug("Value="+field.value);
+				}
 				
 				buffer.append("<"+FIELD+">\n");
 				
@@ -288,6 +303,21 @@ class MobileObjectWriter extends AbstractXmlWriter
 		}
 	}
 	//-----------------------------------------------------------------------------------------------------
+	/**
+	 * Collections and arrays other than byte[] are tracked as arrays. The answer is cached per class
+	 */
+	private static boolean isIndexed(Class clazz)
+	{
+		Boolean indexed = indexedTypes.get(clazz);
+		if(indexed == null)
+		{
+			indexed = Boolean.valueOf(Collection.class.isAssignableFrom(clazz) ||
+			(clazz.isArray() && !clazz.getComponentType().isAssignableFrom(byte.class)));
+			indexedTypes.put(clazz, indexed);
+		}
+		return indexed.booleanValue();
+	}
+	
 	private String calculateUri(String uri)
 	{		
 		StringBuilder buffer = new StringBuilder();
@@ -323,9 +353,12 @@ class MobileObjectWriter extends AbstractXmlWriter
 		//Active Array is Being Closed
 		ArrayTracker closingArray = this.arrayTracker.pop();
 		
-		log.debug("Deactivating Array---------------------------------------");
-		log.debug("ArrayUri="+closingArray.arrayMetaData.arrayUri);
-		log.debug("---------------------------------------");
+		if(log.isDebugEnabled())
+		{
+			log.debug("Deactivating Array---------------------------------------");
+			log.debug("ArrayUri="+closingArray.arrayMetaData.arrayUri);
+			log.debug("---------------------------------------");
+		}
 		
 				
 		if(this.arrayTracker.isEmpty())
@@ -343,9 +376,12 @@ class MobileObjectWriter extends AbstractXmlWriter
 		tracker.currentIndex = -1;			
 		isArrayActive = true;
 		
-		log.debug("Pushing an Array-------------------------");
-		log.debug("ArrayUri="+tracker.arrayMetaData.arrayUri);
-		log.debug("-------------------------");
+		if(log.isDebugEnabled())
+		{
+			log.debug("Pushing an Array-------------------------");
+			log.debug("ArrayUri="+tracker.arrayMetaData.arrayUri);
+			log.debug("-------------------------");
+		}
 		
 		this.arrayTracker.push(tracker);
 	}
@@ -377,9 +413,12 @@ class MobileObjectWriter extends AbstractXmlWriter
 			//Deactivate the currently active array
 			if(!uri.contains(tracker.arrayMetaData.arrayUri))
 			{
-				log.debug("Before Deactivation----------------------------------");
-				log.debug("URI="+uri);
-				log.debug("ActiveArrayURI="+tracker.arrayMetaData.arrayUri);
+				if(log.isDebugEnabled())
+				{
+					log.debug("Before Deactivation----------------------------------");
+					log.debug("URI="+uri);
+					log.debug("ActiveArrayURI="+tracker.arrayMetaData.arrayUri);
+				}
 				this.deactivateCurrentArray();
 			}
 		}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.mobileObject.xml;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import org.openmobster.core.mobileObject.MockChild;
+import org.openmobster.core.mobileObject.MockPOJO;
+
+/**
+ * Measures serialize and deserialize over the bean shapes seen in the channels: a flat bean, nested beans, 
+ * collections and arrays, and binary data. Each shape is warmed up before it is measured.
+ * 
+ * @author openmobster@gmail.com
+ */
+public class PerfMobileObjectSerializer extends AbstractTestSerialization
+{
+	private static Logger log = Logger.getLogger(PerfMobileObjectSerializer.class);
+	
+	private static final int warmup = 2000;
+	private static final int iterations = 10000;
+	
+	public void testFlat() throws Exception
+	{
+		this.run("flat", new MockPOJO("flat"));
+	}
+	
+	public void testNested() throws Exception
+	{
+		MockPOJO pojo = new MockPOJO("top-level");
+		MockChild child = new MockChild("child");
+		child.setParent(new MockPOJO("embedded"));
+		pojo.setChild(child);
+		
+		this.run("nested", pojo);
+	}
+	
+	public void testArrays() throws Exception
+	{
+		MockPOJO pojo = new MockPOJO("top-level");
+		
+		List<String> strings = new ArrayList<String>();
+		List<MockChild> children = new ArrayList<MockChild>();
+		for(int i=0; i<20; i++)
+		{
+			strings.add("string://"+i);
+			children.add(new MockChild("child://"+i));
+		}
+		pojo.setStrings(strings);
+		pojo.setChildren(children);
+		pojo.setChildArray(new String[]{"blah0", "blah1", "blah2", "blah3"});
+		
+		this.run("arrays", pojo);
+	}
+	
+	public void testBinary() throws Exception
+	{
+		byte[] data = new byte[4096];
+		for(int i=0; i<data.length; i++)
+		{
+			data[i] = (byte)i;
+		}
+		
+		Attachment attachment = new Attachment();
+		attachment.setData(data);
+		Attachment more = new Attachment();
+		more.setData(data);
+		attachment.setMore(more);
+		
+		this.run("byte[]", attachment);
+	}
+	//-------------------------------------------------------------------------------------------------------------------
+	private void run(String shape, Object bean)
+	{
+		String xml = null;
+		for(int i=0; i<warmup; i++)
+		{
+			xml = this.serializer.serialize(bean);
+			this.serializer.deserialize(bean.getClass(), xml);
+		}
+		
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			xml = this.serializer.serialize(bean);
+		}
+		long serialize = System.nanoTime() - start;
+		
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			this.serializer.deserialize(bean.getClass(), xml);
+		}
+		long deserialize = System.nanoTime() - start;
+		
+		log.info("-------------------------------------------------------------");
+		log.info("Shape: "+shape+" ("+xml.length()+" chars)");
+		log.info("Serialize: "+(serialize / iterations / 1000)+" us/op");
+		log.info("Deserialize: "+(deserialize / iterations / 1000)+" us/op");
+		log.info("-------------------------------------------------------------");
+	}
+}
@@ -204,6 +204,63 @@ public class TestSerialization extends TestCase
 		this.assertEquals("POJO2 Value must match!!!", "I am pojo2", pojo1.getDefaultPOJO().getValue());
 	}		
 	//---------------------------------------------------------------------------------------------------
+	public void testNullArrayElement() throws Exception
+	{
+		MockPOJO pojo = new MockPOJO("top-level");
+		
+		List<MockChild> children = new ArrayList<MockChild>();
+		children.add(new MockChild("child://0"));
+		children.add(null);
+		pojo.setChildren(children);
+		
+		try
+		{
+			this.serializer.serialize(pojo);
+			fail("Null array elements must be rejected");
+		}
+		catch(RuntimeException re)
+		{
+			assertTrue(re.getCause() instanceof IllegalStateException);
+		}
+	}
+	
+	public void testDeviceCreatedPOJO() throws Exception
+	{
+		//created on the device, so there is no class information in the array meta data
+		String deviceXml = "<mobileObject createdOnDevice='true'>\n"+
+		"<recordId>1</recordId>\n"+
+		"<serverRecordId></serverRecordId>\n"+
+		"<object>\n"+
+		"<fields>\n"+
+		"<field><uri>/value</uri><name>value</name><value>top &amp; level</value></field>\n"+
+		"<field><uri>/child/value</uri><name>value</name><value><![CDATA[<child>]]></value></field>\n"+
+		"<field><uri>/children[0]/value</uri><name>value</name><value>child://0</value></field>\n"+
+		"<field><uri>/children[1]/value</uri><name>value</name><value>child://1</value></field>\n"+
+		"<field><uri>/strings[0]</uri><name>strings</name><value>string://0</value></field>\n"+
+		"<field><uri>/childArray[1]</uri><name>childArray</name><value>blah1</value></field>\n"+
+		"</fields>\n"+
+		"<metadata>\n"+
+		"<array-metadata><uri>/children</uri><array-length>2</array-length><array-class></array-class></array-metadata>\n"+
+		"<array-metadata><uri>/strings</uri><array-length>1</array-length><array-class></array-class></array-metadata>\n"+
+		"<array-metadata><uri>/childArray</uri><array-length>2</array-length><array-class></array-class></array-metadata>\n"+
+		"</metadata>\n"+
+		"</object>\n"+
+		"</mobileObject>";
+		
+		MockPOJO pojo = (MockPOJO)this.serializer.deserialize(MockPOJO.class, deviceXml);
+		
+		assertEquals("top & level", pojo.getValue());
+		assertEquals("<child>", pojo.getChild().getValue());
+		assertEquals(2, pojo.getChildren().size());
+		assertEquals("child://0", pojo.getChildren().get(0).getValue());
+		assertEquals("child://1", pojo.getChildren().get(1).getValue());
+		assertEquals(1, pojo.getStrings().size());
+		assertEquals("string://0", pojo.getStrings().get(0));
+		assertEquals(2, pojo.getChildArray().length);
+		assertNull(pojo.getChildArray()[0]);
+		assertEquals("blah1", pojo.getChildArray()[1]);
+	}
+	
 	protected MockPOJO createPOJOWithStrings(String name, boolean leaveChildArrayNull)
 	{
 		MockPOJO mockPOJO = new MockPOJO(name);
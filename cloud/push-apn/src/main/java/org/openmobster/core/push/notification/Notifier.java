@@ -9,6 +9,8 @@
 package org.openmobster.core.push.notification;
 
 import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
 import java.net.URLEncoder;
 
 import org.apache.log4j.Logger;
@@ -66,6 +68,40 @@ public class Notifier
 	}
 
 	public void process(Notification notification)
+	{
+		BusMessage busMessage = this.prepareBusMessage(notification);
+		if(busMessage != null)
+		{
+			Bus.sendMessage(busMessage);
+		}
+	}
+	
+	/**
+	 * Processes a fan-out of notifications. All the resulting Bus messages are sent in one go
+	 * 
+	 * @param notifications
+	 */
+	public void process(List<Notification> notifications)
+	{
+		if(notifications == null || notifications.isEmpty())
+		{
+			return;
+		}
+		
+		List<BusMessage> busMessages = new ArrayList<BusMessage>(notifications.size());
+		for(Notification notification:notifications)
+		{
+			BusMessage busMessage = this.prepareBusMessage(notification);
+			if(busMessage != null)
+			{
+				busMessages.add(busMessage);
+			}
+		}
+		
+		Bus.sendMessages(busMessages);
+	}
+	
+	private BusMessage prepareBusMessage(Notification notification)
 	{
 		String deviceToNotify = null;
 		String command = null;
@@ -110,7 +146,7 @@ public class Notifier
 					busMessage.setAttribute(Constants.notification_type, Constants.channel);
 					busMessage.setAttribute(Constants.os, os);
 					
-					Bus.sendMessage(busMessage);
+					return busMessage;
 				}
 			}
 		}
@@ -186,7 +222,7 @@ public class Notifier
 					busMessage.setAttribute(Constants.message, notification.getMetaDataAsString(Constants.message));
 					busMessage.setAttribute(Constants.extras, notification.getMetaData(Constants.extras));
 					
-					Bus.sendMessage(busMessage);
+					return busMessage;
 				}
 			}
 		}
@@ -216,7 +252,7 @@ public class Notifier
 					busMessage.setAttribute(Constants.os, os);
 					busMessage.setAttribute(Constants.action, notification.getMetaDataAsString(Constants.action));
 					
-					Bus.sendMessage(busMessage);
+					return busMessage;
 				}
 			}
 		}
@@ -272,9 +308,10 @@ public class Notifier
 					busMessage.setAttribute(Constants.notification_type, Constants.d2d);
 					busMessage.setAttribute(Constants.os, os);
 					
-					Bus.sendMessage(busMessage);
+					return busMessage;
 				}
 			}
 		}
+		return null;
 	}
 }
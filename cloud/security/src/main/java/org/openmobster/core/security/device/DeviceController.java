@@ -19,6 +19,8 @@ import org.hibernate.Session;
 import org.hibernate.Transaction;
 
 import org.openmobster.core.common.database.HibernateManager;
+import org.openmobster.core.common.event.Event;
+import org.openmobster.core.common.event.EventManager;
 
 import org.openmobster.core.security.DeviceSecurityException;
 
@@ -35,6 +37,7 @@ public class DeviceController
 	
 	
 	private HibernateManager hibernateManager;
+	private EventManager eventManager;
 	
 	
 	public DeviceController()
@@ -57,6 +60,16 @@ public class DeviceController
 	{
 		this.hibernateManager = hibernateManager;
 	}
+	
+	public EventManager getEventManager()
+	{
+		return eventManager;
+	}
+
+	public void setEventManager(EventManager eventManager)
+	{
+		this.eventManager = eventManager;
+	}
 
 		
 	public void create(Device device) throws DeviceSecurityException
@@ -248,7 +261,11 @@ public class DeviceController
 				tx.rollback();
 			}
 			throw new DeviceSecurityException(e);
-		}		
+		}
+		
+		//Announce so that cached copies of this device get refreshed. Only once committed, a failing
+		//listener must not roll back the update
+		this.fireDeviceEvent("updated-device", device);
 	}
 	
 	
@@ -275,6 +292,28 @@ public class DeviceController
 				tx.rollback();
 			}
 			throw new DeviceSecurityException(e);
-		}		
-	}	
+		}
+		
+		this.fireDeviceEvent("deleted-device", device);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private void fireDeviceEvent(String type, Device device)
+	{
+		if(this.eventManager == null)
+		{
+			return;
+		}
+		
+		Event event = new Event();
+		event.setAttribute(type, device);
+		try
+		{
+			this.eventManager.fire(event);
+		}
+		catch(Exception e)
+		{
+			//the change is already committed, a listener failing does not undo it
+			log.error(this, e);
+		}
+	}
 }
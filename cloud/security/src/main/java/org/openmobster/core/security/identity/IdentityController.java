@@ -19,6 +19,8 @@ import org.hibernate.Transaction;
 
 import org.openmobster.core.common.ServiceManager;
 import org.openmobster.core.common.database.HibernateManager;
+import org.openmobster.core.common.event.Event;
+import org.openmobster.core.common.event.EventManager;
 
 import org.openmobster.core.security.DeviceSecurityException;
 import org.openmobster.core.security.IDMException;
@@ -37,6 +39,8 @@ public class IdentityController
 	
 	private HibernateManager hibernateManager;
 	
+	private EventManager eventManager;
+	
 	
 	public IdentityController()
 	{
@@ -60,6 +64,16 @@ public class IdentityController
 	{
 		this.hibernateManager = hibernateManager;
 	}
+	
+	public EventManager getEventManager()
+	{
+		return eventManager;
+	}
+
+	public void setEventManager(EventManager eventManager)
+	{
+		this.eventManager = eventManager;
+	}
 
 
 	
@@ -211,8 +225,40 @@ public class IdentityController
 				tx.rollback();
 			}
 			throw new IDMException(e);
-		}		
-	}	
+		}
+		
+		//the Devices of this identity cached by the active connections carry the old state
+		this.fireIdentityEvent("updated-identity", identity);
+	}
+	
+	
+	public void delete(Identity identity) throws IDMException
+	{
+		Session session = null;
+		Transaction tx = null;
+		try
+		{
+			session = this.hibernateManager.getSessionFactory().getCurrentSession();
+			tx = session.beginTransaction();
+			
+			session.delete(identity);
+			session.flush();
+						
+			tx.commit();
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+			
+			if(tx != null)
+			{
+				tx.rollback();
+			}
+			throw new IDMException(e);
+		}
+		
+		this.fireIdentityEvent("deleted-identity", identity);
+	}
 	//---------------------------------------------------------------------------------------------------	
 	public void loadGroups(Identity identity) throws IDMException
 	{
@@ -242,4 +288,24 @@ public class IdentityController
 			throw new IDMException(e);
 		}		
 	}
+	//---------------------------------------------------------------------------------------------------
+	private void fireIdentityEvent(String type, Identity identity)
+	{
+		if(this.eventManager == null)
+		{
+			return;
+		}
+		
+		Event event = new Event();
+		event.setAttribute(type, identity);
+		try
+		{
+			this.eventManager.fire(event);
+		}
+		catch(Exception e)
+		{
+			//already committed
+			log.error(this, e);
+		}
+	}
 }
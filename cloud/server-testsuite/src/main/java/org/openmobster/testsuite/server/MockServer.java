@@ -49,6 +49,7 @@ public class MockServer implements Processor
 	private ServerSyncEngine serverSyncEngine = null;		
 	private SyncServer originalAdapter = null;
 	private SyncServer adapterWithErrors = null;
+	private SyncServer stateMachineAdapter = null;
 			
 	private String deviceId = "IMEI:4930051";	
 	private String service = "testServerBean";
@@ -100,6 +101,18 @@ public class MockServer implements Processor
 	}
 	
 	
+	public SyncServer getStateMachineAdapter() 
+	{
+		return stateMachineAdapter;
+	}
+
+
+	public void setStateMachineAdapter(SyncServer stateMachineAdapter) 
+	{
+		this.stateMachineAdapter = stateMachineAdapter;
+	}
+	
+	
 	public DeviceController getDeviceController() 
 	{
 		return deviceController;
@@ -278,6 +291,13 @@ public class MockServer implements Processor
 		
 		
 		this.setUpServerData();
+		
+		//runs the scenario on the SyncStateMachine instead of the jBPM workflow
+		if(info.contains("StateMachine"))
+		{
+			SyncProcessor syncProcessor = (SyncProcessor)ServiceManager.locate("sync");			
+			syncProcessor.setSyncAdapter(this.stateMachineAdapter);
+		}
 				
 		if(info.contains("SlowSync"))
 		{
@@ -110,6 +110,16 @@ public abstract class AbstractSync extends TestCase
 		this.deviceSyncEngine.addChangeLogEntries(changelog);
 	}
 	
+	/**
+	 * Name the MockServer picks the server side set up of the scenario from
+	 * 
+	 * @return
+	 */
+	protected String getSetUpName()
+	{
+		return this.getClass().getName();
+	}
+	
 	protected void setUpServerData() throws Exception
 	{
 		Socket socket = null;
@@ -134,11 +144,11 @@ public abstract class AbstractSync extends TestCase
 			String data = IOUtilities.readServerResponse(is);
 			if(data.indexOf("status=200")!=-1)
 			{
-				payload = "setUp="+this.getClass().getName()+"/CleanUp\n";
+				payload = "setUp="+this.getSetUpName()+"/CleanUp\n";
 				IOUtilities.writePayLoad(payload, os);		
 				data = IOUtilities.readServerResponse(is);
 				
-				payload = "setUp="+this.getClass().getName()+"/add\n";
+				payload = "setUp="+this.getSetUpName()+"/add\n";
 				IOUtilities.writePayLoad(payload, os);		
 				data = IOUtilities.readServerResponse(is);
 			}
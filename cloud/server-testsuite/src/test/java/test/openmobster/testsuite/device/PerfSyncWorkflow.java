@@ -0,0 +1,71 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package test.openmobster.testsuite.device;
+
+import org.apache.log4j.Logger;
+import org.openmobster.device.agent.sync.SyncService;
+
+/**
+ * Two-way sync throughput with the server side workflow on jBPM and on the SyncStateMachine.
+ * 
+ * @author openmobster@gmail.com
+ */
+public class PerfSyncWorkflow extends AbstractSync 
+{
+	private static Logger log = Logger.getLogger(PerfSyncWorkflow.class);
+	
+	private static final int warmup = 20;
+	private static final int iterations = 200;
+	
+	private boolean isStateMachine;
+	
+	protected String getSetUpName()
+	{
+		//the MockServer picks the TwoWaySync set up, and the adapter by the StateMachine suffix
+		String name = IntegTestTwoWaySync.class.getName();
+		if(this.isStateMachine)
+		{
+			name += "StateMachine";
+		}
+		return name;
+	}
+	
+	public void test() throws Exception
+	{
+		this.run(false);
+		this.run(true);
+	}
+	
+	private void run(boolean isStateMachine) throws Exception
+	{
+		this.isStateMachine = isStateMachine;
+		this.setUpServerData();
+		
+		for(int i=0; i<warmup; i++)
+		{
+			this.sync();
+		}
+		
+		long start = System.currentTimeMillis();
+		for(int i=0; i<iterations; i++)
+		{
+			this.sync();
+		}
+		long elapsed = Math.max(1, System.currentTimeMillis() - start);
+		
+		log.info((isStateMachine?"SyncStateMachine":"jBPM")+": "+iterations+" syncs in "+elapsed+" ms ("+
+		(iterations * 1000 / elapsed)+" syncs/sec)");
+	}
+	
+	private void sync() throws Exception
+	{
+		this.syncService.startSync(SyncService.TWO_WAY, this.deviceId, 
+		this.serverId, this.service, this.service);
+	}
+}
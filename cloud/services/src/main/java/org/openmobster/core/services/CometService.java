@@ -9,11 +9,11 @@
 package org.openmobster.core.services;
 
 import java.util.Map;
-import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
 
@@ -26,28 +26,39 @@ import org.openmobster.core.services.subscription.Subscription;
 
 import org.openmobster.core.common.ServiceManager;
 import org.openmobster.core.common.errors.ErrorHandler;
+import org.openmobster.core.common.event.Event;
+import org.openmobster.core.common.event.EventListener;
+import org.openmobster.core.common.event.EventManager;
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.identity.Identity;
 
 /**
  * @author openmobster@gmail
  *
  */
-public final class CometService
+public final class CometService implements EventListener
 {
 	private static Logger log = Logger.getLogger(CometService.class);
 	
 	private Map<String, SubscriptionManager> activeManagers;
 	private List<ChannelEventListener> channelListeners;
 	private List<NetworkEventListener> networkEventListeners;
+	private EventManager eventManager;
 	
 	public CometService()
 	{
-		this.activeManagers = new HashMap<String, SubscriptionManager>();
+		this.activeManagers = new ConcurrentHashMap<String, SubscriptionManager>();
 		this.channelListeners = new ArrayList<ChannelEventListener>();
 		this.networkEventListeners = new ArrayList<NetworkEventListener>();
 	}
 	
 	public void start()
 	{
+		if(this.eventManager != null)
+		{
+			//keeps the Device cached by the active connections in sync with the database
+			this.eventManager.addListener(this);
+		}
 	}
 	
 	public void stop()
@@ -60,6 +71,16 @@ public final class CometService
 		return (CometService)ServiceManager.locate("services://CometService");
 	}
 	
+	public EventManager getEventManager()
+	{
+		return eventManager;
+	}
+
+	public void setEventManager(EventManager eventManager)
+	{
+		this.eventManager = eventManager;
+	}
+	
 	public void notifyChannelEventListener(ChannelEventListener channelEventListener)
 	{
 		this.channelListeners.add(channelEventListener);
@@ -133,5 +154,32 @@ public final class CometService
 				}
 			}
 		}
-	}		
+	}
+	//----------------------------------------------------------------------------------------------------------------------------------
+	public void onEvent(Event event)
+	{
+		String[] types = new String[]{"new-device", "updated-device", "deleted-device"};
+		for(String type: types)
+		{
+			Device device = (Device)event.getAttribute(type);
+			if(device != null)
+			{
+				SubscriptionManager.invalidateDevice(device.getIdentifier());
+			}
+		}
+		
+		//the cached Devices carry their Identity
+		types = new String[]{"updated-identity", "deleted-identity"};
+		for(String type: types)
+		{
+			Identity identity = (Identity)event.getAttribute(type);
+			if(identity != null)
+			{
+				for(SubscriptionManager manager: this.activeManagers.values())
+				{
+					manager.invalidateIdentity(identity);
+				}
+			}
+		}
+	}
 }
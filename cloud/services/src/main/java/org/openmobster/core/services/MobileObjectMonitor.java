@@ -29,8 +29,10 @@ import org.openmobster.core.common.bus.BusListener;
 import org.openmobster.core.common.bus.BusMessage;
 import org.openmobster.core.services.channel.ChannelManager;
 import org.openmobster.core.services.channel.ChannelRegistration;
+import org.openmobster.core.services.channel.ChannelScanEngine;
 import org.openmobster.core.services.channel.ChannelBeanMetaData;
 import org.openmobster.core.services.event.ChannelEvent;
+import org.openmobster.core.services.event.ChannelEventCodec;
 import org.openmobster.core.services.event.NetworkEvent;
 import org.openmobster.core.security.device.DeviceController;
 
@@ -50,6 +52,7 @@ public class MobileObjectMonitor implements BusListener
 	private Map<String, ChannelManager> channelManagers;
 	private HibernateManager hibernateManager;
 	private DeviceController deviceController;
+	private ChannelScanEngine scanEngine;
 	
 	
 	public MobileObjectMonitor()
@@ -61,6 +64,9 @@ public class MobileObjectMonitor implements BusListener
 	
 	public void start()
 	{		
+		//compact encoding of the ChannelEvents sent on the Bus
+		ChannelEventCodec.register();
+		
 		log.info("--------------------------------------------------");
 		log.info("Mobile Object Monitor succesfully started.........");
 		log.info("--------------------------------------------------");				
@@ -101,6 +107,16 @@ public class MobileObjectMonitor implements BusListener
 	{
 		this.deviceController = deviceController;
 	}
+	
+	public ChannelScanEngine getScanEngine()
+	{
+		return scanEngine;
+	}
+
+	public void setScanEngine(ChannelScanEngine scanEngine)
+	{
+		this.scanEngine = scanEngine;
+	}
 
 	public void notify(Channel mobileObjectConnector)
 	{
@@ -152,7 +168,7 @@ public class MobileObjectMonitor implements BusListener
 			registration.setUpdateCheckInterval(connectorInfo.updateCheckInterval());
 			
 			ChannelManager channelManager = ChannelManager.createInstance(this.hibernateManager,
-			this.deviceController,registration);			
+			this.deviceController,registration,this.scanEngine);			
 			channelManager.start();
 			Bus.addBusListener(channelId, this);
 			this.channelManagers.put(channelId, channelManager);			
@@ -177,8 +193,12 @@ public class MobileObjectMonitor implements BusListener
 	//----BusListener implementation----------------------------------------------------------------------------
 	public void messageIncoming(BusMessage busMessage) 
 	{	
-		String eventState = (String)busMessage.getAttribute(ChannelEvent.event);
-		Object event = XMLUtilities.unmarshal(eventState);
+		Object event = busMessage.getAttribute(ChannelEvent.event);
+		if(event instanceof String)
+		{
+			//XML marshalled event sent before the binary Bus codec
+			event = XMLUtilities.unmarshal((String)event);
+		}
 		
 		if(event instanceof ChannelEvent)
 		{
@@ -0,0 +1,382 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.channel;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.openmobster.cloud.api.sync.ChannelChangePublisher;
+import org.openmobster.core.common.errors.ErrorHandler;
+import org.openmobster.core.common.transaction.TransactionHelper;
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.device.DeviceController;
+
+/**
+ * Implementation of the ChannelChangePublisher.
+ *
+ * Published changes are held for coalesceWindow milliseconds, so that a burst of changes to the same bean
+ * turns into one notification. They are then resolved to the devices of the affected users and sent down the
+ * same path as the changes found by the ChannelDaemon scans. A device reached through more than one publish
+ * of the same bean, say one for all users and one for its own user, still gets one notification.
+ *
+ * Changes published while the feed is not running are sent right away.
+ *
+ * @author openmobster@gmail.com
+ */
+public final class ChannelChangeFeed extends ChannelChangePublisher
+{
+	private static Logger log = Logger.getLogger(ChannelChangeFeed.class);
+
+	private static final String allPrincipals = "*";
+
+	private DeviceController deviceController;
+	private long coalesceWindow = 250;
+
+	private Timer timer;
+	private Map<String,PendingChange> pendingChanges;
+	private boolean isFlushScheduled;
+	private boolean isRunning;
+	private long sequence;
+
+	private AtomicLong published;
+	private AtomicLong coalesced;
+
+	public ChannelChangeFeed()
+	{
+		this.pendingChanges = new LinkedHashMap<String,PendingChange>();
+		this.published = new AtomicLong(0);
+		this.coalesced = new AtomicLong(0);
+	}
+
+	public synchronized void start()
+	{
+		this.timer = new Timer(this.getClass().getName(), true); //sets it as a daemon thread
+		this.isRunning = true;
+	}
+
+	public void stop()
+	{
+		synchronized(this)
+		{
+			this.isRunning = false;
+			if(this.timer != null)
+			{
+				this.timer.cancel();
+			}
+		}
+
+		//the changes still waiting for the window to close
+		this.flush();
+
+		log.info("ChannelChangeFeed: published="+this.published.get()+", coalesced="+this.coalesced.get());
+	}
+
+	public DeviceController getDeviceController()
+	{
+		return deviceController;
+	}
+
+	public void setDeviceController(DeviceController deviceController)
+	{
+		this.deviceController = deviceController;
+	}
+
+	public long getCoalesceWindow()
+	{
+		return coalesceWindow;
+	}
+
+	public void setCoalesceWindow(long coalesceWindow)
+	{
+		this.coalesceWindow = coalesceWindow;
+	}
+
+	/**
+	 * Changes published so far
+	 *
+	 * @return
+	 */
+	public long getPublishedCount()
+	{
+		return this.published.get();
+	}
+
+	/**
+	 * Changes that were folded into an earlier change to the same bean
+	 *
+	 * @return
+	 */
+	public long getCoalescedCount()
+	{
+		return this.coalesced.get();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	public void created(String channel, String beanId, Collection<String> principals)
+	{
+		this.publish(channel, beanId, principals, ChannelUpdateType.ADD);
+	}
+
+	public void updated(String channel, String beanId, Collection<String> principals)
+	{
+		this.publish(channel, beanId, principals, ChannelUpdateType.REPLACE);
+	}
+
+	public void deleted(String channel, String beanId, Collection<String> principals)
+	{
+		this.publish(channel, beanId, principals, ChannelUpdateType.DELETE);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private void publish(String channel, String beanId, Collection<String> principals, ChannelUpdateType updateType)
+	{
+		if(channel == null || beanId == null)
+		{
+			throw new IllegalArgumentException("Channel and BeanId are required!!");
+		}
+
+		List<String> targets = new ArrayList<String>();
+		if(principals == null)
+		{
+			targets.add(allPrincipals);
+		}
+		else
+		{
+			targets.addAll(principals);
+		}
+
+		boolean isFlushNow = false;
+		synchronized(this)
+		{
+			for(String principal: targets)
+			{
+				this.published.incrementAndGet();
+				this.sequence++;
+
+				String key = channel+"/"+beanId+"/"+principal;
+				PendingChange pendingChange = this.pendingChanges.get(key);
+				if(pendingChange != null)
+				{
+					this.coalesced.incrementAndGet();
+					pendingChange.updateType = coalesce(pendingChange.updateType, updateType);
+					pendingChange.sequence = this.sequence;
+					continue;
+				}
+
+				this.pendingChanges.put(key, new PendingChange(channel, beanId, principal, updateType, this.sequence));
+			}
+
+			if(!this.isRunning)
+			{
+				isFlushNow = true;
+			}
+			else if(!this.isFlushScheduled && !this.pendingChanges.isEmpty())
+			{
+				this.timer.schedule(new Flush(), this.coalesceWindow);
+				this.isFlushScheduled = true;
+			}
+		}
+
+		if(isFlushNow)
+		{
+			this.flush();
+		}
+	}
+
+	/**
+	 * The latest change wins, except that an update of a bean the devices have not seen yet is still a create
+	 *
+	 * @param pending
+	 * @param next
+	 * @return
+	 */
+	static ChannelUpdateType coalesce(ChannelUpdateType pending, ChannelUpdateType next)
+	{
+		if(pending == ChannelUpdateType.ADD && next == ChannelUpdateType.REPLACE)
+		{
+			return ChannelUpdateType.ADD;
+		}
+		return next;
+	}
+
+	/**
+	 * Takes out the changes waiting to be sent
+	 *
+	 * @return
+	 */
+	synchronized List<PendingChange> drain()
+	{
+		List<PendingChange> changes = new ArrayList<PendingChange>(this.pendingChanges.values());
+		this.pendingChanges.clear();
+		this.isFlushScheduled = false;
+		return changes;
+	}
+
+	/**
+	 * Resolves the changes to the devices they go to, one ChannelBeanMetaData per bean and device
+	 *
+	 * @param changes
+	 * @return the updates by channel
+	 */
+	Map<String,List<ChannelBeanMetaData>> resolve(List<PendingChange> changes)
+	{
+		//in the order they were last published, so that the latest change to a device wins
+		List<PendingChange> ordered = new ArrayList<PendingChange>(changes);
+		Collections.sort(ordered, new Comparator<PendingChange>()
+		{
+			public int compare(PendingChange first, PendingChange second)
+			{
+				return first.sequence < second.sequence ? -1 : (first.sequence == second.sequence ? 0 : 1);
+			}
+		});
+
+		Map<String,List<Device>> devicesByPrincipal = new HashMap<String,List<Device>>();
+		Map<String,Map<String,ChannelBeanMetaData>> resolved = new LinkedHashMap<String,Map<String,ChannelBeanMetaData>>();
+		for(PendingChange change: ordered)
+		{
+			for(Device device: this.findDevices(change.principal, devicesByPrincipal))
+			{
+				Map<String,ChannelBeanMetaData> channelUpdates = resolved.get(change.channel);
+				if(channelUpdates == null)
+				{
+					channelUpdates = new LinkedHashMap<String,ChannelBeanMetaData>();
+					resolved.put(change.channel, channelUpdates);
+				}
+
+				String key = change.beanId+"/"+device.getIdentifier();
+				ChannelBeanMetaData cour = channelUpdates.get(key);
+				if(cour != null)
+				{
+					cour.setUpdateType(coalesce(cour.getUpdateType(), change.updateType));
+					continue;
+				}
+
+				cour = new ChannelBeanMetaData();
+				cour.setChannel(change.channel);
+				cour.setBeanId(change.beanId);
+				cour.setDeviceId(device.getIdentifier());
+				cour.setUpdateType(change.updateType);
+				cour.setPrincipal(device.getIdentity().getPrincipal());
+				channelUpdates.put(key, cour);
+			}
+		}
+
+		Map<String,List<ChannelBeanMetaData>> updatesByChannel = new LinkedHashMap<String,List<ChannelBeanMetaData>>();
+		for(Map.Entry<String,Map<String,ChannelBeanMetaData>> entry: resolved.entrySet())
+		{
+			updatesByChannel.put(entry.getKey(), new ArrayList<ChannelBeanMetaData>(entry.getValue().values()));
+		}
+		return updatesByChannel;
+	}
+
+	private void flush()
+	{
+		List<PendingChange> changes = this.drain();
+		if(changes.isEmpty())
+		{
+			return;
+		}
+
+		boolean isStartedHere = TransactionHelper.startTx();
+		try
+		{
+			Map<String,List<ChannelBeanMetaData>> updatesByChannel = this.resolve(changes);
+			for(Map.Entry<String,List<ChannelBeanMetaData>> entry: updatesByChannel.entrySet())
+			{
+				ChannelDaemon.sendChannelEvent(entry.getKey(), entry.getValue());
+			}
+
+			if(isStartedHere)
+			{
+				TransactionHelper.commitTx();
+			}
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+
+			if(isStartedHere)
+			{
+				TransactionHelper.rollbackTx();
+			}
+
+			ErrorHandler.getInstance().handle(e);
+		}
+	}
+
+	private List<Device> findDevices(String principal, Map<String,List<Device>> devicesByPrincipal)
+	{
+		List<Device> devices = devicesByPrincipal.get(principal);
+		if(devices != null)
+		{
+			return devices;
+		}
+
+		Collection<Device> registered = null;
+		if(allPrincipals.equals(principal))
+		{
+			registered = this.deviceController.readAll();
+		}
+		else
+		{
+			registered = this.deviceController.readByIdentity(principal);
+		}
+
+		devices = new ArrayList<Device>();
+		if(registered != null)
+		{
+			for(Device device: registered)
+			{
+				if(device.getIdentity().isActive())
+				{
+					devices.add(device);
+				}
+			}
+		}
+
+		devicesByPrincipal.put(principal, devices);
+		return devices;
+	}
+
+	private class Flush extends TimerTask
+	{
+		public void run()
+		{
+			ChannelChangeFeed.this.flush();
+		}
+	}
+
+	static class PendingChange
+	{
+		private String channel;
+		private String beanId;
+		private String principal;
+		private ChannelUpdateType updateType;
+		private long sequence;
+
+		private PendingChange(String channel, String beanId, String principal, ChannelUpdateType updateType,
+		long sequence)
+		{
+			this.channel = channel;
+			this.beanId = beanId;
+			this.principal = principal;
+			this.updateType = updateType;
+			this.sequence = sequence;
+		}
+	}
+}
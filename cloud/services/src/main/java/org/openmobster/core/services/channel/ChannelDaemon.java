@@ -14,8 +14,13 @@ import java.util.ArrayList;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.text.DateFormat;
-import java.util.Map;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.log4j.Logger;
 
@@ -27,11 +32,13 @@ import org.openmobster.core.common.transaction.TransactionHelper;
 import org.openmobster.core.common.errors.ErrorHandler;
 import org.openmobster.core.common.bus.Bus;
 import org.openmobster.core.common.bus.BusMessage;
-import org.openmobster.core.common.XMLUtilities;
 import org.openmobster.core.common.event.Event;
 import org.openmobster.core.common.event.EventListener;
 import org.openmobster.core.common.event.EventManager;
 
+import org.openmobster.cloud.api.sync.BatchScanningChannel;
+import org.openmobster.cloud.api.sync.Channel;
+import org.openmobster.cloud.api.sync.ChannelChanges;
 import org.openmobster.core.services.event.ChannelEvent;
 import org.openmobster.core.security.device.Device;
 import org.openmobster.core.security.device.DeviceController;
@@ -53,6 +60,8 @@ public final class ChannelDaemon implements EventListener
 	private List<Device> allDevices;
 	private boolean isRegisteredForCacheInvalidationEvent;
 	private Map<String,LastScanTimestamp> lastScanTimestamps;
+	private ChannelScanEngine scanEngine;
+	private AtomicBoolean isScanning;
 	
 	/**
 	 * The channel being monitored
@@ -61,12 +70,15 @@ public final class ChannelDaemon implements EventListener
 	
 	public ChannelDaemon(HibernateManager hibernateManager,
 	DeviceController deviceController,
-	ChannelRegistration channelRegistration)
+	ChannelRegistration channelRegistration,
+	ChannelScanEngine scanEngine)
 	{
 		this.channelRegistration = channelRegistration;
 		this.hibernateManager = hibernateManager;
 		this.deviceController = deviceController;
-		this.lastScanTimestamps = new HashMap<String,LastScanTimestamp>();
+		this.scanEngine = scanEngine;
+		this.lastScanTimestamps = new ConcurrentHashMap<String,LastScanTimestamp>();
+		this.isScanning = new AtomicBoolean(false);
 	}
 	
 	public ChannelRegistration getChannelRegistration()
@@ -91,6 +103,14 @@ public final class ChannelDaemon implements EventListener
 				
 		long startDelay = 5000;
 		long howOftenShouldICheck = channelRegistration.getUpdateCheckInterval();
+		if(howOftenShouldICheck <= 0)
+		{
+			//the channel announces its changes through the ChannelChangePublisher, no scanning
+			log.info("-----------------------------------------------------");
+			log.info("Channel Daemon ("+this.channelRegistration.getUri()+") started. Scanning is turned off");
+			log.info("-----------------------------------------------------");
+			return;
+		}
 		this.timer.schedule(checkForUpdates, startDelay, howOftenShouldICheck);
 		
 		log.info("-----------------------------------------------------");
@@ -128,13 +148,17 @@ public final class ChannelDaemon implements EventListener
 		boolean isStartedHere = TransactionHelper.startTx();
 		try
 		{
-			this.allDevices = this.deviceController.readAll();
+			//new devices get added by the event thread while a scan is iterating
+			this.allDevices = new CopyOnWriteArrayList<Device>();
+			List<Device> registeredDevices = this.deviceController.readAll();
+			if(registeredDevices != null)
+			{
+				this.allDevices.addAll(registeredDevices);
+			}
 			
-			if(allDevices != null && !allDevices.isEmpty())
+			if(!allDevices.isEmpty())
 			{
-				List<Device> localCopy = new ArrayList<Device>();
-				localCopy.addAll(allDevices);
-				for(Device device:localCopy)
+				for(Device device:allDevices)
 				{
 					LastScanTimestamp lastScanTimestamp = this.findScanTimestamp(device);
 					this.lastScanTimestamps.put(device.getIdentifier(), lastScanTimestamp);
@@ -206,29 +230,44 @@ public final class ChannelDaemon implements EventListener
 		}
 	}
 	
-	private long save(LastScanTimestamp lastScanTimestamp) throws Exception
+	/**
+	 * Saves the scan timestamps of a tick in one transaction
+	 * 
+	 * @param lastScanTimestamps
+	 * @throws Exception
+	 */
+	private void saveAll(Collection<LastScanTimestamp> lastScanTimestamps) throws Exception
 	{
 		Session session = null;
 		Transaction tx = null;
 		try
 		{	
-			long id = 0;
 			session = this.hibernateManager.getSessionFactory().getCurrentSession();
 			tx = session.beginTransaction();
 			
-			if(lastScanTimestamp.getId() ==0)
-			{
-				id = (Long)session.save(lastScanTimestamp);
-			}
-			else
+			int count = 0;
+			int batchSize = this.scanEngine.getBatchSize();
+			for(LastScanTimestamp lastScanTimestamp: lastScanTimestamps)
 			{
-				session.update(lastScanTimestamp);
-				id = lastScanTimestamp.getId();
+				if(lastScanTimestamp.getId() ==0)
+				{
+					long id = (Long)session.save(lastScanTimestamp);
+					lastScanTimestamp.setId(id);
+				}
+				else
+				{
+					session.update(lastScanTimestamp);
+				}
+				
+				//keeps the session from growing with the number of devices
+				if(++count % batchSize == 0)
+				{
+					session.flush();
+					session.clear();
+				}
 			}
 			
 			tx.commit();
-			
-			return id;
 		}
 		catch(Exception e)
 		{
@@ -240,6 +279,166 @@ public final class ChannelDaemon implements EventListener
 			throw e;
 		}		
 	}
+	
+	/**
+	 * Scans one batch of devices of a tick. The changes found go into allUpdates, and the timestamps of the
+	 * devices that were scanned into scanned
+	 * 
+	 * @param batch
+	 * @param timestamp time of the tick
+	 * @param allUpdates
+	 * @param scanned
+	 * @throws Exception
+	 */
+	void scanBatch(List<Device> batch, Date timestamp, 
+	Collection<ChannelBeanMetaData> allUpdates, Collection<LastScanTimestamp> scanned) throws Exception
+	{
+		Channel channel = this.channelRegistration.getChannel();
+		if(channel instanceof BatchScanningChannel)
+		{
+			//the whole batch in one call
+			this.scanInOneCall((BatchScanningChannel)channel, batch, timestamp, allUpdates, scanned);
+			return;
+		}
+		
+		for(Device device:batch)
+		{
+			this.scan(device, timestamp, allUpdates, scanned);
+		}
+	}
+	
+	private void scan(Device device, Date timestamp, 
+	Collection<ChannelBeanMetaData> allUpdates, Collection<LastScanTimestamp> scanned)
+	{			
+		try
+		{
+			LastScanTimestamp lastScanTimestamp = this.findLastScanTimestamp(device, timestamp);
+			
+			//Get any new beans
+			String[] added = this.channelRegistration.getChannel().scanForNew(device, 
+			lastScanTimestamp.getTimestamp());
+			
+			//Get updated beans
+			String[] updated = this.channelRegistration.getChannel().scanForUpdates(device, 
+			lastScanTimestamp.getTimestamp());
+			
+			//Get deleted beans
+			String[] deleted = this.channelRegistration.getChannel().scanForDeletions(device, 
+			lastScanTimestamp.getTimestamp());
+			
+			this.collect(device, added, updated, deleted, allUpdates);
+			
+			//saved along with the rest of the tick
+			lastScanTimestamp.setTimestamp(timestamp);
+			scanned.add(lastScanTimestamp);
+		}
+		catch(Exception e)
+		{
+			ErrorHandler.getInstance().handle(e);
+			
+			DateFormat dateFormat = DateFormat.getDateTimeInstance();
+			Exception ex = new Exception("Device:"+device.getIdentifier()+
+			",Identity:"+device.getIdentity().getPrincipal()+"Channel: "+this.channelRegistration.getUri()+
+			"Scan Time: "+dateFormat.format(new Date()));
+			
+			ErrorHandler.getInstance().handle(e);
+		}
+	}
+	
+	/**
+	 * Scans a batch of devices with a single call into the channel. If the channel fails, none of the
+	 * devices in the batch get their scan timestamp moved, so they are scanned again on the next tick
+	 */
+	private void scanInOneCall(BatchScanningChannel channel, List<Device> batch, Date timestamp,
+	Collection<ChannelBeanMetaData> allUpdates, Collection<LastScanTimestamp> scanned)
+	{
+		Map<Device, Date> lastScans = new HashMap<Device, Date>();
+		List<LastScanTimestamp> batchTimestamps = new ArrayList<LastScanTimestamp>();
+		for(Device device: batch)
+		{
+			LastScanTimestamp lastScanTimestamp = this.findLastScanTimestamp(device, timestamp);
+			lastScans.put(device, lastScanTimestamp.getTimestamp());
+			batchTimestamps.add(lastScanTimestamp);
+		}
+		
+		Map<String, ChannelChanges> allChanges = channel.scan(lastScans);
+		
+		for(int i=0,size=batch.size(); i<size; i++)
+		{
+			Device device = batch.get(i);
+			ChannelChanges changes = allChanges != null ? allChanges.get(device.getIdentifier()) : null;
+			if(changes != null)
+			{
+				this.collect(device, changes.getAdded(), changes.getUpdated(), changes.getDeleted(), allUpdates);
+			}
+			
+			LastScanTimestamp lastScanTimestamp = batchTimestamps.get(i);
+			lastScanTimestamp.setTimestamp(timestamp);
+			scanned.add(lastScanTimestamp);
+		}
+	}
+	
+	private LastScanTimestamp findLastScanTimestamp(Device device, Date timestamp)
+	{
+		LastScanTimestamp lastScanTimestamp = this.lastScanTimestamps.get(device.getIdentifier());
+		if(lastScanTimestamp == null)
+		{
+			//create a new timestamp
+			lastScanTimestamp = new LastScanTimestamp();
+			lastScanTimestamp.setTimestamp(timestamp);
+			lastScanTimestamp.setChannel(this.channelRegistration.getUri());
+			lastScanTimestamp.setClientId(device.getIdentifier());
+		}
+		return lastScanTimestamp;
+	}
+	
+	private void collect(Device device, String[] added, String[] updated, String[] deleted, 
+	Collection<ChannelBeanMetaData> allUpdates)
+	{
+		Identity identity = device.getIdentity();
+		
+		if(added != null)
+		{
+			for(String beanId : added)
+			{
+				ChannelBeanMetaData cour = new ChannelBeanMetaData();
+				cour.setChannel(this.channelRegistration.getUri());
+				cour.setBeanId(beanId);
+				cour.setDeviceId(device.getIdentifier());
+				cour.setUpdateType(ChannelUpdateType.ADD);
+				cour.setPrincipal(identity.getPrincipal());
+				allUpdates.add(cour);
+			}
+		}
+		
+		if(updated != null)
+		{
+			for(String beanId : updated)
+			{
+				ChannelBeanMetaData cour = new ChannelBeanMetaData();
+				cour.setChannel(this.channelRegistration.getUri());
+				cour.setBeanId(beanId);
+				cour.setDeviceId(device.getIdentifier());
+				cour.setUpdateType(ChannelUpdateType.REPLACE);
+				cour.setPrincipal(identity.getPrincipal());
+				allUpdates.add(cour);
+			}
+		}
+		
+		if(deleted != null)
+		{
+			for(String beanId : deleted)
+			{
+				ChannelBeanMetaData cour = new ChannelBeanMetaData();
+				cour.setChannel(this.channelRegistration.getUri());
+				cour.setBeanId(beanId);
+				cour.setDeviceId(device.getIdentifier());
+				cour.setUpdateType(ChannelUpdateType.DELETE);
+				cour.setPrincipal(identity.getPrincipal());
+				allUpdates.add(cour);
+			}
+		}
+	}
 	//-----------------------------------------------------------------------------------------------------------
 	private class CheckForUpdates extends TimerTask
 	{
@@ -256,49 +455,78 @@ public final class ChannelDaemon implements EventListener
 		}
 		
 		public void run()
+		{
+			//Get all the registered devices
+			//List<Device> allDevices = this.deviceController.readAll();
+			if(!isRegisteredForCacheInvalidationEvent)
+			{
+				try
+				{
+					EventManager.getInstance().addListener(ChannelDaemon.this);
+					isRegisteredForCacheInvalidationEvent = true;
+				}
+				catch(Throwable t)
+				{
+					//DO nothing...will try to register in the next go
+				}
+			}
+			
+			//the scan runs off the timer thread, a tick is skipped while the previous one is still going
+			ChannelDaemon.this.scanEngine.submitTick(this.channelRegistration.getUri(), 
+			ChannelDaemon.this.isScanning, new Runnable()
+			{
+				public void run()
+				{
+					CheckForUpdates.this.scanAll();
+				}
+			});
+		}
+		
+		private void scanAll()
 		{
 			boolean isStartedHere = TransactionHelper.startTx();
 			try
 			{
-				Date timestamp = new Date();
+				final Date timestamp = new Date();
 				
-				List<ChannelBeanMetaData> allUpdates = new ArrayList<ChannelBeanMetaData>();
+				final Collection<ChannelBeanMetaData> allUpdates = new ConcurrentLinkedQueue<ChannelBeanMetaData>();
+				final Collection<LastScanTimestamp> scanned = new ConcurrentLinkedQueue<LastScanTimestamp>();
 				
-				//Get all the registered devices
-				//List<Device> allDevices = this.deviceController.readAll();
-				if(!isRegisteredForCacheInvalidationEvent)
+				if(allDevices != null)
 				{
-					try
+					//Scan for channel updates for each device
+					List<Device> activeDevices = new ArrayList<Device>();
+					for(Device device:allDevices)
 					{
-						EventManager.getInstance().addListener(ChannelDaemon.this);
-						isRegisteredForCacheInvalidationEvent = true;
+						if(device.getIdentity().isActive())
+						{
+							activeDevices.add(device);
+						}
 					}
-					catch(Throwable t)
+					
+					ChannelDaemon.this.scanEngine.scan(activeDevices, new ChannelScanEngine.BatchScan()
 					{
-						//DO nothing...will try to register in the next go
-					}
+						public void scan(List<Device> batch) throws Exception
+						{
+							ChannelDaemon.this.scanBatch(batch, timestamp, allUpdates, scanned);
+						}
+					});
 				}
 				
-				if(allDevices != null)
+				//save the new timestamps
+				if(!scanned.isEmpty())
 				{
-					//Scan for channel updates for each device
-					List<Device> localCopy = new ArrayList<Device>();
-					localCopy.addAll(allDevices);
-					for(Device device:localCopy)
+					ChannelDaemon.this.saveAll(scanned);
+					for(LastScanTimestamp lastScanTimestamp: scanned)
 					{
-						if(!device.getIdentity().isActive())
-						{
-							continue;
-						}
-						
-						this.scan(device, timestamp, allUpdates);
+						ChannelDaemon.this.lastScanTimestamps.put(lastScanTimestamp.getClientId(), lastScanTimestamp);
 					}
 				}
 				
 				//Send all the channel events
-				if(allUpdates != null && !allUpdates.isEmpty())
+				if(!allUpdates.isEmpty())
 				{
-					this.sendChannelEvent(allUpdates);
+					this.sendChannelEvent(new ArrayList<ChannelBeanMetaData>(allUpdates));
 				}
 				
 				if(isStartedHere)
@@ -319,112 +547,30 @@ public final class ChannelDaemon implements EventListener
 			}
 		}
 		
-		private void scan(Device device, Date timestamp, 
-		List<ChannelBeanMetaData> allUpdates)
-		{			
-			try
-			{
-				LastScanTimestamp lastScanTimestamp = ChannelDaemon.this.lastScanTimestamps.get(device.getIdentifier());
-				if(lastScanTimestamp == null)
-				{
-					//create a new timestamp
-					lastScanTimestamp = new LastScanTimestamp();
-					lastScanTimestamp.setTimestamp(timestamp);
-					lastScanTimestamp.setChannel(this.channelRegistration.getUri());
-					lastScanTimestamp.setClientId(device.getIdentifier());
-				}
-				
-				
-				Identity identity = device.getIdentity();
-				
-				//Get any new beans
-				String[] added = this.channelRegistration.getChannel().scanForNew(device, 
-				lastScanTimestamp.getTimestamp());
-				
-				//Get updated beans
-				String[] updated = this.channelRegistration.getChannel().scanForUpdates(device, 
-				lastScanTimestamp.getTimestamp());
-				
-				//Get deleted beans
-				String[] deleted = this.channelRegistration.getChannel().scanForDeletions(device, 
-				lastScanTimestamp.getTimestamp());
-				
-				if(added != null)
-				{
-					for(String beanId : added)
-					{
-						ChannelBeanMetaData cour = new ChannelBeanMetaData();
-						cour.setChannel(this.channelRegistration.getUri());
-						cour.setBeanId(beanId);
-						cour.setDeviceId(device.getIdentifier());
-						cour.setUpdateType(ChannelUpdateType.ADD);
-						cour.setPrincipal(identity.getPrincipal());
-						allUpdates.add(cour);
-					}
-				}
-				
-				if(updated != null)
-				{
-					for(String beanId : updated)
-					{
-						ChannelBeanMetaData cour = new ChannelBeanMetaData();
-						cour.setChannel(this.channelRegistration.getUri());
-						cour.setBeanId(beanId);
-						cour.setDeviceId(device.getIdentifier());
-						cour.setUpdateType(ChannelUpdateType.REPLACE);
-						cour.setPrincipal(identity.getPrincipal());
-						allUpdates.add(cour);
-					}
-				}
-				
-				if(deleted != null)
-				{
-					for(String beanId : deleted)
-					{
-						ChannelBeanMetaData cour = new ChannelBeanMetaData();
-						cour.setChannel(this.channelRegistration.getUri());
-						cour.setBeanId(beanId);
-						cour.setDeviceId(device.getIdentifier());
-						cour.setUpdateType(ChannelUpdateType.DELETE);
-						cour.setPrincipal(identity.getPrincipal());
-						allUpdates.add(cour);
-					}
-				}
-				
-				lastScanTimestamp.setTimestamp(timestamp);
-				
-				//save the new timestamp
-				long id = ChannelDaemon.this.save(lastScanTimestamp);
-				lastScanTimestamp.setId(id);
-				ChannelDaemon.this.lastScanTimestamps.put(device.getIdentifier(), lastScanTimestamp);
-			}
-			catch(Exception e)
-			{
-				ErrorHandler.getInstance().handle(e);
-				
-				DateFormat dateFormat = DateFormat.getDateTimeInstance();
-				Exception ex = new Exception("Device:"+device.getIdentifier()+
-				",Identity:"+device.getIdentity().getPrincipal()+"Channel: "+this.channelRegistration.getUri()+
-				"Scan Time: "+dateFormat.format(new Date()));
-				
-				ErrorHandler.getInstance().handle(e);
-			}
-		}
-										
 		private void sendChannelEvent(List<ChannelBeanMetaData> allUpdates)
 		{
-			String channel = this.channelRegistration.getUri();
-			
-			BusMessage message = new BusMessage();
-			message.setBusUri(channel);
-			message.setSenderUri(channel);
-																							
-			ChannelEvent event = new ChannelEvent();
-			event.setChannel(channel);					
-			event.setAttribute(ChannelEvent.metadata, allUpdates);
-			message.setAttribute(ChannelEvent.event, XMLUtilities.marshal(event));
-									
-			Bus.sendMessage(message);
+			ChannelDaemon.sendChannelEvent(this.channelRegistration.getUri(), allUpdates);
 		}
-	}			
+	}
+	
+	/**
+	 * Hands the changes of a channel over to the Bus, where they are picked up by the MobileObjectMonitor
+	 * and broadcast to the ChannelEventListeners
+	 * 
+	 * @param channel
+	 * @param allUpdates
+	 */
+	static void sendChannelEvent(String channel, List<ChannelBeanMetaData> allUpdates)
+	{
+		BusMessage message = new BusMessage();
+		message.setBusUri(channel);
+		message.setSenderUri(channel);
+																						
+		ChannelEvent event = new ChannelEvent();
+		event.setChannel(channel);					
+		event.setAttribute(ChannelEvent.metadata, allUpdates);
+		message.setAttribute(ChannelEvent.event, event); //binary encoded by the Bus
+								
+		Bus.sendMessage(message);
+	}
 }
@@ -34,11 +34,13 @@ public final class ChannelManager
 	
 	public static ChannelManager createInstance(HibernateManager hibernateManager,
 	DeviceController deviceController,
-	ChannelRegistration channelRegistration)
+	ChannelRegistration channelRegistration,
+	ChannelScanEngine scanEngine)
 	{
 		ChannelManager manager = new ChannelManager();
 		
-		ChannelDaemon daemon = new ChannelDaemon(hibernateManager, deviceController,channelRegistration);				
+		ChannelDaemon daemon = new ChannelDaemon(hibernateManager, deviceController,channelRegistration,
+		scanEngine);				
 		manager.setChannelDaemon(daemon);
 		
 		return manager;
@@ -0,0 +1,320 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.openmobster.core.common.ServiceManager;
+import org.openmobster.core.common.bus.LatencyHistogram;
+import org.openmobster.core.common.errors.ErrorHandler;
+import org.openmobster.core.common.transaction.TransactionHelper;
+import org.openmobster.core.security.device.Device;
+
+/**
+ * Runs the channel scans of the ChannelDaemons.
+ *
+ * A scan tick of a channel runs on its own thread, so that a slow channel does not hold up the timer. The
+ * devices of the tick are split into batches, which are scanned in parallel on a bounded pool shared by all
+ * the channels. A tick that comes due while the previous tick of the same channel is still running is
+ * skipped.
+ *
+ * When the scan pool falls behind, a tick waits for room in its queue instead of scanning the batch on its
+ * own thread, where the batch would end up in the transaction of the tick.
+ *
+ * @author openmobster@gmail.com
+ */
+public final class ChannelScanEngine
+{
+	private static Logger log = Logger.getLogger(ChannelScanEngine.class);
+
+	private int scanThreads = 8;
+	private int batchSize = 100;
+
+	private ThreadPoolExecutor ticks;
+	private ThreadPoolExecutor scanners;
+
+	private ConcurrentHashMap<String,LatencyHistogram> scanDurations;
+	private ConcurrentHashMap<String,AtomicLong> skippedTicks;
+
+	public ChannelScanEngine()
+	{
+		this.scanDurations = new ConcurrentHashMap<String,LatencyHistogram>();
+		this.skippedTicks = new ConcurrentHashMap<String,AtomicLong>();
+	}
+
+	public static ChannelScanEngine getInstance()
+	{
+		return (ChannelScanEngine)ServiceManager.locate("services://ChannelScanEngine");
+	}
+
+	public void start()
+	{
+		//one tick per channel at a time, so this only grows up to the number of channels
+		this.ticks = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+		60, TimeUnit.SECONDS,
+		new SynchronousQueue<Runnable>(),
+		new ScanThreadFactory("channel-tick"));
+
+		//when the queue is full, the tick waits for room
+		this.scanners = new ThreadPoolExecutor(this.scanThreads, this.scanThreads,
+		60, TimeUnit.SECONDS,
+		new ArrayBlockingQueue<Runnable>(this.scanThreads * 4),
+		new ScanThreadFactory("channel-scan"),
+		new WaitForRoom());
+	}
+
+	public void stop()
+	{
+		for(LatencyHistogram scanDuration: this.scanDurations.values())
+		{
+			log.info(scanDuration+", skipped="+this.getSkippedTicks(scanDuration.getName()));
+		}
+
+		if(this.ticks != null)
+		{
+			this.ticks.shutdown();
+		}
+		if(this.scanners != null)
+		{
+			this.scanners.shutdown();
+		}
+	}
+
+	public int getScanThreads()
+	{
+		return scanThreads;
+	}
+
+	public void setScanThreads(int scanThreads)
+	{
+		this.scanThreads = scanThreads;
+	}
+
+	public int getBatchSize()
+	{
+		return batchSize;
+	}
+
+	public void setBatchSize(int batchSize)
+	{
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Milliseconds taken by the scan ticks of a channel
+	 *
+	 * @param channel
+	 * @return
+	 */
+	public LatencyHistogram getScanDuration(String channel)
+	{
+		LatencyHistogram scanDuration = this.scanDurations.get(channel);
+		if(scanDuration == null)
+		{
+			scanDuration = new LatencyHistogram(channel);
+			LatencyHistogram old = this.scanDurations.putIfAbsent(channel, scanDuration);
+			if(old != null)
+			{
+				scanDuration = old;
+			}
+		}
+		return scanDuration;
+	}
+
+	/**
+	 * Ticks of a channel that were skipped because the previous scan was still running
+	 *
+	 * @param channel
+	 * @return
+	 */
+	public long getSkippedTicks(String channel)
+	{
+		AtomicLong skipped = this.skippedTicks.get(channel);
+		if(skipped == null)
+		{
+			return 0;
+		}
+		return skipped.get();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	/**
+	 * Starts a scan tick of a channel, unless its previous tick is still running
+	 *
+	 * @param channel
+	 * @param running guard of the channel, held for as long as the tick runs
+	 * @param tick
+	 * @return false if the tick was skipped
+	 */
+	boolean submitTick(final String channel, final AtomicBoolean running, final Runnable tick)
+	{
+		if(!running.compareAndSet(false, true))
+		{
+			AtomicLong skipped = this.skippedTicks.get(channel);
+			if(skipped == null)
+			{
+				this.skippedTicks.putIfAbsent(channel, new AtomicLong(0));
+				skipped = this.skippedTicks.get(channel);
+			}
+			skipped.incrementAndGet();
+			return false;
+		}
+
+		try
+		{
+			this.ticks.execute(new Runnable()
+			{
+				public void run()
+				{
+					long start = System.currentTimeMillis();
+					try
+					{
+						tick.run();
+					}
+					finally
+					{
+						ChannelScanEngine.this.getScanDuration(channel).record(System.currentTimeMillis() - start);
+						running.set(false);
+					}
+				}
+			});
+			return true;
+		}
+		catch(RuntimeException re)
+		{
+			running.set(false);
+			throw re;
+		}
+	}
+
+	/**
+	 * Scans the devices in batches on the scan pool, and waits for all of them to finish. Each batch runs in
+	 * its own transaction, a failing batch does not affect the others
+	 *
+	 * @param devices
+	 * @param scan
+	 */
+	void scan(List<Device> devices, final BatchScan scan)
+	{
+		List<Future<?>> batches = new ArrayList<Future<?>>();
+		for(int i=0,size=devices.size(); i<size; i+=this.batchSize)
+		{
+			final List<Device> batch = devices.subList(i, Math.min(size, i+this.batchSize));
+			batches.add(this.scanners.submit(new Runnable()
+			{
+				public void run()
+				{
+					boolean isStartedHere = TransactionHelper.startTx();
+					try
+					{
+						scan.scan(batch);
+
+						if(isStartedHere)
+						{
+							TransactionHelper.commitTx();
+						}
+					}
+					catch(Exception e)
+					{
+						log.error(this, e);
+
+						if(isStartedHere)
+						{
+							TransactionHelper.rollbackTx();
+						}
+
+						ErrorHandler.getInstance().handle(e);
+					}
+				}
+			}));
+		}
+
+		for(Future<?> batch: batches)
+		{
+			try
+			{
+				batch.get();
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				return;
+			}
+			catch(ExecutionException ee)
+			{
+				ErrorHandler.getInstance().handle(ee.getCause());
+			}
+		}
+	}
+
+	/**
+	 * Scans one batch of devices
+	 */
+	interface BatchScan
+	{
+		void scan(List<Device> batch) throws Exception;
+	}
+
+	/**
+	 * Blocks the submitting tick until the queue of the scan pool has room for the batch
+	 */
+	private static class WaitForRoom implements RejectedExecutionHandler
+	{
+		public void rejectedExecution(Runnable batch, ThreadPoolExecutor executor)
+		{
+			if(executor.isShutdown())
+			{
+				throw new RejectedExecutionException("ChannelScanEngine is stopped");
+			}
+
+			try
+			{
+				executor.getQueue().put(batch);
+			}
+			catch(InterruptedException ie)
+			{
+				Thread.currentThread().interrupt();
+				throw new RejectedExecutionException(ie);
+			}
+		}
+	}
+
+	private static class ScanThreadFactory implements ThreadFactory
+	{
+		private String name;
+		private AtomicInteger counter = new AtomicInteger(0);
+
+		private ScanThreadFactory(String name)
+		{
+			this.name = name;
+		}
+
+		public Thread newThread(Runnable runnable)
+		{
+			Thread thread = new Thread(runnable, this.name+"-"+this.counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+}
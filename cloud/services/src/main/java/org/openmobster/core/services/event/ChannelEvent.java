@@ -40,6 +40,11 @@ public class ChannelEvent implements Serializable, EventConstants
 	{
 		this.attributes.removeAttribute(name);
 	}
+	
+	public String[] getAttributeNames()
+	{
+		return this.attributes.getNames();
+	}
 	//-----------------------------------------------------------------------------------------------------------
 	public String getChannel()
 	{
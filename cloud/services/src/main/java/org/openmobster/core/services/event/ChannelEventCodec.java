@@ -0,0 +1,156 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.event;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.openmobster.core.common.bus.BusAttributeCodec;
+import org.openmobster.core.common.bus.BusMessageCodec;
+import org.openmobster.core.services.channel.ChannelBeanMetaData;
+import org.openmobster.core.services.channel.ChannelUpdateType;
+
+/**
+ * Binary encoding of a ChannelEvent carried on the Bus, in place of the XML marshalled event nested
+ * inside the Bus message.
+ *
+ * Only events that carry nothing but the channel and the ChannelBeanMetaData are handled here, anything
+ * else is left to the XML fallback of the BusMessageCodec
+ *
+ * @author openmobster@gmail.com
+ */
+public final class ChannelEventCodec implements BusAttributeCodec
+{
+	private static final byte id = 64;
+
+	public static void register()
+	{
+		BusMessageCodec.register(new ChannelEventCodec());
+	}
+
+	public byte getId()
+	{
+		return id;
+	}
+
+	public boolean accepts(Object value)
+	{
+		if(value == null || value.getClass() != ChannelEvent.class)
+		{
+			return false;
+		}
+
+		ChannelEvent event = (ChannelEvent)value;
+		String[] names = event.getAttributeNames();
+		if(names == null)
+		{
+			return true;
+		}
+		for(String name:names)
+		{
+			if(name.equals("channel"))
+			{
+				continue;
+			}
+			if(name.equals(ChannelEvent.metadata) && this.isMetaData(event.getAttribute(name)))
+			{
+				continue;
+			}
+			return false;
+		}
+		return true;
+	}
+
+	public void write(DataOutputStream out, Object value) throws IOException
+	{
+		ChannelEvent event = (ChannelEvent)value;
+
+		BusMessageCodec.writeString(out, event.getChannel());
+
+		List<ChannelBeanMetaData> metadata = (List<ChannelBeanMetaData>)event.getAttribute(ChannelEvent.metadata);
+		if(metadata == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+
+		out.writeInt(metadata.size());
+		for(ChannelBeanMetaData local:metadata)
+		{
+			BusMessageCodec.writeString(out, local.getChannel());
+			BusMessageCodec.writeString(out, local.getBeanId());
+			BusMessageCodec.writeString(out, local.getDeviceId());
+			BusMessageCodec.writeString(out, local.getPrincipal());
+			if(local.getUpdateType() != null)
+			{
+				out.writeByte(local.getUpdateType().ordinal());
+			}
+			else
+			{
+				out.writeByte(-1);
+			}
+		}
+	}
+
+	public Object read(DataInputStream in) throws IOException
+	{
+		ChannelEvent event = new ChannelEvent();
+		event.setChannel(BusMessageCodec.readString(in));
+
+		int size = in.readInt();
+		if(size < 0)
+		{
+			return event;
+		}
+
+		ChannelUpdateType[] updateTypes = ChannelUpdateType.values();
+		List<ChannelBeanMetaData> metadata = new ArrayList<ChannelBeanMetaData>(size);
+		for(int i=0; i<size; i++)
+		{
+			ChannelBeanMetaData local = new ChannelBeanMetaData();
+			local.setChannel(BusMessageCodec.readString(in));
+			local.setBeanId(BusMessageCodec.readString(in));
+			local.setDeviceId(BusMessageCodec.readString(in));
+			local.setPrincipal(BusMessageCodec.readString(in));
+
+			byte updateType = in.readByte();
+			if(updateType >= 0)
+			{
+				local.setUpdateType(updateTypes[updateType]);
+			}
+			metadata.add(local);
+		}
+		event.setAttribute(ChannelEvent.metadata, metadata);
+
+		return event;
+	}
+
+	private boolean isMetaData(Object value)
+	{
+		if(value == null)
+		{
+			return true;
+		}
+		if(value.getClass() != ArrayList.class)
+		{
+			return false;
+		}
+		for(Object local:(List<?>)value)
+		{
+			if(local == null || local.getClass() != ChannelBeanMetaData.class)
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -13,9 +13,12 @@ import org.apache.log4j.Logger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.openmobster.core.security.device.Device;
 import org.openmobster.core.security.device.DeviceController;
+import org.openmobster.core.security.identity.Identity;
 
 /**
  * A SubscriptionManager manages the Comet Subscription for each client/device that is "actively" connected to the system
@@ -26,9 +29,17 @@ public class SubscriptionManager
 {
 	private static Logger log = Logger.getLogger(SubscriptionManager.class);
 	
+	//bumped whenever a device is updated or removed, invalidates the Device cached by its connections
+	private static final ConcurrentHashMap<String, Long> deviceVersions = new ConcurrentHashMap<String, Long>();
+	private static final AtomicLong deviceCacheHits = new AtomicLong(0);
+	private static final AtomicLong deviceCacheMisses = new AtomicLong(0);
+	
 	private Subscription subscription;
 	private List<String> myChannels;
 	
+	private Device device;
+	private long deviceVersion;
+	
 	private SubscriptionManager()
 	{	
 		this.myChannels = new ArrayList<String>();
@@ -61,17 +72,103 @@ public class SubscriptionManager
 		this.myChannels.add(channel);
 	}
 	
+	/**
+	 * The Device of this subscription. It is read once per connection, and read again only after
+	 * it has been invalidated
+	 * 
+	 * @return
+	 */
 	public Device getDevice()
 	{
 		if(this.subscription == null || this.subscription.getClientId() == null)
 		{
 			return null;
 		}
-		return DeviceController.getInstance().read(this.subscription.getClientId());
+		String deviceId = this.subscription.getClientId();
+		
+		//read the version before the device, so that an invalidation racing with the read is not lost
+		long version = currentVersion(deviceId);
+		Device cached = this.device;
+		if(cached != null && this.deviceVersion == version)
+		{
+			deviceCacheHits.incrementAndGet();
+			return cached;
+		}
+		
+		deviceCacheMisses.incrementAndGet();
+		Device device = DeviceController.getInstance().read(deviceId);
+		if(device != null)
+		{
+			this.deviceVersion = version;
+			this.device = device;
+		}
+		return device;
 	}
 	
 	public boolean isMyChannel(String channel)
 	{
 		return this.myChannels.contains(channel);
 	}
+	
+	/**
+	 * Drops the cached Device of this connection if it belongs to the Identity. A connection that has not
+	 * cached its Device yet may be reading it while the Identity changes, so it is invalidated as well
+	 * 
+	 * @param identity
+	 */
+	public void invalidateIdentity(Identity identity)
+	{
+		if(this.subscription == null || identity == null)
+		{
+			return;
+		}
+		
+		Device cached = this.device;
+		if(cached == null || cached.getIdentity() == null || cached.getIdentity().getId() == identity.getId())
+		{
+			invalidateDevice(this.subscription.getClientId());
+		}
+	}
+	//-----------------------------------------------------------------------------------------------------------
+	/**
+	 * Drops the cached copies of a Device held by the active connections
+	 * 
+	 * @param deviceId
+	 */
+	public static void invalidateDevice(String deviceId)
+	{
+		if(deviceId == null)
+		{
+			return;
+		}
+		
+		while(true)
+		{
+			Long version = deviceVersions.putIfAbsent(deviceId, 1l);
+			if(version == null || deviceVersions.replace(deviceId, version, version+1))
+			{
+				return;
+			}
+		}
+	}
+	
+	public static long getDeviceCacheHits()
+	{
+		return deviceCacheHits.get();
+	}
+	
+	public static long getDeviceCacheMisses()
+	{
+		return deviceCacheMisses.get();
+	}
+	
+	private static long currentVersion(String deviceId)
+	{
+		Long version = deviceVersions.get(deviceId);
+		if(version == null)
+		{
+			return 0;
+		}
+		return version;
+	}
 }
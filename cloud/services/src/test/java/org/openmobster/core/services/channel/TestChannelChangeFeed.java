@@ -0,0 +1,185 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.channel;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.device.DeviceController;
+import org.openmobster.core.security.identity.Identity;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestChannelChangeFeed extends TestCase
+{
+	private ChannelChangeFeed feed;
+	private FixedDevices deviceController;
+
+	public void setUp() throws Exception
+	{
+		this.deviceController = new FixedDevices();
+
+		this.feed = new ChannelChangeFeed();
+		this.feed.setDeviceController(this.deviceController);
+		this.feed.setCoalesceWindow(60000); //nothing goes out on its own during a test
+		this.feed.start();
+	}
+
+	public void tearDown() throws Exception
+	{
+		this.deviceController.devices.clear();
+		this.feed.stop();
+	}
+
+	public void testCoalesce() throws Exception
+	{
+		assertEquals(ChannelUpdateType.ADD, ChannelChangeFeed.coalesce(ChannelUpdateType.ADD, ChannelUpdateType.REPLACE));
+		assertEquals(ChannelUpdateType.DELETE, ChannelChangeFeed.coalesce(ChannelUpdateType.ADD, ChannelUpdateType.DELETE));
+		assertEquals(ChannelUpdateType.DELETE, ChannelChangeFeed.coalesce(ChannelUpdateType.REPLACE, ChannelUpdateType.DELETE));
+		assertEquals(ChannelUpdateType.ADD, ChannelChangeFeed.coalesce(ChannelUpdateType.DELETE, ChannelUpdateType.ADD));
+		assertEquals(ChannelUpdateType.REPLACE, ChannelChangeFeed.coalesce(ChannelUpdateType.REPLACE, ChannelUpdateType.REPLACE));
+	}
+
+	public void testCoalescePublished() throws Exception
+	{
+		this.deviceController.add("IMEI:1", "blah1@gmail.com");
+		List<String> principals = Arrays.asList(new String[]{"blah1@gmail.com"});
+
+		this.feed.created("testChannel", "created", principals);
+		this.feed.updated("testChannel", "created", principals);
+
+		this.feed.updated("testChannel", "updated", principals);
+		this.feed.deleted("testChannel", "updated", principals);
+
+		this.feed.deleted("testChannel", "recreated", principals);
+		this.feed.created("testChannel", "recreated", principals);
+
+		assertEquals(6, this.feed.getPublishedCount());
+		assertEquals(3, this.feed.getCoalescedCount());
+
+		Map<String,List<ChannelBeanMetaData>> updates = this.feed.resolve(this.feed.drain());
+		List<ChannelBeanMetaData> channelUpdates = updates.get("testChannel");
+		assertEquals(3, channelUpdates.size());
+		assertEquals(ChannelUpdateType.ADD, this.find(channelUpdates, "created", "IMEI:1").getUpdateType());
+		assertEquals(ChannelUpdateType.DELETE, this.find(channelUpdates, "updated", "IMEI:1").getUpdateType());
+		assertEquals(ChannelUpdateType.ADD, this.find(channelUpdates, "recreated", "IMEI:1").getUpdateType());
+	}
+
+	public void testOneUpdatePerDevice() throws Exception
+	{
+		this.deviceController.add("IMEI:1", "blah1@gmail.com");
+		this.deviceController.add("IMEI:2", "blah2@gmail.com");
+
+		//once for all the users and once more for one of them
+		this.feed.created("testChannel", "bean", null);
+		this.feed.updated("testChannel", "bean", Arrays.asList(new String[]{"blah1@gmail.com"}));
+		this.feed.deleted("testChannel", "other", Arrays.asList(new String[]{"blah2@gmail.com"}));
+		this.feed.updated("testChannel", "other", null);
+
+		Map<String,List<ChannelBeanMetaData>> updates = this.feed.resolve(this.feed.drain());
+		List<ChannelBeanMetaData> channelUpdates = updates.get("testChannel");
+		assertEquals(4, channelUpdates.size());
+		assertEquals(ChannelUpdateType.ADD, this.find(channelUpdates, "bean", "IMEI:1").getUpdateType());
+		assertEquals(ChannelUpdateType.ADD, this.find(channelUpdates, "bean", "IMEI:2").getUpdateType());
+		assertEquals(ChannelUpdateType.REPLACE, this.find(channelUpdates, "other", "IMEI:1").getUpdateType());
+		assertEquals(ChannelUpdateType.REPLACE, this.find(channelUpdates, "other", "IMEI:2").getUpdateType());
+	}
+
+	public void testInactiveDevice() throws Exception
+	{
+		this.deviceController.add("IMEI:1", "blah1@gmail.com");
+		this.deviceController.devices.add(new Device("IMEI:2", new Identity("blah2@gmail.com", "blahblah")));
+
+		this.feed.updated("testChannel", "bean", null);
+
+		List<ChannelBeanMetaData> channelUpdates = this.feed.resolve(this.feed.drain()).get("testChannel");
+		assertEquals(1, channelUpdates.size());
+		assertEquals("IMEI:1", channelUpdates.get(0).getDeviceId());
+	}
+
+	public void testStopFlushes() throws Exception
+	{
+		this.feed.updated("testChannel", "bean", null);
+
+		this.feed.stop();
+
+		assertTrue(this.feed.drain().isEmpty());
+		assertEquals(1, this.deviceController.lookups);
+	}
+
+	public void testNotRunning() throws Exception
+	{
+		ChannelChangeFeed notStarted = new ChannelChangeFeed();
+		notStarted.setDeviceController(this.deviceController);
+		notStarted.updated("testChannel", "bean", null);
+		assertTrue(notStarted.drain().isEmpty());
+		assertEquals(1, this.deviceController.lookups);
+
+		this.feed.stop();
+		this.feed.updated("testChannel", "bean", null);
+		assertTrue(this.feed.drain().isEmpty());
+		assertEquals(2, this.deviceController.lookups);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private ChannelBeanMetaData find(List<ChannelBeanMetaData> updates, String beanId, String deviceId)
+	{
+		ChannelBeanMetaData found = null;
+		for(ChannelBeanMetaData cour: updates)
+		{
+			if(cour.getBeanId().equals(beanId) && cour.getDeviceId().equals(deviceId))
+			{
+				assertNull("more than one update for "+beanId+" on "+deviceId, found);
+				found = cour;
+			}
+		}
+		assertNotNull(found);
+		return found;
+	}
+
+	private static class FixedDevices extends DeviceController
+	{
+		private List<Device> devices = new ArrayList<Device>();
+		private int lookups;
+
+		private void add(String deviceId, String principal)
+		{
+			Identity identity = new Identity(principal, "blahblah");
+			identity.activate();
+			this.devices.add(new Device(deviceId, identity));
+		}
+
+		public List<Device> readAll()
+		{
+			this.lookups++;
+			return new ArrayList<Device>(this.devices);
+		}
+
+		public Set<Device> readByIdentity(String principal)
+		{
+			this.lookups++;
+			Set<Device> found = new HashSet<Device>();
+			for(Device device: this.devices)
+			{
+				if(device.getIdentity().getPrincipal().equals(principal))
+				{
+					found.add(device);
+				}
+			}
+			return found;
+		}
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.channel;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.openmobster.cloud.api.sync.BatchScanningChannel;
+import org.openmobster.cloud.api.sync.Channel;
+import org.openmobster.cloud.api.sync.ChannelChanges;
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.identity.Identity;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestChannelDaemonScan extends TestCase
+{
+	private List<Device> devices;
+	private Date timestamp;
+	private List<ChannelBeanMetaData> allUpdates;
+	private List<LastScanTimestamp> scanned;
+
+	public void setUp() throws Exception
+	{
+		this.devices = new ArrayList<Device>();
+		for(int i=0; i<3; i++)
+		{
+			this.devices.add(new Device("IMEI:"+i, new Identity("blah"+i+"@gmail.com", "blahblah")));
+		}
+
+		this.timestamp = new Date();
+		this.allUpdates = new ArrayList<ChannelBeanMetaData>();
+		this.scanned = new ArrayList<LastScanTimestamp>();
+	}
+
+	public void testChannel() throws Exception
+	{
+		ScanningChannel channel = new ScanningChannel();
+		channel.failing = "IMEI:1";
+
+		this.createDaemon(channel).scanBatch(this.devices, this.timestamp, this.allUpdates, this.scanned);
+
+		//three calls per device
+		assertEquals(9, channel.scans);
+
+		//IMEI:1 failed, so it keeps its old timestamp and is scanned again on the next tick
+		assertEquals(2, this.scanned.size());
+		this.assertScanned("IMEI:0");
+		this.assertScanned("IMEI:2");
+
+		assertEquals(6, this.allUpdates.size());
+		this.assertUpdate("IMEI:0", "new-IMEI:0", ChannelUpdateType.ADD);
+		this.assertUpdate("IMEI:0", "updated-IMEI:0", ChannelUpdateType.REPLACE);
+		this.assertUpdate("IMEI:0", "deleted-IMEI:0", ChannelUpdateType.DELETE);
+		this.assertUpdate("IMEI:2", "new-IMEI:2", ChannelUpdateType.ADD);
+	}
+
+	public void testPartialChanges() throws Exception
+	{
+		BatchChannel channel = new BatchChannel();
+		channel.changes.put("IMEI:0", new ChannelChanges(new String[]{"bean1", "bean2"}, null, null));
+		channel.changes.put("IMEI:2", new ChannelChanges(null, new String[]{"bean3"}, new String[]{"bean4"}));
+		channel.changes.put("IMEI:unknown", new ChannelChanges(new String[]{"bean5"}, null, null));
+
+		this.createDaemon(channel).scanBatch(this.devices, this.timestamp, this.allUpdates, this.scanned);
+
+		//one call for the whole batch, none of the per device ones
+		assertEquals(1, channel.batchScans);
+		assertEquals(0, channel.scans);
+		assertEquals(3, channel.lastScans.size());
+
+		//IMEI:1 had no changes, but was scanned all the same
+		assertEquals(3, this.scanned.size());
+		this.assertScanned("IMEI:0");
+		this.assertScanned("IMEI:1");
+		this.assertScanned("IMEI:2");
+
+		assertEquals(4, this.allUpdates.size());
+		this.assertUpdate("IMEI:0", "bean1", ChannelUpdateType.ADD);
+		this.assertUpdate("IMEI:0", "bean2", ChannelUpdateType.ADD);
+		this.assertUpdate("IMEI:2", "bean3", ChannelUpdateType.REPLACE);
+		this.assertUpdate("IMEI:2", "bean4", ChannelUpdateType.DELETE);
+	}
+
+	public void testNoChanges() throws Exception
+	{
+		BatchChannel channel = new BatchChannel();
+		channel.changes = null;
+
+		this.createDaemon(channel).scanBatch(this.devices, this.timestamp, this.allUpdates, this.scanned);
+
+		assertEquals(3, this.scanned.size());
+		assertTrue(this.allUpdates.isEmpty());
+	}
+
+	public void testBatchFailure() throws Exception
+	{
+		BatchChannel channel = new BatchChannel();
+		channel.failing = "batch";
+
+		try
+		{
+			this.createDaemon(channel).scanBatch(this.devices, this.timestamp, this.allUpdates, this.scanned);
+			fail("the failure of the channel must reach the scan engine");
+		}
+		catch(IllegalStateException ise)
+		{
+			//expected
+		}
+
+		//none of the batch is moved forward
+		assertTrue(this.scanned.isEmpty());
+		assertTrue(this.allUpdates.isEmpty());
+	}
+	//-----------------------------------------------------------------------------------------------------
+	private ChannelDaemon createDaemon(Channel channel)
+	{
+		return new ChannelDaemon(null, null, new ChannelRegistration("testChannel", channel), null);
+	}
+
+	private void assertScanned(String deviceId)
+	{
+		for(LastScanTimestamp cour: this.scanned)
+		{
+			if(cour.getClientId().equals(deviceId))
+			{
+				assertEquals("testChannel", cour.getChannel());
+				assertEquals(this.timestamp, cour.getTimestamp());
+				return;
+			}
+		}
+		fail(deviceId+" was not scanned");
+	}
+
+	private void assertUpdate(String deviceId, String beanId, ChannelUpdateType updateType)
+	{
+		for(ChannelBeanMetaData cour: this.allUpdates)
+		{
+			if(cour.getDeviceId().equals(deviceId) && cour.getBeanId().equals(beanId))
+			{
+				assertEquals("testChannel", cour.getChannel());
+				assertEquals(updateType, cour.getUpdateType());
+				return;
+			}
+		}
+		fail(beanId+" was not found for "+deviceId);
+	}
+
+	/**
+	 * Finds one bean of each kind for every device
+	 */
+	private static class ScanningChannel implements Channel
+	{
+		protected String failing;
+		protected int scans;
+
+		public String[] scanForNew(Device device, Date lastScanTimestamp)
+		{
+			return this.scan("new", device);
+		}
+
+		public String[] scanForUpdates(Device device, Date lastScanTimestamp)
+		{
+			return this.scan("updated", device);
+		}
+
+		public String[] scanForDeletions(Device device, Date lastScanTimestamp)
+		{
+			return this.scan("deleted", device);
+		}
+
+		private String[] scan(String kind, Device device)
+		{
+			this.scans++;
+			if(device.getIdentifier().equals(this.failing) && kind.equals("deleted"))
+			{
+				throw new IllegalStateException(kind);
+			}
+			return new String[]{kind+"-"+device.getIdentifier()};
+		}
+
+		public List<? extends MobileBean> readAll()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public MobileBean read(String id)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public List<? extends MobileBean> bootup()
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public String create(MobileBean mobileBean)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void update(MobileBean mobileBean)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		public void delete(MobileBean mobileBean)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	private static class BatchChannel extends ScanningChannel implements BatchScanningChannel
+	{
+		private Map<String,ChannelChanges> changes = new HashMap<String,ChannelChanges>();
+		private Map<Device,Date> lastScans;
+		private int batchScans;
+
+		public Map<String,ChannelChanges> scan(Map<Device,Date> lastScanTimestamps)
+		{
+			this.batchScans++;
+			this.lastScans = new HashMap<Device,Date>(lastScanTimestamps);
+			if("batch".equals(this.failing))
+			{
+				throw new IllegalStateException("batch");
+			}
+			return this.changes;
+		}
+	}
+}
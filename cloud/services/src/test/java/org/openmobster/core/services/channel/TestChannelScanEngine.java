@@ -0,0 +1,137 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.channel;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.identity.Identity;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestChannelScanEngine extends TestCase
+{
+	private ChannelScanEngine scanEngine;
+	
+	public void setUp() throws Exception
+	{
+		this.scanEngine = new ChannelScanEngine();
+		this.scanEngine.setScanThreads(4);
+		this.scanEngine.setBatchSize(10);
+		this.scanEngine.start();
+	}
+	
+	public void tearDown() throws Exception
+	{
+		this.scanEngine.stop();
+	}
+	
+	public void testScanInBatches() throws Exception
+	{
+		List<Device> devices = new ArrayList<Device>();
+		for(int i=0; i<95; i++)
+		{
+			devices.add(new Device("IMEI:"+i, new Identity("blah"+i+"@gmail.com", "blahblah")));
+		}
+		
+		final AtomicInteger batches = new AtomicInteger(0);
+		final AtomicInteger scanned = new AtomicInteger(0);
+		this.scanEngine.scan(devices, new ChannelScanEngine.BatchScan()
+		{
+			public void scan(List<Device> batch) throws Exception
+			{
+				assertTrue(batch.size() <= 10);
+				batches.incrementAndGet();
+				scanned.addAndGet(batch.size());
+			}
+		});
+		
+		//scan returns only after all the batches are done
+		assertEquals(10, batches.get());
+		assertEquals(95, scanned.get());
+	}
+	
+	public void testBatchesRunOnScanThreads() throws Exception
+	{
+		//more batches than the 4 scan threads and their queue of 16 can take at once
+		List<Device> devices = new ArrayList<Device>();
+		for(int i=0; i<300; i++)
+		{
+			devices.add(new Device("IMEI:"+i, new Identity("blah"+i+"@gmail.com", "blahblah")));
+		}
+		
+		final Thread tickThread = Thread.currentThread();
+		final AtomicInteger batches = new AtomicInteger(0);
+		final AtomicInteger onTickThread = new AtomicInteger(0);
+		this.scanEngine.scan(devices, new ChannelScanEngine.BatchScan()
+		{
+			public void scan(List<Device> batch) throws Exception
+			{
+				if(Thread.currentThread() == tickThread)
+				{
+					onTickThread.incrementAndGet();
+				}
+				Thread.sleep(20);
+				batches.incrementAndGet();
+			}
+		});
+		
+		//a batch on the tick thread would join the transaction of the tick
+		assertEquals(30, batches.get());
+		assertEquals(0, onTickThread.get());
+	}
+	
+	public void testTickSkippedWhileRunning() throws Exception
+	{
+		AtomicBoolean running = new AtomicBoolean(false);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		
+		assertTrue(this.scanEngine.submitTick("twitterChannel", running, new Runnable()
+		{
+			public void run()
+			{
+				try
+				{
+					release.await(5, TimeUnit.SECONDS);
+				}
+				catch(InterruptedException ie){}
+				done.countDown();
+			}
+		}));
+		
+		assertFalse(this.scanEngine.submitTick("twitterChannel", running, new Runnable()
+		{
+			public void run()
+			{
+				fail("must be skipped");
+			}
+		}));
+		assertEquals(1, this.scanEngine.getSkippedTicks("twitterChannel"));
+		
+		release.countDown();
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		
+		//the guard is released right after the tick is recorded
+		for(int i=0; i<50 && running.get(); i++)
+		{
+			Thread.sleep(100);
+		}
+		assertFalse(running.get());
+		assertEquals(1, this.scanEngine.getScanDuration("twitterChannel").getCount());
+	}
+}
@@ -0,0 +1,86 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.event;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.bus.BusMessage;
+import org.openmobster.core.common.bus.BusMessageCodec;
+import org.openmobster.core.services.channel.ChannelBeanMetaData;
+import org.openmobster.core.services.channel.ChannelUpdateType;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class TestChannelEventCodec extends TestCase
+{
+	public void setUp() throws Exception
+	{
+		ChannelEventCodec.register();
+	}
+
+	public void testRoundTrip() throws Exception
+	{
+		List<ChannelBeanMetaData> allUpdates = new ArrayList<ChannelBeanMetaData>();
+		for(int i=0; i<3; i++)
+		{
+			ChannelBeanMetaData metadata = new ChannelBeanMetaData();
+			metadata.setChannel("twitter_channel");
+			metadata.setBeanId("bean:"+i);
+			metadata.setDeviceId("IMEI:"+i);
+			metadata.setPrincipal("blah@gmail.com");
+			metadata.setUpdateType(ChannelUpdateType.values()[i]);
+			allUpdates.add(metadata);
+		}
+
+		ChannelEvent event = new ChannelEvent();
+		event.setChannel("twitter_channel");
+		event.setAttribute(ChannelEvent.metadata, allUpdates);
+
+		BusMessage busMessage = new BusMessage();
+		busMessage.setBusUri("twitter_channel");
+		busMessage.setSenderUri("twitter_channel");
+		busMessage.setAttribute(ChannelEvent.event, event);
+
+		BusMessage decoded = BusMessageCodec.decode(BusMessageCodec.encode(busMessage));
+		ChannelEvent decodedEvent = (ChannelEvent)decoded.getAttribute(ChannelEvent.event);
+
+		assertEquals("twitter_channel", decodedEvent.getChannel());
+		List<ChannelBeanMetaData> decodedUpdates = (List<ChannelBeanMetaData>)decodedEvent.
+		getAttribute(ChannelEvent.metadata);
+		assertEquals(3, decodedUpdates.size());
+		for(int i=0; i<3; i++)
+		{
+			ChannelBeanMetaData local = decodedUpdates.get(i);
+			assertEquals("bean:"+i, local.getBeanId());
+			assertEquals("IMEI:"+i, local.getDeviceId());
+			assertEquals("blah@gmail.com", local.getPrincipal());
+			assertEquals(ChannelUpdateType.values()[i], local.getUpdateType());
+		}
+	}
+
+	public void testExtraAttributesUseFallback() throws Exception
+	{
+		ChannelEvent event = new ChannelEvent();
+		event.setChannel("twitter_channel");
+		event.setAttribute("custom", "value");
+
+		assertFalse(new ChannelEventCodec().accepts(event));
+
+		BusMessage busMessage = new BusMessage();
+		busMessage.setAttribute(ChannelEvent.event, event);
+
+		BusMessage decoded = BusMessageCodec.decode(BusMessageCodec.encode(busMessage));
+		ChannelEvent decodedEvent = (ChannelEvent)decoded.getAttribute(ChannelEvent.event);
+		assertEquals("value", decodedEvent.getAttribute("custom"));
+	}
+}
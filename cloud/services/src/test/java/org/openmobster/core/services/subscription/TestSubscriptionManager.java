@@ -0,0 +1,109 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.services.subscription;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.ServiceManager;
+import org.openmobster.core.security.Provisioner;
+import org.openmobster.core.security.device.Device;
+import org.openmobster.core.security.device.DeviceController;
+import org.openmobster.core.security.identity.Identity;
+import org.openmobster.core.security.identity.IdentityController;
+import org.openmobster.core.services.CometService;
+
+/**
+ * The Device cached by the SubscriptionManager of a connection
+ *
+ * @author openmobster@gmail.com
+ */
+public class TestSubscriptionManager extends TestCase
+{
+	private String deviceId = "IMEI:12345";
+	private SubscriptionManager manager;
+
+	public void setUp()
+	{
+		ServiceManager.bootstrap();
+
+		Provisioner.getInstance().registerIdentity("blah@gmail.com", "blahblah");
+		Provisioner.getInstance().registerDevice("blah@gmail.com", "blahblah", this.deviceId);
+
+		Subscription subscription = new Subscription();
+		subscription.setClientId(this.deviceId);
+		this.manager = CometService.getInstance().activateSubscription(subscription);
+	}
+
+	public void tearDown()
+	{
+		ServiceManager.shutdown();
+	}
+
+	public void testCacheHit() throws Exception
+	{
+		long hits = SubscriptionManager.getDeviceCacheHits();
+		long misses = SubscriptionManager.getDeviceCacheMisses();
+
+		Device device = this.manager.getDevice();
+		assertNotNull(device);
+		assertEquals(this.deviceId, device.getIdentifier());
+		assertEquals(misses + 1, SubscriptionManager.getDeviceCacheMisses());
+		assertEquals(hits, SubscriptionManager.getDeviceCacheHits());
+
+		//second call is served by the cache
+		assertSame(device, this.manager.getDevice());
+		assertEquals(misses + 1, SubscriptionManager.getDeviceCacheMisses());
+		assertEquals(hits + 1, SubscriptionManager.getDeviceCacheHits());
+	}
+
+	public void testInvalidateDevice() throws Exception
+	{
+		Device device = this.manager.getDevice();
+		long hits = SubscriptionManager.getDeviceCacheHits();
+		long misses = SubscriptionManager.getDeviceCacheMisses();
+
+		SubscriptionManager.invalidateDevice(this.deviceId);
+
+		Device reread = this.manager.getDevice();
+		assertNotSame(device, reread);
+		assertEquals(this.deviceId, reread.getIdentifier());
+		assertEquals(misses + 1, SubscriptionManager.getDeviceCacheMisses());
+		assertEquals(hits, SubscriptionManager.getDeviceCacheHits());
+
+		//cached again
+		assertSame(reread, this.manager.getDevice());
+		assertEquals(hits + 1, SubscriptionManager.getDeviceCacheHits());
+	}
+
+	public void testDeviceUpdate() throws Exception
+	{
+		Device device = this.manager.getDevice();
+		long misses = SubscriptionManager.getDeviceCacheMisses();
+
+		DeviceController.getInstance().update(device);
+
+		assertNotSame(device, this.manager.getDevice());
+		assertEquals(misses + 1, SubscriptionManager.getDeviceCacheMisses());
+	}
+
+	public void testIdentityUpdate() throws Exception
+	{
+		Device device = this.manager.getDevice();
+		long misses = SubscriptionManager.getDeviceCacheMisses();
+
+		Identity identity = IdentityController.getInstance().read("blah@gmail.com");
+		identity.deactivate();
+		IdentityController.getInstance().update(identity);
+
+		Device reread = this.manager.getDevice();
+		assertNotSame(device, reread);
+		assertFalse(reread.getIdentity().isActive());
+		assertEquals(misses + 1, SubscriptionManager.getDeviceCacheMisses());
+	}
+}
@@ -13,6 +13,7 @@ import java.util.Map;
 import java.util.HashMap;
 import java.util.ArrayList;
 import java.util.Set;
+import java.util.Collections;
 
 import org.apache.log4j.Logger;
 
@@ -56,7 +57,9 @@ public class SyncChannelEventListener implements ChannelEventListener
 		
 		if(updateInfo != null)
 		{
-			Map<String, List> changeLogMap = new HashMap<String, List>();
+			//one changelog entry per device, per app subscribed to the channel, all written in one go
+			List<ChangeLogEntry> changeLog = new ArrayList<ChangeLogEntry>();
+			Map<String, Set<String>> appCache = new HashMap<String, Set<String>>();
 			for(ChannelBeanMetaData cour: updateInfo)
 			{
 				String deviceId = cour.getDeviceId();
@@ -64,69 +67,46 @@ public class SyncChannelEventListener implements ChannelEventListener
 				String channel = cour.getChannel();
 				ChannelUpdateType updateType = cour.getUpdateType();
 				
-				List changelog = this.findChangeLog(changeLogMap, deviceId);
-				
-				ChangeLogEntry entry = new ChangeLogEntry();
-				entry.setNodeId(channel);
-				entry.setTarget(deviceId);
-				entry.setRecordId(beanId);
-				
+				String operation = null;
 				if(updateType == ChannelUpdateType.ADD)
 				{
-					entry.setOperation(ServerSyncEngine.OPERATION_ADD);
+					operation = ServerSyncEngine.OPERATION_ADD;
 				}
 				else if(updateType == ChannelUpdateType.REPLACE)
 				{
-					entry.setOperation(ServerSyncEngine.OPERATION_UPDATE);
+					operation = ServerSyncEngine.OPERATION_UPDATE;
 				}
 				else if(updateType == ChannelUpdateType.DELETE)
 				{
-					entry.setOperation(ServerSyncEngine.OPERATION_DELETE);
+					operation = ServerSyncEngine.OPERATION_DELETE;
 				}
 				
-				changelog.add(entry);
+				Set<String> apps = this.findApps(appCache, deviceId, channel);
+				for(String app: apps)
+				{
+					ChangeLogEntry entry = new ChangeLogEntry();
+					entry.setNodeId(channel);
+					entry.setTarget(deviceId);
+					entry.setRecordId(beanId);
+					entry.setOperation(operation);
+					entry.setApp(app);
+					changeLog.add(entry);
+				}
 			}
 			
 			//Persist the ChangeLog related information with the sync engine
-			Set<String> updatedDevices = changeLogMap.keySet();
-			for(String updatedDevice: updatedDevices)
-			{
-				List changelogEntries = changeLogMap.get(updatedDevice);
-				this.updateChangeLog(updatedDevice, changelogEntries);
-			}
+			this.updateChangeLog(changeLog);
 		}
 	}
 	
-	private void updateChangeLog(String deviceId, List changelogEntries)
+	private void updateChangeLog(List<ChangeLogEntry> changeLog)
 	{
 		boolean started = TransactionHelper.startTx();
 		try
 		{
-			if(changelogEntries != null && !changelogEntries.isEmpty())
+			if(changeLog != null && !changeLog.isEmpty())
 			{
-				Map<String,List> channelMap = new HashMap<String,List>();
-				for(Object local:changelogEntries)
-				{
-					ChangeLogEntry entry = (ChangeLogEntry)local;
-					String channel = entry.getNodeId();
-					
-					List channelEntries = this.findChannelMap(channelMap, channel);
-					channelEntries.add(entry);
-				}
-				
-				Set<String> channels = channelMap.keySet();
-				for(String channel:channels)
-				{
-					List channelChangeLog = channelMap.get(channel);
-					Set<String> apps = AppToChannelAssociation.getApps(deviceId, channel);
-					if(apps != null && !apps.isEmpty())
-					{
-						for(String app:apps)
-						{
-							this.syncEngine.addChangeLogEntries(deviceId, app, channelChangeLog);
-						}
-					}
-				}
+				this.syncEngine.addChangeLogEntries(changeLog);
 			}
 			if(started)
 			{
@@ -146,29 +126,21 @@ public class SyncChannelEventListener implements ChannelEventListener
 		}
 	}
 	
-	private List findChangeLog(Map<String, List> changeLogMap,String deviceId)
-	{
-		List changeLog = changeLogMap.get(deviceId);
-		
-		if(changeLog == null)
-		{
-			changeLog = new ArrayList();
-			changeLogMap.put(deviceId, changeLog);
-		}
-		
-		return changeLog;
-	}
-	
-	private List findChannelMap(Map<String, List> channelMap, String channel)
+	private Set<String> findApps(Map<String, Set<String>> appCache, String deviceId, String channel)
 	{
-		List entries = (List)channelMap.get(channel);
+		String key = deviceId+"/"+channel;
+		Set<String> apps = appCache.get(key);
 		
-		if(entries == null)
+		if(apps == null)
 		{
-			entries = new ArrayList();
-			channelMap.put(channel, entries);
+			apps = AppToChannelAssociation.getApps(deviceId, channel);
+			if(apps == null)
+			{
+				apps = Collections.emptySet();
+			}
+			appCache.put(key, apps);
 		}
 		
-		return entries;
+		return apps;
 	}
 }
@@ -188,9 +188,10 @@ public class UpdateBeanEventListener implements EventListener
 			log.debug("Device: "+notification.getMetaDataAsString("device")+", Channel: "+
 			notification.getMetaDataAsString("service"));
 			log.debug("----------------------------------------------");
-			
-			this.notifier.process(notification);
 		}
+		
+		//fan-out in one batch
+		this.notifier.process(new ArrayList<Notification>(pushNotifications.values()));
 		log.debug("*************************************");
 	}
 }
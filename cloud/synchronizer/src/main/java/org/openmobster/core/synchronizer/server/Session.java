@@ -9,6 +9,7 @@
 package org.openmobster.core.synchronizer.server;
 
 import java.io.Serializable;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -27,6 +28,7 @@ import org.openmobster.core.synchronizer.model.SyncPackage;
 import org.openmobster.core.synchronizer.model.SyncXMLTags;
 import org.openmobster.core.synchronizer.server.engine.Anchor;
 import org.openmobster.core.synchronizer.server.engine.ChangeLogEntry;
+import org.openmobster.core.synchronizer.server.engine.RecordMapCache;
 import org.openmobster.core.synchronizer.server.engine.ServerSyncEngine;
 
 import org.jbpm.graph.exe.ProcessInstance;
@@ -47,6 +49,7 @@ public class Session implements Serializable
 	 * 
 	 */
 	private ProcessInstance activeProcess = null;
+	private String workflowNode = null; //used by the SyncStateMachine in place of the activeProcess
 	
 	private String sessionId = null; //required
 	private String target = null; //required
@@ -87,12 +90,20 @@ public class Session implements Serializable
 	private List allOperationCommands = null;
 	private int operationCommandIndex = 0;
 	private boolean operationCommandStateInitiated = false;
+	private transient Iterator<AbstractOperation> operationCommandStream = null;
+	private int nextOperationCommandId = 0;
+	
+	/**
+	 * Upper bound on the commands pulled from an operation command stream for one message
+	 */
+	private static final int maxStreamedCommands = 100;
 	
 	/**
 	 * Map Support related
 	 */
 	private Map recordMap = null;
 	private boolean mapExchangeInProgress = false;
+	private transient RecordMapCache recordMapCache = null;
 	
 	private boolean rollback = false;
 	
@@ -168,6 +179,24 @@ public class Session implements Serializable
 	{
 		this.activeProcess = activeProcess;
 	}
+	
+	/**
+	 * 
+	 * @return
+	 */
+	public String getWorkflowNode() 
+	{
+		return workflowNode;
+	}
+
+	/**
+	 * 
+	 * @param workflowNode
+	 */
+	public void setWorkflowNode(String workflowNode) 
+	{
+		this.workflowNode = workflowNode;
+	}
 
 	/**
 	 * 
@@ -947,6 +976,7 @@ public class Session implements Serializable
 	{
 		this.getAllOperationCommands().clear();
 		this.operationCommandIndex = 0;
+		this.operationCommandStream = null;
 	}
 	
 	/**
@@ -957,7 +987,7 @@ public class Session implements Serializable
 	{
 		boolean isOperationCommandStateSet = false;
 		
-		if(!this.getAllOperationCommands().isEmpty())
+		if(!this.getAllOperationCommands().isEmpty() || this.operationCommandStream != null)
 		{
 			isOperationCommandStateSet = true;
 		}
@@ -965,6 +995,80 @@ public class Session implements Serializable
 		return isOperationCommandStateSet;
 	}
 	
+	/**
+	 * Sets up operation commands that are produced lazily. They are pulled into the operation command queue 
+	 * a message at a time by fillOperationCommands
+	 * 
+	 * @param operationCommandStream
+	 * @param firstCmdId cmdId of the first command of the stream
+	 */
+	public void setOperationCommandStream(Iterator<AbstractOperation> operationCommandStream, int firstCmdId)
+	{
+		this.operationCommandStream = operationCommandStream;
+		this.nextOperationCommandId = firstCmdId;
+	}
+	
+	/**
+	 * 
+	 * @return true if the operation command stream still has commands that are not queued yet
+	 */
+	public boolean hasOperationCommandStream()
+	{
+		return this.operationCommandStream != null;
+	}
+	
+	/**
+	 * Drops the commands that are already sent from the operation command queue, and pulls commands from 
+	 * the operation command stream until the queue has more data than fits in the next message
+	 * 
+	 * @param maxClientSize
+	 */
+	public void fillOperationCommands(int maxClientSize)
+	{
+		if(this.operationCommandStream == null)
+		{
+			return;
+		}
+		
+		List queue = this.getAllOperationCommands();
+		if(this.operationCommandIndex > 0)
+		{
+			this.allOperationCommands = new ArrayList(queue.subList(this.operationCommandIndex, queue.size()));
+			this.operationCommandIndex = 0;
+			queue = this.allOperationCommands;
+		}
+		
+		long queuedSize = 0;
+		for(int i=0; i<queue.size(); i++)
+		{
+			queuedSize += this.getQueuedSize((AbstractOperation)queue.get(i));
+		}
+		
+		while(queuedSize <= maxClientSize && queue.size() < maxStreamedCommands && 
+		this.operationCommandStream.hasNext())
+		{
+			AbstractOperation command = this.operationCommandStream.next();
+			command.setCmdId(String.valueOf(this.nextOperationCommandId++));
+			queue.add(command);
+			queuedSize += this.getQueuedSize(command);
+		}
+		
+		if(!this.operationCommandStream.hasNext())
+		{
+			this.operationCommandStream = null;
+		}
+	}
+	
+	private long getQueuedSize(AbstractOperation command)
+	{
+		//same accounting as the message size calculation: only Adds and Replaces sent in full count
+		if(command instanceof Delete || command.isChunked())
+		{
+			return 0;
+		}
+		return ((Item)command.getItems().get(0)).getData().length();
+	}
+	
 	/**
 	 * 
 	 *
@@ -1022,6 +1126,25 @@ public class Session implements Serializable
 		this.mapExchangeInProgress = mapExchangeInProgress;
 	}	
 	
+	/**
+	 * The RecordMap of this session's device/channel, once an id has been mapped
+	 * 
+	 * @return
+	 */
+	public RecordMapCache getRecordMapCache()
+	{
+		return this.recordMapCache;
+	}
+	
+	/**
+	 * 
+	 * @param recordMapCache
+	 */
+	public void setRecordMapCache(RecordMapCache recordMapCache)
+	{
+		this.recordMapCache = recordMapCache;
+	}
+	
 	/**
 	 * 
 	 * @return
@@ -8,8 +8,15 @@
 
 package org.openmobster.core.synchronizer.server;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
 
 import org.openmobster.core.common.ServiceManager;
 import org.openmobster.core.common.Utilities;
@@ -19,16 +26,34 @@ import org.openmobster.core.common.Utilities;
  * 
  * Stateful Component - Holds all active Synchronization Sessions
  * 
+ * Sessions are used concurrently by the request threads. A session that is not used for idleTimeout 
+ * milliseconds is expired, which is how syncs abandoned by a dropped connection are released. When more than 
+ * maxSessions are active, the least recently used session is evicted. Expiry is checked as sessions are 
+ * looked up, and all sessions are swept at most once per sweepInterval
+ * 
  * @author openmobster@gmail.com
  *
  */
 public class SessionManager
 {
-	private Map sessionMap = null;
+	private static Logger log = Logger.getLogger(SessionManager.class);
+	
+	private long idleTimeout = 15 * 60 * 1000;
+	private int maxSessions = 10000;
+	private long sweepInterval = 60 * 1000;
+	
+	private ConcurrentHashMap<String,ActiveSession> sessionMap = null;
+	private volatile long lastSweep;
+	
+	private AtomicLong expired;
+	private AtomicLong evicted;
 	
 	public SessionManager()
 	{
-		this.sessionMap = new HashMap();
+		this.sessionMap = new ConcurrentHashMap<String,ActiveSession>();
+		this.lastSweep = System.currentTimeMillis();
+		this.expired = new AtomicLong(0);
+		this.evicted = new AtomicLong(0);
 	}
 	
 	public static SessionManager getInstance()
@@ -36,13 +61,71 @@ public class SessionManager
 		return (SessionManager)ServiceManager.locate("synchronizer://SessionManager");
 	}
 	
+	public void start()
+	{
+		
+	}
+	
+	public void stop()
+	{
+		log.info(this);
+	}
+	
+	public long getIdleTimeout()
+	{
+		return idleTimeout;
+	}
+
+	public void setIdleTimeout(long idleTimeout)
+	{
+		this.idleTimeout = idleTimeout;
+	}
+
+	public int getMaxSessions()
+	{
+		return maxSessions;
+	}
+
+	public void setMaxSessions(int maxSessions)
+	{
+		this.maxSessions = maxSessions;
+	}
+
+	public long getSweepInterval()
+	{
+		return sweepInterval;
+	}
+
+	public void setSweepInterval(long sweepInterval)
+	{
+		this.sweepInterval = sweepInterval;
+	}
+	
 	public Session findSession(String sessionId)
 	{
 		Session session = null;
 		
+		long now = System.currentTimeMillis();
+		this.sweepIfDue(now);
+		
 		if(sessionId != null && sessionId.trim().length()>0)
 		{
-			session = (Session)this.sessionMap.get(sessionId);
+			ActiveSession activeSession = this.sessionMap.get(sessionId);
+			if(activeSession != null)
+			{
+				if(this.isExpired(activeSession, now))
+				{
+					if(this.sessionMap.remove(sessionId, activeSession))
+					{
+						this.expired.incrementAndGet();
+					}
+				}
+				else
+				{
+					activeSession.lastAccess = now;
+					session = activeSession.session;
+				}
+			}
 		}
 		
 		return session;
@@ -66,7 +149,17 @@ public class SessionManager
 			
 		}
 		
-		this.sessionMap.put(session.getSessionId(), session);
+		long now = System.currentTimeMillis();
+		this.sessionMap.put(session.getSessionId(), new ActiveSession(session, now));
+		
+		if(this.sessionMap.size() > this.maxSessions)
+		{
+			this.sweep(now);
+			while(this.sessionMap.size() > this.maxSessions && this.evictLeastRecentlyUsed(sessionId))
+			{
+				this.evicted.incrementAndGet();
+			}
+		}
 		
 		return sessionId;
 	}
@@ -75,4 +168,141 @@ public class SessionManager
 	{
 		this.sessionMap.remove(session.getSessionId());
 	}
+	//---------------------------------------------------------------------------------------------------------
+	/**
+	 * Sessions currently held
+	 * 
+	 * @return
+	 */
+	public int getActiveSessions()
+	{
+		return this.sessionMap.size();
+	}
+	
+	/**
+	 * Sessions released because they were idle for longer than the idleTimeout
+	 * 
+	 * @return
+	 */
+	public long getExpiredCount()
+	{
+		return this.expired.get();
+	}
+	
+	/**
+	 * Sessions released to stay within maxSessions
+	 * 
+	 * @return
+	 */
+	public long getEvictedCount()
+	{
+		return this.evicted.get();
+	}
+	
+	/**
+	 * Estimates the bytes a Session holds on to, from the size of its serialized state. Transient state is 
+	 * not counted
+	 * 
+	 * @param session
+	 * @return the estimate, or -1 if the session state could not be serialized
+	 */
+	public static long estimateSize(Session session)
+	{
+		ByteCounter counter = new ByteCounter();
+		try
+		{
+			ObjectOutputStream os = new ObjectOutputStream(counter);
+			os.writeObject(session);
+			os.close();
+			return counter.count;
+		}
+		catch(IOException ioe)
+		{
+			return -1;
+		}
+	}
+	
+	public String toString()
+	{
+		return "SessionManager: active="+this.getActiveSessions()+", expired="+this.getExpiredCount()+
+		", evicted="+this.getEvictedCount();
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private boolean isExpired(ActiveSession activeSession, long now)
+	{
+		return now - activeSession.lastAccess > this.idleTimeout;
+	}
+	
+	private void sweepIfDue(long now)
+	{
+		if(now - this.lastSweep < this.sweepInterval)
+		{
+			return;
+		}
+		this.sweep(now);
+	}
+	
+	private void sweep(long now)
+	{
+		this.lastSweep = now;
+		for(Iterator<Map.Entry<String,ActiveSession>> itr=this.sessionMap.entrySet().iterator(); itr.hasNext();)
+		{
+			Map.Entry<String,ActiveSession> entry = itr.next();
+			if(this.isExpired(entry.getValue(), now) && this.sessionMap.remove(entry.getKey(), entry.getValue()))
+			{
+				this.expired.incrementAndGet();
+			}
+		}
+	}
+	
+	private boolean evictLeastRecentlyUsed(String keep)
+	{
+		Map.Entry<String,ActiveSession> leastRecentlyUsed = null;
+		for(Map.Entry<String,ActiveSession> entry: this.sessionMap.entrySet())
+		{
+			if(entry.getKey().equals(keep))
+			{
+				continue;
+			}
+			if(leastRecentlyUsed == null || entry.getValue().lastAccess < leastRecentlyUsed.getValue().lastAccess)
+			{
+				leastRecentlyUsed = entry;
+			}
+		}
+		
+		if(leastRecentlyUsed == null)
+		{
+			return false;
+		}
+		
+		log.warn("Evicting sync session: "+leastRecentlyUsed.getKey()+". More than "+this.maxSessions+" active sessions");
+		return this.sessionMap.remove(leastRecentlyUsed.getKey(), leastRecentlyUsed.getValue());
+	}
+	
+	private static class ActiveSession
+	{
+		private Session session;
+		private volatile long lastAccess;
+		
+		private ActiveSession(Session session, long lastAccess)
+		{
+			this.session = session;
+			this.lastAccess = lastAccess;
+		}
+	}
+	
+	private static class ByteCounter extends OutputStream
+	{
+		private long count;
+		
+		public void write(int b)
+		{
+			this.count++;
+		}
+		
+		public void write(byte[] b, int off, int len)
+		{
+			this.count += len;
+		}
+	}
 }
@@ -151,7 +151,13 @@ public class SyncJBPMServerAdapter implements SyncServer
 			SyncContext.getInstance().setSession(session);
 			ExecutionContext.getInstance().setSyncContext(SyncContext.getInstance());
 			
+			//locks started for this message are written together once the reply is ready
+			this.syncEngine.openLockBatch();
+			
 			String responsePayload = this.process(session);
+			
+			this.syncEngine.flushLockBatch();
+			
 			response.setAttribute(SyncServer.PAYLOAD, responsePayload);
 			
 			//Check for tx-rollback
@@ -165,6 +171,7 @@ public class SyncJBPMServerAdapter implements SyncServer
 		}
 		catch(Exception e)
 		{
+			this.syncEngine.discardLockBatch();
 			logger.error(this, e);
 			throw new SyncException(e);
 		}
@@ -175,7 +182,7 @@ public class SyncJBPMServerAdapter implements SyncServer
 	 * @param session
 	 * @return
 	 */
-	private String process(Session session)
+	protected String process(Session session)
 	{
 		String payload = "";
 		
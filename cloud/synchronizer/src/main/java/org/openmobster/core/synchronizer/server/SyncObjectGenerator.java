@@ -8,10 +8,15 @@
 
 package org.openmobster.core.synchronizer.server;
 
-import java.util.List;
-import java.util.ArrayList;
+import java.io.StringReader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 
 import org.openmobster.core.synchronizer.SyncException;
+import org.openmobster.core.synchronizer.model.AbstractOperation;
 import org.openmobster.core.synchronizer.model.Add;
 import org.openmobster.core.synchronizer.model.Alert;
 import org.openmobster.core.synchronizer.model.Delete;
@@ -25,21 +30,22 @@ import org.openmobster.core.synchronizer.model.SyncMessage;
 import org.openmobster.core.synchronizer.model.SyncXMLTags;
 import org.openmobster.core.synchronizer.model.Credential;
 import org.openmobster.core.synchronizer.server.engine.Anchor;
-import org.w3c.dom.Document;
-import org.w3c.dom.Element;
-import org.w3c.dom.NodeList;
-
-
-import org.openmobster.core.common.XMLUtilities;
 
 /**
- * 
+ * Binds a SyncML message to the Session and SyncMessage objects.
+ *
+ * The message is read in one pass with a StAX pull parser, building the objects as their elements go by,
+ * instead of parsing it into a DOM first and then looking up each element by tag name. The text of an
+ * element, including the CDATA of the Item data, is handed over by the parser as a single coalesced String.
+ *
  * @author openmobster@gmail.com
  */
 public class SyncObjectGenerator
 {
+	private static final XMLInputFactory factory = createFactory();
+
 	/**
-	 * 
+	 *
 	 * @param xml
 	 * @return
 	 */
@@ -48,22 +54,12 @@ public class SyncObjectGenerator
 		try
 		{
 			Session session = new Session();
-			
-			Document document = XMLUtilities.parse(xml);
-			Element syncHeader = (Element)document.getElementsByTagName(SyncXMLTags.SyncHdr).item(0);
-			Element syncBody = (Element)document.getElementsByTagName(SyncXMLTags.SyncBody).item(0);
-			
-			
-			this.processSession(session, syncHeader);
-						
-			
-			SyncMessage message = new SyncMessage();						
-			this.processMessage(message, syncHeader);
-			this.processMessageBody(message, syncBody);
-			
-					
+			SyncMessage message = new SyncMessage();
+
+			this.parse(xml, session, message);
+
 			session.getClientInitPackage().addMessage(message);
-			
+
 			return session;
 		}
 		catch(Exception e)
@@ -71,9 +67,9 @@ public class SyncObjectGenerator
 			throw new SyncException(e);
 		}
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param xml
 	 * @return
 	 */
@@ -82,22 +78,12 @@ public class SyncObjectGenerator
 		try
 		{
 			Session session = new Session();
-			
-			Document document = XMLUtilities.parse(xml);
-			Element syncHeader = (Element)document.getElementsByTagName(SyncXMLTags.SyncHdr).item(0);
-			Element syncBody = (Element)document.getElementsByTagName(SyncXMLTags.SyncBody).item(0);
-			
-			
-			this.processSession(session, syncHeader);
-						
-			
-			SyncMessage message = new SyncMessage();						
-			this.processMessage(message, syncHeader);
-			this.processMessageBody(message, syncBody);
-			
-					
+			SyncMessage message = new SyncMessage();
+
+			this.parse(xml, session, message);
+
 			session.getServerInitPackage().addMessage(message);
-			
+
 			return session;
 		}
 		catch(Exception e)
@@ -105,9 +91,9 @@ public class SyncObjectGenerator
 			throw new SyncException(e);
 		}
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param xml
 	 * @return
 	 */
@@ -116,21 +102,12 @@ public class SyncObjectGenerator
 		try
 		{
 			Session session = new Session();
-			
-			Document document = XMLUtilities.parse(xml);
-			Element syncHeader = (Element)document.getElementsByTagName(SyncXMLTags.SyncHdr).item(0);
-			Element syncBody = (Element)document.getElementsByTagName(SyncXMLTags.SyncBody).item(0);
-			
-			
-			this.processSession(session, syncHeader);
-						
-			
-			SyncMessage message = new SyncMessage();						
-			this.processMessage(message, syncHeader);
-			this.processMessageBody(message, syncBody);
-						
+			SyncMessage message = new SyncMessage();
+
+			this.parse(xml, session, message);
+
 			session.getClientSyncPackage().addMessage(message);
-			
+
 			return session;
 		}
 		catch(Exception e)
@@ -138,9 +115,9 @@ public class SyncObjectGenerator
 			throw new SyncException(e);
 		}
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param xml
 	 * @return
 	 */
@@ -149,22 +126,12 @@ public class SyncObjectGenerator
 		try
 		{
 			Session session = new Session();
-			
-			Document document = XMLUtilities.parse(xml);
-			Element syncHeader = (Element)document.getElementsByTagName(SyncXMLTags.SyncHdr).item(0);
-			Element syncBody = (Element)document.getElementsByTagName(SyncXMLTags.SyncBody).item(0);
-			
-			
-			this.processSession(session, syncHeader);
-						
-			
-			SyncMessage message = new SyncMessage();						
-			this.processMessage(message, syncHeader);
-			this.processMessageBody(message, syncBody);
-			
-						
+			SyncMessage message = new SyncMessage();
+
+			this.parse(xml, session, message);
+
 			session.getServerSyncPackage().addMessage(message);
-			
+
 			return session;
 		}
 		catch(Exception e)
@@ -172,9 +139,9 @@ public class SyncObjectGenerator
 			throw new SyncException(e);
 		}
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param xml
 	 * @return
 	 */
@@ -183,22 +150,12 @@ public class SyncObjectGenerator
 		try
 		{
 			Session session = new Session();
-			
-			Document document = XMLUtilities.parse(xml);
-			Element syncHeader = (Element)document.getElementsByTagName(SyncXMLTags.SyncHdr).item(0);
-			Element syncBody = (Element)document.getElementsByTagName(SyncXMLTags.SyncBody).item(0);
-			
-			
-			this.processSession(session, syncHeader);
-						
-			
-			SyncMessage message = new SyncMessage();						
-			this.processMessage(message, syncHeader);
-			this.processMessageBody(message, syncBody);
-			
-						
+			SyncMessage message = new SyncMessage();
+
+			this.parse(xml, session, message);
+
 			session.setCurrentMessage(message);
-			
+
 			return session;
 		}
 		catch(Exception e)
@@ -207,461 +164,614 @@ public class SyncObjectGenerator
 			throw new SyncException(e);
 		}
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param xml
 	 * @return
 	 */
 	public Anchor parseAnchor(String xml)
 	{
-		Anchor anchor = new Anchor();
-		
-		Document document = XMLUtilities.parse(xml);
-		
-		Element lastSync = (Element)document.getElementsByTagName(SyncXMLTags.Last).item(0);
-		Element nextSync = (Element)document.getElementsByTagName(SyncXMLTags.Next).item(0);
-		
-		anchor.setLastSync(lastSync.getFirstChild().getNodeValue());
-		anchor.setNextSync(nextSync.getFirstChild().getNodeValue());
-		
-		return anchor;
+		try
+		{
+			Anchor anchor = new Anchor();
+
+			XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xml));
+			try
+			{
+				while(reader.hasNext())
+				{
+					if(reader.next() != XMLStreamConstants.START_ELEMENT)
+					{
+						continue;
+					}
+
+					String element = reader.getLocalName();
+					if(element.equals(SyncXMLTags.Last) && anchor.getLastSync() == null)
+					{
+						anchor.setLastSync(this.readText(reader));
+					}
+					else if(element.equals(SyncXMLTags.Next) && anchor.getNextSync() == null)
+					{
+						anchor.setNextSync(this.readText(reader));
+					}
+				}
+			}
+			finally
+			{
+				reader.close();
+			}
+
+			return anchor;
+		}
+		catch(XMLStreamException e)
+		{
+			throw new SyncException(e);
+		}
 	}
 	//-------------------------------------------------------------------------------------------------
-	/**
-	 * 
-	 * @param session
-	 * @param syncHeader
-	 */
-	private void processSession(Session session,Element syncHeader) throws Exception
+	private static XMLInputFactory createFactory()
 	{
-		Element sessionId = (Element)syncHeader.getElementsByTagName(SyncXMLTags.SessionID).item(0);
-		session.setSessionId(sessionId.getFirstChild().getNodeValue());
-		
-		Element target = (Element)syncHeader.getElementsByTagName(SyncXMLTags.Target).item(0);
-		Element loc = (Element)target.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-		session.setTarget(loc.getFirstChild().getNodeValue());
-		
-		Element source = (Element)syncHeader.getElementsByTagName(SyncXMLTags.Source).item(0);
-		loc = (Element)source.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-		session.setSource(loc.getFirstChild().getNodeValue());
-		
-		Element app = (Element)syncHeader.getElementsByTagName(SyncXMLTags.App).item(0);
-		String appValue = app.getFirstChild().getNodeValue();
-		session.setApp(appValue);
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		factory.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		return factory;
 	}
-	
+
 	/**
-	 * 
+	 *
+	 * @param xml
+	 * @param session
 	 * @param message
-	 * @param syncHeader
-	 * @throws Exception
+	 * @throws XMLStreamException
 	 */
-	private void processMessage(SyncMessage message,Element syncHeader) throws Exception
+	private void parse(String xml, Session session, SyncMessage message) throws XMLStreamException
 	{
-		Element msgId = (Element)syncHeader.getElementsByTagName(SyncXMLTags.MsgID).item(0);
-		message.setMessageId(msgId.getFirstChild().getNodeValue());
-				
-		if(XMLUtilities.contains(syncHeader, SyncXMLTags.MaxMsgSize))
+		XMLStreamReader reader = factory.createXMLStreamReader(new StringReader(xml));
+		try
 		{
-			Element maxMsgSize = (Element)syncHeader.getElementsByTagName(SyncXMLTags.MaxMsgSize).item(0);
-			message.setMaxClientSize(Integer.parseInt(maxMsgSize.getFirstChild().getNodeValue()));
+			while(reader.hasNext())
+			{
+				if(reader.next() != XMLStreamConstants.START_ELEMENT)
+				{
+					continue;
+				}
+
+				String element = reader.getLocalName();
+				if(element.equals(SyncXMLTags.SyncHdr))
+				{
+					this.processHeader(reader, session, message);
+				}
+				else if(element.equals(SyncXMLTags.SyncBody))
+				{
+					this.processMessageBody(reader, message);
+				}
+			}
 		}
-		
-		if(XMLUtilities.contains(syncHeader, SyncXMLTags.Cred))
+		finally
 		{
-			Element credElem = (Element)syncHeader.getElementsByTagName(SyncXMLTags.Cred).item(0);
-			Element typeElem = (Element)credElem.getElementsByTagName(SyncXMLTags.Type).item(0);
-			Element dataElem = (Element)credElem.getElementsByTagName(SyncXMLTags.Data).item(0);
-			
-			String type = typeElem.getTextContent();
-			String data = dataElem.getTextContent();
-			message.setCredential(new Credential(type, data));
+			reader.close();
 		}
 	}
-	
+
 	/**
-	 * 
+	 *
+	 * @param reader positioned at the SyncHdr
 	 * @param session
-	 * @param syncBody
+	 * @param message
+	 * @throws XMLStreamException
 	 */
-	private void processMessageBody(SyncMessage syncMessage,Element syncBody)
+	private void processHeader(XMLStreamReader reader, Session session, SyncMessage message)
+	throws XMLStreamException
 	{
-		//Process Alerts
-		NodeList alerts = syncBody.getElementsByTagName(SyncXMLTags.Alert);
-		if(alerts != null)
-		{			
-			for(int i=0;i<alerts.getLength();i++)
-			{
-				Element cour = (Element)alerts.item(i);
-				Alert alert = new Alert();
-				
-				//Process cmdId and data
-				Element cmdId = (Element)cour.getElementsByTagName(SyncXMLTags.CmdID).item(0);				
-				alert.setCmdId(cmdId.getFirstChild().getNodeValue());
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Data))
-				{
-					Element data = (Element)cour.getElementsByTagName(SyncXMLTags.Data).item(0);
-					alert.setData(data.getFirstChild().getNodeValue());
-				}
-				
-				//Process the Items here
-				NodeList itemList = cour.getElementsByTagName(SyncXMLTags.Item);
-				if(itemList != null && itemList.getLength() > 0)
+		while(this.nextChild(reader))
+		{
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.SessionID))
+			{
+				session.setSessionId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.App))
+			{
+				session.setApp(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Source))
+			{
+				session.setSource(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Target))
+			{
+				session.setTarget(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.MsgID))
+			{
+				message.setMessageId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Meta))
+			{
+				while(this.nextChild(reader))
 				{
-					for(int j=0;j<itemList.getLength();j++)
+					if(reader.getLocalName().equals(SyncXMLTags.MaxMsgSize))
 					{
-						Item item = this.processItem((Element)itemList.item(j));
-						alert.addItem(item);
+						message.setMaxClientSize(Integer.parseInt(this.readText(reader)));
 					}
-				}
-				
-				syncMessage.addAlert(alert);
-			}
-		}
-		
-		//Process Status
-		NodeList statusList = syncBody.getElementsByTagName(SyncXMLTags.Status);
-		if(statusList != null)
-		{			
-			for(int i=0;i<statusList.getLength();i++)
-			{
-				Element cour = (Element)statusList.item(i);
-				Status status = new Status();
-				
-				//Process cmdId and data
-				Element cmdId = (Element)cour.getElementsByTagName(SyncXMLTags.CmdID).item(0);
-				Element data = (Element)cour.getElementsByTagName(SyncXMLTags.Data).item(0);
-				Element msgRef = (Element)cour.getElementsByTagName(SyncXMLTags.MsgRef).item(0);
-				Element cmdRef = (Element)cour.getElementsByTagName(SyncXMLTags.CmdRef).item(0);
-				Element cmd = (Element)cour.getElementsByTagName(SyncXMLTags.Cmd).item(0);
-				
-				
-				status.setCmdId(cmdId.getFirstChild().getNodeValue());
-				status.setData(data.getFirstChild().getNodeValue());
-				status.setMsgRef(msgRef.getFirstChild().getNodeValue());
-				status.setCmdRef(cmdRef.getFirstChild().getNodeValue());
-				status.setCmd(cmd.getFirstChild().getNodeValue());
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.SourceRef))
-				{
-					NodeList sourceRefs = cour.getElementsByTagName(SyncXMLTags.SourceRef);
-					for(int j=0;j<sourceRefs.getLength();j++)
+					else
 					{
-						Element sourceRef = (Element)sourceRefs.item(j);
-						status.addSourceRef(sourceRef.getFirstChild().getNodeValue());
+						this.skip(reader);
 					}
 				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.TargetRef))
+			}
+			else if(element.equals(SyncXMLTags.Cred))
+			{
+				message.setCredential(this.readCredential(reader));
+			}
+			else
+			{
+				this.skip(reader);
+			}
+		}
+	}
+
+	/**
+	 * The device sends the Type inside a Meta that also carries some text, so only the elements are looked at
+	 *
+	 * @param reader positioned at the Cred
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	private Credential readCredential(XMLStreamReader reader) throws XMLStreamException
+	{
+		String type = null;
+		String data = null;
+		while(this.nextChild(reader))
+		{
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.Meta))
+			{
+				while(this.nextChild(reader))
 				{
-					NodeList targetRefs = cour.getElementsByTagName(SyncXMLTags.TargetRef);
-					for(int j=0;j<targetRefs.getLength();j++)
+					if(reader.getLocalName().equals(SyncXMLTags.Type))
 					{
-						Element targetRef = (Element)targetRefs.item(j);
-						status.addTargetRef(targetRef.getFirstChild().getNodeValue());
+						type = this.readText(reader);
 					}
-				}
-				
-				//Process the Item here
-				NodeList itemList = cour.getElementsByTagName(SyncXMLTags.Item);
-				if(itemList != null && itemList.getLength() > 0)
-				{
-					for(int j=0;j<itemList.getLength();j++)
+					else
 					{
-						Item item = this.processItem((Element)itemList.item(j));
-						status.addItem(item);
+						this.skip(reader);
 					}
 				}
-				
-				syncMessage.addStatus(status);
 			}
-		}
-		
-		//Process SyncCommands
-		NodeList syncCommandList = syncBody.getElementsByTagName(SyncXMLTags.Sync);
-		if(syncCommandList != null)
-		{			
-			for(int i=0;i<syncCommandList.getLength();i++)
-			{
-				Element cour = (Element)syncCommandList.item(i);
-				SyncCommand syncCommand = new SyncCommand();
-				
-				//Process cmdId and data
-				Element cmdId = (Element)cour.getElementsByTagName(SyncXMLTags.CmdID).item(0);
-				syncCommand.setCmdId(cmdId.getFirstChild().getNodeValue());
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Source))
-				{
-					Element source = (Element)cour.getElementsByTagName(SyncXMLTags.Source).item(0);
-					Element loc = (Element)source.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-					syncCommand.setSource(loc.getFirstChild().getNodeValue());
-				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Target))
-				{
-					Element target = (Element)cour.getElementsByTagName(SyncXMLTags.Target).item(0);
-					Element loc = (Element)target.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-					syncCommand.setTarget(loc.getFirstChild().getNodeValue());
-				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Meta))
-				{
-					Element meta = (Element)cour.getElementsByTagName(SyncXMLTags.Meta).item(0);					
-					syncCommand.setMeta(meta.getFirstChild().getNodeValue());
-				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.NumberOfChanges))
-				{
-					Element numberOfChanges = (Element)cour.getElementsByTagName(SyncXMLTags.NumberOfChanges).
-					item(0);
-					syncCommand.setNumberOfChanges(numberOfChanges.getFirstChild().getNodeValue());
-				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Add))
-				{
-					syncCommand.setAddCommands(this.processAdd(
-					cour.getElementsByTagName(SyncXMLTags.Add)));
-				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Replace))
-				{
-					syncCommand.setReplaceCommands(this.processReplace(
-					cour.getElementsByTagName(SyncXMLTags.Replace)));
-				}
-				
-				if(XMLUtilities.contains(cour, SyncXMLTags.Delete))
-				{
-					syncCommand.setDeleteCommands(this.processDelete(
-					cour.getElementsByTagName(SyncXMLTags.Delete)));
-				}
-								
-				syncMessage.addSyncCommand(syncCommand);
+			else if(element.equals(SyncXMLTags.Data))
+			{
+				data = this.readText(reader);
+			}
+			else
+			{
+				this.skip(reader);
 			}
 		}
-		
-		//Process RecordMap
-		if(XMLUtilities.contains(syncBody, SyncXMLTags.Map))
+		return new Credential(type, data);
+	}
+
+	/**
+	 *
+	 * @param reader positioned at the SyncBody
+	 * @param syncMessage
+	 * @throws XMLStreamException
+	 */
+	private void processMessageBody(XMLStreamReader reader, SyncMessage syncMessage) throws XMLStreamException
+	{
+		while(this.nextChild(reader))
 		{
-			syncMessage.setRecordMap(this.processRecordMap(syncBody));
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.Alert))
+			{
+				syncMessage.addAlert(this.processAlert(reader));
+			}
+			else if(element.equals(SyncXMLTags.Status))
+			{
+				syncMessage.addStatus(this.processStatus(reader));
+			}
+			else if(element.equals(SyncXMLTags.Sync))
+			{
+				syncMessage.addSyncCommand(this.processSyncCommand(reader));
+			}
+			else if(element.equals(SyncXMLTags.Map) && syncMessage.getRecordMap() == null)
+			{
+				syncMessage.setRecordMap(this.processRecordMap(reader));
+			}
+			else if(element.equals(SyncXMLTags.Final))
+			{
+				syncMessage.setFinal(true);
+				this.skip(reader);
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		if(XMLUtilities.contains(syncBody, SyncXMLTags.Final))
+	}
+
+	private Alert processAlert(XMLStreamReader reader) throws XMLStreamException
+	{
+		Alert alert = new Alert();
+		while(this.nextChild(reader))
 		{
-			syncMessage.setFinal(true);
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.CmdID))
+			{
+				alert.setCmdId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Data))
+			{
+				alert.setData(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Item))
+			{
+				alert.addItem(this.processItem(reader));
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
+		return alert;
 	}
-	
-	/**
-	 * 
-	 * @param itemElement
-	 * @return
-	 */
-	private Item processItem(Element itemElement)
+
+	private Status processStatus(XMLStreamReader reader) throws XMLStreamException
 	{
-		Item item = new Item();
-		
-		if(XMLUtilities.contains(itemElement, SyncXMLTags.Source))
+		Status status = new Status();
+		while(this.nextChild(reader))
 		{
-			Element source = (Element)itemElement.getElementsByTagName(SyncXMLTags.Source).item(0);
-			Element loc = (Element)source.getElementsByTagName(SyncXMLTags.LocURI).item(0); 
-			item.setSource(loc.getFirstChild().getNodeValue());
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.CmdID))
+			{
+				status.setCmdId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Data))
+			{
+				status.setData(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.MsgRef))
+			{
+				status.setMsgRef(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.CmdRef))
+			{
+				status.setCmdRef(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Cmd))
+			{
+				status.setCmd(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.SourceRef))
+			{
+				status.addSourceRef(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.TargetRef))
+			{
+				status.addTargetRef(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Item))
+			{
+				status.addItem(this.processItem(reader));
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		if(XMLUtilities.contains(itemElement, SyncXMLTags.Target))
+		return status;
+	}
+
+	private SyncCommand processSyncCommand(XMLStreamReader reader) throws XMLStreamException
+	{
+		SyncCommand syncCommand = new SyncCommand();
+		while(this.nextChild(reader))
 		{
-			Element target = (Element)itemElement.getElementsByTagName(SyncXMLTags.Target).item(0);
-			Element loc = (Element)target.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-			item.setTarget(loc.getFirstChild().getNodeValue());
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.CmdID))
+			{
+				syncCommand.setCmdId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Source))
+			{
+				syncCommand.setSource(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Target))
+			{
+				syncCommand.setTarget(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Meta))
+			{
+				syncCommand.setMeta(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.NumberOfChanges))
+			{
+				syncCommand.setNumberOfChanges(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Add))
+			{
+				syncCommand.getAddCommands().add(this.processOperation(reader, new Add()));
+			}
+			else if(element.equals(SyncXMLTags.Replace))
+			{
+				syncCommand.getReplaceCommands().add(this.processOperation(reader, new Replace()));
+			}
+			else if(element.equals(SyncXMLTags.Delete))
+			{
+				syncCommand.getDeleteCommands().add(this.processOperation(reader, new Delete()));
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		if(XMLUtilities.contains(itemElement, SyncXMLTags.Data))
+		return syncCommand;
+	}
+
+	/**
+	 *
+	 * @param reader positioned at the Add, Replace or Delete
+	 * @param operation
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	private AbstractOperation processOperation(XMLStreamReader reader, AbstractOperation operation)
+	throws XMLStreamException
+	{
+		while(this.nextChild(reader))
 		{
-			Element data = (Element)itemElement.getElementsByTagName(SyncXMLTags.Data).item(0);			
-			String dataValue = data.getTextContent();						
-			item.setData(dataValue);
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.CmdID))
+			{
+				operation.setCmdId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Meta))
+			{
+				operation.setMeta(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Item))
+			{
+				operation.getItems().add(this.processItem(reader));
+			}
+			else if(element.equals(SyncXMLTags.Archive) && operation instanceof Delete)
+			{
+				((Delete)operation).setArchive(true);
+				this.skip(reader);
+			}
+			else if(element.equals(SyncXMLTags.SftDel) && operation instanceof Delete)
+			{
+				((Delete)operation).setSoftDelete(true);
+				this.skip(reader);
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		if(XMLUtilities.contains(itemElement, SyncXMLTags.Meta))
+		return operation;
+	}
+
+	/**
+	 *
+	 * @param reader positioned at the Item
+	 * @return
+	 * @throws XMLStreamException
+	 */
+	private Item processItem(XMLStreamReader reader) throws XMLStreamException
+	{
+		Item item = new Item();
+		while(this.nextChild(reader))
 		{
-			Element meta = (Element)itemElement.getElementsByTagName(SyncXMLTags.Meta).item(0);
-			item.setMeta(meta.getFirstChild().getNodeValue());
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.Source))
+			{
+				item.setSource(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Target))
+			{
+				item.setTarget(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Data))
+			{
+				item.setData(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Meta))
+			{
+				item.setMeta(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.MoreData))
+			{
+				item.setMoreData(true);
+				this.skip(reader);
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		item.setMoreData(XMLUtilities.contains(itemElement, SyncXMLTags.MoreData));
-		
-		
 		return item;
 	}
-	
+
 	/**
-	 * 
-	 * @param addList
+	 *
+	 * @param reader positioned at the Map
 	 * @return
+	 * @throws XMLStreamException
 	 */
-	private List processAdd(NodeList addList)
+	private RecordMap processRecordMap(XMLStreamReader reader) throws XMLStreamException
 	{
-		List add = new ArrayList();
-		
-		for(int i=0;i<addList.getLength();i++)
+		RecordMap recordMap = new RecordMap();
+		while(this.nextChild(reader))
 		{
-			Add cour = new Add();
-			
-			Element addElement = (Element)addList.item(i);
-			
-			Element cmdId = (Element)addElement.getElementsByTagName(SyncXMLTags.CmdID).item(0);
-			cour.setCmdId(cmdId.getFirstChild().getNodeValue());
-			
-			if(XMLUtilities.contains(addElement, SyncXMLTags.Meta))
-			{
-				Element meta = (Element)addElement.getElementsByTagName(SyncXMLTags.Meta).item(0);
-				cour.setMeta(meta.getFirstChild().getNodeValue());
-			}
-			
-			NodeList items = addElement.getElementsByTagName(SyncXMLTags.Item);
-			for(int j=0;j<items.getLength();j++)
-			{
-				Item item = this.processItem((Element)items.item(j));
-				cour.getItems().add(item);
-			}
-			
-			add.add(cour);			
+			String element = reader.getLocalName();
+			if(element.equals(SyncXMLTags.CmdID))
+			{
+				recordMap.setCmdId(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.Source))
+			{
+				recordMap.setSource(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Target))
+			{
+				recordMap.setTarget(this.readLocation(reader));
+			}
+			else if(element.equals(SyncXMLTags.Meta))
+			{
+				recordMap.setMeta(this.readText(reader));
+			}
+			else if(element.equals(SyncXMLTags.MapItem))
+			{
+				MapItem mapItem = new MapItem();
+				while(this.nextChild(reader))
+				{
+					String mapItemElement = reader.getLocalName();
+					if(mapItemElement.equals(SyncXMLTags.Source))
+					{
+						mapItem.setSource(this.readLocation(reader));
+					}
+					else if(mapItemElement.equals(SyncXMLTags.Target))
+					{
+						mapItem.setTarget(this.readLocation(reader));
+					}
+					else
+					{
+						this.skip(reader);
+					}
+				}
+				recordMap.getMapItems().add(mapItem);
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		return add;
+		return recordMap;
 	}
-	
+
 	/**
-	 * 
-	 * @param replaceList
-	 * @return
+	 *
+	 * @param reader positioned at a Source or a Target
+	 * @return the LocURI
+	 * @throws XMLStreamException
 	 */
-	private List processReplace(NodeList replaceList)
+	private String readLocation(XMLStreamReader reader) throws XMLStreamException
 	{
-		List replace = new ArrayList();
-		
-		for(int i=0;i<replaceList.getLength();i++)
+		String location = null;
+		while(this.nextChild(reader))
 		{
-			Replace cour = new Replace();
-			
-			Element replaceElement = (Element)replaceList.item(i);
-			
-			Element cmdId = (Element)replaceElement.getElementsByTagName(SyncXMLTags.CmdID).item(0);
-			cour.setCmdId(cmdId.getFirstChild().getNodeValue());
-			
-			if(XMLUtilities.contains(replaceElement, SyncXMLTags.Meta))
-			{
-				Element meta = (Element)replaceElement.getElementsByTagName(SyncXMLTags.Meta).item(0);
-				cour.setMeta(meta.getFirstChild().getNodeValue());
-			}
-			
-			NodeList items = replaceElement.getElementsByTagName(SyncXMLTags.Item);
-			for(int j=0;j<items.getLength();j++)
-			{
-				Item item = this.processItem((Element)items.item(j));
-				cour.getItems().add(item);
-			}
-			
-			replace.add(cour);			
+			if(reader.getLocalName().equals(SyncXMLTags.LocURI))
+			{
+				location = this.readText(reader);
+			}
+			else
+			{
+				this.skip(reader);
+			}
 		}
-		
-		return replace;
+		return location;
 	}
-	
+
 	/**
-	 * 
-	 * @param deleteList
-	 * @return
+	 * Moves to the next child element of the current element
+	 *
+	 * @param reader
+	 * @return false once the end of the current element is reached
+	 * @throws XMLStreamException
 	 */
-	private List processDelete(NodeList deleteList)
+	private boolean nextChild(XMLStreamReader reader) throws XMLStreamException
 	{
-		List delete = new ArrayList();
-		
-		for(int i=0;i<deleteList.getLength();i++)
+		while(reader.hasNext())
 		{
-			Delete cour = new Delete();
-			
-			Element deleteElement = (Element)deleteList.item(i);
-			
-			Element cmdId = (Element)deleteElement.getElementsByTagName(SyncXMLTags.CmdID).item(0);
-			cour.setCmdId(cmdId.getFirstChild().getNodeValue());
-			
-			if(XMLUtilities.contains(deleteElement, SyncXMLTags.Meta))
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
 			{
-				Element meta = (Element)deleteElement.getElementsByTagName(SyncXMLTags.Meta).item(0);
-				cour.setMeta(meta.getFirstChild().getNodeValue());
+				return true;
 			}
-			
-			if(XMLUtilities.contains(deleteElement, SyncXMLTags.Archive))
+			else if(event == XMLStreamConstants.END_ELEMENT)
 			{
-				cour.setArchive(true);
+				return false;
 			}
-			
-			if(XMLUtilities.contains(deleteElement, SyncXMLTags.SftDel))
+		}
+		return false;
+	}
+
+	/**
+	 * Moves to the end of the current element
+	 *
+	 * @param reader
+	 * @throws XMLStreamException
+	 */
+	private void skip(XMLStreamReader reader) throws XMLStreamException
+	{
+		int depth = 1;
+		while(depth > 0 && reader.hasNext())
+		{
+			int event = reader.next();
+			if(event == XMLStreamConstants.START_ELEMENT)
 			{
-				cour.setSoftDelete(true);
+				depth++;
 			}
-			
-			NodeList items = deleteElement.getElementsByTagName(SyncXMLTags.Item);
-			for(int j=0;j<items.getLength();j++)
+			else if(event == XMLStreamConstants.END_ELEMENT)
 			{
-				Item item = this.processItem((Element)items.item(j));
-				cour.getItems().add(item);
-			}			
-			
-			delete.add(cour);			
+				depth--;
+			}
 		}
-		
-		return delete;
-	}	
-	
+	}
+
 	/**
-	 * 
-	 * @param syncBody
+	 * Reads the text content of the current element, and moves to its end. With a coalescing parser the text
+	 * comes as one event, which is returned as is
+	 *
+	 * @param reader
 	 * @return
+	 * @throws XMLStreamException
 	 */
-	private RecordMap processRecordMap(Element syncBody)
+	private String readText(XMLStreamReader reader) throws XMLStreamException
 	{
-		RecordMap recordMap = new RecordMap();
-		
-		NodeList cour = syncBody.getElementsByTagName(SyncXMLTags.Map);
-		Element map = (Element)cour.item(0);
-		
-		Element cmdId = (Element)map.getElementsByTagName(SyncXMLTags.CmdID).item(0);
-		recordMap.setCmdId(cmdId.getFirstChild().getNodeValue());
-		
-		Element source = (Element)map.getElementsByTagName(SyncXMLTags.Source).item(0);
-		Element loc = (Element)source.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-		recordMap.setSource(loc.getFirstChild().getNodeValue());
-		
-		Element target = (Element)map.getElementsByTagName(SyncXMLTags.Target).item(0);
-		loc = (Element)target.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-		recordMap.setTarget(loc.getFirstChild().getNodeValue());
-		
-		if(XMLUtilities.contains(map, SyncXMLTags.Meta))
+		String text = null;
+		StringBuilder buffer = null;
+		int depth = 1;
+		while(depth > 0 && reader.hasNext())
 		{
-			Element meta = (Element)map.getElementsByTagName(SyncXMLTags.Meta).item(0);
-			recordMap.setMeta(meta.getFirstChild().getNodeValue());
+			int event = reader.next();
+			switch(event)
+			{
+				case XMLStreamConstants.START_ELEMENT:
+					depth++;
+				break;
+
+				case XMLStreamConstants.END_ELEMENT:
+					depth--;
+				break;
+
+				case XMLStreamConstants.CHARACTERS:
+				case XMLStreamConstants.CDATA:
+				case XMLStreamConstants.SPACE:
+					if(text == null)
+					{
+						text = reader.getText();
+					}
+					else
+					{
+						if(buffer == null)
+						{
+							buffer = new StringBuilder(text);
+						}
+						buffer.append(reader.getTextCharacters(), reader.getTextStart(), reader.getTextLength());
+					}
+				break;
+
+				default:
+				break;
+			}
 		}
-		
-		NodeList mapItems = map.getElementsByTagName(SyncXMLTags.MapItem);
-		for(int i=0; i<mapItems.getLength(); i++)
+
+		if(buffer != null)
 		{
-			Element mapItem = (Element)mapItems.item(i);
-			MapItem x = new MapItem();
-			
-			Element itemSrc = (Element)mapItem.getElementsByTagName(SyncXMLTags.Source).item(0);
-			Element itemLoc = (Element)itemSrc.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-			x.setSource(itemLoc.getFirstChild().getNodeValue());
-			
-			Element itemTarget = (Element)mapItem.getElementsByTagName(SyncXMLTags.Target).item(0);
-			itemLoc = (Element)itemTarget.getElementsByTagName(SyncXMLTags.LocURI).item(0);
-			x.setTarget(itemLoc.getFirstChild().getNodeValue());
-			
-			recordMap.getMapItems().add(x);
+			return buffer.toString();
 		}
-		
-		return recordMap;
+		return text != null ? text : "";
 	}
 }
@@ -8,6 +8,7 @@
 
 package org.openmobster.core.synchronizer.server;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
@@ -126,6 +127,9 @@ public class SyncServerAdapter implements SyncServer
 			//components in the call stack
 			SyncContext.getInstance().setSession(session);
 			
+			//locks started for this message are written together once the reply is ready
+			this.syncEngine.openLockBatch();
+			
 			switch(session.getPhaseCode())
 			{
 				case SyncServerAdapter.PHASE_INIT:				
@@ -149,10 +153,13 @@ public class SyncServerAdapter implements SyncServer
 				break;
 			}
 			
+			this.syncEngine.flushLockBatch();
+			
 			return response;
 		}
 		catch(Exception e)
 		{
+			this.syncEngine.discardLockBatch();
 			logger.error(this, e);
 			throw new SyncException(e);
 		}
@@ -304,6 +311,7 @@ public class SyncServerAdapter implements SyncServer
 			
 			serverSyncMessage.getStatus().add(mapStatus);
 		}
+		this.syncEngine.closeRecordMap();
 					
 		//Setup Final
 		serverSyncMessage.setFinal(true);
@@ -591,20 +599,18 @@ public class SyncServerAdapter implements SyncServer
 			}
 			else
 			{
-				List slowSyncCommands = this.syncEngine.getSlowSyncCommands(session.getMaxClientSize(), 
-				syncCommand.getSource());
-				for(int i=0; i<slowSyncCommands.size(); i++)
-				{
-					AbstractOperation cour = (AbstractOperation)slowSyncCommands.get(i);
-					cour.setCmdId(String.valueOf(cmdId++));
-				}
+				//the records are read and marshalled as the messages are filled up
+				Iterator<AbstractOperation> slowSyncCommands = this.syncEngine.getSlowSyncCommandStream(
+				session.getMaxClientSize(), syncCommand.getSource());
 				
 				session.clearOperationCommandState();
 				session.initiateOperationCommandState();
-				session.getAllOperationCommands().addAll(slowSyncCommands);				
+				session.setOperationCommandStream(slowSyncCommands, cmdId);
 			}
 		}
 		
+		session.fillOperationCommands(session.getMaxClientSize());
+		
 		int numberOfCommands = this.calculateNumberOfCommands(session.getMaxClientSize(), session.
 		getAllOperationCommands()); 
 				
@@ -630,7 +636,8 @@ public class SyncServerAdapter implements SyncServer
 					syncCommand.getDeleteCommands().add(op);
 				}
 				
-				if(commandIndex == session.getAllOperationCommands().size())
+				if(commandIndex == session.getAllOperationCommands().size() && 
+				!session.hasOperationCommandStream())
 				{
 					session.clearOperationCommandState();
 				}
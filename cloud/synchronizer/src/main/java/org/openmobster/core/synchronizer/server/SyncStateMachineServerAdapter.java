@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.synchronizer.server;
+
+import org.openmobster.core.synchronizer.server.workflow.SyncStateMachine;
+import org.openmobster.core.synchronizer.server.workflow.WorkflowConstants;
+import org.openmobster.core.synchronizer.server.workflow.WorkflowContext;
+
+/**
+ * SyncServer that drives the sync workflow with the compiled SyncStateMachine instead of a jBPM ProcessInstance
+ * per sync session. The request handling, session management and lock batching are the same as the 
+ * SyncJBPMServerAdapter
+ * 
+ * @author openmobster@gmail.com
+ */
+public class SyncStateMachineServerAdapter extends SyncJBPMServerAdapter
+{
+	private SyncStateMachine stateMachine = null;
+	
+	/**
+	 * 
+	 *
+	 */
+	public SyncStateMachineServerAdapter()
+	{
+		super();
+	}
+	
+	//-----Microcontainer management related methods--------------------------------------------------------------
+	/**
+	 * 
+	 *
+	 */
+	public void start()
+	{
+		this.stateMachine = new SyncStateMachine();
+	}
+	//------------------------------------------------------------------------------------------------------------
+	/**
+	 * 
+	 * @param session
+	 * @return
+	 */
+	protected String process(Session session)
+	{
+		WorkflowContext context = new WorkflowContext();
+		context.setTransientVariable(VariableConstants.session, session);
+		context.setTransientVariable(VariableConstants.syncEngine, this.syncEngine);
+		context.setTransientVariable(VariableConstants.syncXMLGenerator, this.syncXMLGenerator);
+		context.setTransientVariable(VariableConstants.syncObjectGenerator, this.syncObjectGenerator);
+		
+		//update Client message cache
+		String currentNode = session.getWorkflowNode(); 
+		if(currentNode == null ||
+		   currentNode.equals(WorkflowConstants.initialize)
+		)
+		{
+			session.getClientInitPackage().addMessage(session.getCurrentMessage());
+		}
+		else if(currentNode.startsWith(WorkflowConstants.synchronize))
+		{
+			session.getClientSyncPackage().addMessage(session.getCurrentMessage());
+		}
+		else if(currentNode.equals(WorkflowConstants.close))
+		{
+			session.getClientClosePackage().addMessage(session.getCurrentMessage());
+		}
+		
+		//move the workflow further, synchronize is passed through to the next wait state
+		String node = this.stateMachine.signal(session, context);
+		if(node.equals(WorkflowConstants.synchronize))
+		{
+			this.stateMachine.signal(session, context);
+		}
+		
+		String payload = (String)context.getTransientVariable(VariableConstants.payload);
+		if(payload == null)
+		{
+			payload = "";
+		}
+		
+		return payload;
+	}
+}
@@ -8,8 +8,10 @@
 
 package org.openmobster.core.synchronizer.server;
 
+import java.io.IOException;
 import java.util.List;
 
+import org.openmobster.core.synchronizer.SyncException;
 import org.openmobster.core.synchronizer.model.Add;
 import org.openmobster.core.synchronizer.model.Alert;
 import org.openmobster.core.synchronizer.model.Delete;
@@ -20,512 +22,499 @@ import org.openmobster.core.synchronizer.model.Replace;
 import org.openmobster.core.synchronizer.model.Status;
 import org.openmobster.core.synchronizer.model.SyncCommand;
 import org.openmobster.core.synchronizer.model.SyncMessage;
+import org.openmobster.core.synchronizer.model.SyncPackage;
 import org.openmobster.core.synchronizer.model.SyncXMLTags;
 import org.openmobster.core.synchronizer.model.Credential;
 import org.openmobster.core.synchronizer.server.engine.Anchor;
 
-import org.openmobster.core.common.XMLUtilities;
-
-
-
-
 /**
- * 
+ * Generates the SyncML XML of the server's messages.
+ *
+ * The whole message is streamed into a single Appendable in one pass. The write* methods take the output
+ * (a StringBuilder, a Writer on a socket buffer etc) from the caller, the generate* methods collect it into a
+ * String. Values are escaped the same way as XMLUtilities.cleanupXML, as they are written.
+ *
  * @author openmobster@gmail.com
  */
 public class SyncXMLGenerator
 {
+	private static final int initialCapacity = 4096;
+
 	/**
-	 * 
+	 *
 	 * @param session
-	 * @param msgId
-	 * @param isClientMessage
+	 * @param syncMessage
 	 * @return
 	 */
 	public String generateInitMessage(Session session,SyncMessage syncMessage)
 	{
-		String xml = null;
-				
-		StringBuffer buffer = new StringBuffer();
-		buffer.append("<"+SyncXMLTags.SyncML+">\n");
-		buffer.append("<"+SyncXMLTags.SyncHdr+">\n");
-		buffer.append("<"+SyncXMLTags.VerDTD+">"+"1.1"+"</"+SyncXMLTags.VerDTD+">\n");
-		buffer.append("<"+SyncXMLTags.VerProto+">"+"SyncML/1.1"+"</"+SyncXMLTags.VerProto+">\n");
-		buffer.append("<"+SyncXMLTags.SessionID+">"+XMLUtilities.cleanupXML(session.getSessionId())+"</"+SyncXMLTags.SessionID+">\n");
-		buffer.append("<"+SyncXMLTags.App+">"+XMLUtilities.cleanupXML(session.getApp())+"</"+SyncXMLTags.App+">\n");
-		buffer.append("<"+SyncXMLTags.Source+">\n");
-		buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(session.getSource()));
-		buffer.append("</"+SyncXMLTags.LocURI+">\n");
-		buffer.append("</"+SyncXMLTags.Source+">\n");
-		buffer.append("<"+SyncXMLTags.Target+">\n");
-		buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(session.getTarget()));
-		buffer.append("</"+SyncXMLTags.LocURI+">\n");
-		buffer.append("</"+SyncXMLTags.Target+">\n");
-		
-		buffer.append("<"+SyncXMLTags.MsgID+">"+XMLUtilities.cleanupXML(syncMessage.getMessageId())+"</"+SyncXMLTags.MsgID+">\n");
-		if(syncMessage.isClientInitiated())
+		StringBuilder buffer = new StringBuilder(initialCapacity);
+		this.writeInitMessage(session, syncMessage, buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 *
+	 * @param session
+	 * @param syncMessage
+	 * @return
+	 */
+	public String generateSyncMessage(Session session,SyncMessage syncMessage)
+	{
+		StringBuilder buffer = new StringBuilder(initialCapacity);
+		this.writeSyncMessage(session, syncMessage, buffer);
+		return buffer.toString();
+	}
+
+	/**
+	 *
+	 * @param anchor
+	 * @return
+	 */
+	public String generateAnchor(Anchor anchor)
+	{
+		StringBuilder buffer = new StringBuilder();
+		try
 		{
-			int maxMsgSize = session.getClientInitPackage().findMessage(syncMessage.getMessageId()).getMaxClientSize();
-			if(maxMsgSize > 0)
-			{
-				buffer.append("<"+SyncXMLTags.Meta+">\n");
-				buffer.append("<"+SyncXMLTags.MaxMsgSize+" xmlns='"+SyncXMLTags.sycml_metinf+"'>"+maxMsgSize);
-				buffer.append("</"+SyncXMLTags.MaxMsgSize+">\n");
-				buffer.append("</"+SyncXMLTags.Meta+">\n");
-			}
-		}		
-		buffer.append("</"+SyncXMLTags.SyncHdr+">\n");
-		
-		buffer.append("<"+SyncXMLTags.SyncBody+">\n");
-		
-		buffer.append(this.generateAlerts(syncMessage.getAlerts()));
-		
-		buffer.append(this.generateStatus(syncMessage.getStatus()));
-		
-		if(syncMessage.isFinal())
+			this.writeAnchor(anchor, buffer);
+		}
+		catch(IOException ioe)
 		{
-			buffer.append("<"+SyncXMLTags.Final+"/>\n");
+			throw new SyncException(ioe);
 		}
-		
-		buffer.append("</"+SyncXMLTags.SyncBody+">\n");
-		buffer.append("</"+SyncXMLTags.SyncML+">\n");
-		
-		xml = buffer.toString();
-		
-		return xml;
+		return buffer.toString();
 	}
-	
+
 	/**
-	 * 
+	 * Streams the XML of an init message
+	 *
 	 * @param session
-	 * @param msgId
-	 * @param isClientMessage
-	 * @return
+	 * @param syncMessage
+	 * @param out
 	 */
-	public String generateSyncMessage(Session session,SyncMessage syncMessage)
+	public void writeInitMessage(Session session,SyncMessage syncMessage,Appendable out)
 	{
-		String xml = null;
-				
-		StringBuffer buffer = new StringBuffer();
-		buffer.append("<"+SyncXMLTags.SyncML+">\n");
-		buffer.append("<"+SyncXMLTags.SyncHdr+">\n");
-		buffer.append("<"+SyncXMLTags.VerDTD+">"+"1.1"+"</"+SyncXMLTags.VerDTD+">\n");
-		buffer.append("<"+SyncXMLTags.VerProto+">"+"SyncML/1.1"+"</"+SyncXMLTags.VerProto+">\n");
-		buffer.append("<"+SyncXMLTags.SessionID+">"+XMLUtilities.cleanupXML(session.getSessionId())+"</"+SyncXMLTags.SessionID+">\n");
-		buffer.append("<"+SyncXMLTags.App+">"+XMLUtilities.cleanupXML(session.getApp())+"</"+SyncXMLTags.App+">\n");
-		buffer.append("<"+SyncXMLTags.Source+">\n");
-		buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(session.getSource()));
-		buffer.append("</"+SyncXMLTags.LocURI+">\n");
-		buffer.append("</"+SyncXMLTags.Source+">\n");
-		buffer.append("<"+SyncXMLTags.Target+">\n");
-		buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(session.getTarget()));
-		buffer.append("</"+SyncXMLTags.LocURI+">\n");
-		buffer.append("</"+SyncXMLTags.Target+">\n");
-		
-		buffer.append("<"+SyncXMLTags.MsgID+">"+XMLUtilities.cleanupXML(syncMessage.getMessageId())+"</"+SyncXMLTags.MsgID+">\n");
-		if(syncMessage.isClientInitiated())
+		try
 		{
-			int maxMsgSize = session.getClientSyncPackage().findMessage(syncMessage.getMessageId()).getMaxClientSize();
-			if(maxMsgSize > 0)
+			this.writeHeader(session, syncMessage, session.getClientInitPackage(), out);
+
+			out.append("<"+SyncXMLTags.SyncBody+">\n");
+
+			this.writeAlerts(syncMessage.getAlerts(), out);
+
+			this.writeStatus(syncMessage.getStatus(), out);
+
+			if(syncMessage.isFinal())
 			{
-				buffer.append("<"+SyncXMLTags.Meta+">\n");
-				buffer.append("<"+SyncXMLTags.MaxMsgSize+" xmlns='"+SyncXMLTags.sycml_metinf+"'>"+maxMsgSize);
-				buffer.append("</"+SyncXMLTags.MaxMsgSize+">\n");
-				buffer.append("</"+SyncXMLTags.Meta+">\n");
+				out.append("<"+SyncXMLTags.Final+"/>\n");
 			}
-		}		
-		buffer.append("</"+SyncXMLTags.SyncHdr+">\n");
-		
-		buffer.append("<"+SyncXMLTags.SyncBody+">\n");
-		
-		buffer.append(this.generateAlerts(syncMessage.getAlerts()));
-		
-		buffer.append(this.generateStatus(syncMessage.getStatus()));
-		
-		buffer.append(this.generateCommands(syncMessage.getSyncCommands()));
-		
-		if(syncMessage.getRecordMap() != null)
-		{
-			buffer.append(this.generateRecordMap(syncMessage.getRecordMap()));
+
+			out.append("</"+SyncXMLTags.SyncBody+">\n");
+			out.append("</"+SyncXMLTags.SyncML+">\n");
 		}
-		
-		if(syncMessage.isFinal())
+		catch(IOException ioe)
 		{
-			buffer.append("<"+SyncXMLTags.Final+"/>\n");
+			throw new SyncException(ioe);
 		}
-		
-		buffer.append("</"+SyncXMLTags.SyncBody+">\n");
-		buffer.append("</"+SyncXMLTags.SyncML+">\n");
-		
-		xml = buffer.toString();
-		
-		return xml;
 	}
-	
+
 	/**
-	 * 
-	 * @param anchor
-	 * @return
+	 * Streams the XML of a sync message
+	 *
+	 * @param session
+	 * @param syncMessage
+	 * @param out
 	 */
-	public String generateAnchor(Anchor anchor)
+	public void writeSyncMessage(Session session,SyncMessage syncMessage,Appendable out)
 	{
-		String xml = null;
-		
-		StringBuffer buffer = new StringBuffer();
-		
-		buffer.append("<"+SyncXMLTags.Anchor+" xmlns='"+SyncXMLTags.sycml_metinf+"'>\n");
-		buffer.append("<"+SyncXMLTags.Last+">"+XMLUtilities.cleanupXML(anchor.getLastSync())+"</"+SyncXMLTags.Last+">\n");
-		buffer.append("<"+SyncXMLTags.Next+">"+XMLUtilities.cleanupXML(anchor.getNextSync())+"</"+SyncXMLTags.Next+">\n");
-		buffer.append("</"+SyncXMLTags.Anchor+">\n");
-		
-		xml = buffer.toString();
-		
-		return xml;
+		try
+		{
+			this.writeHeader(session, syncMessage, session.getClientSyncPackage(), out);
+
+			out.append("<"+SyncXMLTags.SyncBody+">\n");
+
+			this.writeAlerts(syncMessage.getAlerts(), out);
+
+			this.writeStatus(syncMessage.getStatus(), out);
+
+			this.writeCommands(syncMessage.getSyncCommands(), out);
+
+			if(syncMessage.getRecordMap() != null)
+			{
+				this.writeRecordMap(syncMessage.getRecordMap(), out);
+			}
+
+			if(syncMessage.isFinal())
+			{
+				out.append("<"+SyncXMLTags.Final+"/>\n");
+			}
+
+			out.append("</"+SyncXMLTags.SyncBody+">\n");
+			out.append("</"+SyncXMLTags.SyncML+">\n");
+		}
+		catch(IOException ioe)
+		{
+			throw new SyncException(ioe);
+		}
 	}
 	//-----------------------------------------------------------------------------------------------------------
+	private void writeHeader(Session session,SyncMessage syncMessage,SyncPackage clientPackage,Appendable out)
+	throws IOException
+	{
+		out.append("<"+SyncXMLTags.SyncML+">\n");
+		out.append("<"+SyncXMLTags.SyncHdr+">\n");
+		out.append("<"+SyncXMLTags.VerDTD+">"+"1.1"+"</"+SyncXMLTags.VerDTD+">\n");
+		out.append("<"+SyncXMLTags.VerProto+">"+"SyncML/1.1"+"</"+SyncXMLTags.VerProto+">\n");
+		this.writeEscaped(SyncXMLTags.SessionID, session.getSessionId(), out);
+		this.writeEscaped(SyncXMLTags.App, session.getApp(), out);
+		this.writeLocation(SyncXMLTags.Source, session.getSource(), out);
+		this.writeLocation(SyncXMLTags.Target, session.getTarget(), out);
+
+		this.writeEscaped(SyncXMLTags.MsgID, syncMessage.getMessageId(), out);
+		if(syncMessage.isClientInitiated())
+		{
+			int maxMsgSize = clientPackage.findMessage(syncMessage.getMessageId()).getMaxClientSize();
+			if(maxMsgSize > 0)
+			{
+				out.append("<"+SyncXMLTags.Meta+">\n");
+				out.append("<"+SyncXMLTags.MaxMsgSize+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
+				out.append(String.valueOf(maxMsgSize));
+				out.append("</"+SyncXMLTags.MaxMsgSize+">\n");
+				out.append("</"+SyncXMLTags.Meta+">\n");
+			}
+		}
+		out.append("</"+SyncXMLTags.SyncHdr+">\n");
+	}
+
+	private void writeAnchor(Anchor anchor,Appendable out) throws IOException
+	{
+		out.append("<"+SyncXMLTags.Anchor+" xmlns='"+SyncXMLTags.sycml_metinf+"'>\n");
+		this.writeEscaped(SyncXMLTags.Last, anchor.getLastSync(), out);
+		this.writeEscaped(SyncXMLTags.Next, anchor.getNextSync(), out);
+		out.append("</"+SyncXMLTags.Anchor+">\n");
+	}
+
 	/**
-	 * 
+	 *
 	 * @param alerts
-	 * @return
+	 * @param out
 	 */
-	private String generateAlerts(List alerts)
+	private void writeAlerts(List alerts,Appendable out) throws IOException
 	{
-		String xml = null;
-		
-		StringBuffer buffer = new StringBuffer();
-		
 		for(int i=0;i<alerts.size();i++)
 		{
 			Alert alert = (Alert)alerts.get(i);
-			
-			buffer.append("<"+SyncXMLTags.Alert+">\n");
-			
-			buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(alert.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-			buffer.append("<"+SyncXMLTags.Data+">"+alert.getData()+"</"+SyncXMLTags.Data+">\n");
-			
-			buffer.append(this.generateItems(alert.getItems()));
-						
-			buffer.append("</"+SyncXMLTags.Alert+">\n");
+
+			out.append("<"+SyncXMLTags.Alert+">\n");
+
+			this.writeEscaped(SyncXMLTags.CmdID, alert.getCmdId(), out);
+			this.writeElement(SyncXMLTags.Data, alert.getData(), out);
+
+			this.writeItems(alert.getItems(), out);
+
+			out.append("</"+SyncXMLTags.Alert+">\n");
 		}
-		
-		xml = buffer.toString();
-		
-		return xml;
 	}
-	
+
 	/**
-	 * 
-	 * @param alerts
-	 * @return
+	 *
+	 * @param status
+	 * @param out
 	 */
-	private String generateStatus(List status)
+	private void writeStatus(List status,Appendable out) throws IOException
 	{
-		String xml = null;
-		
-		StringBuffer buffer = new StringBuffer();
-		
 		for(int i=0;i<status.size();i++)
 		{
 			Status cour = (Status)status.get(i);
-			
-			buffer.append("<"+SyncXMLTags.Status+">\n");
-			
-			buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(cour.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-			buffer.append("<"+SyncXMLTags.Data+">"+cour.getData()+"</"+SyncXMLTags.Data+">\n");
-			buffer.append("<"+SyncXMLTags.MsgRef+">"+cour.getMsgRef()+"</"+SyncXMLTags.MsgRef+">\n");
-			buffer.append("<"+SyncXMLTags.CmdRef+">"+cour.getCmdRef()+"</"+SyncXMLTags.CmdRef+">\n");
-			buffer.append("<"+SyncXMLTags.Cmd+">"+cour.getCmd()+"</"+SyncXMLTags.Cmd+">\n");
-			
+
+			out.append("<"+SyncXMLTags.Status+">\n");
+
+			this.writeEscaped(SyncXMLTags.CmdID, cour.getCmdId(), out);
+			this.writeElement(SyncXMLTags.Data, cour.getData(), out);
+			this.writeElement(SyncXMLTags.MsgRef, cour.getMsgRef(), out);
+			this.writeElement(SyncXMLTags.CmdRef, cour.getCmdRef(), out);
+			this.writeElement(SyncXMLTags.Cmd, cour.getCmd(), out);
+
 			for(int j=0;j<cour.getTargetRefs().size();j++)
-			{				
-				buffer.append("<"+SyncXMLTags.TargetRef+">"+cour.getTargetRefs().get(j)+"</"+SyncXMLTags.TargetRef+">\n");
+			{
+				this.writeElement(SyncXMLTags.TargetRef, cour.getTargetRefs().get(j), out);
 			}
-			
+
 			for(int j=0;j<cour.getSourceRefs().size();j++)
 			{
-				buffer.append("<"+SyncXMLTags.SourceRef+">"+cour.getSourceRefs().get(j)+"</"+SyncXMLTags.SourceRef+">\n");
+				this.writeElement(SyncXMLTags.SourceRef, cour.getSourceRefs().get(j), out);
 			}
-			
-			buffer.append(this.generateItems(cour.getItems()));
-			
+
+			this.writeItems(cour.getItems(), out);
+
 			Credential credential = cour.getCredential();
 			if(credential != null)
 			{
-				buffer.append("<"+SyncXMLTags.Chal+">\n");
-				buffer.append("<"+SyncXMLTags.Meta+">\n");
-				buffer.append("<"+SyncXMLTags.Type+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
-				buffer.append(credential.getType());
-				buffer.append("</"+SyncXMLTags.Type+">");
-				buffer.append("<"+SyncXMLTags.Format+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
-				buffer.append(credential.getFormat());
-				buffer.append("</"+SyncXMLTags.Format+">");
-				buffer.append("<"+SyncXMLTags.NextNonce+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
-				buffer.append(credential.getNextNonce());
-				buffer.append("</"+SyncXMLTags.NextNonce+">");
-				buffer.append("</"+SyncXMLTags.Meta+">\n");
-				buffer.append("</"+SyncXMLTags.Chal+">\n");
+				out.append("<"+SyncXMLTags.Chal+">\n");
+				out.append("<"+SyncXMLTags.Meta+">\n");
+				out.append("<"+SyncXMLTags.Type+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
+				out.append(credential.getType());
+				out.append("</"+SyncXMLTags.Type+">");
+				out.append("<"+SyncXMLTags.Format+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
+				out.append(credential.getFormat());
+				out.append("</"+SyncXMLTags.Format+">");
+				out.append("<"+SyncXMLTags.NextNonce+" xmlns='"+SyncXMLTags.sycml_metinf+"'>");
+				out.append(credential.getNextNonce());
+				out.append("</"+SyncXMLTags.NextNonce+">");
+				out.append("</"+SyncXMLTags.Meta+">\n");
+				out.append("</"+SyncXMLTags.Chal+">\n");
 			}
-			
-			buffer.append("</"+SyncXMLTags.Status+">\n");
+
+			out.append("</"+SyncXMLTags.Status+">\n");
 		}
-		
-		xml = buffer.toString();
-		
-		return xml;
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param items
-	 * @return
+	 * @param out
 	 */
-	private String generateItems(List items)
+	private void writeItems(List items,Appendable out) throws IOException
 	{
-		String xml = null;
-		
-		StringBuffer buffer = new StringBuffer();
-		
 		for(int i=0;i<items.size();i++)
 		{
 			Item item = (Item)items.get(i);
-			
-			buffer.append("<"+SyncXMLTags.Item+">\n");
-			
+
+			out.append("<"+SyncXMLTags.Item+">\n");
+
 			if(item.getSource() != null)
 			{
-				buffer.append("<"+SyncXMLTags.Source+">\n");
-				buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(item.getSource()));
-				buffer.append("</"+SyncXMLTags.LocURI+">\n");
-				buffer.append("</"+SyncXMLTags.Source+">\n");
+				this.writeLocation(SyncXMLTags.Source, item.getSource(), out);
 			}
-			
+
 			if(item.getTarget() != null)
 			{
-				buffer.append("<"+SyncXMLTags.Target+">\n");
-				buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(item.getTarget()));
-				buffer.append("</"+SyncXMLTags.LocURI+">\n");
-				buffer.append("</"+SyncXMLTags.Target+">\n");
-			}			
-			
+				this.writeLocation(SyncXMLTags.Target, item.getTarget(), out);
+			}
+
 			if(item.getData() != null)
-			{					
-				buffer.append("<"+SyncXMLTags.Data+">"+
-				XMLUtilities.addCData(item.getData())+
-				"</"+SyncXMLTags.Data+">\n");
+			{
+				//the data is usually the bulk of the message, it goes out as is in a CDATA section
+				out.append("<"+SyncXMLTags.Data+"><![CDATA[");
+				out.append(item.getData());
+				out.append("]]></"+SyncXMLTags.Data+">\n");
 			}
-			
+
 			if(item.getMeta() != null)
-			{					
-				buffer.append("<"+SyncXMLTags.Meta+">"+XMLUtilities.cleanupXML(item.getMeta())+"</"+SyncXMLTags.Meta+">\n");
+			{
+				this.writeEscaped(SyncXMLTags.Meta, item.getMeta(), out);
 			}
-			
+
 			if(item.hasMoreData())
-			{					
-				buffer.append("<"+SyncXMLTags.MoreData+"/>\n");
+			{
+				out.append("<"+SyncXMLTags.MoreData+"/>\n");
 			}
-		
-			buffer.append("</"+SyncXMLTags.Item+">\n");
+
+			out.append("</"+SyncXMLTags.Item+">\n");
 		}
-		
-		
-		xml = buffer.toString();
-		
-		return xml;
 	}
-	
+
 	/**
-	 * 
+	 *
 	 * @param syncCommands
-	 * @return
+	 * @param out
 	 */
-	private String generateCommands(List syncCommands)
+	private void writeCommands(List syncCommands,Appendable out) throws IOException
 	{
-		String xml = null;
-		
-		StringBuffer buffer = new StringBuffer();
 		for(int i=0;i<syncCommands.size();i++)
 		{
 			SyncCommand command = (SyncCommand)syncCommands.get(i);
-			buffer.append("<"+SyncXMLTags.Sync+">\n");
-			
+			out.append("<"+SyncXMLTags.Sync+">\n");
+
 			//CmdId
-			buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(command.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-			
+			this.writeEscaped(SyncXMLTags.CmdID, command.getCmdId(), out);
+
 			//Source
 			if(command.getSource() != null)
 			{
-				buffer.append("<"+SyncXMLTags.Source+">\n");
-				buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(command.getSource()));
-				buffer.append("</"+SyncXMLTags.LocURI+">\n");
-				buffer.append("</"+SyncXMLTags.Source+">\n");
+				this.writeLocation(SyncXMLTags.Source, command.getSource(), out);
 			}
-			
+
 			//Target
 			if(command.getTarget() != null)
 			{
-				buffer.append("<"+SyncXMLTags.Target+">\n");
-				buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(command.getTarget()));
-				buffer.append("</"+SyncXMLTags.LocURI+">\n");
-				buffer.append("</"+SyncXMLTags.Target+">\n");
+				this.writeLocation(SyncXMLTags.Target, command.getTarget(), out);
 			}
-			
+
 			//Meta
 			if(command.getMeta() != null)
 			{
-				buffer.append("<"+SyncXMLTags.Meta+">"+XMLUtilities.cleanupXML(command.getMeta())+"</"+SyncXMLTags.Meta+">\n");
+				this.writeEscaped(SyncXMLTags.Meta, command.getMeta(), out);
 			}
-			
+
 			//NumberOfChanges
 			if(command.getNumberOfChanges() != null)
 			{
-				buffer.append("<"+SyncXMLTags.NumberOfChanges+">"+XMLUtilities.cleanupXML(command.getNumberOfChanges())+"</"+SyncXMLTags.NumberOfChanges+">\n");
+				this.writeEscaped(SyncXMLTags.NumberOfChanges, command.getNumberOfChanges(), out);
 			}
-			
+
 			//Add Commands
 			for(int j=0;j<command.getAddCommands().size();j++)
 			{
 				Add cour = (Add)command.getAddCommands().get(j);
-				buffer.append("<"+SyncXMLTags.Add+">\n");
-				
-				//CmdId
-				buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(cour.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-				
-				//Meta
-				if(cour.getMeta() != null && cour.getMeta().trim().length()>0)
-				{
-					buffer.append("<"+SyncXMLTags.Meta+">"+XMLUtilities.cleanupXML(cour.getMeta())+"</"+SyncXMLTags.Meta+">\n");
-				}
-				
-				//Items
-				if(!cour.getItems().isEmpty())
-				{
-					buffer.append(this.generateItems(cour.getItems()));
-				}
-				
-				buffer.append("</"+SyncXMLTags.Add+">\n");
+				out.append("<"+SyncXMLTags.Add+">\n");
+
+				this.writeOperation(cour.getCmdId(), cour.getMeta(), cour.getItems(), out);
+
+				out.append("</"+SyncXMLTags.Add+">\n");
 			}
-			
+
 			//Replace Commands
 			for(int j=0;j<command.getReplaceCommands().size();j++)
 			{
 				Replace cour = (Replace)command.getReplaceCommands().get(j);
-				buffer.append("<"+SyncXMLTags.Replace+">\n");
-				
-				//CmdId
-				buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(cour.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-				
-				//Meta
-				if(cour.getMeta() != null && cour.getMeta().trim().length()>0)
-				{
-					buffer.append("<"+SyncXMLTags.Meta+">"+XMLUtilities.cleanupXML(cour.getMeta())+"</"+SyncXMLTags.Meta+">\n");
-				}
-				
-				//Items
-				if(!cour.getItems().isEmpty())
-				{
-					buffer.append(this.generateItems(cour.getItems()));
-				}
-				
-				buffer.append("</"+SyncXMLTags.Replace+">\n");
+				out.append("<"+SyncXMLTags.Replace+">\n");
+
+				this.writeOperation(cour.getCmdId(), cour.getMeta(), cour.getItems(), out);
+
+				out.append("</"+SyncXMLTags.Replace+">\n");
 			}
-			
+
 			//Delete Commands
 			for(int j=0;j<command.getDeleteCommands().size();j++)
 			{
 				Delete cour = (Delete)command.getDeleteCommands().get(j);
-				buffer.append("<"+SyncXMLTags.Delete+">\n");
-				
-				//CmdId
-				buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(cour.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-				
-				//Meta
-				if(cour.getMeta() != null && cour.getMeta().trim().length()>0)
-				{
-					buffer.append("<"+SyncXMLTags.Meta+">"+XMLUtilities.cleanupXML(cour.getMeta())+"</"+SyncXMLTags.Meta+">\n");
-				}
-				
-				//Items
-				if(!cour.getItems().isEmpty())
-				{
-					buffer.append(this.generateItems(cour.getItems()));
-				}
-				
+				out.append("<"+SyncXMLTags.Delete+">\n");
+
+				this.writeOperation(cour.getCmdId(), cour.getMeta(), cour.getItems(), out);
+
 				//Archive
 				if(cour.isArchive())
 				{
-					buffer.append("<"+SyncXMLTags.Archive+"/>\n");
+					out.append("<"+SyncXMLTags.Archive+"/>\n");
 				}
-				
+
 				//SoftDelete
 				if(cour.isSoftDelete())
 				{
-					buffer.append("<"+SyncXMLTags.SftDel+"/>\n");
+					out.append("<"+SyncXMLTags.SftDel+"/>\n");
 				}
-				
-				buffer.append("</"+SyncXMLTags.Delete+">\n");
+
+				out.append("</"+SyncXMLTags.Delete+">\n");
 			}
-			
-			
-			buffer.append("</"+SyncXMLTags.Sync+">\n");
+
+
+			out.append("</"+SyncXMLTags.Sync+">\n");
 		}
-		
-		xml = buffer.toString();
-		
-		return xml;
 	}
-	
+
 	/**
-	 * 
+	 * CmdId, Meta and Items shared by the Add, Replace and Delete commands
+	 */
+	private void writeOperation(String cmdId,String meta,List items,Appendable out) throws IOException
+	{
+		//CmdId
+		this.writeEscaped(SyncXMLTags.CmdID, cmdId, out);
+
+		//Meta
+		if(meta != null && meta.trim().length()>0)
+		{
+			this.writeEscaped(SyncXMLTags.Meta, meta, out);
+		}
+
+		//Items
+		if(!items.isEmpty())
+		{
+			this.writeItems(items, out);
+		}
+	}
+
+	/**
+	 *
 	 * @param recordMap
-	 * @return
+	 * @param out
 	 */
-	private String generateRecordMap(RecordMap recordMap)
+	private void writeRecordMap(RecordMap recordMap,Appendable out) throws IOException
 	{
-		String xml = null;
-		
-		StringBuffer buffer = new StringBuffer();
-		
-		buffer.append("<"+SyncXMLTags.Map+">\n");
-		
-		buffer.append("<"+SyncXMLTags.CmdID+">"+XMLUtilities.cleanupXML(recordMap.getCmdId())+"</"+SyncXMLTags.CmdID+">\n");
-		
-		buffer.append("<"+SyncXMLTags.Source+">\n");
-		buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(recordMap.getSource()));
-		buffer.append("</"+SyncXMLTags.LocURI+">\n");
-		buffer.append("</"+SyncXMLTags.Source+">\n");
-		
-		buffer.append("<"+SyncXMLTags.Target+">\n");
-		buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(recordMap.getTarget()));
-		buffer.append("</"+SyncXMLTags.LocURI+">\n");
-		buffer.append("</"+SyncXMLTags.Target+">\n");
-		
+		out.append("<"+SyncXMLTags.Map+">\n");
+
+		this.writeEscaped(SyncXMLTags.CmdID, recordMap.getCmdId(), out);
+
+		this.writeLocation(SyncXMLTags.Source, recordMap.getSource(), out);
+		this.writeLocation(SyncXMLTags.Target, recordMap.getTarget(), out);
+
 		if(recordMap.getMeta() != null && recordMap.getMeta().trim().length()>0)
 		{
-			buffer.append("<"+SyncXMLTags.Meta+">"+XMLUtilities.cleanupXML(recordMap.getMeta())+"</"+SyncXMLTags.Meta+">\n");
+			this.writeEscaped(SyncXMLTags.Meta, recordMap.getMeta(), out);
 		}
-		
+
 		for(int i=0;i<recordMap.getMapItems().size();i++)
 		{
 			MapItem mapItem = (MapItem)recordMap.getMapItems().get(i);
-			buffer.append("<"+SyncXMLTags.MapItem+">\n");
-			
-			buffer.append("<"+SyncXMLTags.Source+">\n");
-			buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(mapItem.getSource()));
-			buffer.append("</"+SyncXMLTags.LocURI+">\n");
-			buffer.append("</"+SyncXMLTags.Source+">\n");
-			
-			buffer.append("<"+SyncXMLTags.Target+">\n");
-			buffer.append("<"+SyncXMLTags.LocURI+">"+XMLUtilities.cleanupXML(mapItem.getTarget()));
-			buffer.append("</"+SyncXMLTags.LocURI+">\n");
-			buffer.append("</"+SyncXMLTags.Target+">\n");
-			
-			buffer.append("</"+SyncXMLTags.MapItem+">\n");
+			out.append("<"+SyncXMLTags.MapItem+">\n");
+
+			this.writeLocation(SyncXMLTags.Source, mapItem.getSource(), out);
+			this.writeLocation(SyncXMLTags.Target, mapItem.getTarget(), out);
+
+			out.append("</"+SyncXMLTags.MapItem+">\n");
+		}
+
+		out.append("</"+SyncXMLTags.Map+">\n");
+	}
+	//-----------------------------------------------------------------------------------------------------------
+	/**
+	 * <tag>value</tag> with the value as is
+	 */
+	private void writeElement(String tag,Object value,Appendable out) throws IOException
+	{
+		out.append('<').append(tag).append('>');
+		out.append(String.valueOf(value));
+		out.append("</").append(tag).append(">\n");
+	}
+
+	/**
+	 * <tag>value</tag> with the value escaped
+	 */
+	private void writeEscaped(String tag,String value,Appendable out) throws IOException
+	{
+		out.append('<').append(tag).append('>');
+		this.escape(value, out);
+		out.append("</").append(tag).append(">\n");
+	}
+
+	/**
+	 * <Source|Target><LocURI>value</LocURI></Source|Target>
+	 */
+	private void writeLocation(String tag,String value,Appendable out) throws IOException
+	{
+		out.append('<').append(tag).append(">\n");
+		out.append("<"+SyncXMLTags.LocURI+">");
+		this.escape(value, out);
+		out.append("</"+SyncXMLTags.LocURI+">\n");
+		out.append("</").append(tag).append(">\n");
+	}
+
+	/**
+	 * Same output as XMLUtilities.cleanupXML, without the intermediate Strings
+	 */
+	private void escape(String value,Appendable out) throws IOException
+	{
+		if(value == null)
+		{
+			return;
+		}
+
+		int start = 0;
+		for(int i=0,length=value.length();i<length;i++)
+		{
+			String entity = null;
+			switch(value.charAt(i))
+			{
+				case '&': entity = "&amp;"; break;
+				case '<': entity = "&lt;"; break;
+				case '>': entity = "&gt;"; break;
+				case '"': entity = "&quot;"; break;
+				case '\'': entity = "&apos;"; break;
+				default: continue;
+			}
+			out.append(value, start, i).append(entity);
+			start = i+1;
 		}
-				
-		buffer.append("</"+SyncXMLTags.Map+">\n");
-		
-		xml = buffer.toString();
-		
-		return xml;
+		out.append(value, start, value.length());
 	}
 }
@@ -0,0 +1,283 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.SessionFactoryImplementor;
+
+import org.openmobster.core.common.database.HibernateManager;
+import org.openmobster.core.synchronizer.SyncException;
+
+/**
+ * Writes ChangeLogEntries in bulk with JDBC batching.
+ *
+ * An entry that is already in the changelog is skipped based on the changelog_unique_constraint, instead of
+ * being looked up one at a time before the insert. On MySQL the database does this itself with an
+ * "insert ignore". Elsewhere the keys already stored are read with one query per device/channel/app and only
+ * the missing ones are inserted. A concurrent fan-out may store some of those in between, a batch that fails
+ * on them is then inserted again one entry at a time, skipping the ones that violate the constraint.
+ *
+ * @author openmobster@gmail.com
+ */
+final class ChangeLogWriter
+{
+	private static Logger logger = Logger.getLogger(ChangeLogWriter.class);
+
+	static final String insert = "insert into sync_engine_changelog (target,node_id,record_id,operation,app) values (?,?,?,?,?)";
+	private static final String insertIgnore = "insert ignore into sync_engine_changelog (target,node_id,record_id,operation,app) values (?,?,?,?,?)";
+	private static final String storedKeys = "select record_id,operation from sync_engine_changelog where target=? and node_id=? and app=?";
+
+	private HibernateManager hibernateManager;
+	private int batchSize;
+
+	ChangeLogWriter(HibernateManager hibernateManager, int batchSize)
+	{
+		this.hibernateManager = hibernateManager;
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * Adds the entries to the changelog in one transaction. The entries must carry their target and app
+	 *
+	 * @param entries
+	 * @return number of entries that were not in the changelog yet
+	 */
+	int write(Collection<ChangeLogEntry> entries)
+	{
+		if(entries == null || entries.isEmpty())
+		{
+			return 0;
+		}
+
+		//duplicates within the same call
+		Map<String,ChangeLogEntry> unique = new LinkedHashMap<String,ChangeLogEntry>();
+		for(ChangeLogEntry entry: entries)
+		{
+			unique.put(this.key(entry.getTarget(), entry.getNodeId(), entry.getApp(),
+			entry.getRecordId(), entry.getOperation()), entry);
+		}
+
+		Session session = this.hibernateManager.getSessionFactory().getCurrentSession();
+		Transaction tx = session.beginTransaction();
+		try
+		{
+			Connection connection = session.connection();
+
+			int written = 0;
+			if(this.supportsInsertIgnore())
+			{
+				written = this.insert(connection, insertIgnore, unique.values());
+			}
+			else
+			{
+				written = this.insert(connection, insert, this.filterStored(connection, unique));
+			}
+
+			tx.commit();
+
+			return written;
+		}
+		catch(Exception e)
+		{
+			logger.error(this, e);
+			if(tx != null)
+			{
+				tx.rollback();
+			}
+			throw new SyncException(e);
+		}
+	}
+	//-----------------------------------------------------------------------------------------------------------
+	private boolean supportsInsertIgnore()
+	{
+		SessionFactoryImplementor sessionFactory = (SessionFactoryImplementor)this.hibernateManager.getSessionFactory();
+		return sessionFactory.getDialect() instanceof MySQLDialect;
+	}
+
+	private List<ChangeLogEntry> filterStored(Connection connection, Map<String,ChangeLogEntry> unique) throws SQLException
+	{
+		//group by device/channel/app, which is how the fan-out produces them
+		Map<String,List<ChangeLogEntry>> groups = new LinkedHashMap<String,List<ChangeLogEntry>>();
+		for(ChangeLogEntry entry: unique.values())
+		{
+			String group = this.key(entry.getTarget(), entry.getNodeId(), entry.getApp());
+			List<ChangeLogEntry> groupEntries = groups.get(group);
+			if(groupEntries == null)
+			{
+				groupEntries = new ArrayList<ChangeLogEntry>();
+				groups.put(group, groupEntries);
+			}
+			groupEntries.add(entry);
+		}
+
+		List<ChangeLogEntry> missing = new ArrayList<ChangeLogEntry>();
+		PreparedStatement statement = connection.prepareStatement(storedKeys);
+		try
+		{
+			for(List<ChangeLogEntry> groupEntries: groups.values())
+			{
+				ChangeLogEntry first = groupEntries.get(0);
+				statement.setString(1, first.getTarget());
+				statement.setString(2, first.getNodeId());
+				statement.setString(3, first.getApp());
+
+				Set<String> stored = new HashSet<String>();
+				ResultSet rs = statement.executeQuery();
+				try
+				{
+					while(rs.next())
+					{
+						stored.add(this.key(rs.getString(1), rs.getString(2)));
+					}
+				}
+				finally
+				{
+					rs.close();
+				}
+
+				for(ChangeLogEntry entry: groupEntries)
+				{
+					if(!stored.contains(this.key(entry.getRecordId(), entry.getOperation())))
+					{
+						missing.add(entry);
+					}
+				}
+			}
+		}
+		finally
+		{
+			statement.close();
+		}
+		return missing;
+	}
+
+	int insert(Connection connection, String sql, Collection<ChangeLogEntry> entries) throws SQLException
+	{
+		int written = 0;
+		PreparedStatement statement = connection.prepareStatement(sql);
+		try
+		{
+			List<ChangeLogEntry> chunk = new ArrayList<ChangeLogEntry>();
+			for(ChangeLogEntry entry: entries)
+			{
+				chunk.add(entry);
+				if(chunk.size() == this.batchSize)
+				{
+					written += this.insertChunk(connection, statement, chunk);
+					chunk.clear();
+				}
+			}
+			if(!chunk.isEmpty())
+			{
+				written += this.insertChunk(connection, statement, chunk);
+			}
+		}
+		finally
+		{
+			statement.close();
+		}
+		return written;
+	}
+
+	private int insertChunk(Connection connection, PreparedStatement statement, List<ChangeLogEntry> chunk)
+	throws SQLException
+	{
+		//some databases abort the whole transaction on a failed statement, unless it is rolled back to here
+		Savepoint savepoint = connection.setSavepoint();
+		try
+		{
+			for(ChangeLogEntry entry: chunk)
+			{
+				this.bind(statement, entry);
+				statement.addBatch();
+			}
+			return this.count(statement.executeBatch());
+		}
+		catch(BatchUpdateException bue)
+		{
+			statement.clearBatch();
+			connection.rollback(savepoint);
+		}
+
+		int written = 0;
+		for(ChangeLogEntry entry: chunk)
+		{
+			Savepoint row = connection.setSavepoint();
+			try
+			{
+				this.bind(statement, entry);
+				written += statement.executeUpdate();
+			}
+			catch(SQLException e)
+			{
+				connection.rollback(row);
+
+				//SQLState class 23 is an integrity constraint violation, the entry is already stored
+				if(e.getSQLState() == null || !e.getSQLState().startsWith("23"))
+				{
+					throw e;
+				}
+			}
+		}
+		return written;
+	}
+
+	private void bind(PreparedStatement statement, ChangeLogEntry entry) throws SQLException
+	{
+		statement.setString(1, entry.getTarget());
+		statement.setString(2, entry.getNodeId());
+		statement.setString(3, entry.getRecordId());
+		statement.setString(4, entry.getOperation());
+		statement.setString(5, entry.getApp());
+	}
+
+	private int count(int[] updateCounts)
+	{
+		int count = 0;
+		for(int updateCount: updateCounts)
+		{
+			if(updateCount > 0)
+			{
+				count += updateCount;
+			}
+			else if(updateCount == PreparedStatement.SUCCESS_NO_INFO)
+			{
+				count++;
+			}
+		}
+		return count;
+	}
+
+	private String key(String... parts)
+	{
+		StringBuilder key = new StringBuilder();
+		for(String part: parts)
+		{
+			key.append(part).append((char)0);
+		}
+		return key.toString();
+	}
+}
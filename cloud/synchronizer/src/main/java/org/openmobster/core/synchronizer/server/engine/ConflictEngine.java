@@ -9,7 +9,14 @@ package org.openmobster.core.synchronizer.server.engine;
 
 import org.apache.log4j.Logger;
 
+import java.security.MessageDigest;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.ArrayList;
@@ -22,7 +29,12 @@ import org.openmobster.core.mobileObject.xml.MobileObjectSerializer;
 import org.openmobster.core.synchronizer.SyncException;
 
 /**
- * FIXME: implement my persistence
+ * Optimistic locks on the beans sent to the devices. A lock records the state of a bean as the device last
+ * received it, an update from the device is in conflict when the bean has changed since.
+ * 
+ * In the default fingerprint lockMode a lock takes a few dozen bytes regardless of the size of the bean.
+ * The state lockMode keeps the full serialized bean, as it used to be. Locks written in either mode are 
+ * understood by both.
  * 
  * @author openmobster@gmail.com
  */
@@ -30,8 +42,31 @@ public class ConflictEngine
 {
 	private static Logger log = Logger.getLogger(ConflictEngine.class);
 	
+	/**
+	 * Stores a 128-bit fingerprint of the serialized bean, or the version of the bean when it has a 
+	 * MobileBeanVersion field
+	 */
+	public static final String LOCK_MODE_FINGERPRINT = "fingerprint";
+	
+	/**
+	 * Stores the full serialized bean
+	 */
+	public static final String LOCK_MODE_STATE = "state";
+	
+	private static final String fingerprintPrefix = "md5:";
+	private static final String versionPrefix = "version:";
+	private static final char[] hex = "0123456789abcdef".toCharArray();
+	private static final int batchSize = 100;
+	
+	private static final String insertLock = "insert into sync_engine_conflict_entry (deviceId,channel,app,oid,state) values (?,?,?,?,?)";
+	private static final String updateLock = "update sync_engine_conflict_entry set state=? where id=?";
+	
 	private MobileObjectSerializer serializer;
 	private HibernateManager hibernateManager = null;
+	private String lockMode = LOCK_MODE_FINGERPRINT;
+	private boolean migrateOnStart;
+	
+	private ThreadLocal<LockBatch> lockBatch = new ThreadLocal<LockBatch>();
 	
 	public ConflictEngine()
 	{
@@ -39,7 +74,10 @@ public class ConflictEngine
 	
 	public void start()
 	{
-		
+		if(this.migrateOnStart)
+		{
+			this.migrateLocks();
+		}
 	}
 	
 	public void stop()
@@ -58,6 +96,26 @@ public class ConflictEngine
 	}
 	
 	
+	public String getLockMode()
+	{
+		return lockMode;
+	}
+
+	public void setLockMode(String lockMode)
+	{
+		this.lockMode = lockMode;
+	}
+	
+	public boolean isMigrateOnStart()
+	{
+		return migrateOnStart;
+	}
+
+	public void setMigrateOnStart(boolean migrateOnStart)
+	{
+		this.migrateOnStart = migrateOnStart;
+	}
+	
 	public HibernateManager getHibernateManager()
 	{
 		return hibernateManager;
@@ -70,8 +128,16 @@ public class ConflictEngine
 	//-------------------------------------------------------------------------------------------------------------------
 	public void startOptimisticLock(String app, String channel,MobileBean cloudBean) throws SyncException
 	{
-		String deviceId = Tools.getDeviceId();
-		String serializedBean = this.serializer.serialize(cloudBean).trim();
+		this.startOptimisticLock(Tools.getDeviceId(), app, channel, cloudBean);
+	}
+	
+	public boolean checkOptimisticLock(String app, String channel,MobileBean cloudBean) throws SyncException
+	{
+		return this.checkOptimisticLock(Tools.getDeviceId(), app, channel, cloudBean);
+	}
+	
+	void startOptimisticLock(String deviceId, String app, String channel,MobileBean cloudBean) throws SyncException
+	{
 		String oid = Tools.getOid(cloudBean);
 		
 		if(oid.startsWith("proxy[[") && oid.endsWith("]]"))
@@ -80,41 +146,69 @@ public class ConflictEngine
 			return;
 		}
 		
-		ConflictEntry bean = this.readLock(deviceId, oid, app, channel);
+		String lockState = this.getLockState(cloudBean);
+		
+		ConflictEntry bean = this.findLock(deviceId, oid, app, channel);
 		
 		log.debug("******StartLock*****************************************");
 		log.debug("Device: "+deviceId);
 		log.debug("App: "+app);
 		log.debug("Channel: "+channel);
-		log.debug("Serialized: "+serializedBean);
+		log.debug("Lock: "+lockState);
 		log.debug("***********************************************");
 		
-		bean.setState(serializedBean.getBytes());
+		if(bean.getId() != 0 && lockState.equals(bean.getStateAsString()))
+		{
+			//the device already has this state of the bean
+			return;
+		}
+		
+		bean.setState(lockState.getBytes());
 		
-		this.saveLock(bean);
+		LockBatch batch = this.lockBatch.get();
+		if(batch != null)
+		{
+			batch.pending.put(this.key(deviceId, app, channel, oid), bean);
+		}
+		else
+		{
+			this.saveLock(bean);
+		}
 	}
 	
-	public boolean checkOptimisticLock(String app, String channel,MobileBean cloudBean) throws SyncException
+	boolean checkOptimisticLock(String deviceId, String app, String channel,MobileBean cloudBean) throws SyncException
 	{
-		String deviceId = Tools.getDeviceId();
 		String oid = Tools.getOid(cloudBean);
 		
-		ConflictEntry bean = this.readLock(deviceId, oid, app, channel);
+		ConflictEntry bean = this.findLock(deviceId, oid, app, channel);
 		
-		String state = bean.getStateAsString();
-		if(state != null && state.trim().length()>0)
+		String checkAgainst = bean.getStateAsString();
+		if(checkAgainst != null && checkAgainst.trim().length()>0)
 		{
-			String serializedBean = this.serializer.serialize(cloudBean).trim();
-			String checkAgainst = bean.getStateAsString();
+			//compare in the form that was stored, locks from before the compact modes hold the full state
+			String lockState = null;
+			if(checkAgainst.startsWith(versionPrefix))
+			{
+				String version = Tools.getVersion(cloudBean);
+				lockState = version != null ? versionPrefix+version : this.getFingerprint(cloudBean);
+			}
+			else if(checkAgainst.startsWith(fingerprintPrefix))
+			{
+				lockState = this.getFingerprint(cloudBean);
+			}
+			else
+			{
+				lockState = this.serializer.serialize(cloudBean).trim();
+			}
 			
-			if(!serializedBean.equals(checkAgainst))
+			if(!lockState.equals(checkAgainst))
 			{
 				log.debug("**********Check Lock*************************************");
 				log.debug("Device: "+deviceId);
 				log.debug("App: "+app);
 				log.debug("Channel: "+channel);
 				log.debug("********************************************************");
-				log.debug("Serialized: "+serializedBean);
+				log.debug("Lock: "+lockState);
 				log.debug("********************************************************");
 				log.debug("Checkagainst: "+checkAgainst);
 				log.debug("***********************************************");
@@ -129,15 +223,320 @@ public class ConflictEngine
 				log.debug("App: "+app);
 				log.debug("Channel: "+channel);
 				log.debug("********************************************************");
-				log.debug("Serialized: "+serializedBean);
-				log.debug("********************************************************");
-				log.debug("Checkagainst: "+checkAgainst);
+				log.debug("Lock: "+lockState);
 				log.debug("***********************************************");
 			}
 		}
 		return true;
 	}
 	
+	/**
+	 * Converts the locks that still hold the full serialized state of a bean into fingerprint locks. Locks 
+	 * are converted lazily as they are checked anyway, this reclaims the space of the existing rows at once
+	 * 
+	 * @return number of locks that were converted
+	 */
+	public int migrateLocks() throws SyncException
+	{
+		int migrated = 0;
+		long lastId = 0;
+		while(true)
+		{
+			Session session = null;
+			Transaction tx = null;
+			try
+			{
+				session = this.hibernateManager.getSessionFactory().getCurrentSession();
+				tx = session.beginTransaction();
+				
+				List page = session.createQuery("from ConflictEntry where id > ? order by id").
+				setParameter(0, new Long(lastId)).setMaxResults(batchSize).list();
+				
+				for(Object local: page)
+				{
+					ConflictEntry entry = (ConflictEntry)local;
+					lastId = entry.getId();
+					
+					String state = entry.getStateAsString().trim();
+					if(state.length() > 0 && !state.startsWith(fingerprintPrefix) && 
+					!state.startsWith(versionPrefix))
+					{
+						entry.setState(this.getFingerprint(state).getBytes());
+						migrated++;
+					}
+				}
+				
+				tx.commit();
+				
+				if(page.size() < batchSize)
+				{
+					break;
+				}
+			}
+			catch(Exception e)
+			{
+				log.error(this, e);
+				
+				if(tx != null)
+				{
+					tx.rollback();
+				}
+				
+				throw new SyncException(e);
+			}
+		}
+		
+		log.info("ConflictEngine: migrated "+migrated+" locks to "+fingerprintPrefix+" fingerprints");
+		return migrated;
+	}
+	
+	/**
+	 * The value stored for a lock on the bean, according to the lockMode
+	 * 
+	 * @param cloudBean
+	 * @return
+	 */
+	String getLockState(MobileBean cloudBean)
+	{
+		if(LOCK_MODE_STATE.equals(this.lockMode))
+		{
+			return this.serializer.serialize(cloudBean).trim();
+		}
+		
+		String version = Tools.getVersion(cloudBean);
+		if(version != null)
+		{
+			return versionPrefix+version;
+		}
+		
+		return this.getFingerprint(cloudBean);
+	}
+	
+	private String getFingerprint(MobileBean cloudBean)
+	{
+		return this.getFingerprint(this.serializer.serialize(cloudBean).trim());
+	}
+	
+	private String getFingerprint(String serializedBean)
+	{
+		try
+		{
+			MessageDigest digest = MessageDigest.getInstance("MD5");
+			byte[] hash = digest.digest(serializedBean.getBytes("UTF-8"));
+			
+			StringBuilder fingerprint = new StringBuilder(fingerprintPrefix);
+			for(byte b: hash)
+			{
+				fingerprint.append(hex[(b >> 4) & 0x0f]).append(hex[b & 0x0f]);
+			}
+			return fingerprint.toString();
+		}
+		catch(Exception e)
+		{
+			throw new SyncException(e);
+		}
+	}
+	
+	
+	/**
+	 * Starts collecting the locks of the sync message being processed on this thread. Locks started until 
+	 * flushLockBatch are written together, and locks read are kept for the rest of the message
+	 */
+	public void openLockBatch()
+	{
+		this.lockBatch.set(new LockBatch());
+	}
+	
+	/**
+	 * Writes the locks collected since openLockBatch with one batched insert and one batched update
+	 */
+	public void flushLockBatch() throws SyncException
+	{
+		LockBatch batch = this.lockBatch.get();
+		this.lockBatch.remove();
+		if(batch == null || batch.pending.isEmpty())
+		{
+			return;
+		}
+		
+		Session session = null;
+		Transaction tx = null;
+		try
+		{
+			session = this.hibernateManager.getSessionFactory().getCurrentSession();
+			tx = session.beginTransaction();
+			
+			Connection connection = session.connection();
+			PreparedStatement insert = connection.prepareStatement(insertLock);
+			PreparedStatement update = connection.prepareStatement(updateLock);
+			try
+			{
+				for(ConflictEntry entry: batch.pending.values())
+				{
+					if(entry.getId() == 0)
+					{
+						insert.setString(1, entry.getDeviceId());
+						insert.setString(2, entry.getChannel());
+						insert.setString(3, entry.getApp());
+						insert.setString(4, entry.getOid());
+						insert.setBytes(5, entry.getState());
+						insert.addBatch();
+					}
+					else
+					{
+						update.setBytes(1, entry.getState());
+						update.setLong(2, entry.getId());
+						update.addBatch();
+					}
+				}
+				insert.executeBatch();
+				update.executeBatch();
+			}
+			finally
+			{
+				insert.close();
+				update.close();
+			}
+			
+			tx.commit();
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+			
+			if(tx != null)
+			{
+				tx.rollback();
+			}
+			
+			throw new SyncException(e);
+		}
+	}
+	
+	/**
+	 * Drops the locks collected since openLockBatch, when the sync message failed
+	 */
+	public void discardLockBatch()
+	{
+		this.lockBatch.remove();
+	}
+	
+	/**
+	 * Reads the locks of a set of beans with one query per 100 beans. When a lock batch is open they are 
+	 * kept for the checks that follow
+	 * 
+	 * @param deviceId
+	 * @param app
+	 * @param channel
+	 * @param oids
+	 * @return the locks by oid, with a new ConflictEntry for the beans that are not locked
+	 */
+	public Map<String,ConflictEntry> readLocks(String deviceId, String app, String channel, Collection<String> oids) 
+	throws SyncException
+	{
+		Map<String,ConflictEntry> locks = new HashMap<String,ConflictEntry>();
+		List<String> all = new ArrayList<String>(new HashSet<String>(oids));
+		
+		Session session = null;
+		Transaction tx = null;
+		try
+		{
+			session = this.hibernateManager.getSessionFactory().getCurrentSession();
+			tx = session.beginTransaction();
+			
+			String query = "from ConflictEntry where deviceId=:deviceId AND app=:app AND channel=:channel AND oid in (:oids)";
+			for(int i=0,size=all.size(); i<size; i+=batchSize)
+			{
+				List page = session.createQuery(query).setParameter("deviceId", deviceId).
+				setParameter("app", app).
+				setParameter("channel", channel).
+				setParameterList("oids", all.subList(i, Math.min(size, i+batchSize))).list();
+				
+				for(Object local: page)
+				{
+					ConflictEntry entry = (ConflictEntry)local;
+					locks.put(entry.getOid(), entry);
+				}
+			}
+			
+			tx.commit();
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+			
+			if(tx != null)
+			{
+				tx.rollback();
+			}
+			throw new SyncException(e);
+		}
+		
+		LockBatch batch = this.lockBatch.get();
+		for(String oid: all)
+		{
+			ConflictEntry entry = locks.get(oid);
+			if(entry == null)
+			{
+				entry = this.newLock(deviceId, oid, app, channel);
+				locks.put(oid, entry);
+			}
+			
+			if(batch != null)
+			{
+				batch.stored.put(this.key(deviceId, app, channel, oid), entry);
+			}
+		}
+		
+		return locks;
+	}
+	
+	/**
+	 * The lock as the current sync message sees it: started in this message, read earlier in this message,
+	 * or read from the database
+	 */
+	private ConflictEntry findLock(String deviceId, String oid, String app, String channel)
+	{
+		LockBatch batch = this.lockBatch.get();
+		if(batch == null)
+		{
+			return this.readLock(deviceId, oid, app, channel);
+		}
+		
+		String key = this.key(deviceId, app, channel, oid);
+		ConflictEntry entry = batch.pending.get(key);
+		if(entry == null)
+		{
+			entry = batch.stored.get(key);
+		}
+		if(entry == null)
+		{
+			entry = this.readLock(deviceId, oid, app, channel);
+			batch.stored.put(key, entry);
+		}
+		return entry;
+	}
+	
+	private String key(String deviceId, String app, String channel, String oid)
+	{
+		return deviceId+"/"+app+"/"+channel+"/"+oid;
+	}
+	
+	private ConflictEntry newLock(String deviceId, String oid, String app, String channel)
+	{
+		ConflictEntry local = new ConflictEntry();
+		local.setDeviceId(deviceId);
+		local.setOid(oid);
+		local.setApp(app);
+		local.setChannel(channel);
+		return local;
+	}
+	
+	private static class LockBatch
+	{
+		private Map<String,ConflictEntry> stored = new HashMap<String,ConflictEntry>();
+		private Map<String,ConflictEntry> pending = new LinkedHashMap<String,ConflictEntry>();
+	}
 	
 	private void handleConflict(String deviceId, String app ,String channel, MobileBean bean)
 	{
@@ -232,11 +631,7 @@ public class ConflictEngine
 			
 			if(local == null)
 			{
-				local = new ConflictEntry();
-				local.setDeviceId(deviceId);
-				local.setOid(oid);
-				local.setApp(app);
-				local.setChannel(channel);
+				local = this.newLock(deviceId, oid, app, channel);
 			}
 			
 			return local;
@@ -14,6 +14,8 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.apache.log4j.Logger;
+
 import org.hibernate.Query;
 import org.hibernate.Session;
 import org.hibernate.Transaction;
@@ -28,6 +30,8 @@ import org.openmobster.core.common.database.HibernateManager;
  */
 public class MapEngine
 {
+	private static Logger log = Logger.getLogger(MapEngine.class);
+	
 	/**
 	 * 
 	 */
@@ -171,6 +175,17 @@ public class MapEngine
 				}
 				
 				tx.commit();
+				
+				//keep the mappings of the running sync session in step
+				RecordMapCache cache = this.findRecordMapCache(source, target);
+				if(cache != null)
+				{
+					for(Iterator itr=guids.iterator(); itr.hasNext();)
+					{
+						Object guid = itr.next();
+						cache.put(guid, recordMap.get(guid));
+					}
+				}
 			}
 			catch(Exception e)
 			{
@@ -202,6 +217,11 @@ public class MapEngine
 			query.executeUpdate();
 			
 			tx.commit();
+			
+			if(this.findRecordMapCache(source, target) != null)
+			{
+				SyncContext.getInstance().getSession().setRecordMapCache(null);
+			}
 		}
 		catch(Exception e)
 		{
@@ -222,6 +242,12 @@ public class MapEngine
 			query.executeUpdate();
 			
 			tx.commit();
+			
+			org.openmobster.core.synchronizer.server.Session syncSession = SyncContext.getInstance().getSession();
+			if(syncSession != null)
+			{
+				syncSession.setRecordMapCache(null);
+			}
 		}
 		catch(Exception e)
 		{
@@ -238,12 +264,8 @@ public class MapEngine
 		String source = session.getDataSource(false);
 		String target = session.getDataTarget(false);
 		
-		RecordMap recordMap = this.readMapping(source, target, recordId, true);
-		if(recordMap != null)
-		{
-			mappedRecordId = recordMap.getLuid().toString();
-		}
-		else
+		mappedRecordId = this.getRecordMapCache(session, source, target).mapFromServerToLocal(recordId);
+		if(mappedRecordId == null)
 		{
 			//Nothing to map...ids are same on both ends
 			mappedRecordId = recordId;
@@ -261,12 +283,8 @@ public class MapEngine
 		String source = session.getDataSource(false);
 		String target = session.getDataTarget(false);
 		
-		RecordMap recordMap = this.readMapping(source, target, recordId, false);
-		if(recordMap != null)
-		{
-			mappedRecordId = recordMap.getGuid().toString();
-		}
-		else
+		mappedRecordId = this.getRecordMapCache(session, source, target).mapFromLocalToServer(recordId);
+		if(mappedRecordId == null)
 		{
 			//Nothing to map...ids are same on both ends
 			mappedRecordId = recordId;
@@ -274,4 +292,47 @@ public class MapEngine
 		
 		return mappedRecordId;
 	}
+	
+	/**
+	 * Ends the use of the RecordMap by the current sync session, and reports its lookups
+	 */
+	public void closeRecordMap()
+	{
+		org.openmobster.core.synchronizer.server.Session session = SyncContext.getInstance().getSession();
+		if(session == null || session.getRecordMapCache() == null)
+		{
+			return;
+		}
+		
+		log.info(session.getRecordMapCache());
+		session.setRecordMapCache(null);
+	}
+	//----------------------------------------------------------------------------------------------------------
+	private RecordMapCache getRecordMapCache(org.openmobster.core.synchronizer.server.Session session, 
+	String source, String target)
+	{
+		RecordMapCache cache = session.getRecordMapCache();
+		if(cache == null || !cache.isFor(source, target))
+		{
+			cache = new RecordMapCache(source, target, this.readRecordMap(source, target));
+			session.setRecordMapCache(cache);
+		}
+		return cache;
+	}
+	
+	private RecordMapCache findRecordMapCache(String source, String target)
+	{
+		org.openmobster.core.synchronizer.server.Session session = SyncContext.getInstance().getSession();
+		if(session == null)
+		{
+			return null;
+		}
+		
+		RecordMapCache cache = session.getRecordMapCache();
+		if(cache == null || !cache.isFor(source, target))
+		{
+			return null;
+		}
+		return cache;
+	}
 }
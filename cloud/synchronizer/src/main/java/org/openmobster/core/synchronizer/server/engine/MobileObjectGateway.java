@@ -11,6 +11,7 @@ package org.openmobster.core.synchronizer.server.engine;
 import java.lang.reflect.Field;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.annotation.Annotation;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.commons.beanutils.BeanUtils;
@@ -153,6 +154,28 @@ public class MobileObjectGateway
 		}
 	}
 	
+	/**
+	 * Reads one page of the records of a channel
+	 * 
+	 * @param serviceId
+	 * @param start
+	 * @param size
+	 * @return the records of the page, or null if the channel can not be read a page at a time
+	 * @throws SyncException
+	 */
+	public List<MobileBean> readRecordPage(String serviceId, int start, int size) throws SyncException
+	{
+		try
+		{
+			return this.getBeanPage(serviceId, start, size);
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+			throw new SyncException(e);
+		}
+	}
+	
 	public List<MobileBean> bootup(String serviceId) throws SyncException
 	{
 		try
@@ -179,6 +202,27 @@ public class MobileObjectGateway
 		}
 	}
 		
+	/**
+	 * Reads a page of records in one container invocation
+	 * 
+	 * @param serviceId
+	 * @param recordIds
+	 * @return the records that were found, in any order
+	 * @throws SyncException
+	 */
+	public List<MobileBean> readRecords(String serviceId, List<String> recordIds) throws SyncException
+	{
+		try
+		{
+			return this.getBeans(serviceId, recordIds);
+		}
+		catch(Exception e)
+		{
+			log.error(this, e);
+			throw new SyncException(e);
+		}
+	}
+		
 	public String createRecord(String serviceId, String xml) throws SyncException
 	{
 		try
@@ -347,6 +391,48 @@ public class MobileObjectGateway
 		return bean;
 	}
 	
+	private List<MobileBean> getBeans(String serviceId, List<String> beanIds) throws Exception
+	{
+		Invocation invocation = Invocation.getInstance();
+		invocation.setServiceUrl("/bean/ids");
+		invocation.setBeanIds(beanIds);
+		invocation.setConnectorId(serviceId);
+		
+		//Perform the invocation
+		InvocationResponse response = mobileContainer.invoke(invocation);
+		List<MobileBean> beans = response.getAllBeans();
+		if(beans == null)
+		{
+			beans = new ArrayList<MobileBean>();
+		}
+		
+		return beans;
+	}
+	
+	private List<MobileBean> getBeanPage(String serviceId, int start, int size) throws Exception
+	{
+		Invocation invocation = Invocation.getInstance();
+		invocation.setServiceUrl("/bean/page");
+		invocation.setConnectorId(serviceId);
+		invocation.setStart(start);
+		invocation.setSize(size);
+		
+		//Perform the invocation
+		InvocationResponse response = mobileContainer.invoke(invocation);
+		if(InvocationResponse.STATUS_NOT_SUPPORTED.equals(response.getStatus()))
+		{
+			return null;
+		}
+		
+		List<MobileBean> beans = response.getAllBeans();
+		if(beans == null)
+		{
+			beans = new ArrayList<MobileBean>();
+		}
+		
+		return beans;
+	}
+	
 	private List<MobileBean> getAllBeans(String serviceId, boolean isBootup) throws Exception
 	{
 		List<MobileBean> allBeans = null;
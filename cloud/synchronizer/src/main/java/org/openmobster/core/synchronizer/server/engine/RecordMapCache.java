@@ -0,0 +1,127 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * The RecordMap of a device/channel held in both directions for the duration of a sync session, so that 
+ * translating record ids between the server and the device does not query the database per record.
+ * 
+ * It is loaded in one query the first time a session maps an id, and kept in step with the mappings the 
+ * session saves
+ * 
+ * @author openmobster@gmail.com
+ */
+public final class RecordMapCache 
+{
+	private String source;
+	private String target;
+	
+	private Map<String,String> serverToLocal;
+	private Map<String,String> localToServer;
+	
+	private long lookups;
+	private long mapped;
+	
+	RecordMapCache(String source, String target, Map recordMap)
+	{
+		this.source = source;
+		this.target = target;
+		this.serverToLocal = new HashMap<String,String>();
+		this.localToServer = new HashMap<String,String>();
+		
+		for(Iterator itr=recordMap.entrySet().iterator(); itr.hasNext();)
+		{
+			Map.Entry entry = (Map.Entry)itr.next();
+			this.put(entry.getKey(), entry.getValue());
+		}
+	}
+	
+	boolean isFor(String source, String target)
+	{
+		return this.source.equals(source) && this.target.equals(target);
+	}
+	
+	/**
+	 * @param guid
+	 * @return the device id of the record, or null if it is the same on both ends
+	 */
+	String mapFromServerToLocal(String guid)
+	{
+		return this.count(this.serverToLocal.get(guid));
+	}
+	
+	/**
+	 * @param luid
+	 * @return the server id of the record, or null if it is the same on both ends
+	 */
+	String mapFromLocalToServer(String luid)
+	{
+		return this.count(this.localToServer.get(luid));
+	}
+	
+	void put(Object guid, Object luid)
+	{
+		if(guid == null || luid == null)
+		{
+			return;
+		}
+		
+		//the first mapping stored wins, like a lookup against the database would
+		String guidStr = guid.toString();
+		String luidStr = luid.toString();
+		if(!this.serverToLocal.containsKey(guidStr))
+		{
+			this.serverToLocal.put(guidStr, luidStr);
+		}
+		if(!this.localToServer.containsKey(luidStr))
+		{
+			this.localToServer.put(luidStr, guidStr);
+		}
+	}
+	
+	/**
+	 * Ids translated through this cache
+	 * 
+	 * @return
+	 */
+	public long getLookups()
+	{
+		return this.lookups;
+	}
+	
+	/**
+	 * Ids that were different on the device
+	 * 
+	 * @return
+	 */
+	public long getMapped()
+	{
+		return this.mapped;
+	}
+	
+	public String toString()
+	{
+		return "RecordMap "+this.source+"/"+this.target+": mappings="+this.serverToLocal.size()+
+		", lookups="+this.lookups+", mapped="+this.mapped;
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private String count(String mappedId)
+	{
+		this.lookups++;
+		if(mappedId != null)
+		{
+			this.mapped++;
+		}
+		return mappedId;
+	}
+}
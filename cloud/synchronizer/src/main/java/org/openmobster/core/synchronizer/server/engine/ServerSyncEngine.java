@@ -8,11 +8,13 @@
 
 package org.openmobster.core.synchronizer.server.engine;
 
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
 
 import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.core.synchronizer.model.AbstractOperation;
 import org.openmobster.core.synchronizer.model.SyncCommand;
 import org.openmobster.core.synchronizer.model.Add;
 
@@ -34,6 +36,16 @@ public interface ServerSyncEngine
 	
 	public List getSlowSyncCommands(int messageSize, String pluginId);
 	
+	/**
+	 * Commands of a slow sync, produced lazily as they are consumed so that the records of the channel 
+	 * do not all have to be held in memory at once
+	 * 
+	 * @param messageSize
+	 * @param pluginId
+	 * @return
+	 */
+	public Iterator<AbstractOperation> getSlowSyncCommandStream(int messageSize, String pluginId);
+	
 	public List processSlowSyncCommand(org.openmobster.core.synchronizer.server.Session session,
 			String pluginId, SyncCommand syncCommand);
 	
@@ -54,6 +66,14 @@ public interface ServerSyncEngine
 	
 	public void addChangeLogEntries(String target, String app, List entries);
 	
+	/**
+	 * Adds changelog entries for any number of devices and apps in one bulk write. Each entry must carry
+	 * its target and app. Entries already in the changelog are skipped
+	 * 
+	 * @param entries
+	 */
+	public void addChangeLogEntries(List<ChangeLogEntry> entries);
+	
 	public List getChangeLog(String target, String nodeId, String app, String operation);
 	
 	public void clearChangeLogEntry(String target, String app, ChangeLogEntry logEntry);
@@ -74,5 +94,23 @@ public interface ServerSyncEngine
 	
 	public void clearRecordMap();
 	
+	/**
+	 * Releases the RecordMap held by the current sync session, at the close of the session
+	 */
+	public void closeRecordMap();
+	
 	public void clearConflictEngine();
+	
+	/**
+	 * Collects the optimistic locks started while processing the current sync message, so that they are
+	 * written together by flushLockBatch when the reply is ready
+	 */
+	public void openLockBatch();
+	
+	public void flushLockBatch();
+	
+	/**
+	 * Drops the collected locks, when processing the sync message failed
+	 */
+	public void discardLockBatch();
 }
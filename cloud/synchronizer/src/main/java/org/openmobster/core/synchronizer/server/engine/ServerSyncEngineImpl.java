@@ -8,10 +8,13 @@
 
 package org.openmobster.core.synchronizer.server.engine;
 
+import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.NoSuchElementException;
 
 import org.hibernate.Session;
 import org.hibernate.Transaction;
@@ -57,6 +60,12 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 	private MapEngine mapEngine = null;
 	
 	private ConflictEngine conflictEngine;
+	
+	private ChangeLogWriter changeLogWriter;
+	
+	static final int readBatchSize = 100;
+	
+	static final int readPageSize = 500;
 
 	
 	public ServerSyncEngineImpl()
@@ -111,6 +120,7 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 
 	public void start()
 	{
+		this.changeLogWriter = new ChangeLogWriter(this.hibernateManager, 500);
 		logger.info("ServerSide Synchronization Engine successfully started.........");
 	}
 	
@@ -124,40 +134,11 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 		try
 		{
 			List commands = new ArrayList();
-			String app = SyncContext.getInstance().getApp();
-
-			//Getting all the records of the client since this is a SlowSync
-			List<MobileBean> allRecords = this.gateway.readAllRecords(pluginId);
-			for (int i = 0; i < allRecords.size(); i++)
-			{
-				MobileBean record = allRecords.get(i);
-
-				// Create a Sync Add Command from this record data				
-				commands.add(this.getCommand(record, messageSize, 
-				ServerSyncEngine.OPERATION_ADD));
-				
-				//Start an optimistic lock for this record
-				this.conflictEngine.startOptimisticLock(app, pluginId,record);
-			}
 			
-			//also get any records that are deleted on the server
-			List deletedEntries = this.getChangeLog(SyncContext.getInstance().getDeviceId(),
-			pluginId, SyncContext.getInstance().getApp(),
-			ServerSyncEngine.OPERATION_DELETE);
-			
-			if(deletedEntries != null)
+			Iterator<AbstractOperation> stream = this.getSlowSyncCommandStream(messageSize, pluginId);
+			while(stream.hasNext())
 			{
-				for(int entryCtr=0; entryCtr<deletedEntries.size(); entryCtr++)
-				{
-					ChangeLogEntry entry = (ChangeLogEntry)deletedEntries.get(entryCtr);
-					
-					Delete delete = new Delete();																
-					Item item = new Item();					
-					item.setData(this.gateway.marshalId(entry.getRecordId()));									
-					delete.getItems().add(item);
-					
-					commands.add(delete);
-				}
+				commands.add(stream.next());
 			}
 
 			return commands;
@@ -167,6 +148,12 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 			throw new SyncException(e);
 		}
 	}
+	
+	public Iterator<AbstractOperation> getSlowSyncCommandStream(int messageSize, String pluginId)
+	{
+		return new SlowSyncCommandStream(messageSize, pluginId, SyncContext.getInstance().getDeviceId(), 
+		SyncContext.getInstance().getApp());
+	}
 				
 	public List getAddCommands(int messageSize,String pluginId, String syncType)			
 	{
@@ -179,20 +166,8 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 					.getChangeLog(SyncContext.getInstance().getDeviceId(),
 					pluginId, SyncContext.getInstance().getApp(), ServerSyncEngine.OPERATION_ADD);
 			
-			for (int i = 0; i < changeLog.size(); i++)
-			{
-				ChangeLogEntry entry = (ChangeLogEntry) changeLog.get(i);
-			    MobileBean record = this.gateway.readRecord(pluginId, entry.getRecordId());
-				if (record != null)
-				{
-					// Create a Sync Add Command from this record data					
-					commands.add(this.getCommand(record, messageSize, 
-							ServerSyncEngine.OPERATION_ADD));
-					
-					//Start an optimistic lock for this record
-					this.conflictEngine.startOptimisticLock(app, pluginId,record);
-				}
-			}
+			this.addChangedCommands(commands, messageSize, pluginId, app, changeLog, 
+			ServerSyncEngine.OPERATION_ADD);
 
 			return commands;
 		}
@@ -215,20 +190,8 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 					SyncContext.getInstance().getApp(),
 					ServerSyncEngine.OPERATION_UPDATE);
 			
-			for (int i = 0; i < changeLog.size(); i++)
-			{
-				ChangeLogEntry entry = (ChangeLogEntry) changeLog.get(i);
-				MobileBean record = this.gateway.readRecord(pluginId, entry.getRecordId());
-				if (record != null)
-				{
-					// Create a Sync Add Command from this record data					
-					commands.add(this.getCommand(record, messageSize, 
-							ServerSyncEngine.OPERATION_UPDATE));
-					
-					//Start an optimistic lock for this record
-					this.conflictEngine.startOptimisticLock(app, pluginId, record);
-				}
-			}
+			this.addChangedCommands(commands, messageSize, pluginId, app, changeLog, 
+			ServerSyncEngine.OPERATION_UPDATE);
 
 			return commands;
 		}
@@ -414,6 +377,9 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 			}
 		}
 
+		//read the locks of all the incoming updates at once, saveRecord checks each of them
+		this.readLocks(pluginId, syncCommand.getReplaceCommands());
+		
 		// process Replace commands
 		for (int i = 0; i < syncCommand.getReplaceCommands().size(); i++)
 		{
@@ -525,57 +491,21 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 	{
 		if (entries != null && !entries.isEmpty())
 		{
-			Session session = this.hibernateManager.getSessionFactory()
-					.getCurrentSession();
-			Transaction tx = session.beginTransaction();
-			try
+			List<ChangeLogEntry> changeLog = new ArrayList<ChangeLogEntry>();
+			for (int i = 0; i < entries.size(); i++)
 			{
-				for (int i = 0; i < entries.size(); i++)
-				{
-					ChangeLogEntry entry = (ChangeLogEntry) entries.get(i);
-					entry.setTarget(target);
-					entry.setApp(app);
-					
-					ChangeLogEntry stored = this.getChangeLogEntry(entry);
-					if(stored == null)
-					{
-						session.save(entry);
-					}
-				}
-				tx.commit();
+				ChangeLogEntry entry = (ChangeLogEntry) entries.get(i);
+				entry.setTarget(target);
+				entry.setApp(app);
+				changeLog.add(entry);
 			}
-			catch (Exception e)
-			{
-				logger.error(this, e);
-				if (tx != null)
-				{
-					tx.rollback();
-				}
-				throw new SyncException(e);
-			}			
+			this.addChangeLogEntries(changeLog);
 		}
 	}
 	
-	private ChangeLogEntry getChangeLogEntry(ChangeLogEntry entry)
+	public void addChangeLogEntries(List<ChangeLogEntry> entries)
 	{
-		Session session = this.hibernateManager.getSessionFactory()
-		.getCurrentSession();
-		try
-		{
-			String query = "from ChangeLogEntry entry where entry.target=? AND entry.nodeId=? AND entry.operation=? AND entry.app=? AND entry.recordId=?";
-		
-			ChangeLogEntry stored = (ChangeLogEntry)session.createQuery(query).setString(0, entry.getTarget()).
-			setString(1, entry.getNodeId()).
-			setString(2, entry.getOperation()).
-			setString(3, entry.getApp()).setString(4, entry.getRecordId()).uniqueResult();
-			
-			return stored;
-		}
-		catch (Exception e)
-		{
-			logger.error(this, e);
-			throw new SyncException(e);
-		}		
+		this.changeLogWriter.write(entries);
 	}
 	
 	public List getChangeLog(String target, String nodeId, String app, String operation)
@@ -853,6 +783,11 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 	{
 		mapEngine.clearAll();
 	}
+	
+	public void closeRecordMap()
+	{
+		mapEngine.closeRecordMap();
+	}
 	//-------helpers-------------------------------------------------------------------------------------------------------------------------------------	
 	public String marshal(MobileBean record) throws SyncException
 	{
@@ -912,6 +847,41 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 		}		
 	}
 		
+	/**
+	 * The locks are kept under the server id of the bean, the same id saveRecord checks them with
+	 * 
+	 * @param pluginId
+	 * @param replaceCommands
+	 */
+	void readLocks(String pluginId, List replaceCommands)
+	{
+		try
+		{
+			List<String> recordIds = new ArrayList<String>();
+			for (int i = 0; i < replaceCommands.size(); i++)
+			{
+				Replace replace = (Replace) replaceCommands.get(i);
+				if(!replace.isChunked())
+				{
+					Item item = (Item) replace.getItems().get(0);
+					String recordId = this.gateway.parseId(item.getData());
+					recordIds.add(this.gateway.mapIdFromLocalToServer(recordId));
+				}
+			}
+			
+			if(!recordIds.isEmpty())
+			{
+				this.conflictEngine.readLocks(SyncContext.getInstance().getDeviceId(), 
+				SyncContext.getInstance().getApp(), pluginId, recordIds);
+			}
+		}
+		catch(Exception e)
+		{
+			//the locks are read one at a time by the checks instead
+			logger.error(this, e);
+		}
+	}
+	
 	protected void deleteRecord(String pluginId, String recordId)
 	{								
 		MobileBean cour = this.gateway.readRecord(pluginId, recordId);		
@@ -921,6 +891,152 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 		}				
 	}
 			
+	/**
+	 * Reads the records referred to by the changelog entries a page at a time, instead of one container
+	 * invocation per entry, and turns each page into commands before the next one is read. Records that 
+	 * no longer exist are left out
+	 * 
+	 * @param commands
+	 * @param messageSize
+	 * @param pluginId
+	 * @param app
+	 * @param changeLog
+	 * @param operation
+	 */
+	private void addChangedCommands(List commands, int messageSize, String pluginId, String app, 
+	List changeLog, String operation)
+	{
+		List<String> page = new ArrayList<String>();
+		for (int i = 0; i < changeLog.size(); i++)
+		{
+			ChangeLogEntry entry = (ChangeLogEntry) changeLog.get(i);
+			page.add(entry.getRecordId());
+			if (page.size() == readBatchSize || i == changeLog.size() - 1)
+			{
+				for (MobileBean record: this.gateway.readRecords(pluginId, page))
+				{
+					// Create a Sync command from this record data
+					commands.add(this.getCommand(record, messageSize, operation));
+					
+					//Start an optimistic lock for this record
+					this.conflictEngine.startOptimisticLock(app, pluginId, record);
+				}
+				page = new ArrayList<String>();
+			}
+		}
+	}
+	
+	/**
+	 * Produces the commands of a slow sync as they are consumed. The records are read from the channel a page
+	 * at a time, and each one is marshalled into an Add only when the next command is asked for. The deletes 
+	 * from the changelog follow the records.
+	 * 
+	 * A channel that is not a PagingChannel is read with readAll up front, but its records are still 
+	 * marshalled lazily
+	 */
+	private class SlowSyncCommandStream implements Iterator<AbstractOperation>
+	{
+		private int messageSize;
+		private String pluginId;
+		private String deviceId;
+		private String app;
+		
+		private LinkedList<MobileBean> records = new LinkedList<MobileBean>();
+		private int start;
+		private boolean isLastPage;
+		private LinkedList<AbstractOperation> deletes;
+		
+		private SlowSyncCommandStream(int messageSize, String pluginId, String deviceId, String app)
+		{
+			this.messageSize = messageSize;
+			this.pluginId = pluginId;
+			this.deviceId = deviceId;
+			this.app = app;
+		}
+		
+		public boolean hasNext()
+		{
+			this.fill();
+			return !this.records.isEmpty() || !this.deletes.isEmpty();
+		}
+
+		public AbstractOperation next()
+		{
+			if(!this.hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			
+			if(this.records.isEmpty())
+			{
+				return this.deletes.removeFirst();
+			}
+			
+			MobileBean record = this.records.removeFirst();
+			
+			// Create a Sync Add Command from this record data
+			AbstractOperation command = ServerSyncEngineImpl.this.getCommand(record, this.messageSize, 
+			ServerSyncEngine.OPERATION_ADD);
+			
+			//Start an optimistic lock for this record
+			ServerSyncEngineImpl.this.conflictEngine.startOptimisticLock(this.app, this.pluginId, record);
+			
+			return command;
+		}
+
+		public void remove()
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		private void fill()
+		{
+			while(this.records.isEmpty() && !this.isLastPage)
+			{
+				List<MobileBean> page = ServerSyncEngineImpl.this.gateway.readRecordPage(this.pluginId, this.start, 
+				readPageSize);
+				if(page == null)
+				{
+					//Getting all the records of the client since this is a SlowSync
+					page = ServerSyncEngineImpl.this.gateway.readAllRecords(this.pluginId);
+					this.isLastPage = true;
+				}
+				else
+				{
+					this.isLastPage = page.size() < readPageSize;
+					this.start += page.size();
+				}
+				
+				if(page != null)
+				{
+					this.records.addAll(page);
+				}
+			}
+			
+			if(this.records.isEmpty() && this.deletes == null)
+			{
+				//also get any records that are deleted on the server
+				this.deletes = new LinkedList<AbstractOperation>();
+				List deletedEntries = ServerSyncEngineImpl.this.getChangeLog(this.deviceId, this.pluginId, this.app, 
+				ServerSyncEngine.OPERATION_DELETE);
+				if(deletedEntries != null)
+				{
+					for(int entryCtr=0; entryCtr<deletedEntries.size(); entryCtr++)
+					{
+						ChangeLogEntry entry = (ChangeLogEntry)deletedEntries.get(entryCtr);
+						
+						Delete delete = new Delete();																
+						Item item = new Item();					
+						item.setData(ServerSyncEngineImpl.this.gateway.marshalId(entry.getRecordId()));									
+						delete.getItems().add(item);
+						
+						this.deletes.add(delete);
+					}
+				}
+			}
+		}
+	}
+	
 	private AbstractOperation getCommand(MobileBean record, 
 	int messageSize, String operation) throws SyncException
 	{
@@ -1087,4 +1203,19 @@ public class ServerSyncEngineImpl implements ServerSyncEngine
 	{
 		this.conflictEngine.clearAll();
 	}
+	
+	public void openLockBatch()
+	{
+		this.conflictEngine.openLockBatch();
+	}
+	
+	public void flushLockBatch()
+	{
+		this.conflictEngine.flushLockBatch();
+	}
+	
+	public void discardLockBatch()
+	{
+		this.conflictEngine.discardLockBatch();
+	}
 }
@@ -9,10 +9,14 @@ package org.openmobster.core.synchronizer.server.engine;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Field;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.apache.commons.beanutils.BeanUtils;
 import org.openmobster.cloud.api.sync.MobileBean;
 import org.openmobster.cloud.api.sync.MobileBeanId;
+import org.openmobster.cloud.api.sync.MobileBeanVersion;
 import org.openmobster.core.synchronizer.server.SyncContext;
 
 /**
@@ -21,6 +25,11 @@ import org.openmobster.core.synchronizer.server.SyncContext;
  */
 public class Tools
 {
+	//name of the MobileBeanVersion field per bean class, noVersion when the class has none. The name does
+	//not refer back to the class, so the weak keys still let a redeployed channel's classes go
+	private static final Map<Class,String> versionFields = Collections.synchronizedMap(new WeakHashMap<Class,String>());
+	private static final String noVersion = "";
+	
 	public static String getOid(MobileBean record)
 	{
 		try
@@ -49,6 +58,49 @@ public class Tools
 		}
 	}
 	
+	/**
+	 * 
+	 * @param record
+	 * @return value of the field annotated with MobileBeanVersion, or null if the bean does not have one
+	 */
+	public static String getVersion(MobileBean record)
+	{
+		try
+		{
+			String versionField = getVersionField(record.getClass());
+			if(versionField == noVersion)
+			{
+				return null;
+			}
+			
+			return BeanUtils.getProperty(record, versionField);
+		}
+		catch(Exception e)
+		{
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static String getVersionField(Class recordClazz)
+	{
+		String versionField = versionFields.get(recordClazz);
+		if(versionField == null)
+		{
+			versionField = noVersion;
+			Field[] declaredFields = recordClazz.getDeclaredFields();
+			for(Field field: declaredFields)
+			{
+				if(field.isAnnotationPresent(MobileBeanVersion.class))
+				{
+					versionField = field.getName();
+					break;
+				}
+			}
+			versionFields.put(recordClazz, versionField);
+		}
+		return versionField;
+	}
+	
 	public static String getDeviceId()
 	{
 		return SyncContext.getInstance().getDeviceId();
@@ -30,7 +30,7 @@ import org.openmobster.core.synchronizer.server.engine.ServerSyncEngine;
 /**
  * @author openmobster@gmail.com
  */
-public class DecideAuthorization implements DecisionHandler
+public class DecideAuthorization implements DecisionHandler, WorkflowDecision
 {
 	/**
 	 * 
@@ -46,6 +46,14 @@ public class DecideAuthorization implements DecisionHandler
 	 * 
 	 */
 	public String decide(ExecutionContext context) throws Exception 
+	{
+		return this.decide(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public String decide(WorkflowContext context) throws Exception 
 	{
 		//Process Anchors sent by the client
 		Session session = Utilities.getSession(context);				
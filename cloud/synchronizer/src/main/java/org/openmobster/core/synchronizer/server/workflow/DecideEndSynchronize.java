@@ -17,7 +17,7 @@ import org.openmobster.core.synchronizer.server.Session;
 /**
  * @author openmobster@gmail.com
  */
-public class DecideEndSynchronize implements DecisionHandler
+public class DecideEndSynchronize implements DecisionHandler, WorkflowDecision
 {
 	/**
 	 * 
@@ -33,6 +33,14 @@ public class DecideEndSynchronize implements DecisionHandler
 	 * 
 	 */
 	public String decide(ExecutionContext context) throws Exception 
+	{
+		return this.decide(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public String decide(WorkflowContext context) throws Exception 
 	{
 		Session session = Utilities.getSession(context);
 		String result = WorkflowConstants.goback;
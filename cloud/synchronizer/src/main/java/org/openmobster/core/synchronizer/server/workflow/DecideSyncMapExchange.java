@@ -19,7 +19,7 @@ import org.openmobster.core.synchronizer.server.Session;
 /**
  * @author openmobster@gmail.com
  */
-public class DecideSyncMapExchange implements DecisionHandler
+public class DecideSyncMapExchange implements DecisionHandler, WorkflowDecision
 {
 	/**
 	 * 
@@ -34,6 +34,14 @@ public class DecideSyncMapExchange implements DecisionHandler
 	 * 
 	 */
 	public String decide(ExecutionContext context) throws Exception 
+	{
+		return this.decide(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public String decide(WorkflowContext context) throws Exception 
 	{
 		String result = WorkflowConstants.synchronize;
 		Session session = Utilities.getSession(context);
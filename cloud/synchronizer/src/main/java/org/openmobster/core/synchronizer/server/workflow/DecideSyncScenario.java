@@ -25,7 +25,7 @@ import org.openmobster.core.synchronizer.server.VariableConstants;
 /**
  * @author openmobster@gmail.com
  */
-public class DecideSyncScenario implements DecisionHandler
+public class DecideSyncScenario implements DecisionHandler, WorkflowDecision
 {
 	/**
 	 * 
@@ -40,6 +40,14 @@ public class DecideSyncScenario implements DecisionHandler
 	 * 
 	 */
 	public String decide(ExecutionContext context) throws Exception 
+	{
+		return this.decide(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public String decide(WorkflowContext context) throws Exception 
 	{
 		String result = WorkflowConstants.normalSync;
 		Session session = Utilities.getSession(context);
@@ -65,14 +73,14 @@ public class DecideSyncScenario implements DecisionHandler
 			
 			if(status.getData().equals(SyncServer.CHUNK_ACCEPTED))
 			{
-				context.getContextInstance().setTransientVariable(VariableConstants.status, 
+				context.setTransientVariable(VariableConstants.status, 
 				status);
 				return WorkflowConstants.chunkAccepted;
 			}
 			else if(status.getData().equals(SyncServer.CHUNK_SUCCESS) || 
 					status.getData().equals(SyncServer.SIZE_MISMATCH))
 			{
-				context.getContextInstance().setTransientVariable(VariableConstants.statusCodes, 
+				context.setTransientVariable(VariableConstants.statusCodes, 
 				statusCodes);
 				return WorkflowConstants.closeChunk;
 			}			
@@ -31,7 +31,7 @@ import org.openmobster.core.synchronizer.server.engine.ServerSyncEngine;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterBootSync implements ActionHandler 
+public class EnterBootSync implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -47,6 +47,14 @@ public class EnterBootSync implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{
 		Session session = Utilities.getSession(context);
 		SyncXMLGenerator syncXMLGenerator = Utilities.getSyncXMLGenerator(context);
@@ -24,7 +24,7 @@ import org.openmobster.core.synchronizer.server.VariableConstants;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterChunkAccepted implements ActionHandler 
+public class EnterChunkAccepted implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -40,11 +40,19 @@ public class EnterChunkAccepted implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{
 		SyncMessage reply = null;
 		Session session = Utilities.getSession(context);
 		SyncXMLGenerator syncXMLGenerator = Utilities.getSyncXMLGenerator(context);
-		Status status = (Status)context.getContextInstance().getTransientVariable(VariableConstants.status);
+		Status status = (Status)context.getTransientVariable(VariableConstants.status);
 		
 		reply = Utilities.setUpReply(context);
 		int cmdId = 1;
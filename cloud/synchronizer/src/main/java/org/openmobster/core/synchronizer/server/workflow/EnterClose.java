@@ -23,7 +23,7 @@ import org.openmobster.core.synchronizer.server.SyncXMLGenerator;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterClose implements ActionHandler 
+public class EnterClose implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -39,6 +39,14 @@ public class EnterClose implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{	
 		Session session = Utilities.getSession(context);
 		SyncXMLGenerator syncXMLGenerator = Utilities.getSyncXMLGenerator(context);
@@ -61,6 +69,7 @@ public class EnterClose implements ActionHandler
 			Status mapStatus = Utilities.processRecordMap(context,cmdId++);					
 			serverSyncMessage.getStatus().add(mapStatus);
 		}
+		Utilities.getSyncEngine(context).closeRecordMap();
 					
 		//Setup Final
 		serverSyncMessage.setFinal(true);
@@ -26,7 +26,7 @@ import org.openmobster.core.synchronizer.server.VariableConstants;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterCloseChunk implements ActionHandler 
+public class EnterCloseChunk implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -42,9 +42,17 @@ public class EnterCloseChunk implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{		
 		Session session = Utilities.getSession(context);
-		List statusCodes = (List)context.getContextInstance().
+		List statusCodes = (List)context.
 		getTransientVariable(VariableConstants.statusCodes);
 		SyncXMLGenerator syncXMLGenerator = Utilities.getSyncXMLGenerator(context);
 		SyncMessage reply = Utilities.setUpReply(context);
@@ -34,7 +34,7 @@ import org.openmobster.core.synchronizer.server.engine.AppToChannelAssociation;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterInitialize implements ActionHandler 
+public class EnterInitialize implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -50,6 +50,14 @@ public class EnterInitialize implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{			
 		//Process Anchors sent by the client
 		Session session = Utilities.getSession(context);
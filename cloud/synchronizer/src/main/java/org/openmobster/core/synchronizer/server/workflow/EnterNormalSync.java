@@ -23,7 +23,7 @@ import org.openmobster.core.synchronizer.server.SyncServer;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterNormalSync implements ActionHandler 
+public class EnterNormalSync implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -39,6 +39,14 @@ public class EnterNormalSync implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{
 		Session session = Utilities.getSession(context);
 		SyncXMLGenerator syncXMLGenerator = Utilities.getSyncXMLGenerator(context);
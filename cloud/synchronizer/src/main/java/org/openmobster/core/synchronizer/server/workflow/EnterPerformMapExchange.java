@@ -22,7 +22,7 @@ import org.openmobster.core.synchronizer.server.SyncXMLGenerator;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterPerformMapExchange implements ActionHandler 
+public class EnterPerformMapExchange implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -38,6 +38,14 @@ public class EnterPerformMapExchange implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{
 		SyncMessage reply = null;
 		Session session = Utilities.getSession(context);
@@ -18,7 +18,7 @@ import org.openmobster.core.synchronizer.server.Session;
 /**
  * @author openmobster@gmail.com
  */
-public class EnterSynchronize implements ActionHandler 
+public class EnterSynchronize implements ActionHandler, WorkflowAction
 {
 	/**
 	 * 
@@ -34,6 +34,14 @@ public class EnterSynchronize implements ActionHandler
 	 * 
 	 */
 	public void execute(ExecutionContext context) throws Exception 
+	{
+		this.execute(new WorkflowContext(context));
+	}
+	
+	/**
+	 * 
+	 */
+	public void execute(WorkflowContext context) throws Exception 
 	{
 		Session session = Utilities.getSession(context);
 		
@@ -0,0 +1,184 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.synchronizer.server.workflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.openmobster.core.synchronizer.SyncException;
+import org.openmobster.core.synchronizer.server.Session;
+
+/**
+ * The sync workflow of sync.xml, compiled into a transition table.
+ *
+ * It walks the same states and decisions with the same handlers as the jBPM process definition, but the only
+ * state it keeps per sync session is the name of the wait state the session is in (Session.workflowNode).
+ * There is no ProcessInstance, Token or ContextInstance to create, and the transient variables are passed along
+ * in a WorkflowContext.
+ *
+ * A signal leaves the current wait state, follows the decisions, and stops at the next wait state after running
+ * its node-enter action. A session that has not been signalled yet is at the start state.
+ *
+ * @author openmobster@gmail.com
+ */
+public final class SyncStateMachine
+{
+	private Map<String,Node> nodes;
+	private Node start;
+
+	public SyncStateMachine()
+	{
+		this.nodes = new HashMap<String,Node>();
+
+		this.start = new Node(null, null, null);
+		this.start.next = "authorize";
+
+		this.decision("authorize", new DecideAuthorization())
+		.transition("true", WorkflowConstants.initialize)
+		.transition("false", WorkflowConstants.end);
+
+		this.state(WorkflowConstants.initialize, new EnterInitialize(), WorkflowConstants.mapExchange);
+
+		this.decision(WorkflowConstants.mapExchange, new DecideSyncMapExchange())
+		.transition(WorkflowConstants.performMapExchange, WorkflowConstants.performMapExchange)
+		.transition(WorkflowConstants.synchronize, WorkflowConstants.synchronize);
+
+		this.state(WorkflowConstants.synchronize, new EnterSynchronize(), "synchronize:syncScenario");
+
+		Node syncScenario = this.decision("synchronize:syncScenario", new DecideSyncScenario());
+		String[] scenarios = new String[]{
+			WorkflowConstants.chunkAccepted,
+			WorkflowConstants.closeChunk,
+			WorkflowConstants.nextMessage,
+			WorkflowConstants.streamSync,
+			WorkflowConstants.bootSync,
+			WorkflowConstants.normalSync
+		};
+		for(String scenario: scenarios)
+		{
+			syncScenario.transition(scenario, scenario);
+		}
+
+		this.state(WorkflowConstants.performMapExchange, new EnterPerformMapExchange(), "synchronize:endSynchronize");
+		this.state(WorkflowConstants.chunkAccepted, new EnterChunkAccepted(), "synchronize:endSynchronize");
+		this.state(WorkflowConstants.closeChunk, new EnterCloseChunk(), "synchronize:endSynchronize");
+		this.state(WorkflowConstants.nextMessage, new EnterNextMessage(), "synchronize:endSynchronize");
+		this.state(WorkflowConstants.streamSync, new EnterStreamSync(), "synchronize:endSynchronize");
+		this.state(WorkflowConstants.bootSync, new EnterBootSync(), "synchronize:endSynchronize");
+		this.state(WorkflowConstants.normalSync, new EnterNormalSync(), "synchronize:endSynchronize");
+
+		this.decision("synchronize:endSynchronize", new DecideEndSynchronize())
+		.transition(WorkflowConstants.proceed, WorkflowConstants.close)
+		.transition(WorkflowConstants.goback, WorkflowConstants.synchronize);
+
+		this.state(WorkflowConstants.close, new EnterClose(), WorkflowConstants.end);
+
+		this.state(WorkflowConstants.end, null, null);
+	}
+
+	/**
+	 * Moves the session from its current wait state to the next one
+	 *
+	 * @param session
+	 * @param context transient variables for the handlers
+	 * @return name of the wait state the session is in now
+	 */
+	public String signal(Session session, WorkflowContext context)
+	{
+		Node node = this.start;
+		if(session.getWorkflowNode() != null)
+		{
+			node = this.nodes.get(session.getWorkflowNode());
+			if(node == null || node.next == null)
+			{
+				throw new IllegalStateException("Sync Workflow can not be signalled at: "+session.getWorkflowNode());
+			}
+		}
+
+		try
+		{
+			node = this.find(node.next);
+			while(node.decision != null)
+			{
+				String transition = node.decision.decide(context);
+				String to = node.transitions.get(transition);
+				if(to == null)
+				{
+					throw new IllegalStateException("Transition: "+transition+" is not defined at: "+node.name);
+				}
+				node = this.find(to);
+			}
+
+			//jBPM moves the token before the node-enter event fires, so the action sees the new node
+			session.setWorkflowNode(node.name);
+			if(node.action != null)
+			{
+				node.action.execute(context);
+			}
+
+			return node.name;
+		}
+		catch(RuntimeException re)
+		{
+			throw re;
+		}
+		catch(Exception e)
+		{
+			throw new SyncException(e);
+		}
+	}
+	//------------------------------------------------------------------------------------------------------------
+	private Node find(String name)
+	{
+		Node node = this.nodes.get(name);
+		if(node == null)
+		{
+			throw new IllegalStateException("Unknown Sync Workflow node: "+name);
+		}
+		return node;
+	}
+
+	private Node state(String name, WorkflowAction action, String next)
+	{
+		Node node = new Node(name, action, null);
+		node.next = next;
+		this.nodes.put(name, node);
+		return node;
+	}
+
+	private Node decision(String name, WorkflowDecision decision)
+	{
+		Node node = new Node(name, null, decision);
+		this.nodes.put(name, node);
+		return node;
+	}
+
+	private static class Node
+	{
+		private String name;
+		private WorkflowAction action;
+		private WorkflowDecision decision;
+		private String next;
+		private Map<String,String> transitions;
+
+		private Node(String name, WorkflowAction action, WorkflowDecision decision)
+		{
+			this.name = name;
+			this.action = action;
+			this.decision = decision;
+			this.transitions = new HashMap<String,String>();
+		}
+
+		private Node transition(String name, String to)
+		{
+			this.transitions.put(name, to);
+			return this;
+		}
+	}
+}
@@ -9,13 +9,13 @@
 package org.openmobster.core.synchronizer.server.workflow;
 
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 
 import org.apache.log4j.Logger;
 
-import org.jbpm.graph.exe.ExecutionContext;
 import org.openmobster.core.common.XMLUtilities;
 import org.openmobster.core.synchronizer.model.AbstractOperation;
 import org.openmobster.core.synchronizer.model.Add;
@@ -54,15 +54,15 @@ public class Utilities
 	 * @param currentAnchor
 	 * @return
 	 */
-	static String handleAnchorError(ExecutionContext context, int cmdId, Anchor currentAnchor)
+	static String handleAnchorError(WorkflowContext context, int cmdId, Anchor currentAnchor)
 	{
 		String payload = null;
-		Session session = (Session)context.getContextInstance().getTransientVariable("session");
-		SyncXMLGenerator syncXMLGenerator = (SyncXMLGenerator)context.getContextInstance().
+		Session session = (Session)context.getTransientVariable("session");
+		SyncXMLGenerator syncXMLGenerator = (SyncXMLGenerator)context.
 		getTransientVariable("syncXMLGenerator");
-		SyncObjectGenerator syncObjectGenerator = (SyncObjectGenerator)context.getContextInstance().
+		SyncObjectGenerator syncObjectGenerator = (SyncObjectGenerator)context.
 		getTransientVariable("syncObjectGenerator");
-		ServerSyncEngine syncEngine = (ServerSyncEngine)context.getContextInstance().
+		ServerSyncEngine syncEngine = (ServerSyncEngine)context.
 		getTransientVariable("syncEngine");
 		
 		//Clear the serverside anchor
@@ -96,15 +96,15 @@ public class Utilities
 		return payload;
 	}
 	
-	static String handleAuthorizationFailure(ExecutionContext context, int cmdId)
+	static String handleAuthorizationFailure(WorkflowContext context, int cmdId)
 	{
 		String payload = null;
-		Session session = (Session)context.getContextInstance().getTransientVariable("session");
-		SyncXMLGenerator syncXMLGenerator = (SyncXMLGenerator)context.getContextInstance().
+		Session session = (Session)context.getTransientVariable("session");
+		SyncXMLGenerator syncXMLGenerator = (SyncXMLGenerator)context.
 		getTransientVariable("syncXMLGenerator");
-		SyncObjectGenerator syncObjectGenerator = (SyncObjectGenerator)context.getContextInstance().
+		SyncObjectGenerator syncObjectGenerator = (SyncObjectGenerator)context.
 		getTransientVariable("syncObjectGenerator");
-		ServerSyncEngine syncEngine = (ServerSyncEngine)context.getContextInstance().
+		ServerSyncEngine syncEngine = (ServerSyncEngine)context.
 		getTransientVariable("syncEngine");
 		
 				
@@ -179,7 +179,7 @@ public class Utilities
 	 * 
 	 * @param context
 	 */
-	static void cleanupChangeLog(ExecutionContext context, boolean isInClosePhase)
+	static void cleanupChangeLog(WorkflowContext context, boolean isInClosePhase)
 	{
 		Session session = getSession(context);
 		ServerSyncEngine syncEngine = getSyncEngine(context);
@@ -248,7 +248,7 @@ public class Utilities
 		}
 	}
 	
-	static void processSyncCommands(ExecutionContext context, int cmdId,SyncMessage replyMessage)
+	static void processSyncCommands(WorkflowContext context, int cmdId,SyncMessage replyMessage)
 	{
 		Session session = getSession(context);
 		ServerSyncEngine syncEngine = getSyncEngine(context);
@@ -327,7 +327,7 @@ public class Utilities
 		}
 	}
 	
-	static SyncMessage setUpReply(ExecutionContext context)
+	static SyncMessage setUpReply(WorkflowContext context)
 	{
 		Session session = getSession(context);
 		SyncMessage syncMessage = new SyncMessage();
@@ -342,7 +342,7 @@ public class Utilities
 		return syncMessage;
 	}
 	
-	static SyncCommand generateSyncCommand(ExecutionContext context,int cmdId, SyncMessage replyMessage)
+	static SyncCommand generateSyncCommand(WorkflowContext context,int cmdId, SyncMessage replyMessage)
 	{
 		Session session = getSession(context);
 		ServerSyncEngine syncEngine = getSyncEngine(context);
@@ -390,25 +390,26 @@ public class Utilities
 				}
 				else
 				{
-					List slowSyncCommands = syncEngine.getSlowSyncCommands(session.getMaxClientSize(), 
-					syncCommand.getSource());
-					for(int i=0; i<slowSyncCommands.size(); i++)
-					{
-						AbstractOperation cour = (AbstractOperation)slowSyncCommands.get(i);
-						cour.setCmdId(String.valueOf(cmdId++));
-					}
+					//the records are read and marshalled as the messages are filled up
+					Iterator<AbstractOperation> slowSyncCommands = syncEngine.getSlowSyncCommandStream(
+					session.getMaxClientSize(), syncCommand.getSource());
 					
 					session.clearOperationCommandState();
 					session.initiateOperationCommandState();
-					session.getAllOperationCommands().addAll(slowSyncCommands);				
+					session.setOperationCommandStream(slowSyncCommands, cmdId);
 				}
 			}
+			
+			session.fillOperationCommands(session.getMaxClientSize());
 		}
 		catch(Throwable e)
 		{
 			//Ignore and keep going.....whatever issue there is will be fixed during the next sync session
 			//TODO: log into the ErrorHandling service
 			log.error(Utilities.class, e);
+			
+			//send what is already queued, and stop reading from a failing stream
+			session.setOperationCommandStream(null, 0);
 		}
 		
 		int numberOfCommands = calculateNumberOfCommands(session.getMaxClientSize(), session.
@@ -436,7 +437,8 @@ public class Utilities
 					syncCommand.getDeleteCommands().add(op);
 				}
 				
-				if(commandIndex == session.getAllOperationCommands().size())
+				if(commandIndex == session.getAllOperationCommands().size() && 
+				!session.hasOperationCommandStream())
 				{
 					session.clearOperationCommandState();
 				}
@@ -509,7 +511,7 @@ public class Utilities
 		return numberOfCommands;
 	}
 	
-	static void setUpSyncFinal(ExecutionContext context, SyncMessage reply,SyncCommand syncCommand)
+	static void setUpSyncFinal(WorkflowContext context, SyncMessage reply,SyncCommand syncCommand)
 	{
 		Session session = getSession(context);
 		ServerSyncEngine syncEngine = getSyncEngine(context);
@@ -629,7 +631,7 @@ public class Utilities
 		return isChunkOpen;
 	}
 	
-	static Status processRecordMap(ExecutionContext context, int cmdId)
+	static Status processRecordMap(WorkflowContext context, int cmdId)
 	{
 		Session session = getSession(context);
 		ServerSyncEngine syncEngine = getSyncEngine(context);
@@ -672,7 +674,7 @@ public class Utilities
 		return mapStatus;
 	}	
 	
-	static void setUpNextChunk(ExecutionContext context, int cmdId,SyncCommand syncCommand,AbstractOperation chunkedCommand)
+	static void setUpNextChunk(WorkflowContext context, int cmdId,SyncCommand syncCommand,AbstractOperation chunkedCommand)
 	{
 		Session session = getSession(context);
 		
@@ -713,9 +715,9 @@ public class Utilities
 	 * @param context
 	 * @return
 	 */
-	static ServerSyncEngine getSyncEngine(ExecutionContext context)
+	static ServerSyncEngine getSyncEngine(WorkflowContext context)
 	{
-		return (ServerSyncEngine)context.getContextInstance().
+		return (ServerSyncEngine)context.
 		getTransientVariable(VariableConstants.syncEngine);
 	}
 	
@@ -724,9 +726,9 @@ public class Utilities
 	 * @param context
 	 * @return
 	 */
-	static Session getSession(ExecutionContext context)
+	static Session getSession(WorkflowContext context)
 	{
-		return (Session)context.getContextInstance().
+		return (Session)context.
 		getTransientVariable(VariableConstants.session);
 	}
 	
@@ -735,9 +737,9 @@ public class Utilities
 	 * @param context
 	 * @return
 	 */
-	static SyncXMLGenerator getSyncXMLGenerator(ExecutionContext context)
+	static SyncXMLGenerator getSyncXMLGenerator(WorkflowContext context)
 	{
-		return (SyncXMLGenerator)context.getContextInstance().
+		return (SyncXMLGenerator)context.
 		getTransientVariable(VariableConstants.syncXMLGenerator);
 	}
 	
@@ -746,9 +748,9 @@ public class Utilities
 	 * @param context
 	 * @return
 	 */
-	static SyncObjectGenerator getSyncObjectGenerator(ExecutionContext context)
+	static SyncObjectGenerator getSyncObjectGenerator(WorkflowContext context)
 	{
-		return (SyncObjectGenerator)context.getContextInstance().
+		return (SyncObjectGenerator)context.
 		getTransientVariable(VariableConstants.syncObjectGenerator);
 	}
 	
@@ -757,8 +759,8 @@ public class Utilities
 	 * @param context
 	 * @param payload
 	 */
-	static void preparePayload(ExecutionContext context, String payload)
+	static void preparePayload(WorkflowContext context, String payload)
 	{
-		context.getContextInstance().setTransientVariable(VariableConstants.payload, payload);
+		context.setTransientVariable(VariableConstants.payload, payload);
 	}	
 }
@@ -0,0 +1,19 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.synchronizer.server.workflow;
+
+/**
+ * Runs when the sync workflow enters a state
+ * 
+ * @author openmobster@gmail.com
+ */
+interface WorkflowAction 
+{
+	void execute(WorkflowContext context) throws Exception;
+}
@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+
+package org.openmobster.core.synchronizer.server.workflow;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jbpm.context.exe.ContextInstance;
+import org.jbpm.graph.exe.ExecutionContext;
+
+/**
+ * The transient variables the workflow states share while a sync message is processed. When the states are 
+ * driven by the jBPM process definition the variables live in the process instance, otherwise in a plain map
+ * 
+ * @author openmobster@gmail.com
+ */
+public final class WorkflowContext 
+{
+	private ContextInstance contextInstance;
+	private Map<String,Object> variables;
+	
+	public WorkflowContext()
+	{
+		this.variables = new HashMap<String,Object>();
+	}
+	
+	WorkflowContext(ExecutionContext context)
+	{
+		this.contextInstance = context.getContextInstance();
+	}
+	
+	public Object getTransientVariable(String name)
+	{
+		if(this.contextInstance != null)
+		{
+			return this.contextInstance.getTransientVariable(name);
+		}
+		return this.variables.get(name);
+	}
+	
+	public void setTransientVariable(String name, Object value)
+	{
+		if(this.contextInstance != null)
+		{
+			this.contextInstance.setTransientVariable(name, value);
+			return;
+		}
+		this.variables.put(name, value);
+	}
+}
@@ -0,0 +1,114 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.synchronizer.model.Add;
+import org.openmobster.core.synchronizer.model.Item;
+import org.openmobster.core.synchronizer.model.SyncCommand;
+import org.openmobster.core.synchronizer.model.SyncMessage;
+
+/**
+ * Measures the heap held per sync session, to size the heap for a number of concurrent syncs. Each session 
+ * carries one client and one server message of 50 records of about 1k.
+ * 
+ * The heap is measured around creating the sessions, and compared to the SessionManager estimate.
+ * 
+ * @author openmobster@gmail.com
+ */
+public class PerfSessionManager extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfSessionManager.class);
+	
+	private static final int sessions = 1000;
+	private static final int records = 50;
+	private static final int recordSize = 1024;
+	
+	public void testRetainedBytes() throws Exception
+	{
+		SessionManager sessionManager = new SessionManager();
+		
+		long before = this.usedHeap();
+		List<String> sessionIds = new ArrayList<String>();
+		for(int i=0; i<sessions; i++)
+		{
+			sessionIds.add(sessionManager.saveSession(this.createSession(i)));
+		}
+		long after = this.usedHeap();
+		
+		long estimate = SessionManager.estimateSize(sessionManager.findSession(sessionIds.get(0)));
+		
+		log.info("-------------------------------------------------------------");
+		log.info("Sessions: "+sessions+", records/message: "+records+", record size: "+recordSize);
+		log.info("Heap per session: "+((after - before) / sessions)+" bytes");
+		log.info("Estimate per session: "+estimate+" bytes");
+		log.info(sessionManager);
+		log.info("-------------------------------------------------------------");
+		
+		assertEquals(sessions, sessionManager.getActiveSessions());
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private Session createSession(int index)
+	{
+		Session session = new Session();
+		session.setSource("device://"+index);
+		session.setTarget("server");
+		session.setApp("app");
+		
+		session.getClientSyncPackage().addMessage(this.createMessage("1", index));
+		session.getServerSyncPackage().addMessage(this.createMessage("2", index));
+		
+		return session;
+	}
+	
+	private SyncMessage createMessage(String messageId, int index)
+	{
+		StringBuilder data = new StringBuilder();
+		for(int i=0; i<recordSize; i++)
+		{
+			data.append((char)('a' + (i % 26)));
+		}
+		
+		SyncCommand syncCommand = new SyncCommand();
+		syncCommand.setSource("channel");
+		syncCommand.setTarget("channel");
+		for(int i=0; i<records; i++)
+		{
+			Item item = new Item();
+			item.setSource(index+"/"+i);
+			item.setData(new String(data.toString().toCharArray()));
+			
+			Add add = new Add();
+			add.setCmdId(String.valueOf(i+1));
+			add.getItems().add(item);
+			syncCommand.getAddCommands().add(add);
+		}
+		
+		SyncMessage message = new SyncMessage();
+		message.setMessageId(messageId);
+		message.addSyncCommand(syncCommand);
+		return message;
+	}
+	
+	private long usedHeap() throws Exception
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i=0; i<3; i++)
+		{
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
@@ -0,0 +1,102 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.synchronizer.model.Add;
+import org.openmobster.core.synchronizer.model.Item;
+import org.openmobster.core.synchronizer.model.SyncCommand;
+import org.openmobster.core.synchronizer.model.SyncMessage;
+
+/**
+ * Time taken to parse an inbound sync message carrying 200 records of about 4k each.
+ *
+ * @author openmobster@gmail.com
+ */
+public class PerfSyncObjectGenerator extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfSyncObjectGenerator.class);
+
+	private static final int records = 200;
+	private static final int recordSize = 4096;
+	private static final int warmup = 200;
+	private static final int iterations = 1000;
+
+	public void testParseClientSyncMessage() throws Exception
+	{
+		String xml = new SyncXMLGenerator().generateSyncMessage(this.createSession(), this.createMessage());
+		SyncObjectGenerator objectGenerator = new SyncObjectGenerator();
+
+		Session session = null;
+		for(int i=0; i<warmup; i++)
+		{
+			session = objectGenerator.parseClientSyncMessage(xml);
+		}
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			objectGenerator.parseClientSyncMessage(xml);
+		}
+		long elapsed = System.nanoTime() - start;
+
+		log.info("-------------------------------------------------------------");
+		log.info("Message size: "+xml.length()+" chars");
+		log.info("parseClientSyncMessage: "+(elapsed / iterations / 1000)+" micros/message");
+		log.info("-------------------------------------------------------------");
+
+		SyncMessage message = session.getClientSyncPackage().findMessage("1");
+		SyncCommand command = (SyncCommand)message.getSyncCommands().get(0);
+		assertEquals(records, command.getAddCommands().size());
+		Item item = (Item)((Add)command.getAddCommands().get(0)).getItems().get(0);
+		assertEquals(recordSize, item.getData().length());
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private Session createSession()
+	{
+		Session session = new Session();
+		session.setSessionId("session");
+		session.setSource("device");
+		session.setTarget("server");
+		session.setApp("app");
+		return session;
+	}
+
+	private SyncMessage createMessage()
+	{
+		StringBuilder data = new StringBuilder();
+		for(int i=0; i<recordSize; i++)
+		{
+			data.append((char)('a' + (i % 26)));
+		}
+
+		SyncCommand command = new SyncCommand();
+		command.setCmdId("1");
+		command.setSource("device");
+		command.setTarget("server");
+		for(int i=0; i<records; i++)
+		{
+			Item item = new Item();
+			item.setSource(String.valueOf(i));
+			item.setData(data.toString());
+
+			Add add = new Add();
+			add.setCmdId(String.valueOf(i + 2));
+			add.getItems().add(item);
+			command.getAddCommands().add(add);
+		}
+
+		SyncMessage message = new SyncMessage();
+		message.setMessageId("1");
+		message.setFinal(true);
+		message.addSyncCommand(command);
+		return message;
+	}
+}
@@ -0,0 +1,115 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.synchronizer.model.Add;
+import org.openmobster.core.synchronizer.model.Item;
+import org.openmobster.core.synchronizer.model.SyncCommand;
+import org.openmobster.core.synchronizer.model.SyncMessage;
+
+/**
+ * Time taken to generate a large outbound sync message of 200 records of about 4k, into a String and streamed
+ * into a buffer that is reused across messages.
+ * 
+ * @author openmobster@gmail.com
+ */
+public class PerfSyncXMLGenerator extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfSyncXMLGenerator.class);
+	
+	private static final int records = 200;
+	private static final int recordSize = 4096;
+	private static final int warmup = 200;
+	private static final int iterations = 1000;
+	
+	public void testGenerateSyncMessage() throws Exception
+	{
+		SyncXMLGenerator generator = new SyncXMLGenerator();
+		Session session = this.createSession();
+		SyncMessage message = this.createMessage();
+		
+		int size = 0;
+		for(int i=0; i<warmup; i++)
+		{
+			size = generator.generateSyncMessage(session, message).length();
+		}
+		long start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			generator.generateSyncMessage(session, message);
+		}
+		long generated = System.nanoTime() - start;
+		
+		StringBuilder buffer = new StringBuilder();
+		for(int i=0; i<warmup; i++)
+		{
+			buffer.setLength(0);
+			generator.writeSyncMessage(session, message, buffer);
+		}
+		start = System.nanoTime();
+		for(int i=0; i<iterations; i++)
+		{
+			buffer.setLength(0);
+			generator.writeSyncMessage(session, message, buffer);
+		}
+		long streamed = System.nanoTime() - start;
+		
+		log.info("-------------------------------------------------------------");
+		log.info("Message size: "+size+" chars");
+		log.info("generateSyncMessage: "+(generated / iterations / 1000)+" micros/message");
+		log.info("writeSyncMessage (reused buffer): "+(streamed / iterations / 1000)+" micros/message");
+		log.info("-------------------------------------------------------------");
+		
+		assertEquals(size, buffer.length());
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private Session createSession()
+	{
+		Session session = new Session();
+		session.setSessionId("session");
+		session.setSource("device");
+		session.setTarget("server");
+		session.setApp("app");
+		return session;
+	}
+	
+	private SyncMessage createMessage()
+	{
+		StringBuilder data = new StringBuilder();
+		for(int i=0; i<recordSize; i++)
+		{
+			data.append((char)('a' + (i % 26)));
+		}
+		
+		SyncCommand command = new SyncCommand();
+		command.setCmdId("1");
+		command.setSource("server");
+		command.setTarget("device");
+		for(int i=0; i<records; i++)
+		{
+			Item item = new Item();
+			item.setSource(String.valueOf(i));
+			item.setData(data.toString());
+			
+			Add add = new Add();
+			add.setCmdId(String.valueOf(i + 2));
+			add.getItems().add(item);
+			command.getAddCommands().add(add);
+		}
+		
+		SyncMessage message = new SyncMessage();
+		message.setMessageId("1");
+		message.setFinal(true);
+		message.addSyncCommand(command);
+		return message;
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @author openmobster@gmail.com
+ */
+public class TestSessionManager extends TestCase
+{
+	public void testIdleExpiry() throws Exception
+	{
+		SessionManager sessionManager = new SessionManager();
+		sessionManager.setIdleTimeout(100);
+		
+		String sessionId = sessionManager.saveSession(new Session());
+		assertNotNull(sessionManager.findSession(sessionId));
+		
+		Thread.sleep(200);
+		
+		assertNull(sessionManager.findSession(sessionId));
+		assertEquals(0, sessionManager.getActiveSessions());
+		assertEquals(1, sessionManager.getExpiredCount());
+	}
+	
+	public void testSweep() throws Exception
+	{
+		SessionManager sessionManager = new SessionManager();
+		sessionManager.setIdleTimeout(100);
+		sessionManager.setSweepInterval(0);
+		
+		sessionManager.saveSession(new Session());
+		sessionManager.saveSession(new Session());
+		
+		Thread.sleep(200);
+		
+		//looking up any session releases all the abandoned ones
+		assertNull(sessionManager.findSession("unknown"));
+		assertEquals(0, sessionManager.getActiveSessions());
+		assertEquals(2, sessionManager.getExpiredCount());
+	}
+	
+	public void testMaxSessions() throws Exception
+	{
+		SessionManager sessionManager = new SessionManager();
+		sessionManager.setMaxSessions(2);
+		
+		String first = sessionManager.saveSession(new Session());
+		Thread.sleep(10);
+		String second = sessionManager.saveSession(new Session());
+		Thread.sleep(10);
+		
+		//the first session is used again, so the second one is the least recently used
+		sessionManager.findSession(first);
+		Thread.sleep(10);
+		
+		String third = sessionManager.saveSession(new Session());
+		
+		assertEquals(2, sessionManager.getActiveSessions());
+		assertEquals(1, sessionManager.getEvictedCount());
+		assertNotNull(sessionManager.findSession(first));
+		assertNull(sessionManager.findSession(second));
+		assertNotNull(sessionManager.findSession(third));
+	}
+	
+	public void testCleanup() throws Exception
+	{
+		SessionManager sessionManager = new SessionManager();
+		
+		Session session = new Session();
+		String sessionId = sessionManager.saveSession(session);
+		sessionManager.cleanup(session);
+		
+		assertNull(sessionManager.findSession(sessionId));
+		assertEquals(0, sessionManager.getExpiredCount());
+		assertEquals(0, sessionManager.getEvictedCount());
+	}
+	
+	public void testEstimateSize() throws Exception
+	{
+		assertTrue(SessionManager.estimateSize(new Session()) > 0);
+	}
+}
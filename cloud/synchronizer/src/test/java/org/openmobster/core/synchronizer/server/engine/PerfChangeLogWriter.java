@@ -0,0 +1,80 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.ServiceManager;
+
+/**
+ * Measures the changelog fan-out of one channel update: 20 beans across 5000 devices, 100k entries.
+ * 
+ * The second write of the same entries measures the cost of skipping entries that are already stored.
+ * 
+ * @author openmobster@gmail.com
+ */
+public class PerfChangeLogWriter extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfChangeLogWriter.class);
+	
+	private static final int devices = 5000;
+	private static final int beans = 20;
+	
+	private ServerSyncEngine syncEngine;
+	
+	protected void setUp() throws Exception
+	{
+		ServiceManager.bootstrap();
+		this.syncEngine = (ServerSyncEngine)ServiceManager.locate("synchronizer://ServerSyncEngine");
+	}
+	
+	protected void tearDown() throws Exception
+	{
+		ServiceManager.shutdown();
+	}
+	
+	public void testFanOut() throws Exception
+	{
+		List<ChangeLogEntry> changeLog = new ArrayList<ChangeLogEntry>();
+		for(int i=0; i<devices; i++)
+		{
+			for(int j=0; j<beans; j++)
+			{
+				ChangeLogEntry entry = new ChangeLogEntry();
+				entry.setTarget("IMEI:"+i);
+				entry.setNodeId("perfChannel");
+				entry.setApp("perfApp");
+				entry.setRecordId("bean"+j);
+				entry.setOperation(ServerSyncEngine.OPERATION_UPDATE);
+				changeLog.add(entry);
+			}
+		}
+		
+		long start = System.currentTimeMillis();
+		this.syncEngine.addChangeLogEntries(changeLog);
+		long inserted = System.currentTimeMillis() - start;
+		
+		start = System.currentTimeMillis();
+		this.syncEngine.addChangeLogEntries(changeLog);
+		long skipped = System.currentTimeMillis() - start;
+		
+		assertEquals(beans, this.syncEngine.getChangeLog("IMEI:"+(devices-1), "perfChannel", "perfApp", 
+		ServerSyncEngine.OPERATION_UPDATE).size());
+		
+		log.info("-------------------------------------------------------------");
+		log.info("Entries: "+changeLog.size());
+		log.info("Insert: "+inserted+" ms");
+		log.info("Already stored: "+skipped+" ms");
+		log.info("-------------------------------------------------------------");
+	}
+}
@@ -0,0 +1,90 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import org.apache.log4j.Logger;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.common.ServiceManager;
+
+/**
+ * Measures starting and checking the optimistic locks of 2000 beans of 4KB each, once with the full state
+ * locks and once with the fingerprint locks.
+ * 
+ * @author openmobster@gmail.com
+ */
+public class PerfConflictEngine extends TestCase
+{
+	private static Logger log = Logger.getLogger(PerfConflictEngine.class);
+	
+	private static final int beans = 2000;
+	private static final int beanSize = 4096;
+	
+	private ConflictEngine conflictEngine;
+	
+	protected void setUp() throws Exception
+	{
+		ServiceManager.bootstrap();
+		this.conflictEngine = (ConflictEngine)ServiceManager.locate("ConflictEngine");
+	}
+	
+	protected void tearDown() throws Exception
+	{
+		ServiceManager.shutdown();
+	}
+	
+	public void testLocks() throws Exception
+	{
+		StringBuilder message = new StringBuilder();
+		while(message.length() < beanSize)
+		{
+			message.append("The quick brown fox jumps over the lazy dog. ");
+		}
+		
+		this.run(ConflictEngine.LOCK_MODE_STATE, message.toString());
+		this.run(ConflictEngine.LOCK_MODE_FINGERPRINT, message.toString());
+	}
+	
+	private void run(String lockMode, String message) throws Exception
+	{
+		this.conflictEngine.clearAll();
+		this.conflictEngine.setLockMode(lockMode);
+		
+		LockBean[] all = new LockBean[beans];
+		for(int i=0; i<beans; i++)
+		{
+			all[i] = new LockBean();
+			all[i].setOid("bean"+i);
+			all[i].setMessage(message+i);
+		}
+		
+		long start = System.currentTimeMillis();
+		for(LockBean bean: all)
+		{
+			this.conflictEngine.startOptimisticLock("perfDevice", "perfApp", "perfChannel", bean);
+		}
+		long lockTime = System.currentTimeMillis() - start;
+		
+		start = System.currentTimeMillis();
+		for(LockBean bean: all)
+		{
+			assertTrue(this.conflictEngine.checkOptimisticLock("perfDevice", "perfApp", "perfChannel", bean));
+		}
+		long checkTime = System.currentTimeMillis() - start;
+		
+		int lockSize = this.conflictEngine.readLock("perfDevice", "bean0", "perfApp", "perfChannel").getState().length;
+		
+		log.info("-------------------------------------------------------------");
+		log.info("LockMode: "+lockMode);
+		log.info("Start: "+lockTime+" ms");
+		log.info("Check: "+checkTime+" ms");
+		log.info("Stored per lock: "+lockSize+" bytes");
+		log.info("-------------------------------------------------------------");
+	}
+}
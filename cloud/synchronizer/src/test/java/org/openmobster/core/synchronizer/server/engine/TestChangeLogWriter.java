@@ -0,0 +1,98 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import org.openmobster.core.common.ServiceManager;
+import org.openmobster.core.common.database.HibernateManager;
+import junit.framework.TestCase;
+
+/**
+ *
+ * @author openmobster@gmail.com
+ */
+public class TestChangeLogWriter extends TestCase
+{
+	private HibernateManager hibernateManager;
+	private ServerSyncEngine syncEngine;
+	private ChangeLogWriter writer;
+
+	protected void setUp() throws Exception
+	{
+		ServiceManager.bootstrap();
+		this.hibernateManager = (HibernateManager)ServiceManager.locate("synchronizer://HibernateManager");
+		this.syncEngine = (ServerSyncEngine)ServiceManager.locate("synchronizer://ServerSyncEngine");
+
+		//small batches, so that the entries span more than one
+		this.writer = new ChangeLogWriter(this.hibernateManager, 2);
+	}
+
+	protected void tearDown() throws Exception
+	{
+		ServiceManager.shutdown();
+	}
+
+	public void testSkipStored() throws Exception
+	{
+		assertEquals(3, this.writer.write(this.entries("IMEI:stored", 0, 3)));
+
+		//two new ones, three stored ones, and a duplicate within the call
+		List<ChangeLogEntry> entries = this.entries("IMEI:stored", 0, 5);
+		entries.addAll(this.entries("IMEI:stored", 4, 1));
+		assertEquals(2, this.writer.write(entries));
+
+		assertEquals(5, this.syncEngine.getChangeLog("IMEI:stored", "testChannel", "testApp",
+		ServerSyncEngine.OPERATION_UPDATE).size());
+	}
+
+	public void testStoredConcurrently() throws Exception
+	{
+		assertEquals(2, this.writer.write(this.entries("IMEI:concurrent", 0, 2)));
+
+		//as if another fan-out stored the first two after they were looked up
+		Session session = this.hibernateManager.getSessionFactory().getCurrentSession();
+		Transaction tx = session.beginTransaction();
+		int written = 0;
+		try
+		{
+			written = this.writer.insert(session.connection(), ChangeLogWriter.insert,
+			this.entries("IMEI:concurrent", 0, 5));
+			tx.commit();
+		}
+		catch(Exception e)
+		{
+			tx.rollback();
+			throw e;
+		}
+
+		assertEquals(3, written);
+		assertEquals(5, this.syncEngine.getChangeLog("IMEI:concurrent", "testChannel", "testApp",
+		ServerSyncEngine.OPERATION_UPDATE).size());
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private List<ChangeLogEntry> entries(String target, int from, int count)
+	{
+		List<ChangeLogEntry> entries = new ArrayList<ChangeLogEntry>();
+		for(int i=from; i<from+count; i++)
+		{
+			ChangeLogEntry entry = new ChangeLogEntry();
+			entry.setTarget(target);
+			entry.setNodeId("testChannel");
+			entry.setApp("testApp");
+			entry.setRecordId("bean"+i);
+			entry.setOperation(ServerSyncEngine.OPERATION_UPDATE);
+			entries.add(entry);
+		}
+		return entries;
+	}
+}
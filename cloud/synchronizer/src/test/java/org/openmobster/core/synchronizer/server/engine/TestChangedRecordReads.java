@@ -0,0 +1,164 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.core.synchronizer.model.Add;
+import org.openmobster.core.synchronizer.model.Item;
+import org.openmobster.core.synchronizer.model.Replace;
+import org.openmobster.core.synchronizer.server.Session;
+import org.openmobster.core.synchronizer.server.SyncContext;
+
+/**
+ * Changelog driven Add and Replace commands, read through the /bean/ids container service
+ *
+ * @author openmobster@gmail.com
+ */
+public class TestChangedRecordReads extends TestCase
+{
+	private BatchGateway gateway;
+	private ServerSyncEngineImpl syncEngine;
+	private List<String> changed;
+	private int locks;
+
+	protected void setUp() throws Exception
+	{
+		Session session = new Session();
+		session.setSource("deviceId");
+		session.setApp("testApp");
+		SyncContext.getInstance().setSession(session);
+
+		this.gateway = new BatchGateway();
+		this.changed = new ArrayList<String>();
+
+		this.syncEngine = new ServerSyncEngineImpl()
+		{
+			public List getChangeLog(String target, String nodeId, String app, String operation)
+			{
+				List<ChangeLogEntry> changeLog = new ArrayList<ChangeLogEntry>();
+				for(String recordId: TestChangedRecordReads.this.changed)
+				{
+					ChangeLogEntry entry = new ChangeLogEntry();
+					entry.setRecordId(recordId);
+					entry.setOperation(operation);
+					changeLog.add(entry);
+				}
+				return changeLog;
+			}
+		};
+		this.syncEngine.setGateway(this.gateway);
+		this.syncEngine.setConflictEngine(new ConflictEngine()
+		{
+			public void startOptimisticLock(String app, String channel, MobileBean cloudBean)
+			{
+				TestChangedRecordReads.this.locks++;
+			}
+		});
+	}
+
+	protected void tearDown() throws Exception
+	{
+		SyncContext.getInstance().setSession((Session)null);
+	}
+
+	public void testAddCommands() throws Exception
+	{
+		int pageSize = ServerSyncEngineImpl.readBatchSize;
+		this.change(2 * pageSize + pageSize / 2);
+		this.changed.set(pageSize + 1, "missing");
+
+		List commands = this.syncEngine.getAddCommands(10000, "testChannel", "2");
+
+		//one read per page, each page turned into commands before the next one is read
+		assertEquals(3, this.gateway.pages.size());
+		assertEquals(pageSize, this.gateway.pages.get(0).size());
+		assertEquals(pageSize, this.gateway.pages.get(1).size());
+		assertEquals(pageSize / 2, this.gateway.pages.get(2).size());
+		assertEquals(0, this.gateway.marshalledBeforePage.get(0).intValue());
+		assertEquals(pageSize, this.gateway.marshalledBeforePage.get(1).intValue());
+		assertEquals(2 * pageSize - 1, this.gateway.marshalledBeforePage.get(2).intValue());
+
+		//the missing record is left out
+		assertEquals(this.changed.size() - 1, commands.size());
+		assertEquals(commands.size(), this.locks);
+		for(Object command: commands)
+		{
+			assertTrue(command instanceof Add);
+			assertFalse("<bean>missing</bean>".equals(((Item)((Add)command).getItems().get(0)).getData()));
+		}
+	}
+
+	public void testReplaceCommands() throws Exception
+	{
+		this.change(ServerSyncEngineImpl.readBatchSize);
+
+		List commands = this.syncEngine.getReplaceCommands(10000, "testChannel", "2");
+
+		assertEquals(1, this.gateway.pages.size());
+		assertEquals(this.changed, this.gateway.pages.get(0));
+		assertEquals(this.changed.size(), commands.size());
+		for(int i=0; i<commands.size(); i++)
+		{
+			Replace replace = (Replace)commands.get(i);
+			assertEquals("<bean>"+i+"</bean>", ((Item)replace.getItems().get(0)).getData());
+		}
+	}
+
+	public void testNoChanges() throws Exception
+	{
+		assertTrue(this.syncEngine.getAddCommands(10000, "testChannel", "2").isEmpty());
+		assertTrue(this.gateway.pages.isEmpty());
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private void change(int count)
+	{
+		for(int i=0; i<count; i++)
+		{
+			this.changed.add(String.valueOf(i));
+		}
+	}
+
+	/**
+	 * Finds every record except "missing"
+	 */
+	private static class BatchGateway extends MobileObjectGateway
+	{
+		private List<List<String>> pages = new ArrayList<List<String>>();
+		private List<Integer> marshalledBeforePage = new ArrayList<Integer>();
+		private int marshalled;
+
+		public List<MobileBean> readRecords(String serviceId, List<String> recordIds)
+		{
+			this.pages.add(new ArrayList<String>(recordIds));
+			this.marshalledBeforePage.add(this.marshalled);
+
+			List<MobileBean> beans = new ArrayList<MobileBean>();
+			for(String recordId: recordIds)
+			{
+				if(!recordId.equals("missing"))
+				{
+					LockBean bean = new LockBean();
+					bean.setOid(recordId);
+					beans.add(bean);
+				}
+			}
+			return beans;
+		}
+
+		public String marshal(MobileBean record)
+		{
+			this.marshalled++;
+			return "<bean>"+((LockBean)record).getOid()+"</bean>";
+		}
+	}
+}
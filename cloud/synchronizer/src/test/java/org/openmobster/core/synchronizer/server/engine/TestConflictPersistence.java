@@ -7,6 +7,10 @@
  */
 package org.openmobster.core.synchronizer.server.engine;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
 import org.openmobster.core.common.ServiceManager;
 import junit.framework.TestCase;
 
@@ -56,4 +60,97 @@ public class TestConflictPersistence extends TestCase
 		stored = this.conflictEngine.readLock("deviceId", "oid", "testApp", "testChannel");
 		assertEquals(stored.getStateAsString(), "blahblah2");
 	}
+	
+	public void testFingerprintLock() throws Exception
+	{
+		LockBean bean = new LockBean();
+		bean.setOid("lockBean");
+		bean.setMessage("blahblah");
+		
+		this.conflictEngine.startOptimisticLock("deviceId", "testApp", "testChannel", bean);
+		
+		ConflictEntry stored = this.conflictEngine.readLock("deviceId", "lockBean", "testApp", "testChannel");
+		assertTrue(stored.getStateAsString().startsWith("md5:"));
+		assertEquals(36, stored.getStateAsString().length());
+		assertTrue(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+		
+		bean.setMessage("blahblah2");
+		assertFalse(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+	}
+	
+	public void testVersionLock() throws Exception
+	{
+		VersionedLockBean bean = new VersionedLockBean();
+		bean.setOid("versionedBean");
+		bean.setRevision(3);
+		bean.setMessage("blahblah");
+		
+		this.conflictEngine.startOptimisticLock("deviceId", "testApp", "testChannel", bean);
+		
+		ConflictEntry stored = this.conflictEngine.readLock("deviceId", "versionedBean", "testApp", "testChannel");
+		assertEquals("version:3", stored.getStateAsString());
+		assertTrue(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+		
+		//only the version is compared
+		bean.setMessage("blahblah2");
+		assertTrue(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+		
+		bean.setRevision(4);
+		assertFalse(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+		
+		//resolved from the cached version field, and a bean without one still has no version
+		assertEquals("4", Tools.getVersion(bean));
+		assertNull(Tools.getVersion(new LockBean()));
+	}
+	
+	public void testLegacyStateLock() throws Exception
+	{
+		LockBean bean = new LockBean();
+		bean.setOid("legacyBean");
+		bean.setMessage("blahblah");
+		
+		//a lock as written before the fingerprint lockMode
+		ConflictEntry entry = new ConflictEntry();
+		entry.setDeviceId("deviceId");
+		entry.setOid("legacyBean");
+		entry.setApp("testApp");
+		entry.setChannel("testChannel");
+		entry.setState(this.conflictEngine.getSerializer().serialize(bean).trim().getBytes());
+		this.conflictEngine.saveLock(entry);
+		
+		assertTrue(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+		
+		assertTrue(this.conflictEngine.migrateLocks() >= 1);
+		ConflictEntry stored = this.conflictEngine.readLock("deviceId", "legacyBean", "testApp", "testChannel");
+		assertTrue(stored.getStateAsString().startsWith("md5:"));
+		assertTrue(this.conflictEngine.checkOptimisticLock("deviceId", "testApp", "testChannel", bean));
+	}
+	
+	public void testLockBatch() throws Exception
+	{
+		List<String> oids = new ArrayList<String>();
+		
+		this.conflictEngine.openLockBatch();
+		for(int i=0; i<3; i++)
+		{
+			LockBean bean = new LockBean();
+			bean.setOid("batchBean"+i);
+			bean.setMessage("blahblah"+i);
+			this.conflictEngine.startOptimisticLock("deviceId", "testApp", "testChannel", bean);
+			oids.add(bean.getOid());
+		}
+		
+		//nothing is written until the flush
+		assertEquals(0, this.conflictEngine.readLock("deviceId", "batchBean0", "testApp", "testChannel").getId());
+		
+		this.conflictEngine.flushLockBatch();
+		
+		Map<String,ConflictEntry> locks = this.conflictEngine.readLocks("deviceId", "testApp", "testChannel", oids);
+		assertEquals(3, locks.size());
+		for(ConflictEntry lock: locks.values())
+		{
+			assertTrue(lock.getId() > 0);
+			assertTrue(lock.getStateAsString().startsWith("md5:"));
+		}
+	}
 }
@@ -0,0 +1,135 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.synchronizer.model.Item;
+import org.openmobster.core.synchronizer.model.Replace;
+import org.openmobster.core.synchronizer.server.Session;
+import org.openmobster.core.synchronizer.server.SyncContext;
+
+/**
+ *
+ * @author openmobster@gmail.com
+ */
+public class TestLockPrefetch extends TestCase
+{
+	private ServerSyncEngineImpl syncEngine;
+	private RecordingConflictEngine conflictEngine;
+
+	protected void setUp() throws Exception
+	{
+		Session session = new Session();
+		session.setSource("deviceId");
+		session.setApp("testApp");
+		SyncContext.getInstance().setSession(session);
+
+		Map<String,String> localToServer = new HashMap<String,String>();
+		localToServer.put("device://1", "server://1");
+
+		this.conflictEngine = new RecordingConflictEngine();
+		this.syncEngine = new ServerSyncEngineImpl();
+		this.syncEngine.setGateway(new MappingGateway(localToServer));
+		this.syncEngine.setConflictEngine(this.conflictEngine);
+	}
+
+	protected void tearDown() throws Exception
+	{
+		SyncContext.getInstance().setSession((Session)null);
+	}
+
+	public void testMappedRecord() throws Exception
+	{
+		List replaceCommands = new ArrayList();
+		replaceCommands.add(this.replace("device://1"));
+		replaceCommands.add(this.replace("server://2"));
+
+		this.syncEngine.readLocks("testChannel", replaceCommands);
+
+		assertEquals("deviceId", this.conflictEngine.deviceId);
+		assertEquals("testApp", this.conflictEngine.app);
+		assertEquals(2, this.conflictEngine.oids.size());
+		assertTrue(this.conflictEngine.oids.contains("server://1"));
+		assertTrue(this.conflictEngine.oids.contains("server://2"));
+		assertFalse(this.conflictEngine.oids.contains("device://1"));
+	}
+
+	public void testChunkedRecord() throws Exception
+	{
+		Replace chunk = this.replace("device://1");
+		((Item)chunk.getItems().get(0)).setMoreData(true);
+
+		List replaceCommands = new ArrayList();
+		replaceCommands.add(chunk);
+
+		this.syncEngine.readLocks("testChannel", replaceCommands);
+
+		assertNull(this.conflictEngine.oids);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	private Replace replace(String recordId)
+	{
+		Item item = new Item();
+		item.setData(recordId);
+
+		Replace replace = new Replace();
+		replace.getItems().add(item);
+		return replace;
+	}
+
+	/**
+	 * The item data is the id of the bean, and the record map is fixed
+	 */
+	private static class MappingGateway extends MobileObjectGateway
+	{
+		private Map<String,String> localToServer;
+
+		private MappingGateway(Map<String,String> localToServer)
+		{
+			this.localToServer = localToServer;
+		}
+
+		public String parseId(String xml)
+		{
+			return xml;
+		}
+
+		public String mapIdFromLocalToServer(String localId)
+		{
+			String serverId = this.localToServer.get(localId);
+			if(serverId == null)
+			{
+				return localId;
+			}
+			return serverId;
+		}
+	}
+
+	private static class RecordingConflictEngine extends ConflictEngine
+	{
+		private String deviceId;
+		private String app;
+		private List<String> oids;
+
+		public Map<String,ConflictEntry> readLocks(String deviceId, String app, String channel,
+		Collection<String> oids)
+		{
+			this.deviceId = deviceId;
+			this.app = app;
+			this.oids = new ArrayList<String>(oids);
+			return new HashMap<String,ConflictEntry>();
+		}
+	}
+}
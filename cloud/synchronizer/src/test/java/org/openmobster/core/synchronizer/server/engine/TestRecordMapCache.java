@@ -0,0 +1,56 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+/**
+ * 
+ * @author openmobster@gmail.com
+ */
+public class TestRecordMapCache extends TestCase
+{
+	public void testBidirectionalLookup() throws Exception
+	{
+		Map recordMap = new HashMap();
+		recordMap.put("server://1", "device://1");
+		recordMap.put("server://2", "device://2");
+		
+		RecordMapCache cache = new RecordMapCache("channel", "deviceId", recordMap);
+		
+		assertTrue(cache.isFor("channel", "deviceId"));
+		assertFalse(cache.isFor("channel", "otherDevice"));
+		
+		assertEquals("device://1", cache.mapFromServerToLocal("server://1"));
+		assertEquals("server://2", cache.mapFromLocalToServer("device://2"));
+		
+		//same id on both ends
+		assertNull(cache.mapFromServerToLocal("server://3"));
+		
+		assertEquals(3, cache.getLookups());
+		assertEquals(2, cache.getMapped());
+	}
+	
+	public void testSavedMappings() throws Exception
+	{
+		RecordMapCache cache = new RecordMapCache("channel", "deviceId", new HashMap());
+		assertNull(cache.mapFromLocalToServer("device://1"));
+		
+		cache.put("server://1", "device://1");
+		assertEquals("server://1", cache.mapFromLocalToServer("device://1"));
+		assertEquals("device://1", cache.mapFromServerToLocal("server://1"));
+		
+		//the first mapping stays, like the lookup against the database
+		cache.put("server://1", "device://2");
+		assertEquals("device://1", cache.mapFromServerToLocal("server://1"));
+		assertEquals("server://1", cache.mapFromLocalToServer("device://2"));
+	}
+}
@@ -0,0 +1,243 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.core.synchronizer.model.AbstractOperation;
+import org.openmobster.core.synchronizer.model.Add;
+import org.openmobster.core.synchronizer.model.Delete;
+import org.openmobster.core.synchronizer.model.Item;
+import org.openmobster.core.synchronizer.server.Session;
+import org.openmobster.core.synchronizer.server.SyncContext;
+
+/**
+ * Slow sync commands pulled a message at a time, as the SyncServerAdapter does
+ *
+ * @author openmobster@gmail.com
+ */
+public class TestSlowSyncCommandStream extends TestCase
+{
+	private static final int maxStreamedCommands = 100;
+
+	private PagedGateway gateway;
+	private ServerSyncEngineImpl syncEngine;
+	private List<String> deleted;
+	private int messages;
+
+	protected void setUp() throws Exception
+	{
+		Session session = new Session();
+		session.setSource("deviceId");
+		session.setApp("testApp");
+		SyncContext.getInstance().setSession(session);
+
+		this.gateway = new PagedGateway();
+		this.deleted = new ArrayList<String>();
+
+		this.syncEngine = new ServerSyncEngineImpl()
+		{
+			public List getChangeLog(String target, String nodeId, String app, String operation)
+			{
+				List<ChangeLogEntry> changeLog = new ArrayList<ChangeLogEntry>();
+				for(String recordId: TestSlowSyncCommandStream.this.deleted)
+				{
+					ChangeLogEntry entry = new ChangeLogEntry();
+					entry.setRecordId(recordId);
+					changeLog.add(entry);
+				}
+				return changeLog;
+			}
+		};
+		this.syncEngine.setGateway(this.gateway);
+		this.syncEngine.setConflictEngine(new ConflictEngine()
+		{
+			public void startOptimisticLock(String app, String channel, MobileBean cloudBean)
+			{
+			}
+		});
+	}
+
+	protected void tearDown() throws Exception
+	{
+		SyncContext.getInstance().setSession((Session)null);
+	}
+
+	public void testExactPages() throws Exception
+	{
+		int records = 2 * ServerSyncEngineImpl.readPageSize;
+		this.gateway.records = records;
+		this.deleted.add("deleted1");
+
+		List<AbstractOperation> commands = this.streamCommands(records + 1);
+
+		//the third read finds the end of the channel
+		assertEquals(3, this.gateway.pageReads);
+		assertEquals(0, this.gateway.allReads);
+		assertEquals((records / maxStreamedCommands) + 1, this.messages);
+		this.assertCommands(commands, records);
+	}
+
+	public void testPagePlusOne() throws Exception
+	{
+		int records = ServerSyncEngineImpl.readPageSize + 1;
+		this.gateway.records = records;
+
+		List<AbstractOperation> commands = this.streamCommands(records);
+
+		assertEquals(2, this.gateway.pageReads);
+		assertEquals(0, this.gateway.allReads);
+		assertEquals((records / maxStreamedCommands) + 1, this.messages);
+		this.assertCommands(commands, records);
+	}
+
+	public void testEmptyChannel() throws Exception
+	{
+		this.deleted.add("deleted1");
+		this.deleted.add("deleted2");
+
+		List<AbstractOperation> commands = this.streamCommands(2);
+
+		assertEquals(1, this.gateway.pageReads);
+		assertEquals(0, this.gateway.allReads);
+		assertEquals(1, this.messages);
+		this.assertCommands(commands, 0);
+
+		this.deleted.clear();
+		assertTrue(this.streamCommands(0).isEmpty());
+	}
+
+	public void testNotPaging() throws Exception
+	{
+		int records = ServerSyncEngineImpl.readPageSize + 1;
+		this.gateway.records = records;
+		this.gateway.isPaging = false;
+		this.deleted.add("deleted1");
+
+		List<AbstractOperation> commands = this.streamCommands(records + 1);
+
+		//the channel answers 501 on /bean/page, so it is read in full once
+		assertEquals(1, this.gateway.pageReads);
+		assertEquals(1, this.gateway.allReads);
+		this.assertCommands(commands, records);
+	}
+	//---------------------------------------------------------------------------------------------------------
+	/**
+	 * Pulls the commands a message at a time, checking that each message is no bigger than the stream allows
+	 * and that the beans are only marshalled as they are needed
+	 */
+	private List<AbstractOperation> streamCommands(int expected)
+	{
+		Session session = new Session();
+		session.setOperationCommandStream(this.syncEngine.getSlowSyncCommandStream(10000, "testChannel"), 1);
+		assertEquals(0, this.gateway.marshalled);
+
+		List<AbstractOperation> commands = new ArrayList<AbstractOperation>();
+		this.messages = 0;
+		while(session.hasOperationCommandStream())
+		{
+			session.fillOperationCommands(Integer.MAX_VALUE);
+
+			List queue = session.getAllOperationCommands();
+			assertTrue(queue.size() <= maxStreamedCommands);
+			if(expected - commands.size() >= maxStreamedCommands)
+			{
+				assertEquals(maxStreamedCommands, queue.size());
+			}
+			for(int i=session.getOperationCommandIndex(); i<queue.size(); i++)
+			{
+				commands.add((AbstractOperation)queue.get(i));
+			}
+			assertTrue(this.gateway.marshalled <= commands.size());
+
+			//all of them are sent
+			session.setOperationCommandIndex(queue.size());
+			this.messages++;
+		}
+
+		assertEquals(expected, commands.size());
+		return commands;
+	}
+
+	private void assertCommands(List<AbstractOperation> commands, int records)
+	{
+		for(int i=0; i<commands.size(); i++)
+		{
+			AbstractOperation command = commands.get(i);
+			assertEquals(String.valueOf(i + 1), command.getCmdId());
+
+			Item item = (Item)command.getItems().get(0);
+			if(i < records)
+			{
+				assertTrue(command instanceof Add);
+				assertEquals("<bean>"+i+"</bean>", item.getData());
+			}
+			else
+			{
+				assertTrue(command instanceof Delete);
+				assertEquals(this.deleted.get(i - records), item.getData());
+			}
+		}
+	}
+
+	/**
+	 * A channel of numbered beans, read a page at a time unless paging is off
+	 */
+	private static class PagedGateway extends MobileObjectGateway
+	{
+		private int records;
+		private boolean isPaging = true;
+
+		private int pageReads;
+		private int allReads;
+		private int marshalled;
+
+		public List<MobileBean> readRecordPage(String serviceId, int start, int size)
+		{
+			this.pageReads++;
+			if(!this.isPaging)
+			{
+				return null;
+			}
+			return this.read(start, Math.min(start + size, this.records));
+		}
+
+		public List<MobileBean> readAllRecords(String serviceId)
+		{
+			this.allReads++;
+			return this.read(0, this.records);
+		}
+
+		public String marshal(MobileBean record)
+		{
+			this.marshalled++;
+			return "<bean>"+((LockBean)record).getOid()+"</bean>";
+		}
+
+		public String marshalId(String recordId)
+		{
+			return recordId;
+		}
+
+		private List<MobileBean> read(int from, int to)
+		{
+			List<MobileBean> beans = new ArrayList<MobileBean>();
+			for(int i=from; i<to; i++)
+			{
+				LockBean bean = new LockBean();
+				bean.setOid(String.valueOf(i));
+				beans.add(bean);
+			}
+			return beans;
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.engine;
+
+import org.openmobster.cloud.api.sync.MobileBean;
+import org.openmobster.cloud.api.sync.MobileBeanId;
+import org.openmobster.cloud.api.sync.MobileBeanVersion;
+
+/**
+ * @author openmobster@gmail.com
+ */
+public class VersionedLockBean implements MobileBean 
+{
+	@MobileBeanId
+	private String oid;
+	
+	@MobileBeanVersion
+	private long revision;
+	
+	private String message;
+	
+	public VersionedLockBean()
+	{
+	}
+
+	public String getOid() 
+	{
+		return oid;
+	}
+
+	public void setOid(String oid) 
+	{
+		this.oid = oid;
+	}
+
+	public long getRevision() 
+	{
+		return revision;
+	}
+
+	public void setRevision(long revision) 
+	{
+		this.revision = revision;
+	}
+
+	public String getMessage() 
+	{
+		return message;
+	}
+
+	public void setMessage(String message) 
+	{
+		this.message = message;
+	}	
+}
@@ -0,0 +1,64 @@
+/**
+ * Copyright (c) {2003,2011} {openmobster@gmail.com} {individual contributors as indicated by the @authors tag}.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Eclipse Public License v1.0
+ * which accompanies this distribution, and is available at
+ * http://www.eclipse.org/legal/epl-v10.html
+ */
+package org.openmobster.core.synchronizer.server.workflow;
+
+import junit.framework.TestCase;
+
+import org.openmobster.core.synchronizer.server.Session;
+
+/**
+ * 
+ * @author openmobster@gmail.com
+ */
+public class TestSyncStateMachine extends TestCase
+{
+	public void testCloseToEnd() throws Exception
+	{
+		SyncStateMachine stateMachine = new SyncStateMachine();
+		Session session = new Session();
+		session.setWorkflowNode(WorkflowConstants.close);
+		
+		assertEquals(WorkflowConstants.end, stateMachine.signal(session, new WorkflowContext()));
+		assertEquals(WorkflowConstants.end, session.getWorkflowNode());
+	}
+	
+	public void testSignalAtEnd() throws Exception
+	{
+		SyncStateMachine stateMachine = new SyncStateMachine();
+		Session session = new Session();
+		session.setWorkflowNode(WorkflowConstants.end);
+		
+		try
+		{
+			stateMachine.signal(session, new WorkflowContext());
+			fail("An ended workflow must not be signalled");
+		}
+		catch(IllegalStateException ise)
+		{
+			//expected
+		}
+		assertEquals(WorkflowConstants.end, session.getWorkflowNode());
+	}
+	
+	public void testUnknownNode() throws Exception
+	{
+		SyncStateMachine stateMachine = new SyncStateMachine();
+		Session session = new Session();
+		session.setWorkflowNode("unknown");
+		
+		try
+		{
+			stateMachine.signal(session, new WorkflowContext());
+			fail("Unknown nodes must be rejected");
+		}
+		catch(IllegalStateException ise)
+		{
+			//expected
+		}
+	}
+}